@@ -0,0 +1,138 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import nl.siegmann.epublib.domain.Author;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.Title;
+import nl.siegmann.epublib.epub.EpubWriter;
+import nl.siegmann.epublib.service.MediatypeService;
+
+/**
+ * Creates the synthetic books the benchmarks run against.
+ *
+ * The text of the books is deterministic, so results of different runs can be compared.
+ */
+public class BenchmarkBooks {
+
+    /**
+     * The shape of the table of contents of a generated book.
+     */
+    public enum TocShape {
+        /**
+         * Every chapter is a top-level section.
+         */
+        FLAT,
+        /**
+         * Chapters are grouped into parts, and every chapter has subsections pointing into it.
+         */
+        DEEP
+    }
+
+    /**
+     * A word that occurs in every paragraph of a generated book.
+     */
+    public static final String COMMON_WORD = "lorem";
+
+    /**
+     * A word that occurs once in every chapter of a generated book.
+     */
+    public static final String RARE_WORD = "quixotic";
+
+    /**
+     * A word that does not occur in a generated book.
+     */
+    public static final String ABSENT_WORD = "xylophone";
+
+    private static final String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+        "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+        "magna", "aliqua", "&eacute;t&eacute;", "na&iuml;ve", "&amp;", "caf&eacute;"
+    };
+
+    private static final int SECTIONS_PER_CHAPTER = 3;
+
+    private static final int CHAPTERS_PER_PART = 10;
+
+    /**
+     * Creates a book.
+     *
+     * @param chapterCount the number of chapters, every chapter is a separate html resource
+     * @param paragraphCount the number of paragraphs per chapter
+     * @param tocShape the shape of the table of contents
+     * @return a book.
+     */
+    public static Book createBook(int chapterCount, int paragraphCount, TocShape tocShape) {
+        Book book = new Book();
+        book.getMetadata().addTitle(new Title("Benchmark book " + chapterCount + "x" + paragraphCount + " " + tocShape));
+        book.getMetadata().addAuthor(new Author("Joe", "Tester"));
+        book.getMetadata().addIdentifier(new Identifier(Identifier.Scheme.UUID, "benchmark-" + chapterCount + "-" + paragraphCount + "-" + tocShape, "BookId"));
+        TOCReference part = null;
+        for (int i = 0; i < chapterCount; i++) {
+            Resource chapter = new Resource("chapter" + i, createChapter(i, paragraphCount), "chapter" + i + ".html", MediatypeService.XHTML);
+            String chapterTitle = "Chapter " + (i + 1);
+            if (tocShape == TocShape.FLAT) {
+                book.addSection(chapterTitle, chapter);
+                continue;
+            }
+            if (i % CHAPTERS_PER_PART == 0) {
+                part = book.addSection("Part " + (i / CHAPTERS_PER_PART + 1), chapter);
+            }
+            TOCReference chapterSection = book.addSection(part, chapterTitle, chapter);
+            for (int j = 0; j < SECTIONS_PER_CHAPTER; j++) {
+                chapterSection.addChildSection(new TOCReference("Section " + (i + 1) + "." + (j + 1), chapter, "section" + j));
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Writes the book to an epub.
+     *
+     * @param book
+     * @return the bytes of the epub.
+     */
+    public static byte[] toEpub(Book book) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new EpubWriter().write(book, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] createChapter(int chapterIndex, int paragraphCount) {
+        StringBuilder html = new StringBuilder();
+        html.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        html.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter ").append(chapterIndex + 1).append("</title></head>\n<body>\n");
+        html.append("<h1>Chapter ").append(chapterIndex + 1).append("</h1>\n");
+        int wordIndex = chapterIndex;
+        for (int i = 0; i < paragraphCount; i++) {
+            if (i % Math.max(1, paragraphCount / SECTIONS_PER_CHAPTER) == 0) {
+                int section = i / Math.max(1, paragraphCount / SECTIONS_PER_CHAPTER);
+                html.append("<h2 id=\"section").append(section).append("\">Section ").append(section + 1).append("</h2>\n");
+            }
+            html.append("<p>").append(COMMON_WORD);
+            for (int j = 0; j < 60; j++) {
+                html.append(' ');
+                if (j % 17 == 0) {
+                    html.append("<em>").append(WORDS[wordIndex % WORDS.length]).append("</em>");
+                } else {
+                    html.append(WORDS[wordIndex % WORDS.length]);
+                }
+                wordIndex = wordIndex * 31 + 7 & 0xffff;
+            }
+            if (i == paragraphCount / 2) {
+                html.append(' ').append(RARE_WORD);
+            }
+            html.append(".</p>\n");
+        }
+        html.append("</body></html>\n");
+        try {
+            return html.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
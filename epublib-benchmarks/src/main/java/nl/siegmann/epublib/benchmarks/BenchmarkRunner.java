@@ -0,0 +1,37 @@
+package nl.siegmann.epublib.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, adding the allocation profiler.
+ *
+ * The allocation rate per operation ("gc.alloc.rate.norm") is reported next to the timings, so allocation
+ * regressions show up as clearly as timing regressions.
+ * Pass <code>-Dnoprofile=true</code> to run without the profiler.
+ *
+ * Example: <code>java -jar benchmarks.jar SearchIndex -p chapterCount=200 -rf json</code>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions commandLineOptions;
+        try {
+            commandLineOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (! Boolean.getBoolean("noprofile")) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.epub.BookSnapshot;
+import nl.siegmann.epublib.epub.EpubReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing and restoring a book snapshot, compared to reading the epub the snapshot was made of.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookSnapshotBenchmark {
+
+    private Book book;
+
+    private byte[] snapshot;
+
+    private File snapshotFile;
+
+    @Setup(Level.Trial)
+    public void createSnapshot(BookState state) throws IOException {
+        book = new EpubReader().read(new ByteArrayInputStream(state.epub));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookSnapshot.write(book, out);
+        snapshot = out.toByteArray();
+        snapshotFile = File.createTempFile("epublib-benchmark", ".snapshot");
+        try (OutputStream fileOut = new FileOutputStream(snapshotFile)) {
+            fileOut.write(snapshot);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() {
+        if (snapshotFile != null) {
+            snapshotFile.delete();
+        }
+    }
+
+    @Benchmark
+    public Book readEpub(BookState state) throws IOException {
+        return new EpubReader().read(new ByteArrayInputStream(state.epub));
+    }
+
+    @Benchmark
+    public Book readSnapshot() throws IOException {
+        return BookSnapshot.read(new ByteArrayInputStream(snapshot));
+    }
+
+    @Benchmark
+    public Book readSnapshotFile() throws IOException {
+        return BookSnapshot.read(snapshotFile);
+    }
+
+    @Benchmark
+    public byte[] writeSnapshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(snapshot.length);
+        BookSnapshot.write(book, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nl.siegmann.epublib.domain.Book;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A generated book in its in-memory, epub bytes and epub file forms.
+ *
+ * The size and shape of the book are benchmark parameters, so every benchmark using this state is run for every combination.
+ */
+@State(Scope.Benchmark)
+public class BookState {
+
+    /**
+     * The number of chapters of the book.
+     */
+    @Param({"10", "200"})
+    public int chapterCount;
+
+    /**
+     * The number of paragraphs per chapter.
+     */
+    @Param({"10", "100"})
+    public int paragraphCount;
+
+    /**
+     * The shape of the table of contents.
+     */
+    @Param({"FLAT", "DEEP"})
+    public BenchmarkBooks.TocShape tocShape;
+
+    public Book book;
+
+    public byte[] epub;
+
+    public File epubFile;
+
+    @Setup(Level.Trial)
+    public void createBook() throws IOException {
+        book = BenchmarkBooks.createBook(chapterCount, paragraphCount, tocShape);
+        epub = BenchmarkBooks.toEpub(BenchmarkBooks.createBook(chapterCount, paragraphCount, tocShape));
+        epubFile = File.createTempFile("epublib-benchmark", ".epub");
+        try (OutputStream out = new FileOutputStream(epubFile)) {
+            out.write(epub);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBook() {
+        if (epubFile != null) {
+            epubFile.delete();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.epub.EpubReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading an epub, both fully loaded and lazily loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EpubReaderBenchmark {
+
+    @Benchmark
+    public Book read(BookState state) throws IOException {
+        return new EpubReader().read(new ByteArrayInputStream(state.epub));
+    }
+
+    @Benchmark
+    public Book readZipFile(BookState state) throws IOException {
+        try (ZipFile zipFile = new ZipFile(state.epubFile)) {
+            return new EpubReader().read(zipFile);
+        }
+    }
+
+    @Benchmark
+    public Book readLazy(BookState state) throws IOException {
+        try (ZipFile zipFile = new ZipFile(state.epubFile)) {
+            return new EpubReader().readLazy(zipFile, Constants.CHARACTER_ENCODING);
+        }
+    }
+}
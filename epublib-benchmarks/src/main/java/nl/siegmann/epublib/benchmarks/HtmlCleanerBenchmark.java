@@ -0,0 +1,59 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.bookprocessor.HtmlCleanerBookProcessor;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.HtmlDocumentProcessor;
+import nl.siegmann.epublib.epub.HtmlProcessorPipeline;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks cleaning up the html of every chapter of a book.
+ *
+ * The resources of the book are not changed, so every invocation cleans the original html.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlCleanerBenchmark {
+
+    private final HtmlCleanerBookProcessor htmlCleanerBookProcessor = new HtmlCleanerBookProcessor();
+
+    private final HtmlProcessorPipeline htmlProcessorPipeline = new HtmlProcessorPipeline(
+            Collections.<HtmlDocumentProcessor>singletonList(htmlCleanerBookProcessor));
+
+    @Benchmark
+    public void processHtml(BookState state, Blackhole blackhole) throws IOException {
+        for (Resource resource: state.book.getResources().getResourcesByMediaType(MediatypeService.XHTML)) {
+            blackhole.consume(htmlCleanerBookProcessor.processHtml(resource, state.book, Constants.CHARACTER_ENCODING));
+        }
+    }
+
+    @Benchmark
+    public void processHtmlDocument(BookState state, Blackhole blackhole) throws IOException {
+        for (Resource resource: state.book.getResources().getResourcesByMediaType(MediatypeService.XHTML)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            htmlProcessorPipeline.processHtmlResource(resource, state.book, out);
+            blackhole.consume(out.size());
+        }
+    }
+}
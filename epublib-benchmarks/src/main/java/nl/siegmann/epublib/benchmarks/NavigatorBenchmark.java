@@ -0,0 +1,102 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.browsersupport.NavigationEvent;
+import nl.siegmann.epublib.browsersupport.NavigationEventListener;
+import nl.siegmann.epublib.browsersupport.Navigator;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks moving through a book with a Navigator, the way a reader application does.
+ *
+ * A listener is registered so the cost of creating and dispatching navigation events is included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NavigatorBenchmark {
+
+    @State(Scope.Thread)
+    public static class NavigatorState {
+        Navigator navigator;
+        List<TOCReference> tocReferences;
+        int eventCount;
+
+        @Setup(Level.Trial)
+        public void createNavigator(BookState bookState) {
+            navigator = new Navigator(bookState.book);
+            navigator.addNavigationEventListener(new NavigationEventListener() {
+
+                @Override
+                public void navigationPerformed(NavigationEvent navigationEvent) {
+                    eventCount++;
+                }
+            });
+            tocReferences = new ArrayList<TOCReference>();
+            addTocReferences(bookState.book.getTableOfContents().getTocReferences(), tocReferences);
+        }
+
+        private static void addTocReferences(List<TOCReference> tocReferences, List<TOCReference> result) {
+            for (TOCReference tocReference: tocReferences) {
+                result.add(tocReference);
+                addTocReferences(tocReference.getChildren(), result);
+            }
+        }
+    }
+
+    @Benchmark
+    public int readThrough(NavigatorState state) {
+        Navigator navigator = state.navigator;
+        int result = navigator.gotoFirstSpineSection(this);
+        while (navigator.hasNextSpineSection()) {
+            result += navigator.gotoNextSpineSection(this);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int readBackwards(NavigatorState state) {
+        Navigator navigator = state.navigator;
+        int result = navigator.gotoLastSpineSection(this);
+        while (navigator.hasPreviousSpineSection()) {
+            result += navigator.gotoPreviousSpineSection(this);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void gotoTableOfContentsEntries(NavigatorState state, Blackhole blackhole) {
+        Navigator navigator = state.navigator;
+        for (TOCReference tocReference: state.tocReferences) {
+            Resource resource = tocReference.getResource();
+            blackhole.consume(navigator.gotoResource(resource, tocReference.getFragmentId(), this));
+        }
+    }
+
+    @Benchmark
+    public void gotoResourceByHref(NavigatorState state, Blackhole blackhole) {
+        Navigator navigator = state.navigator;
+        for (TOCReference tocReference: state.tocReferences) {
+            blackhole.consume(navigator.gotoResource(tocReference.getCompleteHref(), this));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.epub.EpubReader;
+import nl.siegmann.epublib.epub.NCXDocument;
+import nl.siegmann.epublib.epub.PackageDocumentReader;
+import nl.siegmann.epublib.epub.ResourcesLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing the package document and the NCX table of contents, without reading the zip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackageDocumentBenchmark {
+
+    /**
+     * The resources of the epub, with the package document at the root so the hrefs need no fixing while reading.
+     */
+    @State(Scope.Benchmark)
+    public static class PackageState {
+        Resource packageResource;
+        Collection<Resource> resources;
+        Book book;
+
+        @Setup(Level.Trial)
+        public void loadResources(BookState bookState) throws IOException {
+            Resources epubResources = ResourcesLoader.loadResources(new ByteArrayInputStream(bookState.epub), Constants.CHARACTER_ENCODING);
+            String packageHref = "OEBPS/content.opf";
+            packageResource = epubResources.remove(packageHref);
+            Resources oebpsResources = new Resources();
+            for (Resource resource: epubResources.getAll()) {
+                if (resource.getHref().startsWith("OEBPS/")) {
+                    resource.setHref(resource.getHref().substring("OEBPS/".length()));
+                    oebpsResources.add(resource);
+                }
+            }
+            packageResource.setHref("content.opf");
+            resources = oebpsResources.getAll();
+            book = new EpubReader().read(new ByteArrayInputStream(bookState.epub));
+        }
+    }
+
+    @Benchmark
+    public Book readPackageDocument(PackageState state) throws IOException {
+        // reading the package document takes the resources it finds out of the given resources
+        Resources resources = new Resources();
+        resources.addAll(state.resources);
+        Book book = new Book();
+        PackageDocumentReader.read(state.packageResource, book, resources);
+        return book;
+    }
+
+    @Benchmark
+    public Resource readNcx(PackageState state) {
+        return NCXDocument.read(state.book, null);
+    }
+}
@@ -0,0 +1,104 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks adding resources to and looking resources up in a Resources.
+ *
+ * Resources without an id get one generated on add, which is the common case when building a book from files.
+ * If the hrefs of the resources share their file name the generated ids collide and a unique id has to be searched for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourcesBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int resourceCount;
+
+    /**
+     * How the ids of the added resources come about.
+     */
+    public enum IdShape {
+        /**
+         * The resources already have an id.
+         */
+        ID,
+        /**
+         * The ids are derived from the unique file names of the resources.
+         */
+        HREF,
+        /**
+         * The resources all have the same file name in different directories.
+         */
+        COLLIDING
+    }
+
+    @Param({"ID", "HREF", "COLLIDING"})
+    public IdShape idShape;
+
+    private List<Resource> resourceList;
+
+    private Resources resources;
+
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void createResources() {
+        resourceList = new ArrayList<Resource>(resourceCount);
+        resources = new Resources();
+        ids = new String[resourceCount];
+        for (int i = 0; i < resourceCount; i++) {
+            String id = idShape == IdShape.ID ? "item" + i : null;
+            String href = idShape == IdShape.COLLIDING ? "part" + i + "/index.html" : "text/chapter" + i + ".html";
+            resourceList.add(new Resource(id, new byte[0], href, MediatypeService.XHTML));
+            resources.add(new Resource(id, new byte[0], href, MediatypeService.XHTML));
+        }
+        int i = 0;
+        for (Resource resource: resources.getAll()) {
+            ids[i++] = resource.getId();
+        }
+    }
+
+    @Benchmark
+    public Resources add() {
+        Resources result = new Resources();
+        for (Resource resource: resourceList) {
+            if (idShape != IdShape.ID) {
+                resource.setId(null);
+            }
+            result.add(resource);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void getById(Blackhole blackhole) {
+        for (String id: ids) {
+            blackhole.consume(resources.getById(id));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.search.SearchIndex;
+import nl.siegmann.epublib.search.SearchResults;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building a search index, searching it for words with many, few and no hits and getting suggestions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchIndexBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SearchState {
+
+        @Param({BenchmarkBooks.COMMON_WORD, BenchmarkBooks.RARE_WORD, BenchmarkBooks.ABSENT_WORD, "dolor sit"})
+        public String searchTerm;
+
+        SearchIndex searchIndex;
+
+        @Setup(Level.Trial)
+        public void createSearchIndex(BookState bookState) {
+            searchIndex = new SearchIndex(bookState.book);
+        }
+    }
+
+    @Benchmark
+    public SearchResults doSearch(SearchState state) {
+        return state.searchIndex.doSearch(state.searchTerm);
+    }
+
+    @Benchmark
+    public List<String> getSuggestions(SearchState state) {
+        return state.searchIndex.getSuggestions(state.searchTerm.substring(0, 3), 10);
+    }
+
+    @Benchmark
+    public SearchResults doFuzzySearch(SearchState state) {
+        return state.searchIndex.doFuzzySearch(state.searchTerm, 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SearchIndex createSearchIndex(BookState state) {
+        return new SearchIndex(state.book);
+    }
+}
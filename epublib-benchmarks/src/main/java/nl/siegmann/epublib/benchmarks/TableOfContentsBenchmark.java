@@ -0,0 +1,72 @@
+package nl.siegmann.epublib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TableOfContents;
+import nl.siegmann.epublib.domain.TableOfContentsBuilder;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building a table of contents from path addressed sections, with TableOfContents.addSection and with
+ * a TableOfContentsBuilder.
+ *
+ * All sections are in a few parts, so the parts are wide and addSection searches many siblings per section.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableOfContentsBenchmark {
+
+    private static final int PART_COUNT = 4;
+
+    @Param({"1000", "10000"})
+    public int sectionCount;
+
+    private Resource resource;
+
+    private String[][] paths;
+
+    @Setup(Level.Trial)
+    public void createPaths() {
+        resource = new Resource("chapter", new byte[0], "chapter.html", MediatypeService.XHTML);
+        paths = new String[sectionCount][];
+        for (int i = 0; i < sectionCount; i++) {
+            paths[i] = new String[] {"Part " + (i % PART_COUNT), "Section " + i};
+        }
+    }
+
+    @Benchmark
+    public TableOfContents addSection() {
+        TableOfContents result = new TableOfContents();
+        for (String[] path: paths) {
+            result.addSection(resource, path);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public TableOfContents builder() {
+        TableOfContentsBuilder builder = new TableOfContentsBuilder();
+        for (String[] path: paths) {
+            builder.addSection(resource, path);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks for reading, writing, processing, searching and navigating books.
+ *
+ * Build the benchmarks with <code>mvn package</code> and run them with <code>java -jar target/benchmarks.jar</code>.
+ * Allocation profiling is enabled by default, see {@link nl.siegmann.epublib.benchmarks.BenchmarkRunner}.
+ */
+package nl.siegmann.epublib.benchmarks;
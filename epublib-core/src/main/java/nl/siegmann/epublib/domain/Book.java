@@ -2,6 +2,7 @@ package nl.siegmann.epublib.domain;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -301,6 +302,40 @@ public class Book implements Serializable {
     private Resource opfResource;
     private Resource ncxResource;
     private Resource coverImage;
+    private transient volatile CachedContents cachedContents;
+    private transient volatile TableOfContentsIndex tableOfContentsIndex;
+
+    /**
+     * The contents of the book together with what they were created from.
+     */
+    private static class CachedContents {
+        final Spine spine;
+        final long spineModificationCount;
+        final TableOfContents tableOfContents;
+        final long tableOfContentsModificationCount;
+        final long guideModificationCount;
+        final boolean counted;
+        final List<Resource> contents;
+
+        CachedContents(Book book) {
+            this.spine = book.spine;
+            this.spineModificationCount = spine.getModificationCounter().get();
+            this.tableOfContents = book.tableOfContents;
+            this.tableOfContentsModificationCount = tableOfContents.getModificationCounter().get();
+            this.guideModificationCount = book.guide.getModificationCounter().get();
+            this.counted = spine.isCounted() && tableOfContents.isCounted() && book.guide.isCounted();
+            this.contents = Collections.unmodifiableList(book.createContents());
+        }
+
+        boolean isUpToDate(Book book) {
+            return counted
+                && book.spine == spine
+                && spine.getModificationCounter().get() == spineModificationCount
+                && book.tableOfContents == tableOfContents
+                && tableOfContents.getModificationCounter().get() == tableOfContentsModificationCount
+                && book.guide.getModificationCounter().get() == guideModificationCount;
+        }
+    }
 
     /**
      * Adds the resource to the table of contents of the book as a child section of the given parentSection
@@ -395,6 +430,22 @@ public class Book implements Serializable {
         return tableOfContents;
     }
 
+    /**
+     * A flattened index of the table of contents that also finds the section a spine position is in.
+     *
+     * The index is kept until the table of contents or the spine changes, see {@link TableOfContents#getIndex()}.
+     *
+     * @return A flattened index of the table of contents that also finds the section a spine position is in.
+     */
+    public TableOfContentsIndex getTableOfContentsIndex() {
+        TableOfContentsIndex result = tableOfContentsIndex;
+        if (result == null || ! result.isUpToDate(tableOfContents, spine)) {
+            result = new TableOfContentsIndex(tableOfContents, spine);
+            tableOfContentsIndex = result;
+        }
+        return result;
+    }
+
     public void setTableOfContents(TableOfContents tableOfContents) {
         this.tableOfContents = tableOfContents;
     }
@@ -471,9 +522,24 @@ public class Book implements Serializable {
      * <li>The resources of the Guide that are not already in the result</li>
      * </ul>
      * To get all html files that make up the epub file use {@link #getResources()}
-     * @return All Resources of the Book that can be reached via the Spine, the TableOfContents or the Guide.
+     * <p/>
+     * The result is kept until the spine, the table of contents or the guide change, so repeated calls on an unchanged
+     * book do not walk them. If the spine or the table of contents uses a list that was passed to a constructor or
+     * setter, changes made directly to that list can not be noticed and the contents are created on every call.
+     *
+     * @return All Resources of the Book that can be reached via the Spine, the TableOfContents or the Guide, an
+     * unmodifiable list because it is shared by the callers.
      */
     public List<Resource> getContents() {
+        CachedContents result = cachedContents;
+        if (result == null || ! result.isUpToDate(this)) {
+            result = new CachedContents(this);
+            cachedContents = result;
+        }
+        return result.contents;
+    }
+
+    private List<Resource> createContents() {
         Map<String, Resource> result = new LinkedHashMap<String, Resource>();
         addToContentsResult(getCoverPage(), result);
 
@@ -25,6 +25,8 @@ public class Guide implements Serializable {
 
     private static final int COVERPAGE_UNINITIALISED = -2;
 
+    private final ModificationCounter modificationCounter = new ModificationCounter();
+
     private final List<GuideReference> references = new ArrayList<>();
 
     private int coverPageIndex = COVERPAGE_NOT_FOUND;
@@ -40,9 +42,13 @@ public class Guide implements Serializable {
     public void setReferences(final List<GuideReference> references) {
         this.references.clear();
         if (references != null) {
+            for (GuideReference reference: references) {
+                reference.setModificationCounter(modificationCounter);
+            }
             this.references.addAll(references);
         }
         uncheckCoverPage();
+        modificationCounter.increment();
     }
 
     public GuideReference getCoverReference() {
@@ -54,12 +60,14 @@ public class Guide implements Serializable {
     }
 
     public int setCoverReference(GuideReference guideReference) {
+        guideReference.setModificationCounter(modificationCounter);
         if (coverPageIndex >= 0) {
             references.set(coverPageIndex, guideReference);
         } else {
             references.add(0, guideReference);
             coverPageIndex = 0;
         }
+        modificationCounter.increment();
         return coverPageIndex;
     }
 
@@ -82,8 +90,10 @@ public class Guide implements Serializable {
     }
 
     public ResourceReference addReference(GuideReference reference) {
+        reference.setModificationCounter(modificationCounter);
         this.references.add(reference);
         uncheckCoverPage();
+        modificationCounter.increment();
         return reference;
     }
 
@@ -103,6 +113,24 @@ public class Guide implements Serializable {
         return result;
     }
 
+    // package
+    ModificationCounter getModificationCounter() {
+        return modificationCounter;
+    }
+
+    /**
+     * Whether every change to this guide is counted: all references and resources have its counter.
+     */
+    // package
+    boolean isCounted() {
+        for (GuideReference reference: references) {
+            if (! reference.isCountedBy(modificationCounter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void checkCoverPage() {
         if (coverPageIndex == COVERPAGE_UNINITIALISED) {
             int result = COVERPAGE_NOT_FOUND;
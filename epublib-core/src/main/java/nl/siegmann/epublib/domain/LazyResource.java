@@ -140,6 +140,15 @@ public class LazyResource extends Resource {
         }
     }
 
+    /**
+     * The name of the epub file the data of this resource is loaded from.
+     *
+     * @return the name of the epub file the data of this resource is loaded from.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
     /**
      * Returns if the data for this resource has been loaded into memory.
      *
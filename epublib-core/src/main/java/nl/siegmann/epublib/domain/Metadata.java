@@ -228,6 +228,10 @@ public class Metadata implements Serializable {
         this.types = types;
     }
 
+    public Map<String, String> getMetaAttributes() {
+        return metaAttributes;
+    }
+
     public String getMetaAttribute(String name) {
         return metaAttributes.get(name);
     }
@@ -0,0 +1,27 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.Serializable;
+
+/**
+ * Counts the changes to one part of the structure of a book: its spine, its table of contents or its guide.
+ *
+ * The lists and references of the part and the resources they point to share the counter of the part, so that
+ * changing the href of a resource or the children of a reference is counted as well.
+ * Used to find out whether information derived from the structure of a book, like {@link TableOfContents#getIndex()}
+ * and {@link Book#getContents()}, is still up to date.
+ */
+// package
+final class ModificationCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private volatile long count;
+
+    public void increment() {
+        count++;
+    }
+
+    public long get() {
+        return count;
+    }
+}
@@ -0,0 +1,151 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list that increments a {@link ModificationCounter} on every change.
+ *
+ * Holds the references of the spine and the table of contents. The references in the list are given the counter, so
+ * that changes to the references themselves are counted as well.
+ *
+ * A list that was passed in by the caller is wrapped rather than copied, changes made directly to that list can not
+ * be counted. Such a list is not owned, see {@link #isOwned()}.
+ *
+ * @param <E>
+ */
+// package
+class ModificationCountingList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<E> list;
+    private final boolean owned;
+    private ModificationCounter modificationCounter;
+
+    /**
+     * Creates an empty list that is owned by the caller.
+     *
+     * @param modificationCounter the counter to increment on every change, may be null.
+     */
+    public ModificationCountingList(ModificationCounter modificationCounter) {
+        this(new ArrayList<E>(), true, modificationCounter);
+    }
+
+    private ModificationCountingList(List<E> list, boolean owned, ModificationCounter modificationCounter) {
+        this.list = list;
+        this.owned = owned;
+        setModificationCounter(modificationCounter);
+    }
+
+    /**
+     * Wraps the list that was passed in by a caller.
+     *
+     * @param list
+     * @param modificationCounter the counter to increment on every change, may be null.
+     * @return the wrapped list, null if the list is null.
+     */
+    public static <E> ModificationCountingList<E> wrap(List<E> list, ModificationCounter modificationCounter) {
+        if (list == null) {
+            return null;
+        }
+        return new ModificationCountingList<E>(list, false, modificationCounter);
+    }
+
+    /**
+     * Whether every change to this list is made through it and therefore counted.
+     *
+     * @return false if this list wraps a list that was passed in by a caller.
+     */
+    public boolean isOwned() {
+        return owned;
+    }
+
+    public ModificationCounter getModificationCounter() {
+        return modificationCounter;
+    }
+
+    /**
+     * Sets the counter of this list and of the references in it.
+     *
+     * @param modificationCounter
+     */
+    public void setModificationCounter(ModificationCounter modificationCounter) {
+        this.modificationCounter = modificationCounter;
+        for (E element: list) {
+            attach(element);
+        }
+    }
+
+    private void attach(E element) {
+        if (modificationCounter != null && element instanceof ResourceReference) {
+            ((ResourceReference) element).setModificationCounter(modificationCounter);
+        }
+    }
+
+    private void modified() {
+        if (modificationCounter != null) {
+            modificationCounter.increment();
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        return list.get(index);
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E result = list.set(index, element);
+        attach(element);
+        modified();
+        return result;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        list.add(index, element);
+        attach(element);
+        modified();
+    }
+
+    @Override
+    public boolean add(E element) {
+        boolean result = list.add(element);
+        attach(element);
+        modified();
+        return result;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        boolean result = list.addAll(elements);
+        for (E element: elements) {
+            attach(element);
+        }
+        modified();
+        return result;
+    }
+
+    @Override
+    public E remove(int index) {
+        E result = list.remove(index);
+        modified();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        list.clear();
+        modified();
+    }
+}
@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.service.MediatypeService;
@@ -36,6 +38,9 @@ public class Resource implements Serializable {
     protected String originalHref;
     private MediaType mediaType;
     private String inputEncoding = Constants.CHARACTER_ENCODING;
+    private int dataVersion;
+    // the counters of the spines, tables of contents and guides that refer to this resource
+    private List<ModificationCounter> modificationCounters;
     protected byte[] data;
 
     /**
@@ -196,6 +201,19 @@ public class Resource implements Serializable {
      */
     public void setData(byte[] data) {
         this.data = data;
+        this.dataVersion++;
+    }
+
+    /**
+     * A counter that is incremented every time the data of this resource is replaced using setData.
+     *
+     * Can be used to find out whether a resource was changed without comparing its contents.
+     * Loading the data of a lazy resource does not count as a change.
+     *
+     * @return the number of times the data of this resource was replaced.
+     */
+    public int getDataVersion() {
+        return dataVersion;
     }
 
     /**
@@ -204,7 +222,7 @@ public class Resource implements Serializable {
      * @return the size.
      */
     public long getSize() {
-        return data.length;
+        return data == null ? 0 : data.length;
     }
 
     /**
@@ -248,6 +266,15 @@ public class Resource implements Serializable {
         return href;
     }
 
+    /**
+     * The href the resource had when it was created, the name of its entry in the epub it was read from.
+     *
+     * @return the href the resource had when it was created.
+     */
+    public String getOriginalHref() {
+        return originalHref;
+    }
+
     /**
      * Sets the Resource's href.
      *
@@ -255,6 +282,26 @@ public class Resource implements Serializable {
      */
     public void setHref(String href) {
         this.href = href;
+        if (modificationCounters != null) {
+            for (ModificationCounter modificationCounter: modificationCounters) {
+                modificationCounter.increment();
+            }
+        }
+    }
+
+    // package
+    void addModificationCounter(ModificationCounter modificationCounter) {
+        if (modificationCounters == null) {
+            modificationCounters = new ArrayList<ModificationCounter>(2);
+        } else if (modificationCounters.contains(modificationCounter)) {
+            return;
+        }
+        modificationCounters.add(modificationCounter);
+    }
+
+    // package
+    boolean hasModificationCounter(ModificationCounter modificationCounter) {
+        return modificationCounters != null && modificationCounters.contains(modificationCounter);
     }
 
     /**
@@ -9,6 +9,8 @@ public class ResourceReference implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private Resource resource;
+    // the counter of the spine, table of contents or guide this reference was last added to
+    private ModificationCounter modificationCounter;
 
     public ResourceReference(final Resource resource) {
         this.resource = resource;
@@ -25,6 +27,10 @@ public class ResourceReference implements Serializable {
      */
     public void setResource(final Resource resource) {
         this.resource = resource;
+        if (resource != null && modificationCounter != null) {
+            resource.addModificationCounter(modificationCounter);
+        }
+        modified();
     }
 
     /**
@@ -37,4 +43,41 @@ public class ResourceReference implements Serializable {
     public String getResourceId() {
         return resource != null ? resource.getId() : null;
     }
+
+    // package
+    ModificationCounter getModificationCounter() {
+        return modificationCounter;
+    }
+
+    /**
+     * Sets the counter of the spine, table of contents or guide this reference is added to.
+     * The counter it had before is incremented, as its changes are no longer counted there.
+     */
+    // package
+    void setModificationCounter(final ModificationCounter modificationCounter) {
+        if (modificationCounter == this.modificationCounter) {
+            return;
+        }
+        modified();
+        this.modificationCounter = modificationCounter;
+        if (resource != null && modificationCounter != null) {
+            resource.addModificationCounter(modificationCounter);
+        }
+    }
+
+    /**
+     * Whether the changes to this reference and the href of its resource are counted by the given counter.
+     */
+    // package
+    boolean isCountedBy(final ModificationCounter modificationCounter) {
+        return this.modificationCounter == modificationCounter
+            && (resource == null || resource.hasModificationCounter(modificationCounter));
+    }
+
+    // package
+    void modified() {
+        if (modificationCounter != null) {
+            modificationCounter.increment();
+        }
+    }
 }
@@ -23,11 +23,12 @@ public class Spine implements Serializable {
      *
      */
     private static final long serialVersionUID = 3878483958947357246L;
+    private final ModificationCounter modificationCounter = new ModificationCounter();
     private Resource tocResource;
-    private List<SpineReference> spineReferences;
+    private ModificationCountingList<SpineReference> spineReferences;
 
     public Spine() {
-        this(new ArrayList<SpineReference>());
+        this.spineReferences = new ModificationCountingList<SpineReference>(modificationCounter);
     }
 
     /**
@@ -36,11 +37,20 @@ public class Spine implements Serializable {
      * @param tableOfContents
      */
     public Spine(TableOfContents tableOfContents) {
-        this.spineReferences = createSpineReferences(tableOfContents.getAllUniqueResources());
+        this();
+        this.spineReferences.addAll(createSpineReferences(tableOfContents.getAllUniqueResources()));
     }
 
+    /**
+     * Creates a spine with the given list of references.
+     *
+     * The list is not copied. As changes made directly to it can not be noticed, information derived from the spine
+     * like {@link Book#getContents()} is created again every time it is asked for.
+     *
+     * @param spineReferences
+     */
     public Spine(List<SpineReference> spineReferences) {
-        this.spineReferences = spineReferences;
+        this.spineReferences = ModificationCountingList.wrap(spineReferences, modificationCounter);
     }
 
     public static List<SpineReference> createSpineReferences(Collection<Resource> resources) {
@@ -55,7 +65,30 @@ public class Spine implements Serializable {
         return spineReferences;
     }
     public void setSpineReferences(List<SpineReference> spineReferences) {
-        this.spineReferences = spineReferences;
+        this.spineReferences = ModificationCountingList.wrap(spineReferences, modificationCounter);
+        modificationCounter.increment();
+    }
+
+    // package
+    ModificationCounter getModificationCounter() {
+        return modificationCounter;
+    }
+
+    /**
+     * Whether every change to this spine is counted: the list was created by the spine, and all references and
+     * resources have its counter.
+     */
+    // package
+    boolean isCounted() {
+        if (spineReferences == null || ! spineReferences.isOwned()) {
+            return false;
+        }
+        for (SpineReference spineReference: spineReferences) {
+            if (! spineReference.isCountedBy(modificationCounter)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -102,7 +135,7 @@ public class Spine implements Serializable {
      */
     public SpineReference addSpineReference(SpineReference spineReference) {
         if (spineReferences == null) {
-            this.spineReferences = new ArrayList<SpineReference>();
+            this.spineReferences = new ModificationCountingList<SpineReference>(modificationCounter);
         }
         spineReferences.add(spineReference);
         return spineReference;
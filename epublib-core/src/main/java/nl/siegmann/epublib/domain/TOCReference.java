@@ -1,7 +1,6 @@
 package nl.siegmann.epublib.domain;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
@@ -19,7 +18,7 @@ public class TOCReference extends TitledResourceReference implements Serializabl
      *
      */
     private static final long serialVersionUID = 5787958246077042456L;
-    private List<TOCReference> children;
+    private ModificationCountingList<TOCReference> children;
     private static final Comparator<TOCReference> COMPARATOR_BY_TITLE_IGNORE_CASE = new Comparator<TOCReference>() {
 
         @Override
@@ -37,12 +36,19 @@ public class TOCReference extends TitledResourceReference implements Serializabl
     }
 
     public TOCReference(String name, Resource resource, String fragmentId) {
-        this(name, resource, fragmentId, new ArrayList<TOCReference>());
+        super(resource, name, fragmentId);
+        this.children = new ModificationCountingList<TOCReference>(null);
     }
 
+    /**
+     * Creates a reference with the given list of children.
+     *
+     * The list is not copied. As changes made directly to it can not be noticed, a table of contents this reference is
+     * in walks its references instead of using its index, see {@link TableOfContents#getIndex()}.
+     */
     public TOCReference(String title, Resource resource, String fragmentId, List<TOCReference> children) {
         super(resource, title, fragmentId);
-        this.children = children;
+        this.children = ModificationCountingList.wrap(children, null);
     }
 
     public static Comparator<TOCReference> getComparatorByTitleIgnoreCase() {
@@ -59,6 +65,21 @@ public class TOCReference extends TitledResourceReference implements Serializabl
     }
 
     public void setChildren(List<TOCReference> children) {
-        this.children = children;
+        this.children = ModificationCountingList.wrap(children, getModificationCounter());
+        modified();
+    }
+
+    /**
+     * Sets the counter of this reference and of its descendants.
+     */
+    @Override
+    void setModificationCounter(ModificationCounter modificationCounter) {
+        if (modificationCounter == getModificationCounter()) {
+            return;
+        }
+        super.setModificationCounter(modificationCounter);
+        if (children != null) {
+            children.setModificationCounter(modificationCounter);
+        }
     }
 }
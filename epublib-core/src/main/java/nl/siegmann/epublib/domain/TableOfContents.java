@@ -27,14 +27,24 @@ public class TableOfContents implements Serializable {
 
     private static final String DEFAULT_PATH_SEPARATOR = "/";
 
-    private List<TOCReference> tocReferences;
+    private final ModificationCounter modificationCounter = new ModificationCounter();
+    private ModificationCountingList<TOCReference> tocReferences;
+    private transient volatile TableOfContentsIndex index;
 
     public TableOfContents() {
-        this(new ArrayList<>());
+        this.tocReferences = new ModificationCountingList<>(modificationCounter);
     }
 
+    /**
+     * Creates a table of contents with the given list of references.
+     *
+     * The list is not copied. As changes made directly to it can not be noticed, the table of contents walks its
+     * references instead of using its index, see {@link #getIndex()}.
+     *
+     * @param tocReferences the references
+     */
     public TableOfContents(final List<TOCReference> tocReferences) {
-        this.tocReferences = tocReferences;
+        this.tocReferences = ModificationCountingList.wrap(tocReferences, modificationCounter);
     }
 
     public List<TOCReference> getTocReferences() {
@@ -42,7 +52,8 @@ public class TableOfContents implements Serializable {
     }
 
     public void setTocReferences(final List<TOCReference> tocReferences) {
-        this.tocReferences = tocReferences;
+        this.tocReferences = ModificationCountingList.wrap(tocReferences, modificationCounter);
+        modificationCounter.increment();
     }
 
     /**
@@ -77,6 +88,7 @@ public class TableOfContents implements Serializable {
      * <li>A TOCReference that has the title "paragraph1". This TOCReference will be the child of TOCReference "chapter1" and
      * will point to the given Resource</li>
      * </ul>
+     * The siblings are searched by title, use a {@link TableOfContentsBuilder} to add many sections.
      *
      * @param resource the resource to add
      * @param pathElements the location to add the resource at
@@ -143,11 +155,51 @@ public class TableOfContents implements Serializable {
     }
 
     public TOCReference addTOCReference(final TOCReference tocReference) {
+        getOrCreateTocReferences().add(tocReference);
+        return tocReference;
+    }
+
+    // package
+    List<TOCReference> getOrCreateTocReferences() {
         if (tocReferences == null) {
-            tocReferences = new ArrayList<>();
+            tocReferences = new ModificationCountingList<>(modificationCounter);
         }
-        tocReferences.add(tocReference);
-        return tocReference;
+        return tocReferences;
+    }
+
+    /**
+     * A flattened index of this table of contents.
+     *
+     * The index is kept until this table of contents changes: its lists of references, its references or the hrefs
+     * of their resources.
+     * This only works if all lists were created by the table of contents and its references. If a list was passed to
+     * a constructor or setter instead, changes made directly to it can not be noticed and a new index is created on
+     * every call.
+     *
+     * @return A flattened index of this table of contents.
+     */
+    public TableOfContentsIndex getIndex() {
+        TableOfContentsIndex result = index;
+        if (result == null || ! result.isUpToDate(this, null)) {
+            result = new TableOfContentsIndex(this);
+            index = result;
+        }
+        return result;
+    }
+
+    /**
+     * The index, if it notices all changes to this table of contents.
+     *
+     * @return null if the references have to be walked.
+     */
+    private TableOfContentsIndex getCountedIndex() {
+        TableOfContentsIndex result = index;
+        if (result != null && ! result.isCounted() && result.getModificationCount() == modificationCounter.get()) {
+            // a list that was passed in can only be replaced by a change that is counted
+            return null;
+        }
+        result = getIndex();
+        return result.isCounted() ? result : null;
     }
 
     /**
@@ -156,6 +208,10 @@ public class TableOfContents implements Serializable {
      * @return All unique references (unique by href) in the order in which they are referenced to in the table of contents.
      */
     public List<Resource> getAllUniqueResources() {
+        TableOfContentsIndex countedIndex = getCountedIndex();
+        if (countedIndex != null) {
+            return new ArrayList<>(countedIndex.getUniqueResources());
+        }
         Set<String> uniqueHrefs = new HashSet<>();
         List<Resource> result = new ArrayList<>();
         getAllUniqueResources(uniqueHrefs, result, tocReferences);
@@ -168,6 +224,10 @@ public class TableOfContents implements Serializable {
      * @return The total number of references in this table of contents.
      */
     public int size() {
+        TableOfContentsIndex countedIndex = getCountedIndex();
+        if (countedIndex != null) {
+            return countedIndex.size();
+        }
         return getTotalSize(tocReferences);
     }
 
@@ -177,9 +237,43 @@ public class TableOfContents implements Serializable {
      * @return The maximum depth of the reference tree
      */
     public int calculateDepth() {
+        TableOfContentsIndex countedIndex = getCountedIndex();
+        if (countedIndex != null) {
+            return countedIndex.getMaxDepth();
+        }
         return calculateDepth(tocReferences, 0);
     }
 
+    // package
+    ModificationCounter getModificationCounter() {
+        return modificationCounter;
+    }
+
+    /**
+     * Whether every change to this table of contents is counted: all lists were created by the table of contents and
+     * its references, and all references and resources have its counter.
+     */
+    // package
+    boolean isCounted() {
+        return isCounted(tocReferences);
+    }
+
+    private boolean isCounted(final List<TOCReference> tocReferences) {
+        if (! (tocReferences instanceof ModificationCountingList)) {
+            return false;
+        }
+        ModificationCountingList<TOCReference> list = (ModificationCountingList<TOCReference>) tocReferences;
+        if (! list.isOwned() || list.getModificationCounter() != modificationCounter) {
+            return false;
+        }
+        for (TOCReference tocReference: list) {
+            if (! tocReference.isCountedBy(modificationCounter) || ! isCounted(tocReference.getChildren())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void paddTOCReferences(final List<TOCReference> currentTocReferences, final int[] pathElements, final int pathPos, final String sectionPrefix, final String sectionNumberSeparator) {
         for (int i = currentTocReferences.size(); i <= pathElements[pathPos]; ++i) {
             String sectionTitle = createSectionTitle(pathElements, pathPos, i, sectionPrefix, sectionNumberSeparator);
@@ -0,0 +1,128 @@
+package nl.siegmann.epublib.domain;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds many path addressed sections to a table of contents.
+ *
+ * The sections are added the way {@link TableOfContents#addSection(Resource, String[])} adds them, but the builder
+ * keeps the children of every reference it visits in a map by title. Finding the reference for a title takes constant
+ * time instead of a scan of all siblings, so adding n sections takes time linear in n however wide the table of
+ * contents is.
+ *
+ * The references are ordinary {@link TOCReference}s in ordinary lists, the maps are dropped by {@link #build()}.
+ * The table of contents should not be changed other than through the builder until it is built.
+ */
+public class TableOfContentsBuilder {
+
+    private static final String DEFAULT_PATH_SEPARATOR = "/";
+
+    private TableOfContents tableOfContents;
+    // the children by title of every list of references visited, by the identity of the list
+    private Map<List<TOCReference>, Map<String, TOCReference>> titleIndexes = new IdentityHashMap<List<TOCReference>, Map<String, TOCReference>>();
+
+    /**
+     * Creates a builder for a new table of contents.
+     */
+    public TableOfContentsBuilder() {
+        this(new TableOfContents());
+    }
+
+    /**
+     * Creates a builder that adds sections to an existing table of contents.
+     *
+     * @param tableOfContents the table of contents to add the sections to
+     */
+    public TableOfContentsBuilder(final TableOfContents tableOfContents) {
+        this.tableOfContents = tableOfContents;
+    }
+
+    /**
+     * Calls addSection after splitting the path using the DEFAULT_PATH_SEPARATOR.
+     *
+     * @return the new TOCReference
+     */
+    public TOCReference addSection(final Resource resource, final String path) {
+        return addSection(resource, path, DEFAULT_PATH_SEPARATOR);
+    }
+
+    /**
+     * Calls addSection after splitting the path using the given pathSeparator.
+     *
+     * @param resource the resource to add
+     * @param path the location to add the resource at
+     * @param pathSeparator the path separator for the location
+     * @return the new TOCReference
+     */
+    public TOCReference addSection(final Resource resource, final String path, final String pathSeparator) {
+        return addSection(resource, path.split(pathSeparator));
+    }
+
+    /**
+     * Adds the given Resource at the location specified by the pathElements.
+     *
+     * @see TableOfContents#addSection(Resource, String[])
+     *
+     * @param resource the resource to add
+     * @param pathElements the location to add the resource at
+     * @return the new TOCReference
+     */
+    public TOCReference addSection(final Resource resource, final String[] pathElements) {
+        if (tableOfContents == null) {
+            throw new IllegalStateException("The table of contents was already built");
+        }
+        if (pathElements == null || pathElements.length == 0) {
+            return null;
+        }
+        TOCReference result = null;
+        List<TOCReference> currentTocReferences = tableOfContents.getOrCreateTocReferences();
+        for (int i = 0; i < pathElements.length; i++) {
+            String currentTitle = pathElements[i];
+            Map<String, TOCReference> titleIndex = getTitleIndex(currentTocReferences);
+            result = titleIndex.get(currentTitle);
+            if (result == null) {
+                result = new TOCReference(currentTitle, null);
+                currentTocReferences.add(result);
+                titleIndex.put(currentTitle, result);
+            }
+            currentTocReferences = result.getChildren();
+        }
+        result.setResource(resource);
+        return result;
+    }
+
+    /**
+     * The table of contents with all added sections.
+     *
+     * The builder can not be used anymore afterwards.
+     *
+     * @return the table of contents with all added sections.
+     */
+    public TableOfContents build() {
+        TableOfContents result = tableOfContents;
+        tableOfContents = null;
+        titleIndexes = null;
+        return result;
+    }
+
+    /**
+     * The children by title of the given list of references, the first child with a title wins like in
+     * {@link TableOfContents#addSection(Resource, String[])}.
+     */
+    private Map<String, TOCReference> getTitleIndex(final List<TOCReference> tocReferences) {
+        Map<String, TOCReference> result = titleIndexes.get(tocReferences);
+        if (result == null) {
+            result = new HashMap<String, TOCReference>();
+            for (TOCReference tocReference: tocReferences) {
+                if (tocReference.getTitle() != null && !result.containsKey(tocReference.getTitle())) {
+                    result.put(tocReference.getTitle(), tocReference);
+                }
+            }
+            titleIndexes.put(tocReferences, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,416 @@
+package nl.siegmann.epublib.domain;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import nl.siegmann.epublib.util.StringUtil;
+
+/**
+ * A flattened, read-only index of a table of contents.
+ *
+ * The references of the table of contents are entries numbered in pre-order: a reference comes before its children,
+ * and the entries of its subtree are the ones from its own entry up to {@link #getSubtreeEnd(int)}.
+ * For every entry the parent, the depth and the end of the subtree are kept in int arrays.
+ *
+ * The index answers the size and depth of the table of contents in constant time and finds the entries that point to
+ * a resource without walking the tree.
+ * When it is created with the spine of the book it also finds the section a spine position is in.
+ *
+ * The index does not follow changes of the table of contents, use {@link TableOfContents#getIndex()} or
+ * {@link Book#getTableOfContentsIndex()} to get an index that is up to date.
+ */
+public class TableOfContentsIndex {
+
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private final TOCReference[] tocReferences;
+    private final int[] parents;
+    private final int[] depths;
+    private final int[] subtreeEnds;
+    private final int maxDepth;
+    private final Map<String, int[]> href2entries;
+    private final Map<TOCReference, Integer> tocReference2entry;
+    private final List<Resource> uniqueResources;
+    // the spine position in the high and the entry in the low 32 bits, sorted
+    private final long[] spinePosEntries;
+    // what the index was created from, to find out whether it is up to date
+    private final TableOfContents tableOfContents;
+    private final long modificationCount;
+    private final Spine spine;
+    private final long spineModificationCount;
+    private final boolean counted;
+
+    /**
+     * Creates an index of the given table of contents without spine positions.
+     *
+     * @param tableOfContents
+     */
+    public TableOfContentsIndex(TableOfContents tableOfContents) {
+        this(tableOfContents, null);
+    }
+
+    /**
+     * Creates an index of the given table of contents.
+     *
+     * @param tableOfContents
+     * @param spine the spine to find the sections of spine positions in, may be null.
+     */
+    public TableOfContentsIndex(TableOfContents tableOfContents, Spine spine) {
+        this.tableOfContents = tableOfContents;
+        this.modificationCount = tableOfContents.getModificationCounter().get();
+        this.spine = spine;
+        this.spineModificationCount = spine == null ? 0 : spine.getModificationCounter().get();
+        this.counted = tableOfContents.isCounted() && (spine == null || spine.isCounted());
+        List<TOCReference> entries = new ArrayList<TOCReference>();
+        List<Integer> parentList = new ArrayList<Integer>();
+        addEntries(tableOfContents.getTocReferences(), -1, entries, parentList);
+        int size = entries.size();
+        this.tocReferences = entries.toArray(new TOCReference[size]);
+        this.parents = new int[size];
+        this.depths = new int[size];
+        this.subtreeEnds = new int[size];
+        int maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            int parent = parentList.get(i);
+            parents[i] = parent;
+            depths[i] = parent < 0 ? 0 : depths[parent] + 1;
+            maxDepth = Math.max(maxDepth, depths[i] + 1);
+        }
+        this.maxDepth = maxDepth;
+        // the subtree of an entry ends where the subtree of its last descendant ends
+        for (int i = size - 1; i >= 0; i--) {
+            if (subtreeEnds[i] == 0) {
+                subtreeEnds[i] = i + 1;
+            }
+            if (parents[i] >= 0 && subtreeEnds[parents[i]] == 0) {
+                subtreeEnds[parents[i]] = subtreeEnds[i];
+            }
+        }
+        this.href2entries = createHref2Entries(tocReferences);
+        this.tocReference2entry = new IdentityHashMap<TOCReference, Integer>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            tocReference2entry.put(tocReferences[i], i);
+        }
+        this.uniqueResources = createUniqueResources(tocReferences);
+        this.spinePosEntries = spine == null ? null : createSpinePosEntries(tocReferences, spine);
+    }
+
+    private static void addEntries(List<TOCReference> tocReferences, int parent, List<TOCReference> entries, List<Integer> parents) {
+        if (tocReferences == null) {
+            return;
+        }
+        for (TOCReference tocReference: tocReferences) {
+            int entry = entries.size();
+            entries.add(tocReference);
+            parents.add(parent);
+            addEntries(tocReference.getChildren(), entry, entries, parents);
+        }
+    }
+
+    private static String getHref(TOCReference tocReference) {
+        Resource resource = tocReference.getResource();
+        if (resource == null || StringUtil.isBlank(resource.getHref())) {
+            return null;
+        }
+        return resource.getHref();
+    }
+
+    private static Map<String, int[]> createHref2Entries(TOCReference[] tocReferences) {
+        // first count the entries per href, then fill the arrays
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        for (TOCReference tocReference: tocReferences) {
+            String href = getHref(tocReference);
+            if (href == null) {
+                continue;
+            }
+            int[] count = counts.get(href);
+            if (count == null) {
+                count = new int[1];
+                counts.put(href, count);
+            }
+            count[0]++;
+        }
+        Map<String, int[]> result = new HashMap<String, int[]>(counts.size() * 2);
+        for (Map.Entry<String, int[]> count: counts.entrySet()) {
+            result.put(count.getKey(), new int[count.getValue()[0]]);
+            count.getValue()[0] = 0;
+        }
+        for (int i = 0; i < tocReferences.length; i++) {
+            String href = getHref(tocReferences[i]);
+            if (href == null) {
+                continue;
+            }
+            result.get(href)[counts.get(href)[0]++] = i;
+        }
+        return result;
+    }
+
+    private static List<Resource> createUniqueResources(TOCReference[] tocReferences) {
+        Set<String> uniqueHrefs = new HashSet<String>();
+        List<Resource> result = new ArrayList<Resource>();
+        for (TOCReference tocReference: tocReferences) {
+            Resource resource = tocReference.getResource();
+            if (resource != null && uniqueHrefs.add(resource.getHref())) {
+                result.add(resource);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static long[] createSpinePosEntries(TOCReference[] tocReferences, Spine spine) {
+        Map<String, Integer> href2spinePos = new HashMap<String, Integer>();
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            Resource resource = spine.getResource(i);
+            if (resource != null && resource.getHref() != null) {
+                href2spinePos.put(resource.getHref(), i);
+            }
+        }
+        long[] result = new long[tocReferences.length];
+        int count = 0;
+        for (int i = 0; i < tocReferences.length; i++) {
+            String href = getHref(tocReferences[i]);
+            Integer spinePos = href == null ? null : href2spinePos.get(href);
+            if (spinePos != null) {
+                result[count++] = ((long) spinePos << 32) | i;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * The total number of references in the table of contents.
+     *
+     * @return The total number of references in the table of contents.
+     */
+    public int size() {
+        return tocReferences.length;
+    }
+
+    /**
+     * The maximum depth of the reference tree.
+     *
+     * @return The maximum depth of the reference tree, 0 if the table of contents is empty.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public TOCReference getTocReference(int entry) {
+        return tocReferences[entry];
+    }
+
+    /**
+     * The entry of the parent of the given entry.
+     *
+     * @param entry
+     * @return the entry of the parent of the given entry, -1 for a reference at the root level.
+     */
+    public int getParent(int entry) {
+        return parents[entry];
+    }
+
+    /**
+     * The depth of the given entry.
+     *
+     * @param entry
+     * @return the depth of the given entry, 0 for a reference at the root level.
+     */
+    public int getDepth(int entry) {
+        return depths[entry];
+    }
+
+    /**
+     * The entry after the last entry of the subtree of the given entry.
+     *
+     * @param entry
+     * @return the entry after the last entry of the subtree of the given entry.
+     */
+    public int getSubtreeEnd(int entry) {
+        return subtreeEnds[entry];
+    }
+
+    /**
+     * The reference of the given entry followed by all its descendants, in pre-order.
+     *
+     * @param entry
+     * @return the reference of the given entry followed by all its descendants, in pre-order.
+     */
+    public List<TOCReference> getSubtree(int entry) {
+        return new EntryList(entry, subtreeEnds[entry]);
+    }
+
+    /**
+     * All references of the table of contents, in pre-order.
+     *
+     * @return all references of the table of contents, in pre-order.
+     */
+    public List<TOCReference> getTocReferences() {
+        return new EntryList(0, tocReferences.length);
+    }
+
+    /**
+     * The first entry of the given reference.
+     *
+     * @param tocReference
+     * @return the first entry of the given reference, -1 if it is not in the table of contents.
+     */
+    public int indexOf(TOCReference tocReference) {
+        Integer result = tocReference2entry.get(tocReference);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * The entries of the references that point to a resource with the given href, in pre-order.
+     *
+     * @param href
+     * @return the entries of the references that point to a resource with the given href, in pre-order.
+     */
+    public int[] getEntries(String href) {
+        int[] result = href == null ? null : href2entries.get(href);
+        return result == null ? NO_ENTRIES : result.clone();
+    }
+
+    /**
+     * The entries of the references that point to the given fragment of the resource with the given href, in pre-order.
+     *
+     * @param href
+     * @param fragmentId the fragment, blank for the references to the whole resource.
+     * @return the entries of the references that point to the given fragment of the resource with the given href, in pre-order.
+     */
+    public int[] getEntries(String href, String fragmentId) {
+        int[] entries = href == null ? null : href2entries.get(href);
+        if (entries == null) {
+            return NO_ENTRIES;
+        }
+        int[] result = new int[entries.length];
+        int count = 0;
+        for (int entry: entries) {
+            String entryFragmentId = tocReferences[entry].getFragmentId();
+            if (StringUtil.isBlank(fragmentId) ? StringUtil.isBlank(entryFragmentId) : fragmentId.equals(entryFragmentId)) {
+                result[count++] = entry;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * The first entry that points to a resource with the given href.
+     *
+     * @param href
+     * @return the first entry that points to a resource with the given href, -1 if there is none.
+     */
+    public int getFirstEntry(String href) {
+        int[] entries = href == null ? null : href2entries.get(href);
+        return entries == null ? -1 : entries[0];
+    }
+
+    /**
+     * All unique resources (unique by href) in the order in which they are referenced to in the table of contents.
+     *
+     * @return All unique resources (unique by href) in the order in which they are referenced to in the table of contents.
+     */
+    public List<Resource> getUniqueResources() {
+        return uniqueResources;
+    }
+
+    /**
+     * The section the given spine position is in: the entry pointing to the nearest spine position at or before the
+     * given one. If several entries point to that spine position the first one is returned.
+     *
+     * @param spinePos
+     * @return the entry of the section the given spine position is in, -1 if there is none or the index was created
+     * without a spine.
+     */
+    public int getEntryBySpinePos(int spinePos) {
+        if (spinePosEntries == null || spinePos < 0) {
+            return -1;
+        }
+        // the first entry after the given spine position
+        int pos = lowerBound(spinePosEntries, (long) (spinePos + 1) << 32, spinePosEntries.length);
+        if (pos == 0) {
+            return -1;
+        }
+        long sectionSpinePos = spinePosEntries[pos - 1] >>> 32;
+        return (int) spinePosEntries[lowerBound(spinePosEntries, sectionSpinePos << 32, pos)];
+    }
+
+    /**
+     * The position of the first value from the start of the array up to the end that is not less than the given key.
+     */
+    private static int lowerBound(long[] values, long key, int end) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // package
+    long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Whether every change to the table of contents and the spine the index was created from is counted.
+     */
+    // package
+    boolean isCounted() {
+        return counted;
+    }
+
+    /**
+     * Whether the index was created from the given table of contents and spine, and they did not change since.
+     */
+    // package
+    boolean isUpToDate(TableOfContents tableOfContents, Spine spine) {
+        return counted
+            && tableOfContents == this.tableOfContents
+            && modificationCount == tableOfContents.getModificationCounter().get()
+            && spine == this.spine
+            && (spine == null || spineModificationCount == spine.getModificationCounter().get());
+    }
+
+    /**
+     * A read-only view of a range of entries.
+     */
+    private class EntryList extends AbstractList<TOCReference> implements RandomAccess {
+
+        private final int start;
+        private final int end;
+
+        EntryList(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public TOCReference get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+            }
+            return tocReferences[start + index];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
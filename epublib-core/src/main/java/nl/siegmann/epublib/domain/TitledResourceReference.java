@@ -35,6 +35,7 @@ public class TitledResourceReference extends ResourceReference implements Serial
 
     public void setFragmentId(final String fragmentId) {
         this.fragmentId = fragmentId;
+        modified();
     }
 
     public String getTitle() {
@@ -0,0 +1,430 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipFile;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A least recently used cache of books read from epub files, bounded by the size of the cached books in bytes.
+ *
+ * A book is cached by the canonical path of its file together with the size, the last modification time and a
+ * checksum of the zip central directory. The checksum is only read again when the size or the modification time
+ * changed; if it changed too the next {@link #get(File)} reads the file again.
+ *
+ * The books are read with {@link EpubReader#readLazy(ZipFile, String)} and kept as a {@link BookSnapshot} that
+ * refers to the epub file for the data of the resources. Every call of {@link #get(File)} restores a new book from the
+ * snapshot, so callers can change their book, and the data they load belongs to their book, not to the cache.
+ *
+ * When several threads ask for the same book at the same time the book is read only once, the other threads wait
+ * for it.
+ */
+public class BookCache {
+
+    private static final Logger log = LoggerFactory.getLogger(BookCache.class);
+
+    // a rough size of the objects kept for a book besides its snapshot
+    private static final int BOOK_SIZE = 256;
+
+    // the end of central directory record of a zip file
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_ZIP_COMMENT_SIZE = 0xffff;
+
+    // the part of the maximum memory used for books by the shared cache
+    private static final int DEFAULT_MAX_CACHE_MEMORY_FRACTION = 8;
+
+    private static volatile BookCache sharedInstance;
+
+    /**
+     * The snapshot of a book together with the identity of the file it was read from.
+     */
+    private static class Entry {
+        final byte[] snapshot;
+        final long checksum;
+        // the size and modification time of the file when the checksum was last read, guarded by the entries
+        long fileSize;
+        long lastModified;
+
+        Entry(byte[] snapshot, long checksum, long fileSize, long lastModified) {
+            this.snapshot = snapshot;
+            this.checksum = checksum;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        long getSize() {
+            return BOOK_SIZE + snapshot.length;
+        }
+    }
+
+    /**
+     * The hit and miss counts of a cache at one moment.
+     */
+    public static class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadFailureCount;
+        private final long evictionCount;
+        private final long totalLoadTimeNanos;
+
+        Statistics(long hitCount, long missCount, long loadFailureCount, long evictionCount, long totalLoadTimeNanos) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadFailureCount = loadFailureCount;
+            this.evictionCount = evictionCount;
+            this.totalLoadTimeNanos = totalLoadTimeNanos;
+        }
+
+        /**
+         * The number of times a book was found in the cache, including the times a thread waited for another thread
+         * reading the same book.
+         *
+         * @return the number of times a book was found in the cache.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * The number of times a book had to be read.
+         *
+         * @return the number of times a book had to be read.
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * The total time spent reading books.
+         *
+         * @return the total time spent reading books in nanoseconds.
+         */
+        public long getTotalLoadTimeNanos() {
+            return totalLoadTimeNanos;
+        }
+
+        /**
+         * The part of the requests that was answered from the cache.
+         *
+         * @return the part of the requests that was answered from the cache, 0 if there were no requests.
+         */
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+        }
+
+        public String toString() {
+            return "hits: " + hitCount + ", misses: " + missCount + ", load failures: " + loadFailureCount
+                    + ", evictions: " + evictionCount + ", load time: " + totalLoadTimeNanos / 1000000 + "ms";
+        }
+    }
+
+    private final EpubReader epubReader;
+    // by canonical path, in access order, the least recently used first
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // the books that are being read
+    private final ConcurrentMap<String, FutureTask<byte[]>> pendingBooks = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+    private long maxSize;
+    private long size;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+
+    /**
+     * Creates a cache that reads the books with a default EpubReader.
+     *
+     * @param maxSize the maximum size of the cached books in bytes
+     */
+    public BookCache(long maxSize) {
+        this(maxSize, new EpubReader());
+    }
+
+    /**
+     * Creates a cache that reads the books with the given EpubReader.
+     *
+     * @param maxSize the maximum size of the cached books in bytes
+     * @param epubReader
+     */
+    public BookCache(long maxSize, EpubReader epubReader) {
+        this.maxSize = maxSize;
+        this.epubReader = epubReader;
+    }
+
+    /**
+     * The cache shared by the whole process, its maximum size is an eighth of the maximum memory.
+     *
+     * @return the cache shared by the whole process.
+     */
+    public static BookCache getSharedInstance() {
+        BookCache result = sharedInstance;
+        if (result == null) {
+            synchronized (BookCache.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new BookCache(Runtime.getRuntime().maxMemory() / DEFAULT_MAX_CACHE_MEMORY_FRACTION);
+                    sharedInstance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the book of the given epub file, reading it if it is not in the cache or the file was changed.
+     *
+     * @param file
+     * @return a new copy of the book of the given epub file.
+     * @throws IOException if the file can not be read
+     */
+    public Book get(final File file) throws IOException {
+        final String path = file.getCanonicalPath();
+        final long fileSize = file.length();
+        final long lastModified = file.lastModified();
+        if (!file.isFile()) {
+            throw new IOException(file + " is not a file");
+        }
+        byte[] result = getCachedSnapshot(path, file, fileSize, lastModified);
+        if (result != null) {
+            hitCount.incrementAndGet();
+            return restore(result);
+        }
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws IOException {
+                return load(path, file, fileSize, lastModified);
+            }
+        });
+        FutureTask<byte[]> pendingBook = pendingBooks.putIfAbsent(path, task);
+        if (pendingBook == null) {
+            try {
+                // another thread may have finished reading the book since the first look
+                result = getCachedSnapshot(path, file, fileSize, lastModified);
+                if (result != null) {
+                    hitCount.incrementAndGet();
+                    return restore(result);
+                }
+                missCount.incrementAndGet();
+                pendingBook = task;
+                task.run();
+            } finally {
+                pendingBooks.remove(path, task);
+            }
+        } else {
+            hitCount.incrementAndGet();
+        }
+        try {
+            return restore(pendingBook.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * The snapshot of the book of the file, if it is cached and the file was not changed.
+     */
+    private byte[] getCachedSnapshot(String path, File file, long fileSize, long lastModified) throws IOException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.fileSize == fileSize && entry.lastModified == lastModified) {
+                return entry.snapshot;
+            }
+        }
+        // the file was touched or replaced, it is only changed if its central directory is
+        if (getCentralDirectoryChecksum(file) != entry.checksum) {
+            return null;
+        }
+        synchronized (entries) {
+            entry.fileSize = fileSize;
+            entry.lastModified = lastModified;
+        }
+        return entry.snapshot;
+    }
+
+    private static Book restore(byte[] snapshot) throws IOException {
+        return BookSnapshot.read(new ByteArrayInputStream(snapshot));
+    }
+
+    private byte[] load(String path, File file, long fileSize, long lastModified) throws IOException {
+        long start = System.nanoTime();
+        long checksum;
+        byte[] snapshot;
+        try {
+            // read before the book, a change while reading makes the next get read the file again
+            checksum = getCentralDirectoryChecksum(file);
+            ZipFile zipFile = new ZipFile(file);
+            try {
+                Book book = epubReader.readLazy(zipFile, Constants.CHARACTER_ENCODING);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BookSnapshot.write(book, out, true);
+                snapshot = out.toByteArray();
+            } finally {
+                zipFile.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            loadFailureCount.incrementAndGet();
+            throw e;
+        } finally {
+            totalLoadTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+        Entry entry = new Entry(snapshot, checksum, fileSize, lastModified);
+        synchronized (entries) {
+            // replaces the earlier version of the file
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                size -= previous.getSize();
+            }
+            size += entry.getSize();
+            evict();
+        }
+        log.debug("Read " + file + " into the cache, size " + entry.getSize());
+        return snapshot;
+    }
+
+    /**
+     * Removes the book of the given file from the cache.
+     *
+     * @param file
+     */
+    public void invalidate(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        synchronized (entries) {
+            Entry entry = entries.remove(path);
+            if (entry != null) {
+                size -= entry.getSize();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    public long getMaxSize() {
+        synchronized (entries) {
+            return maxSize;
+        }
+    }
+
+    public void setMaxSize(long maxSize) {
+        synchronized (entries) {
+            this.maxSize = maxSize;
+            evict();
+        }
+    }
+
+    /**
+     * The size of all cached books in bytes.
+     *
+     * @return the size of all cached books in bytes.
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    public int getBookCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(hitCount.get(), missCount.get(), loadFailureCount.get(), evictionCount.get(), totalLoadTimeNanos.get());
+    }
+
+    private void evict() {
+        for (Iterator<Entry> iterator = entries.values().iterator(); size > maxSize && iterator.hasNext(); ) {
+            size -= iterator.next().getSize();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The checksum of the central directory of the zip file, or of the end of the file if the central directory can not
+     * be found.
+     */
+    static long getCentralDirectoryChecksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_ZIP_COMMENT_SIZE);
+            byte[] tail = new byte[tailLength];
+            in.seek(length - tailLength);
+            in.readFully(tail);
+            for (int pos = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; pos >= 0; pos--) {
+                if (getInt(tail, pos) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    continue;
+                }
+                long directorySize = getInt(tail, pos + 12) & 0xffffffffL;
+                long directoryOffset = getInt(tail, pos + 16) & 0xffffffffL;
+                if (directoryOffset + directorySize > length || directorySize > Integer.MAX_VALUE) {
+                    // a zip64 file, or not a zip file
+                    break;
+                }
+                byte[] directory = new byte[(int) directorySize];
+                in.seek(directoryOffset);
+                in.readFully(directory);
+                crc.update(directory);
+                return crc.getValue();
+            }
+            crc.update(tail);
+            return crc.getValue();
+        } finally {
+            in.close();
+        }
+    }
+
+    // a little endian int, as used in zip files
+    private static int getInt(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) | (bytes[pos + 1] & 0xff) << 8 | (bytes[pos + 2] & 0xff) << 16 | (bytes[pos + 3] & 0xff) << 24;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.Collection;
 import java.util.List;
 
 import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.jfr.BookProcessEvent;
+import nl.siegmann.epublib.jfr.EpubEvents;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +17,10 @@ import org.slf4j.LoggerFactory;
  * Fixes coverpage/coverimage.
  * Cleans up the XHTML.
  *
+ * If fusing of html processors is enabled then every run of consecutive bookprocessors that are also
+ * HtmlDocumentProcessors is executed as a single HtmlProcessorPipeline, so that each html resource
+ * is parsed and serialized once for the whole run instead of once per bookprocessor.
+ *
  * @author paul.siegmann
  *
  */
@@ -22,6 +28,8 @@ public class BookProcessorPipeline implements BookProcessor {
 
     private Logger log = LoggerFactory.getLogger(BookProcessorPipeline.class);
     private List<BookProcessor> bookProcessors;
+    private boolean fuseHtmlProcessors;
+    private BookProcessorStatistics statistics;
 
     public BookProcessorPipeline() {
         this(null);
@@ -36,16 +44,68 @@ public class BookProcessorPipeline implements BookProcessor {
         if (bookProcessors == null) {
             return book;
         }
-        for(BookProcessor bookProcessor: bookProcessors) {
+        List<BookProcessor> processingSteps = fuseHtmlProcessors ? createFusedBookProcessors(bookProcessors) : bookProcessors;
+        BookProcessorStatistics.BookStatistics bookStatistics = (statistics == null) ? null : statistics.startBook(book);
+        for(BookProcessor bookProcessor: processingSteps) {
+            BookProcessorStatistics.ProcessorStatistics processorStatistics = null;
+            if (bookStatistics != null) {
+                processorStatistics = statistics.startProcessor(bookStatistics, bookProcessor, book);
+            }
+            BookProcessEvent event = EpubEvents.beginBookProcess();
+            boolean failed = false;
             try {
                 book = bookProcessor.processBook(book);
             } catch(Exception e) {
                 log.error(e.getMessage(), e);
+                failed = true;
+                if (processorStatistics != null) {
+                    statistics.processorFailed(processorStatistics, e);
+                }
+            }
+            if (event != null) {
+                event.commit(bookProcessor, book, failed);
+            }
+            if (processorStatistics != null) {
+                statistics.finishProcessor(bookStatistics, processorStatistics, book);
             }
         }
         return book;
     }
 
+    /**
+     * Replaces every run of two or more consecutive HtmlDocumentProcessors by a single HtmlProcessorPipeline.
+     *
+     * @param bookProcessors
+     * @return the bookprocessors to execute
+     */
+    private static List<BookProcessor> createFusedBookProcessors(List<BookProcessor> bookProcessors) {
+        List<BookProcessor> result = new ArrayList<BookProcessor>(bookProcessors.size());
+        List<HtmlDocumentProcessor> htmlDocumentProcessors = new ArrayList<HtmlDocumentProcessor>();
+        for (BookProcessor bookProcessor: bookProcessors) {
+            if (bookProcessor instanceof HtmlDocumentProcessor) {
+                htmlDocumentProcessors.add((HtmlDocumentProcessor) bookProcessor);
+                continue;
+            }
+            addHtmlDocumentProcessors(htmlDocumentProcessors, result);
+            htmlDocumentProcessors = new ArrayList<HtmlDocumentProcessor>();
+            result.add(bookProcessor);
+        }
+        addHtmlDocumentProcessors(htmlDocumentProcessors, result);
+        return result;
+    }
+
+    private static void addHtmlDocumentProcessors(List<HtmlDocumentProcessor> htmlDocumentProcessors, List<BookProcessor> result) {
+        if (htmlDocumentProcessors.isEmpty()) {
+            return;
+        }
+        if (htmlDocumentProcessors.size() == 1) {
+            // a single processor does not gain anything from fusing, so keep its own output format
+            result.add((BookProcessor) htmlDocumentProcessors.get(0));
+        } else {
+            result.add(new HtmlProcessorPipeline(htmlDocumentProcessors));
+        }
+    }
+
     public void addBookProcessor(BookProcessor bookProcessor) {
         if (this.bookProcessors == null) {
             bookProcessors = new ArrayList<BookProcessor>();
@@ -68,4 +128,36 @@ public class BookProcessorPipeline implements BookProcessor {
         this.bookProcessors = bookProcessingPipeline;
     }
 
+    /**
+     * Whether consecutive HtmlDocumentProcessors are executed as a single HtmlProcessorPipeline.
+     *
+     * @return whether consecutive HtmlDocumentProcessors are executed as a single HtmlProcessorPipeline.
+     */
+    public boolean isFuseHtmlProcessors() {
+        return fuseHtmlProcessors;
+    }
+
+    public void setFuseHtmlProcessors(boolean fuseHtmlProcessors) {
+        this.fuseHtmlProcessors = fuseHtmlProcessors;
+    }
+
+    /**
+     * The statistics collected while processing books.
+     *
+     * @return null if no statistics are collected.
+     */
+    public BookProcessorStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics to record the timing, size changes and errors of every bookprocessor in.
+     * Set to null to stop collecting statistics.
+     *
+     * @param statistics
+     */
+    public void setStatistics(BookProcessorStatistics statistics) {
+        this.statistics = statistics;
+    }
+
 }
@@ -0,0 +1,439 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.Resource;
+
+/**
+ * Collects how long each BookProcessor of a BookProcessorPipeline took and how much it changed the book.
+ *
+ * For every processed book and every processor it records:
+ * <ul>
+ * <li>the wall time</li>
+ * <li>the cpu time of the processing thread</li>
+ * <li>the number of bytes allocated by the processing thread</li>
+ * <li>the number of resources that were added, removed or got new data</li>
+ * <li>the total size of the book's resources before and after processing</li>
+ * <li>the exceptions thrown by the processor</li>
+ * </ul>
+ * Cpu time and allocated bytes are -1 if the jvm can not measure them.
+ *
+ * Only the statistics of the most recently started books are kept per book, the statistics of older books are only
+ * kept in the totals. This bounds the memory used in a long running process.
+ *
+ * A single instance can be shared by several pipelines and threads.
+ *
+ * @see nl.siegmann.epublib.epub.BookProcessorPipeline#setStatistics(BookProcessorStatistics)
+ */
+public class BookProcessorStatistics {
+
+    public static final int DEFAULT_MAX_BOOK_COUNT = 1000;
+
+    private final int maxBookCount;
+    private final Deque<BookStatistics> bookStatistics = new ArrayDeque<BookStatistics>();
+    // the totals of the books that are no longer kept, by processor name
+    private final Map<String, ProcessorStatistics> retiredTotals = new LinkedHashMap<String, ProcessorStatistics>();
+
+    public BookProcessorStatistics() {
+        this(DEFAULT_MAX_BOOK_COUNT);
+    }
+
+    /**
+     * @param maxBookCount the number of most recently started books to keep the statistics of
+     */
+    public BookProcessorStatistics(int maxBookCount) {
+        this.maxBookCount = maxBookCount;
+    }
+
+    /**
+     * The statistics of a single processor run on a single book.
+     * When used as a total the numbers are the sums over all books.
+     */
+    public static class ProcessorStatistics {
+        private final String processorName;
+        private int invocations;
+        private long wallTimeNanos;
+        private long cpuTimeNanos;
+        private long allocatedBytes;
+        private int resourcesTouched;
+        private long bytesIn;
+        private long bytesOut;
+        private int errorCount;
+        private String lastError;
+
+        // state of the measurement in progress
+        private long startWallTime;
+        private long startCpuTime;
+        private long startAllocatedBytes;
+        private Map<Resource, Integer> startDataVersions;
+
+        public ProcessorStatistics(String processorName) {
+            this.processorName = processorName;
+        }
+
+        private void start(Book book) {
+            startDataVersions = new IdentityHashMap<Resource, Integer>();
+            bytesIn = 0;
+            for (Resource resource: book.getResources().getAll()) {
+                startDataVersions.put(resource, resource.getDataVersion());
+                bytesIn += resource.getSize();
+            }
+            startAllocatedBytes = ThreadResourceUsage.getCurrentThreadAllocatedBytes();
+            startCpuTime = ThreadResourceUsage.getCurrentThreadCpuTime();
+            startWallTime = System.nanoTime();
+        }
+
+        private void finish(Book book) {
+            wallTimeNanos = System.nanoTime() - startWallTime;
+            cpuTimeNanos = difference(startCpuTime, ThreadResourceUsage.getCurrentThreadCpuTime());
+            allocatedBytes = difference(startAllocatedBytes, ThreadResourceUsage.getCurrentThreadAllocatedBytes());
+            invocations = 1;
+            bytesOut = 0;
+            if (book != null) {
+                for (Resource resource: book.getResources().getAll()) {
+                    Integer startDataVersion = startDataVersions.remove(resource);
+                    if (startDataVersion == null || startDataVersion.intValue() != resource.getDataVersion()) {
+                        resourcesTouched++;
+                    }
+                    bytesOut += resource.getSize();
+                }
+            }
+            // the resources that are left have been removed
+            resourcesTouched += startDataVersions.size();
+            startDataVersions = null;
+        }
+
+        private void failed(Exception exception) {
+            errorCount++;
+            lastError = exception.getClass().getName() + ": " + exception.getMessage();
+        }
+
+        private void add(ProcessorStatistics other) {
+            invocations += other.invocations;
+            wallTimeNanos += other.wallTimeNanos;
+            cpuTimeNanos = sum(cpuTimeNanos, other.cpuTimeNanos);
+            allocatedBytes = sum(allocatedBytes, other.allocatedBytes);
+            resourcesTouched += other.resourcesTouched;
+            bytesIn += other.bytesIn;
+            bytesOut += other.bytesOut;
+            errorCount += other.errorCount;
+            if (other.lastError != null) {
+                lastError = other.lastError;
+            }
+        }
+
+        private static long difference(long start, long end) {
+            return (start < 0 || end < 0) ? -1 : end - start;
+        }
+
+        private static long sum(long value1, long value2) {
+            return (value1 < 0 || value2 < 0) ? -1 : value1 + value2;
+        }
+
+        /**
+         * The class name of the processor.
+         *
+         * @return The class name of the processor.
+         */
+        public String getProcessorName() {
+            return processorName;
+        }
+
+        public int getInvocations() {
+            return invocations;
+        }
+
+        public long getWallTimeNanos() {
+            return wallTimeNanos;
+        }
+
+        public long getCpuTimeNanos() {
+            return cpuTimeNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getResourcesTouched() {
+            return resourcesTouched;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+    }
+
+    /**
+     * The statistics of all processors for a single book.
+     */
+    public static class BookStatistics {
+        private final String title;
+        private final String identifier;
+        // written by the processing thread and read by any thread
+        private final List<ProcessorStatistics> processorStatistics = new CopyOnWriteArrayList<ProcessorStatistics>();
+
+        public BookStatistics(String title, String identifier) {
+            this.title = title;
+            this.identifier = identifier;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * The statistics of the processors in the order in which they were executed.
+         * A processor that is still running is not included.
+         *
+         * @return The statistics of the finished processors in the order in which they were executed.
+         */
+        public List<ProcessorStatistics> getProcessorStatistics() {
+            return Collections.unmodifiableList(processorStatistics);
+        }
+
+        public long getWallTimeNanos() {
+            long result = 0;
+            for (ProcessorStatistics statistics: processorStatistics) {
+                result += statistics.getWallTimeNanos();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Starts collecting the statistics for the given book.
+     *
+     * @param book
+     * @return the statistics of the book
+     */
+    BookStatistics startBook(Book book) {
+        Identifier identifier = Identifier.getBookIdIdentifier(book.getMetadata().getIdentifiers());
+        BookStatistics result = new BookStatistics(book.getTitle(), identifier == null ? null : identifier.getValue());
+        synchronized (bookStatistics) {
+            bookStatistics.addLast(result);
+            while (bookStatistics.size() > maxBookCount) {
+                addTotals(bookStatistics.removeFirst(), retiredTotals);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Starts measuring the given processor.
+     *
+     * @param bookStatistics the statistics of the book being processed
+     * @param bookProcessor the processor that is about to run
+     * @param book the book before processing
+     * @return the statistics of the processor
+     */
+    ProcessorStatistics startProcessor(BookStatistics bookStatistics, BookProcessor bookProcessor, Book book) {
+        ProcessorStatistics result = new ProcessorStatistics(bookProcessor.getClass().getName());
+        result.start(book);
+        return result;
+    }
+
+    /**
+     * Stops measuring the given processor and adds its statistics to those of the book.
+     *
+     * @param bookStatistics the statistics of the book being processed
+     * @param processorStatistics
+     * @param book the book after processing
+     */
+    void finishProcessor(BookStatistics bookStatistics, ProcessorStatistics processorStatistics, Book book) {
+        processorStatistics.finish(book);
+        // only published when complete, so other threads never see a measurement in progress
+        bookStatistics.processorStatistics.add(processorStatistics);
+    }
+
+    /**
+     * Records that the processor threw the given exception.
+     *
+     * @param processorStatistics
+     * @param exception
+     */
+    void processorFailed(ProcessorStatistics processorStatistics, Exception exception) {
+        processorStatistics.failed(exception);
+    }
+
+    /**
+     * The statistics of the most recently started books, in the order in which processing started.
+     *
+     * @return The statistics of at most the maximum number of books kept.
+     */
+    public List<BookStatistics> getBookStatistics() {
+        synchronized (bookStatistics) {
+            return new ArrayList<BookStatistics>(bookStatistics);
+        }
+    }
+
+    /**
+     * The statistics of every processor summed over all books.
+     *
+     * @return The statistics of every processor summed over all books, in the order in which the processors were first executed.
+     */
+    public List<ProcessorStatistics> getProcessorTotals() {
+        Map<String, ProcessorStatistics> result = new LinkedHashMap<String, ProcessorStatistics>();
+        List<BookStatistics> books;
+        synchronized (bookStatistics) {
+            for (ProcessorStatistics retiredTotal: retiredTotals.values()) {
+                addTotal(retiredTotal, result);
+            }
+            books = new ArrayList<BookStatistics>(bookStatistics);
+        }
+        for (BookStatistics statistics: books) {
+            addTotals(statistics, result);
+        }
+        return new ArrayList<ProcessorStatistics>(result.values());
+    }
+
+    private static void addTotals(BookStatistics statistics, Map<String, ProcessorStatistics> totals) {
+        for (ProcessorStatistics processorStatistics: statistics.processorStatistics) {
+            addTotal(processorStatistics, totals);
+        }
+    }
+
+    private static void addTotal(ProcessorStatistics processorStatistics, Map<String, ProcessorStatistics> totals) {
+        ProcessorStatistics total = totals.get(processorStatistics.getProcessorName());
+        if (total == null) {
+            total = new ProcessorStatistics(processorStatistics.getProcessorName());
+            totals.put(total.getProcessorName(), total);
+        }
+        total.add(processorStatistics);
+    }
+
+    /**
+     * Removes all collected statistics.
+     */
+    public void clear() {
+        synchronized (bookStatistics) {
+            bookStatistics.clear();
+            retiredTotals.clear();
+        }
+    }
+
+    /**
+     * Writes the collected statistics as a json document with a "books" and a "totals" array.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"books\": [");
+        List<BookStatistics> books = getBookStatistics();
+        for (int i = 0; i < books.size(); i++) {
+            BookStatistics book = books.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write("    {\"title\": " + toJsonString(book.getTitle())
+                    + ", \"identifier\": " + toJsonString(book.getIdentifier())
+                    + ", \"wallTimeNanos\": " + book.getWallTimeNanos()
+                    + ", \"processors\": [");
+            writeJson(book.getProcessorStatistics(), "\n      ", out);
+            out.write("]}");
+        }
+        out.write("\n  ],\n  \"totals\": [");
+        writeJson(getProcessorTotals(), "\n    ", out);
+        out.write("]\n}\n");
+        out.flush();
+    }
+
+    /**
+     * The collected statistics as a json document.
+     *
+     * @return The collected statistics as a json document.
+     */
+    public String toJson() {
+        StringWriter result = new StringWriter();
+        try {
+            writeJson(result);
+        } catch (IOException e) {
+            // a StringWriter does not throw IOExceptions
+        }
+        return result.toString();
+    }
+
+    private static void writeJson(Collection<ProcessorStatistics> processorStatistics, String indent, Writer out) throws IOException {
+        boolean first = true;
+        for (ProcessorStatistics statistics: processorStatistics) {
+            out.write(first ? indent : "," + indent);
+            first = false;
+            out.write("{\"processor\": " + toJsonString(statistics.getProcessorName())
+                    + ", \"invocations\": " + statistics.getInvocations()
+                    + ", \"wallTimeNanos\": " + statistics.getWallTimeNanos()
+                    + ", \"cpuTimeNanos\": " + statistics.getCpuTimeNanos()
+                    + ", \"allocatedBytes\": " + statistics.getAllocatedBytes()
+                    + ", \"resourcesTouched\": " + statistics.getResourcesTouched()
+                    + ", \"bytesIn\": " + statistics.getBytesIn()
+                    + ", \"bytesOut\": " + statistics.getBytesOut()
+                    + ", \"errorCount\": " + statistics.getErrorCount()
+                    + ", \"lastError\": " + toJsonString(statistics.getLastError())
+                    + "}");
+        }
+    }
+
+    private static String toJsonString(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder(text.length() + 2);
+        result.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        result.append('"');
+        return result.toString();
+    }
+}
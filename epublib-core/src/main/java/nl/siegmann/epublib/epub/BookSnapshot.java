@@ -0,0 +1,676 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Author;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Date;
+import nl.siegmann.epublib.domain.GuideReference;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.LazyResource;
+import nl.siegmann.epublib.domain.Link;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Meta;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Relator;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.domain.Spine;
+import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.TableOfContents;
+import nl.siegmann.epublib.domain.TextDirection;
+import nl.siegmann.epublib.domain.Title;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+/**
+ * A compact binary snapshot of a parsed book.
+ *
+ * Restoring a book from a snapshot does not parse any XML, which makes it much faster than reading the epub again.
+ * The snapshot contains the metadata, the resources, the spine, the table of contents and the guide of the book.
+ *
+ * Layout of a snapshot, all integers are big-endian and strings are a length (-1 for null) followed by UTF-8 bytes:
+ * <pre>
+ * magic, version
+ * (sectionTag, byteCount, bytes[byteCount])* the metadata, resources, spine, table of contents, guide and book sections
+ * DATA, (resourceIndex, byteCount, bytes[byteCount])*, -1
+ * </pre>
+ * The resources section comes first, the other sections refer to resources by their index in it.
+ * Sections with an unknown tag are skipped. The data of the resources comes last, so a snapshot can be written to and
+ * read from a stream in one pass, and a snapshot file can be read without reading the data.
+ *
+ * The data of a resource that is loaded lazily from an epub file and was not changed can be stored as a reference to
+ * that file instead of the data itself.
+ */
+public final class BookSnapshot {
+
+    private static final int MAGIC = 0x45504253; // "EPBS"
+
+    /**
+     * The version of the snapshot format, snapshots of other versions can not be read.
+     */
+    public static final int VERSION = 1;
+
+    // the section tags
+    private static final int METADATA = 1;
+    private static final int RESOURCES = 2;
+    private static final int SPINE = 3;
+    private static final int TABLE_OF_CONTENTS = 4;
+    private static final int GUIDE = 5;
+    private static final int BOOK = 6;
+    private static final int DATA = 7;
+
+    // how the data of a resource is stored
+    private static final int DATA_NONE = 0;
+    private static final int DATA_INLINE = 1;
+    private static final int DATA_REFERENCE = 2;
+
+    private BookSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the book including the data of all resources.
+     *
+     * @param book the book to write
+     * @param out the stream to write the snapshot to, it is not closed
+     * @throws IOException if the snapshot can not be written
+     */
+    public static void write(final Book book, final OutputStream out) throws IOException {
+        write(book, out, false);
+    }
+
+    /**
+     * Writes a snapshot of the book.
+     *
+     * @param book the book to write
+     * @param out the stream to write the snapshot to, it is not closed
+     * @param referenceArchive whether to store unchanged lazily loaded resources as references to their epub file
+     * @throws IOException if the snapshot can not be written
+     */
+    public static void write(final Book book, final OutputStream out, final boolean referenceArchive) throws IOException {
+        List<Resource> resources = new ArrayList<>(book.getResources().getAll());
+        Map<Resource, Integer> resourceIndexes = new IdentityHashMap<>();
+        for (Resource resource: resources) {
+            resourceIndexes.put(resource, resourceIndexes.size());
+        }
+        int resourceCount = resources.size();
+        // resources that are referenced but not part of the resources of the book
+        addResources(resourceIndexes, resources, book.getOpfResource(), book.getNcxResource(), book.getCoverImage(),
+                book.getSpine().getTocResource());
+        for (SpineReference spineReference: book.getSpine().getSpineReferences()) {
+            addResources(resourceIndexes, resources, spineReference.getResource());
+        }
+        for (TOCReference tocReference: book.getTableOfContents().getIndex().getTocReferences()) {
+            addResources(resourceIndexes, resources, tocReference.getResource());
+        }
+        for (GuideReference guideReference: book.getGuide().getReferences()) {
+            addResources(resourceIndexes, resources, guideReference.getResource());
+        }
+
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        int[] dataKinds = new int[resources.size()];
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream sectionOut = new DataOutputStream(section);
+
+        for (int i = 0; i < resources.size(); i++) {
+            dataKinds[i] = getDataKind(resources.get(i), referenceArchive);
+        }
+        writeResources(resources, resourceCount, dataKinds, sectionOut);
+        writeSection(RESOURCES, section, dataOut);
+        writeMetadata(book.getMetadata(), sectionOut);
+        writeSection(METADATA, section, dataOut);
+        writeSpine(book.getSpine(), resourceIndexes, sectionOut);
+        writeSection(SPINE, section, dataOut);
+        writeTocReferences(book.getTableOfContents().getTocReferences(), resourceIndexes, sectionOut);
+        writeSection(TABLE_OF_CONTENTS, section, dataOut);
+        writeGuide(book.getGuide().getReferences(), resourceIndexes, sectionOut);
+        writeSection(GUIDE, section, dataOut);
+        writeResourceIndex(book.getOpfResource(), resourceIndexes, sectionOut);
+        writeResourceIndex(book.getNcxResource(), resourceIndexes, sectionOut);
+        writeResourceIndex(book.getCoverImage(), resourceIndexes, sectionOut);
+        writeSection(BOOK, section, dataOut);
+
+        dataOut.writeInt(DATA);
+        for (int i = 0; i < resources.size(); i++) {
+            if (dataKinds[i] != DATA_INLINE) {
+                continue;
+            }
+            byte[] data = resources.get(i).getData();
+            dataOut.writeInt(i);
+            dataOut.writeInt(data.length);
+            dataOut.write(data);
+        }
+        dataOut.writeInt(-1);
+        dataOut.flush();
+    }
+
+    /**
+     * Reads a book from a snapshot stream, the data of the resources is read into memory.
+     *
+     * Only the snapshot is read from the stream, which should be buffered.
+     *
+     * @param in the stream to read the snapshot from, it is not closed
+     * @return the book
+     * @throws IOException if the snapshot can not be read or is not a snapshot of a supported version
+     */
+    public static Book read(final InputStream in) throws IOException {
+        return read(new DataInputStream(in), null);
+    }
+
+    /**
+     * Reads a book from a snapshot file.
+     *
+     * Only the structure of the book is read, the data of the resources is loaded from the file when it is needed.
+     * The file should not be changed while the book is in use.
+     *
+     * @param file the snapshot file
+     * @return the book
+     * @throws IOException if the snapshot can not be read or is not a snapshot of a supported version
+     */
+    public static Book read(final File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return read(in, file);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Book read(final DataInputStream in, final File file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a book snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported book snapshot version " + version);
+        }
+        long position = 8;
+        Book book = new Book();
+        List<Resource> resources = Collections.emptyList();
+        while (true) {
+            int tag = in.readInt();
+            if (tag == DATA) {
+                position += 4;
+                break;
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            position += 8 + bytes.length;
+            DataInputStream sectionIn = new DataInputStream(new ByteArrayInputStream(bytes));
+            switch (tag) {
+            case RESOURCES:
+                resources = readResources(sectionIn, book, file);
+                break;
+            case METADATA:
+                book.setMetadata(readMetadata(sectionIn));
+                break;
+            case SPINE:
+                book.setSpine(readSpine(sectionIn, resources));
+                break;
+            case TABLE_OF_CONTENTS:
+                TableOfContents tableOfContents = new TableOfContents();
+                readTocReferences(sectionIn, resources, tableOfContents.getTocReferences());
+                book.setTableOfContents(tableOfContents);
+                break;
+            case GUIDE:
+                book.getGuide().setReferences(readGuide(sectionIn, resources));
+                break;
+            case BOOK:
+                book.setOpfResource(readResource(sectionIn, resources));
+                book.setNcxResource(readResource(sectionIn, resources));
+                Resource coverImage = readResource(sectionIn, resources);
+                if (coverImage != null) {
+                    book.setCoverImage(coverImage);
+                }
+                break;
+            default:
+                // a section of a newer minor version
+                break;
+            }
+        }
+        for (int index = in.readInt(); index >= 0; index = in.readInt()) {
+            int length = in.readInt();
+            position += 8;
+            SnapshotResource resource = (SnapshotResource) resources.get(index);
+            if (file == null) {
+                byte[] data = new byte[length];
+                in.readFully(data);
+                resource.setSnapshotData(data);
+            } else {
+                resource.setSnapshotLocation(position, length);
+                skipFully(in, length);
+            }
+            position += length;
+        }
+        return book;
+    }
+
+    private static void skipFully(final InputStream in, final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void writeSection(final int tag, final ByteArrayOutputStream section, final DataOutputStream out) throws IOException {
+        out.writeInt(tag);
+        out.writeInt(section.size());
+        section.writeTo(out);
+        section.reset();
+    }
+
+    private static void addResources(final Map<Resource, Integer> resourceIndexes, final List<Resource> resources, final Resource... references) {
+        for (Resource resource: references) {
+            if (resource != null && !resourceIndexes.containsKey(resource)) {
+                resourceIndexes.put(resource, resources.size());
+                resources.add(resource);
+            }
+        }
+    }
+
+    private static int getDataKind(final Resource resource, final boolean referenceArchive) throws IOException {
+        if (referenceArchive && resource instanceof LazyResource && ((LazyResource) resource).getFilename() != null
+                && resource.getDataVersion() == 0) {
+            return DATA_REFERENCE;
+        }
+        return resource.getData() == null ? DATA_NONE : DATA_INLINE;
+    }
+
+    private static void writeResources(final List<Resource> resources, final int resourceCount, final int[] dataKinds, final DataOutputStream out) throws IOException {
+        out.writeInt(resources.size());
+        out.writeInt(resourceCount);
+        for (int i = 0; i < resources.size(); i++) {
+            Resource resource = resources.get(i);
+            writeString(resource.getHref(), out);
+            writeString(resource.getOriginalHref(), out);
+            writeString(resource.getId(), out);
+            writeString(resource.getTitle(), out);
+            writeString(resource.getProperties(), out);
+            writeString(resource.getInputEncoding(), out);
+            writeMediaType(resource.getMediaType(), out);
+            out.writeByte(dataKinds[i]);
+            if (dataKinds[i] == DATA_REFERENCE) {
+                writeString(((LazyResource) resource).getFilename(), out);
+                out.writeLong(resource.getSize());
+            }
+        }
+    }
+
+    private static List<Resource> readResources(final DataInputStream in, final Book book, final File file) throws IOException {
+        int size = in.readInt();
+        int resourceCount = in.readInt();
+        List<Resource> result = new ArrayList<>(size);
+        Map<String, Resource> resourceMap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String href = readString(in);
+            String originalHref = readString(in);
+            String id = readString(in);
+            String title = readString(in);
+            String properties = readString(in);
+            String inputEncoding = readString(in);
+            MediaType mediaType = readMediaType(in);
+            Resource resource;
+            if (in.readByte() == DATA_REFERENCE) {
+                String filename = readString(in);
+                resource = new LazyResource(filename, in.readLong(), originalHref);
+                resource.setId(id);
+                resource.setMediaType(mediaType);
+                resource.setInputEncoding(inputEncoding);
+            } else {
+                resource = new SnapshotResource(id, originalHref, mediaType, inputEncoding, file);
+            }
+            if (href != null && !href.equals(originalHref)) {
+                resource.setHref(href);
+            }
+            resource.setTitle(title);
+            resource.setProperties(properties);
+            result.add(resource);
+            if (i < resourceCount) {
+                resourceMap.put(href, resource);
+            }
+        }
+        Resources resources = new Resources();
+        resources.set(resourceMap);
+        book.setResources(resources);
+        return result;
+    }
+
+    private static void writeMediaType(final MediaType mediaType, final DataOutputStream out) throws IOException {
+        if (mediaType == null) {
+            writeString(null, out);
+            return;
+        }
+        writeString(mediaType.getName(), out);
+        writeString(mediaType.getDefaultExtension(), out);
+        writeStrings(mediaType.getExtensions() == null ? null : new ArrayList<>(mediaType.getExtensions()), out);
+    }
+
+    private static MediaType readMediaType(final DataInputStream in) throws IOException {
+        String name = readString(in);
+        if (name == null) {
+            return null;
+        }
+        String defaultExtension = readString(in);
+        List<String> extensions = readStrings(in);
+        // the known media types are compared by identity
+        MediaType result = MediatypeService.getMediaTypeByName(name);
+        if (result == null) {
+            result = new MediaType(name, defaultExtension, extensions);
+        }
+        return result;
+    }
+
+    private static void writeResourceIndex(final Resource resource, final Map<Resource, Integer> resourceIndexes, final DataOutputStream out) throws IOException {
+        out.writeInt(resource == null ? -1 : resourceIndexes.get(resource));
+    }
+
+    private static Resource readResource(final DataInputStream in, final List<Resource> resources) throws IOException {
+        int index = in.readInt();
+        return index < 0 ? null : resources.get(index);
+    }
+
+    private static void writeSpine(final Spine spine, final Map<Resource, Integer> resourceIndexes, final DataOutputStream out) throws IOException {
+        writeResourceIndex(spine.getTocResource(), resourceIndexes, out);
+        out.writeInt(spine.getSpineReferences().size());
+        for (SpineReference spineReference: spine.getSpineReferences()) {
+            writeResourceIndex(spineReference.getResource(), resourceIndexes, out);
+            out.writeBoolean(spineReference.isLinear());
+        }
+    }
+
+    private static Spine readSpine(final DataInputStream in, final List<Resource> resources) throws IOException {
+        Resource tocResource = readResource(in, resources);
+        int size = in.readInt();
+        Spine result = new Spine();
+        for (int i = 0; i < size; i++) {
+            Resource resource = readResource(in, resources);
+            result.addSpineReference(new SpineReference(resource, in.readBoolean()));
+        }
+        result.setTocResource(tocResource);
+        return result;
+    }
+
+    private static void writeTocReferences(final List<TOCReference> tocReferences, final Map<Resource, Integer> resourceIndexes, final DataOutputStream out) throws IOException {
+        if (tocReferences == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(tocReferences.size());
+        for (TOCReference tocReference: tocReferences) {
+            writeString(tocReference.getTitle(), out);
+            writeResourceIndex(tocReference.getResource(), resourceIndexes, out);
+            writeString(tocReference.getFragmentId(), out);
+            writeTocReferences(tocReference.getChildren(), resourceIndexes, out);
+        }
+    }
+
+    private static void readTocReferences(final DataInputStream in, final List<Resource> resources, final List<TOCReference> result) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String title = readString(in);
+            Resource resource = readResource(in, resources);
+            String fragmentId = readString(in);
+            TOCReference tocReference = new TOCReference(title, resource, fragmentId);
+            readTocReferences(in, resources, tocReference.getChildren());
+            result.add(tocReference);
+        }
+    }
+
+    private static void writeGuide(final List<GuideReference> guideReferences, final Map<Resource, Integer> resourceIndexes, final DataOutputStream out) throws IOException {
+        out.writeInt(guideReferences.size());
+        for (GuideReference guideReference: guideReferences) {
+            writeResourceIndex(guideReference.getResource(), resourceIndexes, out);
+            writeString(guideReference.getType(), out);
+            writeString(guideReference.getTitle(), out);
+            writeString(guideReference.getFragmentId(), out);
+        }
+    }
+
+    private static List<GuideReference> readGuide(final DataInputStream in, final List<Resource> resources) throws IOException {
+        int size = in.readInt();
+        List<GuideReference> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Resource resource = readResource(in, resources);
+            String type = readString(in);
+            GuideReference guideReference = new GuideReference(resource, null, readString(in), readString(in));
+            guideReference.setType(type);
+            result.add(guideReference);
+        }
+        return result;
+    }
+
+    private static void writeMetadata(final Metadata metadata, final DataOutputStream out) throws IOException {
+        writeString(metadata.getLanguage(), out);
+        writeString(metadata.getFormat(), out);
+        out.writeBoolean(metadata.isAutoGeneratedId());
+        out.writeInt(metadata.getIdentifiers().size());
+        for (Identifier identifier: metadata.getIdentifiers()) {
+            writeString(identifier.getScheme(), out);
+            writeString(identifier.getValue(), out);
+            writeString(identifier.getId(), out);
+            out.writeBoolean(identifier.isBookId());
+        }
+        out.writeInt(metadata.getTitles().size());
+        for (Title title: metadata.getTitles()) {
+            writeString(title.getText(), out);
+            writeString(title.getId(), out);
+            writeString(title.getLang(), out);
+            writeString(title.getDir() == null ? null : title.getDir().name(), out);
+        }
+        writeAuthors(metadata.getAuthors(), out);
+        writeAuthors(metadata.getContributors(), out);
+        out.writeInt(metadata.getDates().size());
+        for (Date date: metadata.getDates()) {
+            writeString(date.getValue(), out);
+            writeString(date.getEvent() == null ? null : date.getEvent().name(), out);
+        }
+        writeStrings(metadata.getRights(), out);
+        writeStrings(metadata.getSubjects(), out);
+        writeStrings(metadata.getTypes(), out);
+        writeStrings(metadata.getDescriptions(), out);
+        writeStrings(metadata.getPublishers(), out);
+        out.writeInt(metadata.getOtherProperties().size());
+        for (Map.Entry<QName, String> property: metadata.getOtherProperties().entrySet()) {
+            writeString(property.getKey().getNamespaceURI(), out);
+            writeString(property.getKey().getLocalPart(), out);
+            writeString(property.getKey().getPrefix(), out);
+            writeString(property.getValue(), out);
+        }
+        out.writeInt(metadata.getMetaAttributes().size());
+        for (Map.Entry<String, String> attribute: metadata.getMetaAttributes().entrySet()) {
+            writeString(attribute.getKey(), out);
+            writeString(attribute.getValue(), out);
+        }
+        out.writeInt(metadata.getMetadata().size());
+        for (Meta meta: metadata.getMetadata()) {
+            writeString(meta.getValue(), out);
+            writeString(meta.getProperty(), out);
+            writeString(meta.getRefines(), out);
+            writeString(meta.getId(), out);
+            writeString(meta.getScheme(), out);
+        }
+        out.writeInt(metadata.getLinks().size());
+        for (Link link: metadata.getLinks()) {
+            writeString(link.getHref(), out);
+            writeString(link.getRel(), out);
+            writeString(link.getId(), out);
+            writeString(link.getRefines(), out);
+            writeString(link.getMediaType(), out);
+            byte[] data = IOUtil.toByteArray(link.getInputStream());
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    private static Metadata readMetadata(final DataInputStream in) throws IOException {
+        Metadata result = new Metadata();
+        result.setLanguage(readString(in));
+        result.setFormat(readString(in));
+        boolean autoGeneratedId = in.readBoolean();
+        int size = in.readInt();
+        List<Identifier> identifiers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Identifier identifier = new Identifier(readString(in), readString(in), readString(in));
+            identifier.setBookId(in.readBoolean());
+            identifiers.add(identifier);
+        }
+        if (autoGeneratedId && identifiers.size() == 1) {
+            // keep the generated identifier replaceable by the first identifier that is added
+            Identifier identifier = result.getIdentifiers().get(0);
+            identifier.setScheme(identifiers.get(0).getScheme());
+            identifier.setValue(identifiers.get(0).getValue());
+            identifier.setBookId(identifiers.get(0).isBookId());
+        } else {
+            result.setIdentifiers(identifiers);
+        }
+        size = in.readInt();
+        List<Title> titles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String text = readString(in);
+            String id = readString(in);
+            String lang = readString(in);
+            String dir = readString(in);
+            titles.add(new Title(text, id, lang, dir == null ? null : TextDirection.valueOf(dir)));
+        }
+        result.setTitles(titles);
+        result.setAuthors(readAuthors(in));
+        result.setContributors(readAuthors(in));
+        size = in.readInt();
+        List<Date> dates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String value = readString(in);
+            String event = readString(in);
+            dates.add(new Date(value, event == null ? null : Date.Event.valueOf(event)));
+        }
+        result.setDates(dates);
+        result.setRights(readStrings(in));
+        result.setSubjects(readStrings(in));
+        result.setTypes(readStrings(in));
+        result.setDescriptions(readStrings(in));
+        result.setPublishers(readStrings(in));
+        size = in.readInt();
+        Map<QName, String> otherProperties = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            QName name = new QName(readString(in), readString(in), readString(in));
+            otherProperties.put(name, readString(in));
+        }
+        result.setOtherProperties(otherProperties);
+        size = in.readInt();
+        Map<String, String> metaAttributes = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            metaAttributes.put(readString(in), readString(in));
+        }
+        result.setMetaAttributes(metaAttributes);
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            result.addItem(new Meta(readString(in), readString(in), readString(in), readString(in), readString(in)));
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String href = readString(in);
+            String rel = readString(in);
+            String id = readString(in);
+            String refines = readString(in);
+            String mediaType = readString(in);
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            result.addLink(new Link(href, rel, id, refines, mediaType, new ByteArrayInputStream(data)));
+        }
+        return result;
+    }
+
+    private static void writeAuthors(final List<Author> authors, final DataOutputStream out) throws IOException {
+        out.writeInt(authors.size());
+        for (Author author: authors) {
+            writeString(author.getFirstname(), out);
+            writeString(author.getLastname(), out);
+            writeString(author.getRelator() == null ? null : author.getRelator().getCode(), out);
+        }
+    }
+
+    private static List<Author> readAuthors(final DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Author> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Author author = new Author(readString(in), readString(in));
+            String relator = readString(in);
+            author.setRelator(relator == null ? null : Relator.byCode(relator));
+            result.add(author);
+        }
+        return result;
+    }
+
+    private static void writeStrings(final List<String> values, final DataOutputStream out) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value: values) {
+            writeString(value, out);
+        }
+    }
+
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(readString(in));
+        }
+        return result;
+    }
+
+    private static void writeString(final String value, final DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(Constants.CHARACTER_ENCODING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Constants.CHARACTER_ENCODING);
+    }
+}
@@ -14,6 +14,8 @@ import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.jfr.EpubEvents;
+import nl.siegmann.epublib.jfr.EpubReadEvent;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.ResourceUtil;
 import nl.siegmann.epublib.util.StringUtil;
@@ -109,7 +111,7 @@ public class EpubReader implements EpubBase {
      * @throws IOException if an I/O error occurs
      */
     public Book read(final InputStream in, final String encoding) throws IOException {
-        return read(ResourcesLoader.loadResources(new ZipInputStream(in), encoding));
+        return load(() -> ResourcesLoader.loadResources(new ZipInputStream(in), encoding));
     }
 
     /**
@@ -121,7 +123,7 @@ public class EpubReader implements EpubBase {
      * @throws IOException if an I/O error occurs
      */
     public Book read(final ZipInputStream in, final String encoding) throws IOException {
-        return read(ResourcesLoader.loadResources(in, encoding));
+        return load(() -> ResourcesLoader.loadResources(in, encoding));
     }
 
     /**
@@ -133,7 +135,7 @@ public class EpubReader implements EpubBase {
      * @throws IOException if an I/O error occurs
      */
     public Book read(final ZipFile file, final String encoding) throws IOException {
-        return read(ResourcesLoader.loadResources(file, encoding));
+        return load(() -> ResourcesLoader.loadResources(file, encoding));
     }
 
     /**
@@ -160,7 +162,7 @@ public class EpubReader implements EpubBase {
      * @throws IOException if an I/O error occurs
      */
     public Book readLazy(final ZipFile file, final String encoding, final List<MediaType> lazyLoadedTypes) throws IOException {
-        return read(ResourcesLoader.loadResources(file, encoding, lazyLoadedTypes));
+        return load(() -> ResourcesLoader.loadResources(file, encoding, lazyLoadedTypes));
     }
 
     /**
@@ -192,6 +194,35 @@ public class EpubReader implements EpubBase {
         return postProcessBook(book);
     }
 
+    /**
+     * Load the resources of a publication and read the container contents
+     * from them, recording an EpubRead event when flight recording is
+     * available.
+     *
+     * @param loader loads the resources for the publication
+     * @return the book describing the container contents
+     * @throws IOException if an I/O error occurs
+     */
+    private Book load(final ResourcesLoaderCall loader) throws IOException {
+        EpubReadEvent event = EpubEvents.beginEpubRead();
+        Book book = null;
+        try {
+            book = read(loader.loadResources());
+            return book;
+        } finally {
+            if (event != null) {
+                event.commit(book);
+            }
+        }
+    }
+
+    /**
+     * Loads the resources of a publication.
+     */
+    private interface ResourcesLoaderCall {
+        Resources loadResources() throws IOException;
+    }
+
     /**
      * Post-process a book.
      *
@@ -13,6 +13,9 @@ import java.util.zip.ZipOutputStream;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Link;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.jfr.EpubEvents;
+import nl.siegmann.epublib.jfr.EpubWriteEvent;
+import nl.siegmann.epublib.jfr.ResourceDeflateEvent;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.IOUtil;
 
@@ -81,16 +84,26 @@ public class EpubWriter implements EpubBase {
      * @param out the output stream to write the container contents to
      */
     public void write(final Book book, final OutputStream out) {
-        Book preProcessedBook = preProcessBook(book);
-        try (ZipOutputStream resultStream = new ZipOutputStream(out)) {
-            writeMimeType(resultStream);
-            writeContainerXml(resultStream);
-            initTOCResource(preProcessedBook); // XXX
-            writeResources(preProcessedBook, resultStream);
-            writeLinks(preProcessedBook, resultStream);
-            writePackageDocument(preProcessedBook, resultStream);
-        } catch (Exception exception) {
-            throw new IllegalStateException("Failed to write EPUB", exception);
+        EpubWriteEvent event = EpubEvents.beginEpubWrite();
+        Book preProcessedBook = book;
+        boolean failed = true;
+        try {
+            preProcessedBook = preProcessBook(book);
+            try (ZipOutputStream resultStream = new ZipOutputStream(out)) {
+                writeMimeType(resultStream);
+                writeContainerXml(resultStream);
+                initTOCResource(preProcessedBook); // XXX
+                writeResources(preProcessedBook, resultStream);
+                writeLinks(preProcessedBook, resultStream);
+                writePackageDocument(preProcessedBook, resultStream);
+            } catch (Exception exception) {
+                throw new IllegalStateException("Failed to write EPUB", exception);
+            }
+            failed = false;
+        } finally {
+            if (event != null) {
+                event.commit(preProcessedBook, failed);
+            }
         }
     }
 
@@ -161,10 +174,16 @@ public class EpubWriter implements EpubBase {
      */
     private void writeResources(final Book book, final ZipOutputStream out) throws IOException {
         for (Resource resource: book.getResources().getAll()) {
+            ResourceDeflateEvent event = EpubEvents.beginResourceDeflate();
             out.putNextEntry(new ZipEntry(DIR_NAME_OEBPS + PATH_SEPARATOR + resource.getHref()));
             try (InputStream inputStream = resource.getInputStream()) {
                 IOUtil.copy(inputStream, out);
             }
+            // close the entry so that the event covers compressing all of its data
+            out.closeEntry();
+            if (event != null) {
+                event.commit(resource);
+            }
         }
     }
 
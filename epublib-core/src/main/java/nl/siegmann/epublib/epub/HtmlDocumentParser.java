@@ -0,0 +1,28 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+
+import nl.siegmann.epublib.domain.Resource;
+
+import org.w3c.dom.Document;
+
+/**
+ * Parses a html resource into a Document.
+ *
+ * If the first processor of a HtmlProcessorPipeline is also a HtmlDocumentParser then the pipeline uses it to parse
+ * its resources instead of the default xml parser. This way a processor that can deal with html that is not well-formed
+ * can be the entry point of a pipeline.
+ *
+ * @see nl.siegmann.epublib.epub.HtmlProcessorPipeline
+ */
+public interface HtmlDocumentParser {
+
+    /**
+     * Parses the given resource.
+     *
+     * @param resource the html resource to parse
+     * @return the parsed resource
+     * @throws IOException if the resource could not be parsed
+     */
+    Document parseHtmlDocument(Resource resource) throws IOException;
+}
@@ -0,0 +1,30 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+import org.w3c.dom.Document;
+
+/**
+ * A transformation of the parsed form of a html resource.
+ *
+ * Several HtmlDocumentProcessors can be run by a HtmlProcessorPipeline over the same document,
+ * so that the resource is parsed and serialized only once.
+ *
+ * @see nl.siegmann.epublib.epub.HtmlProcessorPipeline
+ */
+public interface HtmlDocumentProcessor {
+
+    /**
+     * Transforms the given document.
+     *
+     * @param document the parsed html resource
+     * @param resource the resource the document was parsed from
+     * @param book the book the resource belongs to
+     * @return the transformed document, which may be the given document itself
+     * @throws IOException if the document could not be processed
+     */
+    Document processHtmlDocument(Document document, Resource resource, Book book) throws IOException;
+}
@@ -1,10 +1,16 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.IOException;
 import java.io.OutputStream;
 
 import nl.siegmann.epublib.domain.Resource;
 
+/**
+ * Processes a single html resource, writing the result to the given output.
+ *
+ * @see nl.siegmann.epublib.epub.HtmlProcessorPipeline
+ */
 public interface HtmlProcessor {
 
-    void processHtmlResource(Resource resource, OutputStream out);
+    void processHtmlResource(Resource resource, OutputStream out) throws IOException;
 }
@@ -0,0 +1,142 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.ResourceUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs several HtmlDocumentProcessors over the html resources of a book.
+ *
+ * Every html resource is parsed once, run through all the processors and serialized once,
+ * instead of each processor decoding, parsing, serializing and encoding the resource by itself.
+ *
+ * If the first processor is also a HtmlDocumentParser it is used to parse the resources,
+ * otherwise they are parsed as xml.
+ */
+public class HtmlProcessorPipeline implements BookProcessor, HtmlProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(HtmlProcessorPipeline.class);
+
+    private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private List<HtmlDocumentProcessor> htmlDocumentProcessors;
+
+    public HtmlProcessorPipeline() {
+        this(new ArrayList<HtmlDocumentProcessor>());
+    }
+
+    public HtmlProcessorPipeline(List<HtmlDocumentProcessor> htmlDocumentProcessors) {
+        this.htmlDocumentProcessors = htmlDocumentProcessors;
+    }
+
+    @Override
+    public Book processBook(Book book) {
+        if (htmlDocumentProcessors == null || htmlDocumentProcessors.isEmpty()) {
+            return book;
+        }
+        for (Resource resource: book.getResources().getAll()) {
+            if (resource.getMediaType() != MediatypeService.XHTML) {
+                continue;
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                processHtmlResource(resource, book, out);
+                resource.setData(out.toByteArray());
+                resource.setInputEncoding(Constants.CHARACTER_ENCODING);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Processes the given resource without a book.
+     * The processors are given a null book.
+     */
+    @Override
+    public void processHtmlResource(Resource resource, OutputStream out) throws IOException {
+        processHtmlResource(resource, null, out);
+    }
+
+    /**
+     * Parses the given resource, runs it through all the processors and writes the result as xml to the given output.
+     *
+     * @param resource the html resource to process
+     * @param book the book the resource belongs to
+     * @param out the output to write the result to
+     * @throws IOException if parsing, processing or serializing the resource failed
+     */
+    public void processHtmlResource(Resource resource, Book book, OutputStream out) throws IOException {
+        Document document = parseHtmlDocument(resource);
+        for (HtmlDocumentProcessor htmlDocumentProcessor: htmlDocumentProcessors) {
+            document = htmlDocumentProcessor.processHtmlDocument(document, resource, book);
+        }
+        writeHtmlDocument(document, out);
+    }
+
+    private Document parseHtmlDocument(Resource resource) throws IOException {
+        if (! htmlDocumentProcessors.isEmpty() && htmlDocumentProcessors.get(0) instanceof HtmlDocumentParser) {
+            return ((HtmlDocumentParser) htmlDocumentProcessors.get(0)).parseHtmlDocument(resource);
+        }
+        try {
+            return ResourceUtil.getAsDocument(resource);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse html resource " + resource.getHref(), e);
+        }
+    }
+
+    private void writeHtmlDocument(Document document, OutputStream out) throws IOException {
+        try {
+            Transformer transformer = transformerFactory.newTransformer();
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.setOutputProperty(OutputKeys.ENCODING, Constants.CHARACTER_ENCODING);
+            DocumentType doctype = document.getDoctype();
+            if (doctype != null && doctype.getSystemId() != null) {
+                if (doctype.getPublicId() != null) {
+                    transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+                }
+                transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+            }
+            transformer.transform(new DOMSource(document), new StreamResult(out));
+        } catch (TransformerException e) {
+            throw new IOException("Failed to write html document", e);
+        }
+    }
+
+    public List<HtmlDocumentProcessor> getHtmlDocumentProcessors() {
+        return htmlDocumentProcessors;
+    }
+
+    public void setHtmlDocumentProcessors(List<HtmlDocumentProcessor> htmlDocumentProcessors) {
+        this.htmlDocumentProcessors = htmlDocumentProcessors;
+    }
+
+    public void addHtmlDocumentProcessor(HtmlDocumentProcessor htmlDocumentProcessor) {
+        if (this.htmlDocumentProcessors == null) {
+            this.htmlDocumentProcessors = new ArrayList<HtmlDocumentProcessor>();
+        }
+        this.htmlDocumentProcessors.add(htmlDocumentProcessor);
+    }
+}
@@ -4,7 +4,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -18,6 +17,8 @@ import nl.siegmann.epublib.domain.Identifier;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.TOCReference;
 import nl.siegmann.epublib.domain.TableOfContents;
+import nl.siegmann.epublib.jfr.EpubEvents;
+import nl.siegmann.epublib.jfr.NcxParseEvent;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.ResourceUtil;
 import nl.siegmann.epublib.util.StringUtil;
@@ -87,21 +88,30 @@ public class NCXDocument {
             if(ncxResource == null) {
                 return ncxResource;
             }
-            Document ncxDocument = ResourceUtil.getAsDocument(ncxResource);
-            Element navMapElement = DOMUtil.getFirstElement(ncxDocument.getDocumentElement(), NAMESPACE_NCX, NCXTags.navMap);
-            TableOfContents tableOfContents = new TableOfContents(readTOCReferences(navMapElement.getChildNodes(), book));
-            book.setTableOfContents(tableOfContents);
+            NcxParseEvent event = EpubEvents.beginNcxParse();
+            boolean failed = true;
+            try {
+                Document ncxDocument = ResourceUtil.getAsDocument(ncxResource);
+                Element navMapElement = DOMUtil.getFirstElement(ncxDocument.getDocumentElement(), NAMESPACE_NCX, NCXTags.navMap);
+                TableOfContents tableOfContents = new TableOfContents();
+                readTOCReferences(navMapElement.getChildNodes(), book, tableOfContents.getTocReferences());
+                book.setTableOfContents(tableOfContents);
+                failed = false;
+            } finally {
+                if (event != null) {
+                    event.commit(ncxResource, book, failed);
+                }
+            }
         } catch (Exception e) {
             LOGGER.error(e.getMessage(), e);
         }
         return ncxResource;
     }
 
-    private static List<TOCReference> readTOCReferences(NodeList navpoints, Book book) {
+    private static void readTOCReferences(NodeList navpoints, Book book, List<TOCReference> result) {
         if(navpoints == null) {
-            return new ArrayList<TOCReference>();
+            return;
         }
-        List<TOCReference> result = new ArrayList<TOCReference>(navpoints.getLength());
         for(int i = 0; i < navpoints.getLength(); i++) {
             Node node = navpoints.item(i);
             if (node.getNodeType() != Document.ELEMENT_NODE) {
@@ -113,7 +123,6 @@ public class NCXDocument {
             TOCReference tocReference = readTOCReference((Element) node, book);
             result.add(tocReference);
         }
-        return result;
     }
 
     private static TOCReference readTOCReference(Element navpointElement, Book book) {
@@ -132,8 +141,7 @@ public class NCXDocument {
             LOGGER.error("Resource with href " + href + " in NCX document not found");
         }
         TOCReference result = new TOCReference(label, resource, fragmentId);
-        readTOCReferences(navpointElement.getChildNodes(), book);
-        result.setChildren(readTOCReferences(navpointElement.getChildNodes(), book));
+        readTOCReferences(navpointElement.getChildNodes(), book, result.getChildren());
         return result;
     }
 
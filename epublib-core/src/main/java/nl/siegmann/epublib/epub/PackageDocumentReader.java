@@ -23,6 +23,8 @@ import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
 import nl.siegmann.epublib.domain.Spine;
 import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.jfr.EpubEvents;
+import nl.siegmann.epublib.jfr.PackageParseEvent;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.ResourceUtil;
 import nl.siegmann.epublib.util.StringUtil;
@@ -59,6 +61,8 @@ public class PackageDocumentReader implements PackageDocumentBase {
      * @throws IOException if an I/O error occurs
      */
     public static void read(final Resource resource, final Book book, final Resources resources) throws IOException {
+        PackageParseEvent event = EpubEvents.beginPackageParse();
+        boolean failed = true;
         try {
             Document packageDocument = ResourceUtil.getAsDocument(resource);
 
@@ -82,8 +86,14 @@ public class PackageDocumentReader implements PackageDocumentBase {
             if (book.getCoverPage() == null && !book.getSpine().isEmpty()) {
                 book.setCoverPage(book.getSpine().getResource(0));
             }
+
+            failed = false;
         } catch (ParserConfigurationException | SAXException e) {
             throw new IOException("Failed to read package document", e);
+        } finally {
+            if (event != null) {
+                event.commit(resource, book, failed);
+            }
         }
     }
 
@@ -214,7 +224,6 @@ public class PackageDocumentReader implements PackageDocumentBase {
         Spine result = new Spine();
         result.setTocResource(findTableOfContentsResource(spineElement, resources));
         NodeList spineNodes = packageDocument.getElementsByTagNameNS(NAMESPACE_OPF, OPFElements.ITEMREF);
-        List<SpineReference> spineReferences = new ArrayList<SpineReference>(spineNodes.getLength());
         for(int i = 0; i < spineNodes.getLength(); i++) {
             Element spineItem = (Element) spineNodes.item(i);
             String itemref = DOMUtil.getAttributeValue(spineItem, NAMESPACE_OPF, OPFAttributes.IDREF);
@@ -234,9 +243,8 @@ public class PackageDocumentReader implements PackageDocumentBase {
             if (OPFValues.NO.equalsIgnoreCase(DOMUtil.getAttributeValue(spineItem, NAMESPACE_OPF, OPFAttributes.LINEAR))) {
                 spineReference.setLinear(false);
             }
-            spineReferences.add(spineReference);
+            result.addSpineReference(spineReference);
         }
-        result.setSpineReferences(spineReferences);
         return result;
     }
 
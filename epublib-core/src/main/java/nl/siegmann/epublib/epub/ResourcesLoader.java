@@ -15,6 +15,8 @@ import nl.siegmann.epublib.domain.LazyResource;
 import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.jfr.EpubEvents;
+import nl.siegmann.epublib.jfr.ResourceInflateEvent;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.CollectionUtil;
 import nl.siegmann.epublib.util.ResourceUtil;
@@ -64,7 +66,11 @@ public class ResourcesLoader {
             if (shouldLoadLazy(href, lazyLoadedTypes)) {
                 resource = new LazyResource(zipFile.getName(), zipEntry.getSize(), href);
             } else {
+                ResourceInflateEvent event = EpubEvents.beginResourceInflate();
                 resource = ResourceUtil.createResource(zipEntry, zipFile.getInputStream(zipEntry));
+                if (event != null) {
+                    event.commit(resource, zipEntry.getCompressedSize());
+                }
             }
 
             if(resource.getMediaType() == MediatypeService.XHTML) {
@@ -117,7 +123,12 @@ public class ResourcesLoader {
             }
 
             // store resource
+            ResourceInflateEvent event = EpubEvents.beginResourceInflate();
             Resource resource = ResourceUtil.createResource(zipEntry, zipInputStream);
+            if (event != null) {
+                // the compressed size is only known once the entry has been read
+                event.commit(resource, zipEntry.getCompressedSize());
+            }
             if(resource.getMediaType() == MediatypeService.XHTML) {
                 resource.setInputEncoding(defaultHtmlEncoding);
             }
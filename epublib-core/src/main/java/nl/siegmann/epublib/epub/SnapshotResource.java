@@ -0,0 +1,85 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A resource restored from a {@link BookSnapshot}.
+ *
+ * When the snapshot was read from a file the data is loaded from that file on demand, like a
+ * {@link nl.siegmann.epublib.domain.LazyResource} loads its data from the epub file.
+ */
+// package
+class SnapshotResource extends Resource {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotResource.class);
+
+    private final File file;
+    private long offset = -1;
+    private int length;
+
+    SnapshotResource(final String id, final String href, final MediaType mediaType, final String inputEncoding, final File file) {
+        super(id, null, href, mediaType, inputEncoding);
+        this.file = file;
+    }
+
+    /**
+     * Sets the data read from the snapshot stream.
+     */
+    void setSnapshotData(final byte[] data) {
+        this.data = data;
+        this.length = data.length;
+    }
+
+    /**
+     * Sets the location of the data in the snapshot file.
+     */
+    void setSnapshotLocation(final long offset, final int length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public byte[] getData() throws IOException {
+        if (data == null && offset >= 0) {
+            LOG.debug("Loading snapshot resource " + file + "#" + getHref());
+            byte[] readData = new byte[length];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(offset);
+                in.readFully(readData);
+            } finally {
+                in.close();
+            }
+            this.data = readData;
+        }
+        return data;
+    }
+
+    /**
+     * Releases the data if it can be loaded from the snapshot file again.
+     */
+    @Override
+    public void close() {
+        if (offset >= 0 && getDataVersion() == 0) {
+            this.data = null;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        if (data != null) {
+            return data.length;
+        }
+        return length;
+    }
+}
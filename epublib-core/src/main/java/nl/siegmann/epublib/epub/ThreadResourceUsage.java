@@ -0,0 +1,47 @@
+package nl.siegmann.epublib.epub;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the cpu time and the number of allocated bytes of the current thread.
+ *
+ * Kept apart from BookProcessorStatistics so that java.lang.management, which is not available
+ * on every platform epublib runs on, is only loaded when statistics are actually collected.
+ */
+// package
+final class ThreadResourceUsage {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The cpu time of the current thread in nanoseconds.
+     *
+     * @return -1 if not supported by the jvm.
+     */
+    static long getCurrentThreadCpuTime() {
+        if (! THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() || ! THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * The total number of bytes allocated by the current thread.
+     *
+     * @return -1 if not supported by the jvm.
+     */
+    static long getCurrentThreadAllocatedBytes() {
+        if (! (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        if (! threadMXBean.isThreadAllocatedMemorySupported() || ! threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private ThreadResourceUsage() {
+    }
+}
@@ -0,0 +1,45 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Running a single BookProcessor on a book.
+ */
+@Name("nl.siegmann.epublib.BookProcess")
+@Label("Book Process")
+@Category({"EPUBlib", "Process"})
+@Description("Running a single BookProcessor on a book.")
+public class BookProcessEvent extends jdk.jfr.Event {
+
+    @Label("Book Id")
+    String bookId;
+
+    @Label("Processor")
+    String processor;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param bookProcessor the processor that was run
+     * @param book the processed book
+     * @param failed whether the processor threw an exception
+     */
+    public void commit(Object bookProcessor, Book book, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            bookId = EpubEvents.getBookId(book);
+            processor = bookProcessor.getClass().getName();
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Identifier;
+
+import jdk.jfr.EventType;
+
+/**
+ * Creates the Java Flight Recorder events of epublib.
+ *
+ * Every begin method returns null if the jvm does not support Java Flight Recorder or the event is not enabled in any
+ * recording, so no event is allocated when nothing is recorded.
+ * The event classes are only loaded if Java Flight Recorder is supported, so callers must only touch an event after
+ * checking it for null.
+ */
+public final class EpubEvents {
+
+    /**
+     * Whether the jdk.jfr api is available.
+     */
+    public static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    /**
+     * The types of the events, only loaded if the jdk.jfr api is available.
+     */
+    private static final class EventTypes {
+        static final EventType EPUB_READ = EventType.getEventType(EpubReadEvent.class);
+        static final EventType PACKAGE_PARSE = EventType.getEventType(PackageParseEvent.class);
+        static final EventType NCX_PARSE = EventType.getEventType(NcxParseEvent.class);
+        static final EventType RESOURCE_INFLATE = EventType.getEventType(ResourceInflateEvent.class);
+        static final EventType BOOK_PROCESS = EventType.getEventType(BookProcessEvent.class);
+        static final EventType EPUB_WRITE = EventType.getEventType(EpubWriteEvent.class);
+        static final EventType RESOURCE_DEFLATE = EventType.getEventType(ResourceDeflateEvent.class);
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static EpubReadEvent beginEpubRead() {
+        if (! JFR_AVAILABLE || ! EventTypes.EPUB_READ.isEnabled()) {
+            return null;
+        }
+        EpubReadEvent result = new EpubReadEvent();
+        result.begin();
+        return result;
+    }
+
+    public static PackageParseEvent beginPackageParse() {
+        if (! JFR_AVAILABLE || ! EventTypes.PACKAGE_PARSE.isEnabled()) {
+            return null;
+        }
+        PackageParseEvent result = new PackageParseEvent();
+        result.begin();
+        return result;
+    }
+
+    public static NcxParseEvent beginNcxParse() {
+        if (! JFR_AVAILABLE || ! EventTypes.NCX_PARSE.isEnabled()) {
+            return null;
+        }
+        NcxParseEvent result = new NcxParseEvent();
+        result.begin();
+        return result;
+    }
+
+    public static ResourceInflateEvent beginResourceInflate() {
+        if (! JFR_AVAILABLE || ! EventTypes.RESOURCE_INFLATE.isEnabled()) {
+            return null;
+        }
+        ResourceInflateEvent result = new ResourceInflateEvent();
+        result.begin();
+        return result;
+    }
+
+    public static BookProcessEvent beginBookProcess() {
+        if (! JFR_AVAILABLE || ! EventTypes.BOOK_PROCESS.isEnabled()) {
+            return null;
+        }
+        BookProcessEvent result = new BookProcessEvent();
+        result.begin();
+        return result;
+    }
+
+    public static EpubWriteEvent beginEpubWrite() {
+        if (! JFR_AVAILABLE || ! EventTypes.EPUB_WRITE.isEnabled()) {
+            return null;
+        }
+        EpubWriteEvent result = new EpubWriteEvent();
+        result.begin();
+        return result;
+    }
+
+    public static ResourceDeflateEvent beginResourceDeflate() {
+        if (! JFR_AVAILABLE || ! EventTypes.RESOURCE_DEFLATE.isEnabled()) {
+            return null;
+        }
+        ResourceDeflateEvent result = new ResourceDeflateEvent();
+        result.begin();
+        return result;
+    }
+
+    /**
+     * The value of the book's bookId identifier.
+     *
+     * @param book
+     * @return null if the book has no identifiers.
+     */
+    static String getBookId(Book book) {
+        if (book == null) {
+            return null;
+        }
+        Identifier identifier = Identifier.getBookIdIdentifier(book.getMetadata().getIdentifiers());
+        return identifier == null ? null : identifier.getValue();
+    }
+
+    private EpubEvents() {
+    }
+}
@@ -0,0 +1,54 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading a book from an epub, including loading its resources.
+ */
+@Name("nl.siegmann.epublib.EpubRead")
+@Label("EPUB Read")
+@Category({"EPUBlib", "Read"})
+@Description("Reading a book from an epub, including loading its resources.")
+public class EpubReadEvent extends jdk.jfr.Event {
+
+    @Label("Book Id")
+    String bookId;
+
+    @Label("Title")
+    String title;
+
+    @Label("Resources")
+    int resourceCount;
+
+    @Label("Size")
+    @Description("The total size of the book's resources.")
+    @DataAmount
+    long size;
+
+    /**
+     * Ends the event and commits it with the data of the given book.
+     *
+     * @param book the book that was read, may be null if reading failed
+     */
+    public void commit(Book book) {
+        end();
+        if (shouldCommit()) {
+            if (book != null) {
+                bookId = EpubEvents.getBookId(book);
+                title = book.getTitle();
+                resourceCount = book.getResources().size();
+                for (Resource resource: book.getResources().getAll()) {
+                    size += resource.getSize();
+                }
+            }
+            commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Writing a book to an epub, including pre-processing it.
+ */
+@Name("nl.siegmann.epublib.EpubWrite")
+@Label("EPUB Write")
+@Category({"EPUBlib", "Write"})
+@Description("Writing a book to an epub, including pre-processing it.")
+public class EpubWriteEvent extends jdk.jfr.Event {
+
+    @Label("Book Id")
+    String bookId;
+
+    @Label("Title")
+    String title;
+
+    @Label("Resources")
+    int resourceCount;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param book the book that was written
+     * @param failed whether writing the book failed
+     */
+    public void commit(Book book, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            bookId = EpubEvents.getBookId(book);
+            title = book.getTitle();
+            resourceCount = book.getResources().size();
+            this.failed = failed;
+            commit();
+        }
+    }
+}
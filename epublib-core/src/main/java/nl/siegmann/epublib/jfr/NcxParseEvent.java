@@ -0,0 +1,57 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Parsing the NCX table of contents of an epub.
+ */
+@Name("nl.siegmann.epublib.NcxParse")
+@Label("NCX Parse")
+@Category({"EPUBlib", "Read"})
+@Description("Parsing the NCX table of contents of an epub.")
+public class NcxParseEvent extends jdk.jfr.Event {
+
+    @Label("Book Id")
+    String bookId;
+
+    @Label("Href")
+    String href;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Table of Contents Entries")
+    int tocEntryCount;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param resource the ncx document
+     * @param book the book the table of contents was read into
+     * @param failed whether reading the ncx document failed
+     */
+    public void commit(Resource resource, Book book, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            bookId = EpubEvents.getBookId(book);
+            href = resource.getHref();
+            size = resource.getSize();
+            if (! failed) {
+                tocEntryCount = book.getTableOfContents().size();
+            }
+            this.failed = failed;
+            commit();
+        }
+    }
+}
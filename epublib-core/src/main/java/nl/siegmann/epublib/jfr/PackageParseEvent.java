@@ -0,0 +1,63 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Parsing the package document of an epub.
+ */
+@Name("nl.siegmann.epublib.PackageParse")
+@Label("Package Parse")
+@Category({"EPUBlib", "Read"})
+@Description("Parsing the package document of an epub.")
+public class PackageParseEvent extends jdk.jfr.Event {
+
+    @Label("Book Id")
+    String bookId;
+
+    @Label("Href")
+    String href;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Manifest Items")
+    int manifestItemCount;
+
+    @Label("Spine Items")
+    int spineItemCount;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param resource the package document
+     * @param book the book the package document was read into
+     * @param failed whether reading the package document failed
+     */
+    public void commit(Resource resource, Book book, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            bookId = EpubEvents.getBookId(book);
+            href = resource.getHref();
+            size = resource.getSize();
+            if (book.getResources() != null) {
+                manifestItemCount = book.getResources().size();
+            }
+            if (book.getSpine() != null) {
+                spineItemCount = book.getSpine().size();
+            }
+            this.failed = failed;
+            commit();
+        }
+    }
+}
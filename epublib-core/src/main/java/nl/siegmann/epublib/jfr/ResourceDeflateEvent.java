@@ -0,0 +1,44 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Compressing and writing a resource to an epub.
+ */
+@Name("nl.siegmann.epublib.ResourceDeflate")
+@Label("Resource Deflate")
+@Category({"EPUBlib", "Write"})
+@Description("Compressing and writing a resource to an epub.")
+public class ResourceDeflateEvent extends jdk.jfr.Event {
+
+    @Label("Href")
+    String href;
+
+    @Label("Media Type")
+    String mediaType;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param resource the resource that was written
+     */
+    public void commit(Resource resource) {
+        end();
+        if (shouldCommit()) {
+            href = resource.getHref();
+            mediaType = resource.getMediaType() == null ? null : resource.getMediaType().getName();
+            size = resource.getSize();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package nl.siegmann.epublib.jfr;
+
+import nl.siegmann.epublib.domain.Resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading and decompressing a resource from an epub.
+ */
+@Name("nl.siegmann.epublib.ResourceInflate")
+@Label("Resource Inflate")
+@Category({"EPUBlib", "Read"})
+@Description("Reading and decompressing a resource from an epub.")
+public class ResourceInflateEvent extends jdk.jfr.Event {
+
+    @Label("Href")
+    String href;
+
+    @Label("Media Type")
+    String mediaType;
+
+    @Label("Compressed Size")
+    @DataAmount
+    long compressedSize;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    /**
+     * Ends the event and commits it.
+     *
+     * @param resource the resource that was read
+     * @param compressedSize the size of the resource within the epub, -1 if not known
+     */
+    public void commit(Resource resource, long compressedSize) {
+        end();
+        if (shouldCommit()) {
+            href = resource.getHref();
+            mediaType = resource.getMediaType() == null ? null : resource.getMediaType().getName();
+            this.compressedSize = compressedSize;
+            size = resource.getSize();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Java Flight Recorder events for the read, parse, process and write phases of epublib.
+ *
+ * The events are only created if the jvm supports Java Flight Recorder, see {@link nl.siegmann.epublib.jfr.EpubEvents}.
+ * When no recording is running they cost next to nothing.
+ */
+package nl.siegmann.epublib.jfr;
@@ -1,5 +1,9 @@
 package nl.siegmann.epublib.domain;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import nl.siegmann.epublib.service.MediatypeService;
 
 import org.junit.Assert;
@@ -52,4 +56,69 @@ public class BookTest {
 
 		Assert.assertEquals(3, book.getContents().size());
 	}
+
+	@Test
+	public void testGetContentsCached() {
+		Book book = new Book();
+		Resource resource1 = new Resource("id1", "Hello, world !".getBytes(), "chapter1.html", MediatypeService.XHTML);
+		book.getSpine().addResource(resource1);
+		List<Resource> contents = book.getContents();
+		Assert.assertSame(contents, book.getContents());
+
+		// changes to other books are not noticed
+		Book other = new Book();
+		other.getSpine().addResource(resource1);
+		other.getSpine().getSpineReferences().clear();
+		Assert.assertSame(contents, book.getContents());
+
+		// changes through the spine, the table of contents and the guide are noticed
+		Resource resource2 = new Resource("id2", "Hello, world !".getBytes(), "chapter2.html", MediatypeService.XHTML);
+		TOCReference chapter = book.getTableOfContents().addSection(resource2, "My first chapter");
+		Assert.assertEquals(Arrays.asList(resource1, resource2), book.getContents());
+
+		Resource resource3 = new Resource("id3", "Hello, world !".getBytes(), "chapter3.html", MediatypeService.XHTML);
+		chapter.getChildren().add(new TOCReference("Section", resource3));
+		Assert.assertEquals(Arrays.asList(resource1, resource2, resource3), book.getContents());
+
+		Resource resource4 = new Resource("id4", "Hello, world !".getBytes(), "chapter4.html", MediatypeService.XHTML);
+		chapter.setResource(resource4);
+		Assert.assertEquals(Arrays.asList(resource1, resource4, resource3), book.getContents());
+
+		book.getSpine().getSpineReferences().remove(0);
+		Assert.assertEquals(Arrays.asList(resource4, resource3), book.getContents());
+
+		Resource resource5 = new Resource("id5", "Hello, world !".getBytes(), "chapter5.html", MediatypeService.XHTML);
+		book.getGuide().addReference(new GuideReference(resource5, GuideReference.FOREWORD, "The Foreword"));
+		Assert.assertEquals(Arrays.asList(resource4, resource3, resource5), book.getContents());
+
+		// resources with the same href are only in the contents once
+		resource3.setHref("chapter4.html");
+		Assert.assertEquals(Arrays.asList(resource4, resource5), book.getContents());
+	}
+
+	@Test
+	public void testGetContentsFollowsPassedLists() {
+		Book book = new Book();
+		List<SpineReference> spineReferences = new ArrayList<SpineReference>();
+		book.setSpine(new Spine(spineReferences));
+		List<TOCReference> tocReferences = new ArrayList<TOCReference>();
+		book.setTableOfContents(new TableOfContents(tocReferences));
+		Assert.assertTrue(book.getContents().isEmpty());
+
+		Resource resource1 = new Resource("id1", "Hello, world !".getBytes(), "chapter1.html", MediatypeService.XHTML);
+		spineReferences.add(new SpineReference(resource1));
+		Assert.assertEquals(Arrays.asList(resource1), book.getContents());
+
+		Resource resource2 = new Resource("id2", "Hello, world !".getBytes(), "chapter2.html", MediatypeService.XHTML);
+		List<TOCReference> children = new ArrayList<TOCReference>();
+		tocReferences.add(new TOCReference("chapter1", resource1, null, children));
+		children.add(new TOCReference("section1", resource2));
+		Assert.assertEquals(Arrays.asList(resource1, resource2), book.getContents());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testGetContentsUnmodifiable() {
+		Book book = new Book();
+		book.getContents().add(new Resource("chapter1.html"));
+	}
 }
@@ -0,0 +1,74 @@
+package nl.siegmann.epublib.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TableOfContentsBuilderTest {
+
+	private static void assertSameStructure(List<TOCReference> expected, List<TOCReference> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+			assertSame(expected.get(i).getResource(), actual.get(i).getResource());
+			assertSameStructure(expected.get(i).getChildren(), actual.get(i).getChildren());
+		}
+	}
+
+	@Test
+	public void testSameAsAddSection() {
+		Random random = new Random(42);
+		List<Resource> resources = new ArrayList<Resource>();
+		for (int i = 0; i < 20; i++) {
+			resources.add(new Resource("chapter" + i + ".html"));
+		}
+		for (int i = 0; i < 20; i++) {
+			// both start from the same existing table of contents
+			TableOfContents expected = new TableOfContents();
+			TableOfContents actual = new TableOfContents();
+			expected.addSection(resources.get(0), "a/b");
+			actual.addSection(resources.get(0), "a/b");
+			TableOfContentsBuilder builder = new TableOfContentsBuilder(actual);
+			for (int j = 0; j < 100; j++) {
+				String[] path = new String[1 + random.nextInt(3)];
+				for (int k = 0; k < path.length; k++) {
+					path[k] = String.valueOf((char) ('a' + random.nextInt(4)));
+				}
+				Resource resource = resources.get(random.nextInt(resources.size()));
+				TOCReference expectedReference = expected.addSection(resource, path);
+				TOCReference actualReference = builder.addSection(resource, path);
+				assertEquals(expectedReference.getTitle(), actualReference.getTitle());
+			}
+			assertSame(actual, builder.build());
+			assertSameStructure(expected.getTocReferences(), actual.getTocReferences());
+		}
+	}
+
+	@Test
+	public void testWide() {
+		Resource resource = new Resource("chapter.html");
+		TableOfContentsBuilder builder = new TableOfContentsBuilder();
+		for (int i = 0; i < 100000; i++) {
+			builder.addSection(resource, "part/section" + i);
+		}
+		builder.addSection(resource, "part/section5/subsection");
+		TableOfContents tableOfContents = builder.build();
+		assertEquals(1, tableOfContents.getTocReferences().size());
+		List<TOCReference> sections = tableOfContents.getTocReferences().get(0).getChildren();
+		assertEquals(100000, sections.size());
+		assertEquals("subsection", sections.get(5).getChildren().get(0).getTitle());
+		assertEquals(100002, tableOfContents.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBuilt() {
+		TableOfContentsBuilder builder = new TableOfContentsBuilder();
+		builder.build();
+		builder.addSection(new Resource("chapter.html"), "a");
+	}
+}
@@ -0,0 +1,241 @@
+package nl.siegmann.epublib.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TableOfContentsIndexTest {
+
+	private static Resource createResource(String href) {
+		return new Resource(href, "Hello, world !".getBytes(), href, null);
+	}
+
+	/**
+	 * chapter1 (1.html)
+	 *   section1.1 (1.html#s1)
+	 *   section1.2 (2.html)
+	 *     section1.2.1 (3.html)
+	 * chapter2 (4.html)
+	 * chapter3 (1.html)
+	 */
+	private static Book createBook() {
+		Book book = new Book();
+		Resource resource1 = createResource("1.html");
+		Resource resource2 = createResource("2.html");
+		Resource resource3 = createResource("3.html");
+		Resource resource4 = createResource("4.html");
+		TOCReference chapter1 = book.addSection("chapter1", resource1);
+		book.addSection(chapter1, "section1.1", resource1).setFragmentId("s1");
+		TOCReference section12 = book.addSection(chapter1, "section1.2", resource2);
+		book.addSection(section12, "section1.2.1", resource3);
+		book.addSection("chapter2", resource4);
+		book.addSection("chapter3", resource1);
+		return book;
+	}
+
+	@Test
+	public void testStructure() {
+		Book book = createBook();
+		TableOfContentsIndex index = book.getTableOfContents().getIndex();
+		assertEquals(6, index.size());
+		assertEquals(3, index.getMaxDepth());
+		List<String> titles = new ArrayList<String>();
+		for (TOCReference tocReference: index.getTocReferences()) {
+			titles.add(tocReference.getTitle());
+		}
+		assertEquals(Arrays.asList("chapter1", "section1.1", "section1.2", "section1.2.1", "chapter2", "chapter3"), titles);
+		int[] parents = new int[] {-1, 0, 0, 2, -1, -1};
+		int[] depths = new int[] {0, 1, 1, 2, 0, 0};
+		int[] subtreeEnds = new int[] {4, 2, 4, 4, 5, 6};
+		for (int entry = 0; entry < index.size(); entry++) {
+			assertEquals(parents[entry], index.getParent(entry));
+			assertEquals(depths[entry], index.getDepth(entry));
+			assertEquals(subtreeEnds[entry], index.getSubtreeEnd(entry));
+			assertEquals(entry, index.indexOf(index.getTocReference(entry)));
+		}
+		assertEquals(Arrays.asList(index.getTocReference(2), index.getTocReference(3)), index.getSubtree(2));
+		assertEquals(-1, index.indexOf(new TOCReference()));
+	}
+
+	@Test
+	public void testEntriesByHref() {
+		TableOfContentsIndex index = createBook().getTableOfContents().getIndex();
+		assertArrayEquals(new int[] {0, 1, 5}, index.getEntries("1.html"));
+		assertArrayEquals(new int[] {0, 5}, index.getEntries("1.html", null));
+		assertArrayEquals(new int[] {1}, index.getEntries("1.html", "s1"));
+		assertArrayEquals(new int[0], index.getEntries("5.html"));
+		assertEquals(2, index.getFirstEntry("2.html"));
+		assertEquals(-1, index.getFirstEntry(null));
+	}
+
+	@Test
+	public void testEntryBySpinePos() {
+		Book book = createBook();
+		Resource extra = createResource("extra.html");
+		book.getSpine().addResource(extra);
+		book.getSpine().getSpineReferences().add(0, new SpineReference(createResource("cover.html")));
+		// spine: cover.html, 1.html, 2.html, 3.html, 4.html, extra.html
+		TableOfContentsIndex index = book.getTableOfContentsIndex();
+		assertEquals(-1, index.getEntryBySpinePos(0));
+		assertEquals(0, index.getEntryBySpinePos(1));
+		assertEquals(2, index.getEntryBySpinePos(2));
+		assertEquals(3, index.getEntryBySpinePos(3));
+		assertEquals(4, index.getEntryBySpinePos(4));
+		assertEquals(4, index.getEntryBySpinePos(5));
+		assertEquals(-1, book.getTableOfContents().getIndex().getEntryBySpinePos(1));
+	}
+
+	@Test
+	public void testIndexFollowsChanges() {
+		Book book = createBook();
+		TableOfContents tableOfContents = book.getTableOfContents();
+		TableOfContentsIndex index = tableOfContents.getIndex();
+		assertSame(index, tableOfContents.getIndex());
+
+		TOCReference chapter2 = index.getTocReference(4);
+		chapter2.getChildren().add(new TOCReference("section2.1", createResource("5.html")));
+		assertNotSame(index, tableOfContents.getIndex());
+		assertEquals(7, tableOfContents.size());
+		assertArrayEquals(new int[] {5}, tableOfContents.getIndex().getEntries("5.html"));
+
+		chapter2.setFragmentId("c2");
+		assertArrayEquals(new int[] {4}, tableOfContents.getIndex().getEntries("4.html", "c2"));
+
+		tableOfContents.setTocReferences(new ArrayList<TOCReference>());
+		assertEquals(0, tableOfContents.size());
+		assertEquals(0, tableOfContents.calculateDepth());
+	}
+
+	@Test
+	public void testSizeFollowsChangesToPassedLists() {
+		List<TOCReference> tocReferences = new ArrayList<TOCReference>();
+		TableOfContents tableOfContents = new TableOfContents(tocReferences);
+		assertEquals(0, tableOfContents.size());
+		TOCReference chapter1 = new TOCReference("chapter1", createResource("1.html"));
+		tocReferences.add(chapter1);
+		chapter1.getChildren().add(new TOCReference("section1.1", createResource("2.html")));
+		assertEquals(2, tableOfContents.size());
+		assertEquals(2, tableOfContents.calculateDepth());
+		assertEquals(2, tableOfContents.getAllUniqueResources().size());
+	}
+
+	@Test
+	public void testIndexPerTableOfContents() {
+		Book book1 = createBook();
+		Book book2 = createBook();
+		TableOfContentsIndex index = book1.getTableOfContents().getIndex();
+		TableOfContentsIndex bookIndex = book1.getTableOfContentsIndex();
+		book2.getTableOfContents().getTocReferences().get(0).setFragmentId("c1");
+		book2.getSpine().getSpineReferences().remove(0);
+		assertSame(index, book1.getTableOfContents().getIndex());
+		assertSame(bookIndex, book1.getTableOfContentsIndex());
+
+		// the accessors use the index
+		assertEquals(6, book1.getTableOfContents().size());
+		assertEquals(3, book1.getTableOfContents().calculateDepth());
+		assertEquals(4, book1.getTableOfContents().getAllUniqueResources().size());
+		assertSame(index, book1.getTableOfContents().getIndex());
+	}
+
+	@Test
+	public void testIndexFollowsHrefChanges() {
+		Book book = createBook();
+		TableOfContents tableOfContents = book.getTableOfContents();
+		Resource resource4 = tableOfContents.getIndex().getTocReference(4).getResource();
+		assertEquals(4, book.getTableOfContentsIndex().getEntryBySpinePos(3));
+		resource4.setHref("5.html");
+		assertArrayEquals(new int[] {4}, tableOfContents.getIndex().getEntries("5.html"));
+		assertEquals(-1, tableOfContents.getIndex().getFirstEntry("4.html"));
+		assertEquals(4, book.getTableOfContentsIndex().getEntryBySpinePos(3));
+	}
+
+	@Test
+	public void testIndexFollowsMovedReferences() {
+		Book book = createBook();
+		TableOfContents tableOfContents = book.getTableOfContents();
+		TOCReference chapter2 = tableOfContents.getIndex().getTocReference(4);
+		TableOfContents other = new TableOfContents();
+		other.addTOCReference(chapter2);
+		assertEquals(1, other.size());
+		assertEquals(6, tableOfContents.size());
+
+		// the reference is in both, its changes are noticed by both
+		chapter2.getChildren().add(new TOCReference("section2.1", createResource("5.html")));
+		assertEquals(2, other.size());
+		assertEquals(7, tableOfContents.size());
+	}
+
+	@Test
+	public void testPassedListsAreNotIndexed() {
+		TableOfContents tableOfContents = new TableOfContents(new ArrayList<TOCReference>());
+		assertNotSame(tableOfContents.getIndex(), tableOfContents.getIndex());
+		tableOfContents = new TableOfContents();
+		tableOfContents.addTOCReference(new TOCReference("chapter1", createResource("1.html"), null, new ArrayList<TOCReference>()));
+		assertNotSame(tableOfContents.getIndex(), tableOfContents.getIndex());
+		tableOfContents.getTocReferences().get(0).setChildren(tableOfContents.getTocReferences().get(0).getChildren());
+		assertNotSame(tableOfContents.getIndex(), tableOfContents.getIndex());
+		tableOfContents.getTocReferences().set(0, new TOCReference("chapter1", createResource("1.html")));
+		assertSame(tableOfContents.getIndex(), tableOfContents.getIndex());
+	}
+
+	private static void addRandomChildren(List<TOCReference> tocReferences, int depth, Random random, List<Resource> resources) {
+		int count = random.nextInt(5);
+		for (int i = 0; i < count; i++) {
+			TOCReference tocReference = new TOCReference("t" + i, random.nextInt(4) == 0 ? null : resources.get(random.nextInt(resources.size())));
+			tocReferences.add(tocReference);
+			if (depth < 5) {
+				addRandomChildren(tocReference.getChildren(), depth + 1, random, resources);
+			}
+		}
+	}
+
+	private static int getDepth(List<TOCReference> tocReferences) {
+		int result = 0;
+		for (TOCReference tocReference: tocReferences) {
+			result = Math.max(result, 1 + getDepth(tocReference.getChildren()));
+		}
+		return result;
+	}
+
+	private static void addAll(List<TOCReference> tocReferences, List<TOCReference> result) {
+		for (TOCReference tocReference: tocReferences) {
+			result.add(tocReference);
+			addAll(tocReference.getChildren(), result);
+		}
+	}
+
+	@Test
+	public void testRandomTrees() {
+		Random random = new Random(42);
+		List<Resource> resources = new ArrayList<Resource>();
+		for (int i = 0; i < 10; i++) {
+			resources.add(createResource(i + ".html"));
+		}
+		for (int i = 0; i < 50; i++) {
+			TableOfContents tableOfContents = new TableOfContents();
+			addRandomChildren(tableOfContents.getTocReferences(), 0, random, resources);
+			TableOfContentsIndex index = tableOfContents.getIndex();
+			List<TOCReference> all = new ArrayList<TOCReference>();
+			addAll(tableOfContents.getTocReferences(), all);
+			assertEquals(all, index.getTocReferences());
+			assertEquals(getDepth(tableOfContents.getTocReferences()), index.getMaxDepth());
+			for (int entry = 0; entry < index.size(); entry++) {
+				List<TOCReference> subtree = new ArrayList<TOCReference>();
+				addAll(Arrays.asList(index.getTocReference(entry)), subtree);
+				assertEquals(subtree, index.getSubtree(entry));
+				int parent = index.getParent(entry);
+				if (parent >= 0) {
+					assertEquals(true, index.getTocReference(parent).getChildren().contains(index.getTocReference(entry)));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BookCacheTest {
+
+	private File testbook;
+
+	@Before
+	public void setUp() throws IOException {
+		testbook = createTestbook();
+	}
+
+	@After
+	public void tearDown() {
+		testbook.delete();
+	}
+
+	private static File createTestbook() throws IOException {
+		File result = File.createTempFile("testbook", ".epub");
+		OutputStream out = new FileOutputStream(result);
+		try {
+			IOUtil.copy(BookCacheTest.class.getResourceAsStream("/testbook1.epub"), out);
+		} finally {
+			out.close();
+		}
+		return result;
+	}
+
+	@Test
+	public void testHit() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		Book book = bookCache.get(testbook);
+		Assert.assertNotNull(book);
+		Assert.assertTrue(book.getTableOfContents().size() > 0);
+		Book cachedBook = bookCache.get(testbook);
+		Assert.assertNotSame(book, cachedBook);
+		Assert.assertEquals(book.getTitle(), cachedBook.getTitle());
+		Assert.assertEquals(book.getResources().size(), cachedBook.getResources().size());
+		Assert.assertEquals(1, bookCache.getBookCount());
+		Assert.assertTrue(bookCache.getSize() > 0);
+		BookCache.Statistics statistics = bookCache.getStatistics();
+		Assert.assertEquals(1, statistics.getHitCount());
+		Assert.assertEquals(1, statistics.getMissCount());
+		Assert.assertEquals(0.5, statistics.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testFileTouched() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		bookCache.get(testbook);
+		Assert.assertTrue(testbook.setLastModified(testbook.lastModified() - 10000));
+		bookCache.get(testbook);
+		Assert.assertEquals(1, bookCache.getBookCount());
+		Assert.assertEquals(1, bookCache.getStatistics().getMissCount());
+		Assert.assertEquals(1, bookCache.getStatistics().getHitCount());
+	}
+
+	@Test
+	public void testFileChanged() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		Book book = bookCache.get(testbook);
+		long lastModified = testbook.lastModified();
+		// the same entries with another title
+		ZipFile zipFile = new ZipFile(testbook);
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(data);
+		try {
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+				ZipEntry entry = entries.nextElement();
+				out.putNextEntry(new ZipEntry(entry.getName()));
+				byte[] entryData = IOUtil.toByteArray(zipFile.getInputStream(entry));
+				if (entry.getName().endsWith(".opf")) {
+					entryData = new String(entryData, "UTF-8").replace(book.getTitle(), "Changed title").getBytes("UTF-8");
+				}
+				out.write(entryData);
+			}
+		} finally {
+			out.close();
+			zipFile.close();
+		}
+		OutputStream fileOut = new FileOutputStream(testbook);
+		try {
+			data.writeTo(fileOut);
+		} finally {
+			fileOut.close();
+		}
+		Assert.assertTrue(testbook.setLastModified(lastModified - 10000));
+		Book changedBook = bookCache.get(testbook);
+		Assert.assertEquals(2, bookCache.getStatistics().getMissCount());
+		Assert.assertEquals(1, bookCache.getBookCount());
+		Assert.assertEquals("Changed title", changedBook.getTitle());
+	}
+
+	@Test
+	public void testCopies() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		Book book = bookCache.get(testbook);
+		long size = bookCache.getSize();
+		int resourceCount = book.getResources().size();
+		for (Resource resource: book.getResources().getAll()) {
+			resource.getData();
+		}
+		book.getResources().remove(book.getResources().getAll().iterator().next().getHref());
+		book.getMetadata().setTitles(null);
+		Book otherBook = bookCache.get(testbook);
+		Assert.assertEquals(resourceCount, otherBook.getResources().size());
+		Assert.assertFalse(otherBook.getMetadata().getTitles().isEmpty());
+		// the data loaded by a caller belongs to its copy
+		Assert.assertEquals(size, bookCache.getSize());
+	}
+
+	@Test
+	public void testSingleLoad() throws Exception {
+		final BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Book>> books = new ArrayList<Future<Book>>();
+			for (int i = 0; i < 16; i++) {
+				books.add(executor.submit(new Callable<Book>() {
+
+					@Override
+					public Book call() throws IOException {
+						return bookCache.get(testbook);
+					}
+				}));
+			}
+			Book book = books.get(0).get();
+			for (Future<Book> future: books) {
+				Assert.assertEquals(book.getTitle(), future.get().getTitle());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, bookCache.getStatistics().getMissCount());
+		Assert.assertEquals(15, bookCache.getStatistics().getHitCount());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		File otherTestbook = createTestbook();
+		try {
+			BookCache bookCache = new BookCache(Long.MAX_VALUE);
+			Book book = bookCache.get(testbook);
+			long bookSize = bookCache.getSize();
+			bookCache.setMaxSize(bookSize * 3 / 2);
+			bookCache.get(otherTestbook);
+			Assert.assertEquals(1, bookCache.getBookCount());
+			Assert.assertEquals(1, bookCache.getStatistics().getEvictionCount());
+			Assert.assertNotSame(book, bookCache.get(testbook));
+		} finally {
+			otherTestbook.delete();
+		}
+	}
+
+	@Test
+	public void testInvalidate() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		Book book = bookCache.get(testbook);
+		bookCache.invalidate(testbook);
+		Assert.assertEquals(0, bookCache.getBookCount());
+		Assert.assertEquals(0, bookCache.getSize());
+		Assert.assertNotSame(book, bookCache.get(testbook));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAnEpub() throws IOException {
+		BookCache bookCache = new BookCache(Long.MAX_VALUE);
+		OutputStream out = new FileOutputStream(testbook);
+		out.write(new byte[] {1, 2, 3});
+		out.close();
+		try {
+			bookCache.get(testbook);
+		} finally {
+			Assert.assertEquals(1, bookCache.getStatistics().getLoadFailureCount());
+			Assert.assertEquals(0, bookCache.getBookCount());
+		}
+	}
+}
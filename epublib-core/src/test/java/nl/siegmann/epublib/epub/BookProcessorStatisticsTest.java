@@ -0,0 +1,78 @@
+package nl.siegmann.epublib.epub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.junit.Test;
+
+public class BookProcessorStatisticsTest {
+
+	@Test
+	public void testProcessBook() {
+		Book book = new Book();
+		final Resource resource1 = book.addResource(new Resource("id1", "Hello, world !".getBytes(), "chapter1.html", MediatypeService.XHTML));
+		book.addResource(new Resource("id2", "Bye".getBytes(), "chapter2.html", MediatypeService.XHTML));
+
+		BookProcessorPipeline bookProcessorPipeline = new BookProcessorPipeline();
+		bookProcessorPipeline.addBookProcessor(new BookProcessor() {
+			@Override
+			public Book processBook(Book book) {
+				resource1.setData("Hi".getBytes());
+				return book;
+			}
+		});
+		bookProcessorPipeline.addBookProcessor(new BookProcessor() {
+			@Override
+			public Book processBook(Book book) {
+				throw new IllegalStateException("test failure");
+			}
+		});
+		BookProcessorStatistics statistics = new BookProcessorStatistics();
+		bookProcessorPipeline.setStatistics(statistics);
+		bookProcessorPipeline.processBook(book);
+		bookProcessorPipeline.processBook(book);
+
+		assertEquals(2, statistics.getBookStatistics().size());
+		List<BookProcessorStatistics.ProcessorStatistics> processorStatistics = statistics.getBookStatistics().get(0).getProcessorStatistics();
+		assertEquals(2, processorStatistics.size());
+		assertEquals(1, processorStatistics.get(0).getResourcesTouched());
+		assertEquals(17, processorStatistics.get(0).getBytesIn());
+		assertEquals(5, processorStatistics.get(0).getBytesOut());
+		assertEquals(0, processorStatistics.get(0).getErrorCount());
+		assertEquals(0, processorStatistics.get(1).getResourcesTouched());
+		assertEquals(1, processorStatistics.get(1).getErrorCount());
+		assertNotNull(processorStatistics.get(1).getLastError());
+
+		List<BookProcessorStatistics.ProcessorStatistics> totals = statistics.getProcessorTotals();
+		assertEquals(2, totals.size());
+		assertEquals(2, totals.get(0).getInvocations());
+		assertEquals(2, totals.get(1).getErrorCount());
+
+		String json = statistics.toJson();
+		assertTrue(json, json.contains("\"lastError\": \"java.lang.IllegalStateException: test failure\""));
+	}
+
+	@Test
+	public void testMaxBookCount() {
+		BookProcessorPipeline bookProcessorPipeline = new BookProcessorPipeline();
+		bookProcessorPipeline.addBookProcessor(BookProcessor.IDENTITY_BOOKPROCESSOR);
+		BookProcessorStatistics statistics = new BookProcessorStatistics(3);
+		bookProcessorPipeline.setStatistics(statistics);
+		for (int i = 0; i < 10; i++) {
+			bookProcessorPipeline.processBook(new Book());
+		}
+		assertEquals(3, statistics.getBookStatistics().size());
+		List<BookProcessorStatistics.ProcessorStatistics> totals = statistics.getProcessorTotals();
+		assertEquals(1, totals.size());
+		assertEquals(10, totals.get(0).getInvocations());
+		statistics.clear();
+		assertEquals(0, statistics.getProcessorTotals().size());
+	}
+}
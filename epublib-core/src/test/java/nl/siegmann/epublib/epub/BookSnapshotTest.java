@@ -0,0 +1,177 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import javax.xml.namespace.QName;
+
+import nl.siegmann.epublib.domain.Author;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Date;
+import nl.siegmann.epublib.domain.GuideReference;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.LazyResource;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Meta;
+import nl.siegmann.epublib.domain.Relator;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.TextDirection;
+import nl.siegmann.epublib.domain.Title;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BookSnapshotTest {
+
+	private static Book createBook() throws IOException {
+		Book book = new Book();
+		book.getMetadata().addTitle(new Title("Snapshot book", "title", "en", TextDirection.LEFT_TO_RIGHT));
+		Author author = new Author("Joe", "Tester");
+		author.setRelator(Relator.EDITOR);
+		book.getMetadata().addAuthor(author);
+		book.getMetadata().addDate(new Date("2010-05-27", Date.Event.PUBLICATION));
+		book.getMetadata().addIdentifier(new Identifier(Identifier.Scheme.ISBN, "1234", "BookId"));
+		book.getMetadata().addPublisher("Publisher");
+		book.getMetadata().getOtherProperties().put(new QName("http://example.com", "extra", "ex"), "value");
+		book.getMetadata().addItem(new Meta("2020-01-01T00:00:00Z", "dcterms:modified"));
+		Resource chapter1 = new Resource("chapter1", "<html>Chapter 1</html>".getBytes(), "chapter1.html", MediatypeService.XHTML);
+		Resource chapter2 = new Resource("chapter2", "<html>Chapter 2</html>".getBytes(), "text/chapter2.html", MediatypeService.XHTML);
+		chapter2.setHref("text/chapter2-renamed.html");
+		Resource custom = new Resource("custom", new byte[] {1, 2, 3}, "data.bin", new MediaType("application/x-test", ".bin"));
+		book.addSection("Chapter 1", chapter1);
+		TOCReference section = book.addSection("Chapter 2", chapter2);
+		section.addChildSection(new TOCReference("Section 2.1", chapter2, "section1"));
+		book.addResource(custom);
+		book.getGuide().addReference(new GuideReference(chapter1, GuideReference.TEXT, "Start"));
+		book.getSpine().getSpineReferences().get(1).setLinear(false);
+		book.setCoverImage(new Resource("cover", new byte[] {4, 5}, "cover.png", MediatypeService.PNG));
+		return book;
+	}
+
+	private static void assertSameBook(Book expected, Book actual) throws IOException {
+		Assert.assertEquals(expected.getTitle(), actual.getTitle());
+		Assert.assertEquals(TextDirection.LEFT_TO_RIGHT, actual.getMetadata().getTitles().get(0).getDir());
+		Assert.assertEquals(expected.getMetadata().getAuthors(), actual.getMetadata().getAuthors());
+		Assert.assertEquals(Relator.EDITOR, actual.getMetadata().getAuthors().get(0).getRelator());
+		Assert.assertEquals(expected.getMetadata().getDates().toString(), actual.getMetadata().getDates().toString());
+		Assert.assertEquals(expected.getMetadata().getIdentifiers(), actual.getMetadata().getIdentifiers());
+		Assert.assertEquals(expected.getMetadata().getPublishers(), actual.getMetadata().getPublishers());
+		Assert.assertEquals(expected.getMetadata().getOtherProperties(), actual.getMetadata().getOtherProperties());
+		Assert.assertEquals("dcterms:modified", actual.getMetadata().getMetadata().get(0).getProperty());
+
+		Assert.assertEquals(expected.getResources().getAllHrefs().size(), actual.getResources().getAllHrefs().size());
+		for (Resource resource: expected.getResources().getAll()) {
+			Resource actualResource = actual.getResources().getByHref(resource.getHref());
+			Assert.assertNotNull(resource.getHref(), actualResource);
+			Assert.assertEquals(resource.getId(), actualResource.getId());
+			Assert.assertEquals(resource.getOriginalHref(), actualResource.getOriginalHref());
+			Assert.assertEquals(resource.getMediaType(), actualResource.getMediaType());
+			Assert.assertEquals(resource.getSize(), actualResource.getSize());
+			Assert.assertArrayEquals(resource.getData(), actualResource.getData());
+		}
+		Assert.assertSame(MediatypeService.XHTML, actual.getResources().getByHref("chapter1.html").getMediaType());
+
+		Assert.assertEquals(expected.getSpine().size(), actual.getSpine().size());
+		for (int i = 0; i < expected.getSpine().size(); i++) {
+			Assert.assertEquals(expected.getSpine().getResource(i).getHref(), actual.getSpine().getResource(i).getHref());
+			Assert.assertEquals(expected.getSpine().getSpineReferences().get(i).isLinear(), actual.getSpine().getSpineReferences().get(i).isLinear());
+			// the references point to the resources of the book
+			Assert.assertSame(actual.getResources().getByHref(actual.getSpine().getResource(i).getHref()), actual.getSpine().getResource(i));
+		}
+		List<TOCReference> expectedTocReferences = expected.getTableOfContents().getIndex().getTocReferences();
+		List<TOCReference> actualTocReferences = actual.getTableOfContents().getIndex().getTocReferences();
+		Assert.assertEquals(expectedTocReferences.size(), actualTocReferences.size());
+		for (int i = 0; i < expectedTocReferences.size(); i++) {
+			Assert.assertEquals(expectedTocReferences.get(i).getTitle(), actualTocReferences.get(i).getTitle());
+			Assert.assertEquals(expectedTocReferences.get(i).getCompleteHref(), actualTocReferences.get(i).getCompleteHref());
+		}
+		Assert.assertEquals(expected.getGuide().getReferences().size(), actual.getGuide().getReferences().size());
+		Assert.assertEquals(GuideReference.TEXT, actual.getGuide().getReferences().get(0).getType());
+		Assert.assertEquals(expected.getCoverImage().getHref(), actual.getCoverImage().getHref());
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		Book book = createBook();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BookSnapshot.write(book, out);
+		// the snapshot can be followed by other data in the stream
+		out.write(42);
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertSameBook(book, BookSnapshot.read(in));
+		Assert.assertEquals(42, in.read());
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		Book book = createBook();
+		File file = File.createTempFile("snapshot", ".bin");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				BookSnapshot.write(book, out);
+			} finally {
+				out.close();
+			}
+			Book restored = BookSnapshot.read(file);
+			Resource chapter1 = restored.getResources().getByHref("chapter1.html");
+			Assert.assertEquals(SnapshotResource.class, chapter1.getClass());
+			assertSameBook(book, restored);
+			// the data is loaded again after the resource was closed
+			chapter1.close();
+			Assert.assertArrayEquals("<html>Chapter 1</html>".getBytes(), chapter1.getData());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReferenceArchive() throws IOException {
+		File testbook = File.createTempFile("testbook", ".epub");
+		try {
+			OutputStream out = new FileOutputStream(testbook);
+			IOUtil.copy(BookSnapshotTest.class.getResourceAsStream("/testbook1.epub"), out);
+			out.close();
+			ZipFile zipFile = new ZipFile(testbook);
+			Book book;
+			try {
+				book = new EpubReader().readLazy(zipFile, "UTF-8", Arrays.asList(MediatypeService.MEDIA_TYPES));
+			} finally {
+				zipFile.close();
+			}
+			Resource changed = book.getResources().getByHref("chapter1.html");
+			changed.setData("<html>changed</html>".getBytes());
+
+			ByteArrayOutputStream referenced = new ByteArrayOutputStream();
+			BookSnapshot.write(book, referenced, true);
+			ByteArrayOutputStream included = new ByteArrayOutputStream();
+			BookSnapshot.write(book, included);
+			Assert.assertTrue(referenced.size() < included.size());
+
+			Book restored = BookSnapshot.read(new ByteArrayInputStream(referenced.toByteArray()));
+			for (Resource resource: book.getResources().getAll()) {
+				Resource restoredResource = restored.getResources().getByHref(resource.getHref());
+				Assert.assertEquals(resource.getClass() == LazyResource.class && resource != changed, restoredResource instanceof LazyResource);
+				Assert.assertArrayEquals(resource.getHref(), resource.getData(), restoredResource.getData());
+			}
+			Assert.assertEquals(book.getTableOfContents().size(), restored.getTableOfContents().size());
+		} finally {
+			testbook.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws IOException {
+		BookSnapshot.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+	}
+}
@@ -0,0 +1,105 @@
+package nl.siegmann.epublib.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.epub.BookProcessorPipeline;
+import nl.siegmann.epublib.epub.EpubReader;
+import nl.siegmann.epublib.epub.EpubWriter;
+
+import org.junit.Test;
+
+public class EpubEventsTest {
+
+	@Test
+	public void testReadEvents() throws Exception {
+		assumeTrue(EpubEvents.JFR_AVAILABLE);
+		List<BookProcessor> bookProcessors = new ArrayList<BookProcessor>();
+		bookProcessors.add(BookProcessor.IDENTITY_BOOKPROCESSOR);
+		EpubReader epubReader = new EpubReader(new BookProcessorPipeline(bookProcessors));
+
+		File dump = File.createTempFile("epublib", ".jfr");
+		try {
+			Book book;
+			try (Recording recording = new Recording()) {
+				recording.enable("nl.siegmann.epublib.EpubRead").withoutThreshold();
+				recording.enable("nl.siegmann.epublib.PackageParse").withoutThreshold();
+				recording.enable("nl.siegmann.epublib.ResourceInflate").withoutThreshold();
+				recording.enable("nl.siegmann.epublib.BookProcess").withoutThreshold();
+				recording.start();
+				book = epubReader.read(EpubEventsTest.class.getResourceAsStream("/testbook1.epub"));
+				recording.stop();
+				recording.dump(dump.toPath());
+			}
+			Map<String, Integer> eventCounts = new HashMap<String, Integer>();
+			for (RecordedEvent event: RecordingFile.readAllEvents(dump.toPath())) {
+				String name = event.getEventType().getName();
+				Integer count = eventCounts.get(name);
+				eventCounts.put(name, count == null ? 1 : count + 1);
+				if (name.equals("nl.siegmann.epublib.EpubRead")) {
+					assertEquals(book.getTitle(), event.getString("title"));
+					assertEquals(book.getResources().size(), event.getInt("resourceCount"));
+				}
+			}
+			assertEquals(Integer.valueOf(1), eventCounts.get("nl.siegmann.epublib.EpubRead"));
+			assertEquals(Integer.valueOf(1), eventCounts.get("nl.siegmann.epublib.PackageParse"));
+			assertEquals(Integer.valueOf(1), eventCounts.get("nl.siegmann.epublib.BookProcess"));
+			assertTrue(eventCounts.get("nl.siegmann.epublib.ResourceInflate") >= book.getResources().size());
+		} finally {
+			dump.delete();
+		}
+	}
+
+	@Test
+	public void testNoEventWhenNotRecording() {
+		assumeTrue(EpubEvents.JFR_AVAILABLE);
+		assertNull(EpubEvents.beginEpubRead());
+		assertNull(EpubEvents.beginResourceInflate());
+	}
+
+	@Test
+	public void testFailedWriteEvent() throws Exception {
+		assumeTrue(EpubEvents.JFR_AVAILABLE);
+		EpubWriter epubWriter = new EpubWriter(new BookProcessorPipeline() {
+			@Override
+			public Book processBook(Book book) {
+				throw new IllegalStateException("test failure");
+			}
+		});
+		File dump = File.createTempFile("epublib", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable("nl.siegmann.epublib.EpubWrite").withoutThreshold();
+				recording.start();
+				try {
+					epubWriter.write(new Book(), new ByteArrayOutputStream());
+					fail("expected the write to fail");
+				} catch (IllegalStateException e) {
+					// expected
+				}
+				recording.stop();
+				recording.dump(dump.toPath());
+			}
+			List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+			assertEquals(1, events.size());
+			assertTrue(events.get(0).getBoolean("failed"));
+		} finally {
+			dump.delete();
+		}
+	}
+}
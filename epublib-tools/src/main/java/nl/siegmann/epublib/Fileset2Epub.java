@@ -2,6 +2,8 @@ package nl.siegmann.epublib;
 
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,8 +15,10 @@ import nl.siegmann.epublib.domain.Author;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Identifier;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Title;
 import nl.siegmann.epublib.epub.BookProcessor;
 import nl.siegmann.epublib.epub.BookProcessorPipeline;
+import nl.siegmann.epublib.epub.BookProcessorStatistics;
 import nl.siegmann.epublib.epub.EpubReader;
 import nl.siegmann.epublib.epub.EpubWriter;
 import nl.siegmann.epublib.fileset.FilesetBookCreator;
@@ -36,6 +40,7 @@ public class Fileset2Epub {
         String type = "";
         String isbn = "";
         String inputEncoding = Constants.CHARACTER_ENCODING;
+        String statisticsLocation = "";
         List<String> bookProcessorClassNames = new ArrayList<String>();
 
         for(int i = 0; i < args.length; i++) {
@@ -59,6 +64,8 @@ public class Fileset2Epub {
                 isbn = args[++i];
             } else if(args[i].equalsIgnoreCase("--type")) {
                 type = args[++i];
+            } else if(args[i].equalsIgnoreCase("--statistics")) {
+                statisticsLocation = args[++i];
             }
         }
         if(StringUtils.isBlank(inputLocation) || StringUtils.isBlank(outLocation)) {
@@ -67,6 +74,9 @@ public class Fileset2Epub {
         BookProcessorPipeline epubCleaner = new DefaultBookProcessorPipeline();
         epubCleaner.addBookProcessors(createBookProcessors(bookProcessorClassNames));
         EpubWriter epubWriter = new EpubWriter(epubCleaner);
+        if(StringUtils.isNotBlank(statisticsLocation)) {
+            epubCleaner.setStatistics(new BookProcessorStatistics());
+        }
         if(! StringUtils.isBlank(xslFile)) {
             epubCleaner.addBookProcessor(new XslBookProcessor(xslFile));
         }
@@ -79,7 +89,7 @@ public class Fileset2Epub {
         if("chm".equals(type)) {
             book = ChmParser.parseChm(VFSUtil.resolveFileObject(inputLocation), inputEncoding);
         } else if ("epub".equals(type)) {
-            book = new EpubReader().readEpub(VFSUtil.resolveInputStream(inputLocation), inputEncoding);
+            book = new EpubReader().read(VFSUtil.resolveInputStream(inputLocation), inputEncoding);
         } else {
             book = FilesetBookCreator.createBookFromDirectory(VFSUtil.resolveFileObject(inputLocation), inputEncoding);
         }
@@ -91,8 +101,8 @@ public class Fileset2Epub {
         }
 
         if(StringUtils.isNotBlank(title)) {
-            List<String> titles = new ArrayList<String>();
-            titles.add(title);
+            List<Title> titles = new ArrayList<Title>();
+            titles.add(new Title(title));
             book.getMetadata().setTitles(titles);
         }
 
@@ -109,6 +119,22 @@ public class Fileset2Epub {
             result = new FileOutputStream(outLocation);
         }
         epubWriter.write(book, result);
+
+        if(epubCleaner.getStatistics() != null) {
+            writeStatistics(epubCleaner.getStatistics(), statisticsLocation);
+        }
+    }
+
+    private static void writeStatistics(BookProcessorStatistics statistics, String statisticsLocation) throws Exception {
+        OutputStream out;
+        try {
+            out = VFS.getManager().resolveFile(statisticsLocation).getContent().getOutputStream();
+        } catch(FileSystemException e) {
+            out = new FileOutputStream(statisticsLocation);
+        }
+        try (Writer writer = new OutputStreamWriter(out, Constants.CHARACTER_ENCODING)) {
+            statistics.writeJson(writer);
+        }
     }
 
     private static void initAuthors(List<String> authorNames, Book book) {
@@ -154,6 +180,7 @@ public class Fileset2Epub {
                 + "\n  --in [input directory]"
                 + "\n  --isbn [isbn number]"
                 + "\n  --out [output epub file]"
+                + "\n  --statistics [json file]     # Writes the timing and size changes of every book processor to this file"
                 + "\n  --title [book title]"
                 + "\n  --type [input type, can be 'epub', 'chm' or empty]"
                 + "\n  --xsl [html post processing file]"
@@ -1,23 +1,20 @@
 package nl.siegmann.epublib.bookprocessor;
 
-import java.awt.AlphaComposite;
-import java.awt.Dimension;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Metadata;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
 import nl.siegmann.epublib.epub.BookProcessor;
 import nl.siegmann.epublib.service.MediatypeService;
-import nl.siegmann.epublib.util.CollectionUtil;
 import nl.siegmann.epublib.util.ResourceUtil;
+import nl.siegmann.epublib.util.Thumbnailer;
 import org.apache.commons.io.FilenameUtils;
 
 import org.apache.commons.lang.StringEscapeUtils;
@@ -31,6 +28,8 @@ import org.w3c.dom.NodeList;
 /**
  * If the book contains a cover image then this will add a cover page to the book.
  * If the book contains a cover html page it will set that page's first image as the book's cover image.
+ * If a {@link Thumbnailer} is set then a cover image larger than the thumbnailer's maximum size is scaled down, unless
+ * the scaled down image can not be written in the format of the cover image.
  *
  * FIXME:
  *  will overwrite any "cover.jpg" or "cover.html" that are already there.
@@ -47,6 +46,15 @@ public class CoverpageBookProcessor implements BookProcessor {
     public static final String DEFAULT_COVER_IMAGE_ID = "cover-image";
     public static final String DEFAULT_COVER_IMAGE_HREF = "images/cover.png";
 
+    private Thumbnailer thumbnailer;
+
+    public CoverpageBookProcessor() {
+    }
+
+    public CoverpageBookProcessor(Thumbnailer thumbnailer) {
+        this.thumbnailer = thumbnailer;
+    }
+
     @Override
     public Book processBook(Book book) {
         Metadata metadata = book.getMetadata();
@@ -66,7 +74,7 @@ public class CoverpageBookProcessor implements BookProcessor {
                 if(StringUtils.isBlank(coverImage.getHref())) {
                     coverImage.setHref(getCoverImageHref(coverImage, book));
                 }
-                String coverPageHtml = createCoverpageHtml(CollectionUtil.first(metadata.getTitles()), coverImage.getHref());
+                String coverPageHtml = createCoverpageHtml(metadata.getFirstTitle(), coverImage.getHref());
                 coverPage = new Resource(null, coverPageHtml.getBytes(), getCoverPageHref(book), MediatypeService.XHTML);
                 fixCoverResourceId(book, coverPage, DEFAULT_COVER_PAGE_ID);
             }
@@ -82,6 +90,9 @@ public class CoverpageBookProcessor implements BookProcessor {
             }
         }
 
+        if (coverImage != null && thumbnailer != null) {
+            scaleCoverImage(coverImage);
+        }
         book.setCoverImage(coverImage);
         book.setCoverPage(coverPage);
         setCoverResourceIds(book);
@@ -170,36 +181,65 @@ public class CoverpageBookProcessor implements BookProcessor {
                    "</html>\n";
     }
 
-    private Dimension calculateResizeSize(BufferedImage image) {
-        Dimension result;
-        if (image.getWidth() > image.getHeight()) {
-            result = new Dimension(MAX_COVER_IMAGE_SIZE, (int) (((double) MAX_COVER_IMAGE_SIZE / (double) image.getWidth()) * (double) image.getHeight()));
-        } else {
-            result = new Dimension((int) (((double) MAX_COVER_IMAGE_SIZE / (double) image.getHeight()) * (double) image.getWidth()), MAX_COVER_IMAGE_SIZE);
+    /**
+     * Creates a thumbnail of the cover image of every book on the given executor.
+     *
+     * Books without a cover image and books whose cover image can not be read are left out of the result.
+     *
+     * @param books
+     * @param thumbnailer
+     * @param executor
+     * @return the thumbnail of the cover image of every book, by book.
+     * @throws InterruptedException
+     */
+    public static Map<Book, byte[]> createCoverThumbnails(Collection<Book> books, Thumbnailer thumbnailer, ExecutorService executor) throws InterruptedException {
+        Map<Resource, Book> booksByCoverImage = new IdentityHashMap<Resource, Book>();
+        for (Book book: books) {
+            if (book.getCoverImage() != null) {
+                booksByCoverImage.put(book.getCoverImage(), book);
+            }
+        }
+        Map<Book, byte[]> result = new IdentityHashMap<Book, byte[]>();
+        for (Map.Entry<Resource, byte[]> entry: thumbnailer.createThumbnails(booksByCoverImage.keySet(), executor).entrySet()) {
+            result.put(booksByCoverImage.get(entry.getKey()), entry.getValue());
         }
         return result;
     }
 
-    @SuppressWarnings("unused")
-    private byte[] createThumbnail(byte[] imageData) throws IOException {
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageData));
-        Dimension thumbDimension = calculateResizeSize(originalImage);
-        BufferedImage thumbnailImage = createResizedCopy(originalImage, (int) thumbDimension.getWidth(), (int) thumbDimension.getHeight(), false);
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        ImageIO.write(thumbnailImage, "png", result);
-        return result.toByteArray();
+    private void scaleCoverImage(Resource coverImage) {
+        try {
+            byte[] imageData = coverImage.getData();
+            byte[] thumbnail = thumbnailer.createThumbnail(imageData);
+            if (thumbnail == imageData) {
+                return;
+            }
+            MediaType mediaType = Thumbnailer.getMediaType(thumbnail);
+            if (mediaType == null || ! mediaType.equals(coverImage.getMediaType())) {
+                // the href, the media type and the references of the cover image would no longer match its data
+                log.warn("Keeping cover image " + coverImage.getHref() + " at its size, it can not be scaled down as " + coverImage.getMediaType());
+                return;
+            }
+            coverImage.setData(thumbnail);
+        } catch (IOException e) {
+            log.error("Unable to scale cover image " + coverImage.getHref() + ": " + e.getMessage());
+        }
+    }
 
+    /**
+     * The Thumbnailer used to scale down cover images that are too large.
+     *
+     * @return null if cover images are left as they are.
+     */
+    public Thumbnailer getThumbnailer() {
+        return thumbnailer;
     }
 
-    private BufferedImage createResizedCopy(java.awt.Image originalImage, int scaledWidth, int scaledHeight, boolean preserveAlpha) {
-        int imageType = preserveAlpha ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
-        BufferedImage scaledBI = new BufferedImage(scaledWidth, scaledHeight, imageType);
-        Graphics2D g = scaledBI.createGraphics();
-        if (preserveAlpha) {
-            g.setComposite(AlphaComposite.Src);
-        }
-        g.drawImage(originalImage, 0, 0, scaledWidth, scaledHeight, null);
-        g.dispose();
-        return scaledBI;
+    /**
+     * Sets the Thumbnailer used to scale down cover images that are too large.
+     *
+     * @param thumbnailer null to leave cover images as they are.
+     */
+    public void setThumbnailer(Thumbnailer thumbnailer) {
+        this.thumbnailer = thumbnailer;
     }
 }
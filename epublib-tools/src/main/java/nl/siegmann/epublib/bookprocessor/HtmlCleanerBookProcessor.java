@@ -4,33 +4,66 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.epub.HtmlDocumentParser;
+import nl.siegmann.epublib.epub.HtmlDocumentProcessor;
 import nl.siegmann.epublib.util.NoCloseWriter;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.htmlcleaner.CleanerProperties;
+import org.htmlcleaner.CommentNode;
+import org.htmlcleaner.ContentNode;
 import org.htmlcleaner.DoctypeToken;
 import org.htmlcleaner.EpublibXmlSerializer;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.TagNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
  * Cleans up regular html into xhtml. Uses HtmlCleaner to do this.
  *
+ * As the first step of a HtmlProcessorPipeline it parses the html into an xhtml Document
+ * that the other processors of the pipeline work on.
+ *
  * @author paul
  *
  */
 public class HtmlCleanerBookProcessor extends HtmlBookProcessor implements
-        BookProcessor {
+        BookProcessor, HtmlDocumentParser, HtmlDocumentProcessor {
+
+    private static final String PREFIX_EPUB = "epub";
+    private static final String NAMESPACE_EPUB = "http://www.idpf.org/2007/ops";
 
     @SuppressWarnings("unused")
     private final static Logger log = LoggerFactory.getLogger(HtmlCleanerBookProcessor.class);
 
+    // HtmlCleaner drops the namespace declarations of the html element, where the epub prefix is usually declared
+    private static final Map<String, String> ROOT_NAMESPACES;
+
+    static {
+        Map<String, String> rootNamespaces = new HashMap<String, String>();
+        rootNamespaces.put("", Constants.NAMESPACE_XHTML);
+        rootNamespaces.put(PREFIX_EPUB, NAMESPACE_EPUB);
+        ROOT_NAMESPACES = Collections.unmodifiableMap(rootNamespaces);
+    }
+
     private HtmlCleaner htmlCleaner;
 
     public HtmlCleanerBookProcessor() {
@@ -69,6 +102,141 @@ public class HtmlCleanerBookProcessor extends HtmlBookProcessor implements
         return out.toByteArray();
     }
 
+    @Override
+    public Document parseHtmlDocument(Resource resource) throws IOException {
+        TagNode node = htmlCleaner.clean(resource.getReader());
+        try {
+            DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            DOMImplementation domImplementation = documentBuilder.getDOMImplementation();
+            DoctypeToken doctypeToken = createXHTMLDoctypeToken();
+            Document result = domImplementation.createDocument(Constants.NAMESPACE_XHTML, "html",
+                    domImplementation.createDocumentType(doctypeToken.getPart1(), doctypeToken.getPart3(), doctypeToken.getPart4()));
+            Map<String, String> namespaces = getNamespaces(node, ROOT_NAMESPACES);
+            copyAttributes(node, result.getDocumentElement(), namespaces);
+            copyChildren(node, result.getDocumentElement(), result, namespaces);
+            return result;
+        } catch (ParserConfigurationException | DOMException e) {
+            throw new IOException("Failed to create xhtml document for " + resource.getHref(), e);
+        }
+    }
+
+    /**
+     * The html has already been cleaned up while parsing it, so the document is returned as is.
+     */
+    @Override
+    public Document processHtmlDocument(Document document, Resource resource, Book book) {
+        return document;
+    }
+
+    /**
+     * Copies the children of the node, every element gets its own namespace or the one it inherits.
+     *
+     * @param namespaces the namespace uris by prefix that are in scope of the children, the default namespace under ""
+     */
+    private static void copyChildren(TagNode node, Element element, Document document, Map<String, String> namespaces) {
+        for (Object child: node.getChildren()) {
+            if (child instanceof TagNode) {
+                TagNode childNode = (TagNode) child;
+                Map<String, String> childNamespaces = getNamespaces(childNode, namespaces);
+                String namespaceUri = childNamespaces.get(getPrefix(childNode.getName()));
+                Element childElement;
+                if (namespaceUri == null) {
+                    // an undeclared prefix, the name is kept as it is
+                    childElement = document.createElement(childNode.getName());
+                } else {
+                    childElement = document.createElementNS(namespaceUri, childNode.getName());
+                }
+                copyAttributes(childNode, childElement, childNamespaces);
+                copyChildren(childNode, childElement, document, childNamespaces);
+                element.appendChild(childElement);
+            } else if (child instanceof ContentNode) {
+                String content = ((ContentNode) child).getContent().toString();
+                element.appendChild(document.createTextNode(unescapeHtml(content)));
+            } else if (child instanceof CommentNode) {
+                element.appendChild(document.createComment(((CommentNode) child).getContent().toString()));
+            }
+        }
+    }
+
+    /**
+     * Copies the attributes of the node, including its namespace declarations.
+     * The default namespace of the root element is set by the document itself.
+     */
+    private static void copyAttributes(TagNode node, Element element, Map<String, String> namespaces) {
+        for (Map.Entry<String, String> declaration: getNamespaceDeclarations(node).entrySet()) {
+            String prefix = declaration.getKey();
+            if (prefix.isEmpty()) {
+                if (element.getParentNode() instanceof Element) {
+                    element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, declaration.getValue());
+                }
+            } else {
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix, declaration.getValue());
+            }
+        }
+        for (Map.Entry<String, String> attribute: node.getAttributes().entrySet()) {
+            String name = attribute.getKey();
+            String value = unescapeHtml(attribute.getValue());
+            String prefix = getPrefix(name);
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(name) || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                continue;
+            } else if (prefix.isEmpty()) {
+                element.setAttribute(name, value);
+            } else if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                element.setAttributeNS(XMLConstants.XML_NS_URI, name, value);
+            } else if (namespaces.containsKey(prefix)) {
+                element.setAttributeNS(namespaces.get(prefix), name, value);
+            } else {
+                // an undeclared prefix, the name is kept as it is
+                element.setAttribute(name, value);
+            }
+        }
+    }
+
+    /**
+     * The namespaces in scope of the node: the inherited ones and the ones the node declares itself.
+     */
+    private static Map<String, String> getNamespaces(TagNode node, Map<String, String> inherited) {
+        Map<String, String> declarations = getNamespaceDeclarations(node);
+        if (declarations.isEmpty()) {
+            return inherited;
+        }
+        Map<String, String> result = new HashMap<String, String>(inherited);
+        result.putAll(declarations);
+        return result;
+    }
+
+    /**
+     * The namespace uris by prefix the node declares, the default namespace under "".
+     * HtmlCleaner keeps the declarations apart from the attributes unless it is not namespace aware.
+     */
+    private static Map<String, String> getNamespaceDeclarations(TagNode node) {
+        Map<String, String> result = new HashMap<String, String>();
+        if (node.getNamespaceDeclarations() != null) {
+            result.putAll(node.getNamespaceDeclarations());
+        }
+        for (Map.Entry<String, String> attribute: node.getAttributes().entrySet()) {
+            String name = attribute.getKey();
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(name)) {
+                result.put("", unescapeHtml(attribute.getValue()));
+            } else if (XMLConstants.XMLNS_ATTRIBUTE.equals(getPrefix(name))) {
+                result.put(name.substring(XMLConstants.XMLNS_ATTRIBUTE.length() + 1), unescapeHtml(attribute.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private static String getPrefix(String name) {
+        int colonPos = name.indexOf(':');
+        return colonPos < 0 ? "" : name.substring(0, colonPos);
+    }
+
+    /**
+     * Decodes the references left in the text by HtmlCleaner, including the xml &amp;apos; that is not an html 4 entity.
+     */
+    private static String unescapeHtml(String text) {
+        return StringEscapeUtils.unescapeHtml(text.replace("&apos;", "'"));
+    }
+
     private DoctypeToken createXHTMLDoctypeToken(){
         return new DoctypeToken("html", "PUBLIC", "-//W3C//DTD XHTML 1.1//EN", "http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd");
     }
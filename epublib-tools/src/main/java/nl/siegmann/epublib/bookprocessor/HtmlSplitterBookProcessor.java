@@ -1,19 +1,263 @@
 package nl.siegmann.epublib.bookprocessor;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.TitledResourceReference;
 import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.utilities.HtmlSplitter;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * In the future this will split up too large html documents into smaller ones.
+ * Splits up html documents in the spine that are larger than the maximum length into smaller ones.
+ *
+ * The first part keeps the href and id of the original document, the other parts are added next to it.
+ * The spine, the table of contents, the guide and the links in the html documents of the book are updated to refer to
+ * the part that contains the fragment they point to.
+ * Links within a document that end up pointing to another part get longer, which can make a part slightly larger
+ * than the maximum length.
  *
  * @author paul
  *
  */
 public class HtmlSplitterBookProcessor implements BookProcessor {
 
+    private static final Logger log = LoggerFactory.getLogger(HtmlSplitterBookProcessor.class);
+
+    public static final int DEFAULT_MAX_LENGTH = 300000; // 300K, the max length of a chapter of an epub document
+
+    private static final Pattern LINK_PATTERN = Pattern.compile("(\\shref\\s*=\\s*)([\"'])([^\"'#]*)#([^\"']*)\\2");
+
+    private int maxLength = DEFAULT_MAX_LENGTH;
+
+    /**
+     * The parts a document was split into.
+     */
+    private static class SplitDocument {
+        final List<Resource> parts;
+        final HtmlSplitter.SplitResult splitResult;
+
+        SplitDocument(List<Resource> parts, HtmlSplitter.SplitResult splitResult) {
+            this.parts = parts;
+            this.splitResult = splitResult;
+        }
+
+        /**
+         * The part that contains the element with the given id.
+         *
+         * @return null if the document has no element with the given id.
+         */
+        Resource getPart(String id) {
+            int partIndex = splitResult.getPartIndex(id);
+            return partIndex < 0 ? null : parts.get(partIndex);
+        }
+    }
+
+    public HtmlSplitterBookProcessor() {
+    }
+
+    public HtmlSplitterBookProcessor(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
     @Override
     public Book processBook(Book book) {
+        Map<String, SplitDocument> splitDocuments = new HashMap<String, SplitDocument>();
+        // the href of the original document of every part
+        Map<Resource, String> originalHrefs = new IdentityHashMap<Resource, String>();
+        List<SpineReference> spineReferences = new ArrayList<SpineReference>();
+        for (SpineReference spineReference: book.getSpine().getSpineReferences()) {
+            Resource resource = spineReference.getResource();
+            SplitDocument splitDocument = null;
+            if (resource.getMediaType() == MediatypeService.XHTML && resource.getSize() > maxLength
+                    && ! splitDocuments.containsKey(resource.getHref())) {
+                try {
+                    splitDocument = splitResource(resource, book);
+                } catch (Exception e) {
+                    log.error("Unable to split " + resource.getHref() + ": " + e.getMessage());
+                }
+            }
+            if (splitDocument == null) {
+                spineReferences.add(spineReference);
+                continue;
+            }
+            String originalHref = resource.getHref();
+            splitDocuments.put(originalHref, splitDocument);
+            for (Resource part: splitDocument.parts) {
+                originalHrefs.put(part, originalHref);
+                spineReferences.add(new SpineReference(part, spineReference.isLinear()));
+            }
+        }
+        if (splitDocuments.isEmpty()) {
+            return book;
+        }
+        book.getSpine().setSpineReferences(spineReferences);
+        fixTocReferences(book.getTableOfContents().getTocReferences(), splitDocuments);
+        fixReferences(book.getGuide().getReferences(), splitDocuments);
+        for (Resource resource: book.getResources().getResourcesByMediaType(MediatypeService.XHTML)) {
+            try {
+                fixLinks(resource, originalHrefs.get(resource), splitDocuments);
+            } catch (IOException e) {
+                log.error("Unable to fix links in " + resource.getHref() + ": " + e.getMessage());
+            }
+        }
         return book;
     }
 
+    /**
+     * Splits the resource and adds the parts after the first one to the book's resources.
+     *
+     * @return null if the resource fits in a single part.
+     */
+    private SplitDocument splitResource(Resource resource, Book book) throws Exception {
+        final List<ByteArrayOutputStream> outputs = new ArrayList<ByteArrayOutputStream>();
+        HtmlSplitter.SplitResult splitResult;
+        try (Reader reader = resource.getReader()) {
+            splitResult = new HtmlSplitter().splitHtml(reader, maxLength, new HtmlSplitter.PartOutput() {
+
+                @Override
+                public OutputStream createPart(int partIndex) {
+                    ByteArrayOutputStream result = new ByteArrayOutputStream();
+                    outputs.add(result);
+                    return result;
+                }
+            });
+        }
+        if (splitResult.getPartCount() < 2) {
+            return null;
+        }
+        List<Resource> parts = new ArrayList<Resource>(outputs.size());
+        resource.setData(outputs.get(0).toByteArray());
+        resource.setInputEncoding(Constants.CHARACTER_ENCODING);
+        parts.add(resource);
+        for (int i = 1; i < outputs.size(); i++) {
+            Resource part = new Resource(null, outputs.get(i).toByteArray(), createPartHref(resource.getHref(), i, book), MediatypeService.XHTML, Constants.CHARACTER_ENCODING);
+            book.getResources().add(part);
+            parts.add(part);
+        }
+        log.debug("Split " + resource.getHref() + " into " + parts.size() + " parts");
+        return new SplitDocument(parts, splitResult);
+    }
+
+    private static String createPartHref(String href, int partIndex, Book book) {
+        String basePath = FilenameUtils.removeExtension(href);
+        String extension = href.substring(basePath.length());
+        String result = basePath + "_" + partIndex + extension;
+        for (int i = 1; book.getResources().containsByHref(result); i++) {
+            result = basePath + "_" + partIndex + "_" + i + extension;
+        }
+        return result;
+    }
+
+    private static void fixTocReferences(List<TOCReference> tocReferences, Map<String, SplitDocument> splitDocuments) {
+        fixReferences(tocReferences, splitDocuments);
+        for (TOCReference tocReference: tocReferences) {
+            fixTocReferences(tocReference.getChildren(), splitDocuments);
+        }
+    }
+
+    private static void fixReferences(List<? extends TitledResourceReference> references, Map<String, SplitDocument> splitDocuments) {
+        for (TitledResourceReference reference: references) {
+            if (reference.getResource() == null || reference.getFragmentId() == null) {
+                continue;
+            }
+            SplitDocument splitDocument = splitDocuments.get(reference.getResource().getHref());
+            if (splitDocument == null) {
+                continue;
+            }
+            Resource part = splitDocument.getPart(reference.getFragmentId());
+            if (part != null) {
+                reference.setResource(part, reference.getFragmentId());
+            }
+        }
+    }
+
+    /**
+     * Makes the links with a fragment that point into a split document point to the part that contains the fragment.
+     *
+     * @param resource
+     * @param originalHref the href of the document the resource was split from, null if it is not a part.
+     * @param splitDocuments
+     * @throws IOException
+     */
+    private static void fixLinks(Resource resource, String originalHref, Map<String, SplitDocument> splitDocuments) throws IOException {
+        String html;
+        try (Reader reader = resource.getReader()) {
+            html = IOUtils.toString(reader);
+        }
+        if (html.indexOf('#') < 0) {
+            return;
+        }
+        String basePath = resource.getHref().substring(0, resource.getHref().lastIndexOf('/') + 1);
+        Matcher matcher = LINK_PATTERN.matcher(html);
+        StringBuffer result = new StringBuffer(html.length());
+        boolean changed = false;
+        while (matcher.find()) {
+            String path = matcher.group(3);
+            String fragmentId = matcher.group(4);
+            String targetHref;
+            if (path.isEmpty()) {
+                targetHref = originalHref != null ? originalHref : resource.getHref();
+            } else if (path.contains(":")) {
+                // an external link
+                continue;
+            } else {
+                targetHref = FilenameUtils.normalize(basePath + path, true);
+            }
+            SplitDocument splitDocument = splitDocuments.get(targetHref);
+            Resource part = splitDocument == null ? null : splitDocument.getPart(fragmentId);
+            if (part == null) {
+                continue;
+            }
+            String partPath;
+            if (part == resource) {
+                partPath = "";
+            } else {
+                // the parts are in the same directory as the original document
+                partPath = path.substring(0, path.lastIndexOf('/') + 1) + FilenameUtils.getName(part.getHref());
+            }
+            if (! partPath.equals(path)) {
+                String link = matcher.group(1) + matcher.group(2) + partPath + "#" + fragmentId + matcher.group(2);
+                matcher.appendReplacement(result, Matcher.quoteReplacement(link));
+                changed = true;
+            }
+        }
+        if (changed) {
+            matcher.appendTail(result);
+            String encoding = resource.getInputEncoding() != null ? resource.getInputEncoding() : Constants.CHARACTER_ENCODING;
+            resource.setData(result.toString().getBytes(encoding));
+        }
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * The maximum length in bytes of an html document.
+     *
+     * @param maxLength
+     */
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
 }
@@ -0,0 +1,390 @@
+package nl.siegmann.epublib.bookprocessor;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.Thumbnailer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-encodes the jpg, png and gif images of the book to make them smaller.
+ *
+ * Jpg images are written at the highest quality that fits the size budget, png and gif images are written losslessly.
+ * An image that does not fit its budget even at the lowest quality is scaled down until it does,
+ * but not below 64 pixels wide or high.
+ * Images larger than the maximum number of pixels are scaled down first.
+ * An image is only replaced if the result is smaller than the original; animated gifs are left alone.
+ *
+ * The png and gif images are processed first, the jpg images share what is left of the book budget.
+ * The images are processed in parallel.
+ */
+public class ImageCompressionBookProcessor implements BookProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageCompressionBookProcessor.class);
+
+    private static final MediaType[] IMAGE_MEDIA_TYPES = new MediaType[] {MediatypeService.JPG, MediatypeService.PNG, MediatypeService.GIF};
+
+    // the number of steps of the binary search for the jpg quality
+    private static final int QUALITY_SEARCH_STEPS = 6;
+
+    // the number of times an image is scaled down to fit its budget
+    private static final int MAX_DOWNSCALE_STEPS = 4;
+
+    // images are not scaled down to fit their budget beyond this width or height
+    private static final int MIN_DOWNSCALE_SIZE = 64;
+
+    private long maxImageBytes;
+    private long maxBookImageBytes;
+    private long maxPixels;
+    private float quality = 0.85f;
+    private float minQuality = 0.4f;
+
+    private final ExecutorService executorService;
+
+    /**
+     * Creates a processor that compresses the images on the common fork join pool.
+     */
+    public ImageCompressionBookProcessor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a processor that compresses the images on the given executor service.
+     *
+     * @param executorService
+     */
+    public ImageCompressionBookProcessor(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    @Override
+    public Book processBook(Book book) {
+        List<Resource> images = book.getResources().getResourcesByMediaTypes(IMAGE_MEDIA_TYPES);
+        if (images.isEmpty()) {
+            return book;
+        }
+        try {
+            long totalSize = getTotalSize(images);
+            if (maxBookImageBytes <= 0 || totalSize <= maxBookImageBytes) {
+                compressImages(images, 0);
+                return book;
+            }
+            // lossless images can only shrink by scaling down, whatever they do not save is taken from the jpg images
+            List<Resource> jpgImages = new ArrayList<Resource>();
+            List<Resource> losslessImages = new ArrayList<Resource>();
+            for (Resource image: images) {
+                if (image.getMediaType() == MediatypeService.JPG) {
+                    jpgImages.add(image);
+                } else {
+                    losslessImages.add(image);
+                }
+            }
+            compressImages(losslessImages, (double) maxBookImageBytes / totalSize);
+            if (! jpgImages.isEmpty()) {
+                // images that could not be compressed may use up the whole budget
+                long jpgBudget = Math.max(0, maxBookImageBytes - getTotalSize(losslessImages));
+                long jpgSize = getTotalSize(jpgImages);
+                if (jpgBudget == 0) {
+                    log.warn("No image budget left for the jpg images, only the per image budget applies");
+                    compressImages(jpgImages, 0);
+                } else if (jpgSize > jpgBudget) {
+                    compressImages(jpgImages, (double) jpgBudget / jpgSize);
+                } else {
+                    compressImages(jpgImages, 0);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return book;
+    }
+
+    /**
+     * Compresses the images in parallel and waits until they are done.
+     *
+     * @param budgetRatio the factor by which the images must shrink, 0 if only the per image budget applies.
+     * @throws InterruptedException
+     */
+    private void compressImages(List<Resource> images, double budgetRatio) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>(images.size());
+        try {
+            for (final Resource image: images) {
+                final long budget = getImageBudget(image, budgetRatio);
+                futures.add(executorService.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws IOException {
+                        compressImage(image, budget);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    log.error("Unable to compress image " + images.get(i).getHref() + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future: futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    private static long getTotalSize(List<Resource> images) {
+        long result = 0;
+        for (Resource image: images) {
+            result += image.getSize();
+        }
+        return result;
+    }
+
+    /**
+     * The size the image must fit in: its share of the book budget, capped by the per image budget.
+     *
+     * @return 0 if the image has no budget.
+     */
+    private long getImageBudget(Resource image, double budgetRatio) {
+        long result = 0;
+        if (budgetRatio > 0) {
+            result = Math.max(1, (long) (image.getSize() * budgetRatio));
+        }
+        if (maxImageBytes > 0 && (result == 0 || result > maxImageBytes)) {
+            result = maxImageBytes;
+        }
+        return result;
+    }
+
+    private void compressImage(Resource resource, long budget) throws IOException {
+        byte[] imageData = resource.getData();
+        String formatName;
+        int width;
+        int height;
+        ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData));
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (! readers.hasNext()) {
+                throw new IOException("Unknown image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                if (reader.getNumImages(true) > 1) {
+                    // re-encoding would lose the animation
+                    return;
+                }
+                formatName = getFormatName(reader.getFormatName());
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+
+        BufferedImage image;
+        if (maxPixels > 0 && (long) width * height > maxPixels) {
+            double scale = Math.sqrt((double) maxPixels / ((long) width * height));
+            int maxWidth = Math.max(1, (int) (width * scale));
+            int maxHeight = Math.max(1, (int) (height * scale));
+            image = new Thumbnailer(maxWidth, maxHeight, Thumbnailer.Quality.QUALITY).readImage(imageData);
+        } else {
+            image = ImageIO.read(new ByteArrayInputStream(imageData));
+        }
+        if (image == null) {
+            throw new IOException("Unable to read image");
+        }
+
+        byte[] result = encode(image, formatName, budget);
+        for (int i = 0; budget > 0 && result.length > budget && i < MAX_DOWNSCALE_STEPS; i++) {
+            int size = Math.min(image.getWidth(), image.getHeight());
+            if (size <= MIN_DOWNSCALE_SIZE) {
+                break;
+            }
+            // the encoded size is roughly proportional to the number of pixels
+            double scale = Math.sqrt((double) budget / result.length) * 0.95;
+            scale = Math.max(scale, (double) MIN_DOWNSCALE_SIZE / size);
+            image = resize(image, Math.max(1, (int) (image.getWidth() * scale)), Math.max(1, (int) (image.getHeight() * scale)));
+            result = encode(image, formatName, budget);
+        }
+        if (result.length < imageData.length) {
+            log.debug("Compressed " + resource.getHref() + " from " + imageData.length + " to " + result.length + " bytes");
+            resource.setData(result);
+        }
+    }
+
+    private static String getFormatName(String formatName) {
+        String result = formatName.toLowerCase();
+        if (result.equals("jpg")) {
+            result = "jpeg";
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the image.
+     * Jpg images are written at the highest quality between the minimum and the default quality that fits the budget.
+     */
+    private byte[] encode(BufferedImage image, String formatName, long budget) throws IOException {
+        if (! formatName.equals("jpeg")) {
+            return write(image, formatName, -1);
+        }
+        byte[] result = write(image, formatName, quality);
+        if (budget <= 0 || result.length <= budget) {
+            return result;
+        }
+        byte[] smallest = write(image, formatName, minQuality);
+        if (smallest.length > budget) {
+            return smallest;
+        }
+        result = smallest;
+        float low = minQuality;
+        float high = quality;
+        for (int i = 0; i < QUALITY_SEARCH_STEPS; i++) {
+            float middle = (low + high) / 2;
+            byte[] candidate = write(image, formatName, middle);
+            if (candidate.length <= budget) {
+                result = candidate;
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] write(BufferedImage image, String formatName, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (! writers.hasNext()) {
+            throw new IOException("No image writer for " + formatName);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ImageOutputStream out = ImageIO.createImageOutputStream(result);
+        try {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (quality >= 0 && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            // writing without the source metadata drops exif data and comments
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+        return result.toByteArray();
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        int imageType = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage result = new BufferedImage(width, height, imageType);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * The maximum size of a single image.
+     *
+     * @return 0 if there is no maximum.
+     */
+    public long getMaxImageBytes() {
+        return maxImageBytes;
+    }
+
+    public void setMaxImageBytes(long maxImageBytes) {
+        this.maxImageBytes = maxImageBytes;
+    }
+
+    /**
+     * The maximum total size of all images of the book.
+     * If the images are larger every png and gif image gets a share of the budget proportional to its original size,
+     * the jpg images share the rest of the budget in proportion to their original size.
+     *
+     * @return 0 if there is no maximum.
+     */
+    public long getMaxBookImageBytes() {
+        return maxBookImageBytes;
+    }
+
+    public void setMaxBookImageBytes(long maxBookImageBytes) {
+        this.maxBookImageBytes = maxBookImageBytes;
+    }
+
+    /**
+     * The maximum number of pixels of an image, larger images are scaled down.
+     *
+     * @return 0 if there is no maximum.
+     */
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * The jpg quality used when the image fits its budget, between 0 and 1.
+     *
+     * @return the jpg quality used when the image fits its budget.
+     */
+    public float getQuality() {
+        return quality;
+    }
+
+    public void setQuality(float quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * The lowest jpg quality used to fit an image in its budget, between 0 and 1.
+     *
+     * @return the lowest jpg quality used to fit an image in its budget.
+     */
+    public float getMinQuality() {
+        return minQuality;
+    }
+
+    public void setMinQuality(float minQuality) {
+        this.minQuality = minQuality;
+    }
+}
@@ -1,58 +1,269 @@
 package nl.siegmann.epublib.bookprocessor;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.Map;
+import java.util.Set;
 
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.TOCReference;
 import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.service.MediatypeService;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
-import org.xml.sax.InputSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
+/**
+ * Gives the sections of the table of contents without a title a title taken from the html they refer to.
+ *
+ * Every resource is read once, no matter how many sections refer to it.
+ * A section that refers to a fragment gets the text of the heading at or following that fragment,
+ * other sections get the title of the html document, or if it has none its first heading.
+ *
+ * @author paul
+ *
+ */
 public class SectionTitleBookProcessor implements BookProcessor {
 
+    private static final Logger log = LoggerFactory.getLogger(SectionTitleBookProcessor.class);
+
+    private static final String RELAXED_FEATURE = "http://xmlpull.org/v1/doc/features.html#relaxed";
+
     @Override
     public Book processBook(Book book) {
-        XPath xpath = createXPathExpression();
-        processSections(book.getTableOfContents().getTocReferences(), book, xpath);
+        Map<Resource, Set<String>> fragmentIdsByResource = new IdentityHashMap<Resource, Set<String>>();
+        collectUntitledSections(book.getTableOfContents().getTocReferences(), fragmentIdsByResource);
+        Map<Resource, ResourceTitles> titlesByResource = new IdentityHashMap<Resource, ResourceTitles>();
+        for (Map.Entry<Resource, Set<String>> entry: fragmentIdsByResource.entrySet()) {
+            try {
+                titlesByResource.put(entry.getKey(), readTitles(entry.getKey(), entry.getValue()));
+            } catch (Exception e) {
+                log.error("Unable to read section titles from " + entry.getKey().getHref() + ": " + e.getMessage());
+            }
+        }
+        setTitles(book.getTableOfContents().getTocReferences(), titlesByResource);
         return book;
     }
 
-    private void processSections(List<TOCReference> tocReferences, Book book, XPath xpath) {
-        for(TOCReference tocReference: tocReferences) {
-            if(! StringUtils.isBlank(tocReference.getTitle())) {
-                continue;
+    /**
+     * Collects for every resource the fragment ids of the sections without a title that refer to it.
+     *
+     * @param tocReferences
+     * @param fragmentIdsByResource
+     */
+    private static void collectUntitledSections(List<TOCReference> tocReferences, Map<Resource, Set<String>> fragmentIdsByResource) {
+        for (TOCReference tocReference: tocReferences) {
+            Resource resource = tocReference.getResource();
+            if (StringUtils.isBlank(tocReference.getTitle()) && resource != null
+                    && resource.getMediaType() == MediatypeService.XHTML) {
+                Set<String> fragmentIds = fragmentIdsByResource.get(resource);
+                if (fragmentIds == null) {
+                    fragmentIds = new HashSet<String>();
+                    fragmentIdsByResource.put(resource, fragmentIds);
+                }
+                if (StringUtils.isNotBlank(tocReference.getFragmentId())) {
+                    fragmentIds.add(tocReference.getFragmentId());
+                }
             }
-            try {
-                String title = getTitle(tocReference, book, xpath);
-                tocReference.setTitle(title);
-            } catch (XPathExpressionException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+            collectUntitledSections(tocReference.getChildren(), fragmentIdsByResource);
+        }
+    }
+
+    private static void setTitles(List<TOCReference> tocReferences, Map<Resource, ResourceTitles> titlesByResource) {
+        for (TOCReference tocReference: tocReferences) {
+            ResourceTitles resourceTitles = titlesByResource.get(tocReference.getResource());
+            if (StringUtils.isBlank(tocReference.getTitle()) && resourceTitles != null) {
+                String title = resourceTitles.getSectionTitle(tocReference.getFragmentId());
+                if (title != null) {
+                    tocReference.setTitle(title);
+                }
             }
+            setTitles(tocReference.getChildren(), titlesByResource);
         }
     }
 
-    private String getTitle(TOCReference tocReference, Book book, XPath xpath) throws IOException, XPathExpressionException {
-        Resource resource = tocReference.getResource();
-        if(resource == null) {
-            return null;
+    /**
+     * The titles found in a single html resource.
+     */
+    public static class ResourceTitles {
+        private String title;
+        private String firstHeading;
+        private final Map<String, String> fragmentHeadings = new HashMap<String, String>();
+
+        /**
+         * The contents of the html head's title element.
+         *
+         * @return null if the resource has no title.
+         */
+        public String getTitle() {
+            return title;
         }
-        InputSource inputSource = new InputSource(resource.getInputStream());
-        String title = xpath.evaluate("/html/head/title", inputSource);
-        return title;
+
+        /**
+         * The text of the first h1-h6 element.
+         *
+         * @return null if the resource has no headings.
+         */
+        public String getFirstHeading() {
+            return firstHeading;
+        }
+
+        /**
+         * The text of the heading with the given id, or the first heading following the element with the given id.
+         *
+         * @param fragmentId
+         * @return null if no heading was found for the fragment.
+         */
+        public String getFragmentHeading(String fragmentId) {
+            return fragmentHeadings.get(fragmentId);
+        }
+
+        /**
+         * The best title for a section referring to the given fragment of this resource.
+         *
+         * @param fragmentId the fragment id, may be null.
+         * @return the fragment heading, the title or the first heading, null if none of them is available.
+         */
+        public String getSectionTitle(String fragmentId) {
+            String result = null;
+            if (StringUtils.isNotBlank(fragmentId)) {
+                result = fragmentHeadings.get(fragmentId);
+            }
+            if (StringUtils.isBlank(result)) {
+                result = title;
+            }
+            if (StringUtils.isBlank(result)) {
+                result = firstHeading;
+            }
+            return StringUtils.isBlank(result) ? null : result;
+        }
+    }
+
+    /**
+     * Reads the title, the first heading and the headings of the given fragments from the resource in a single pass.
+     *
+     * Reading stops as soon as everything that was asked for has been found.
+     * The html is read with a relaxed pull parser, so html entities and sloppy markup are tolerated.
+     *
+     * @param resource
+     * @param fragmentIds the ids of the fragments to find the headings of
+     * @return the titles found in the resource.
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static ResourceTitles readTitles(Resource resource, Collection<String> fragmentIds) throws IOException, XmlPullParserException {
+        ResourceTitles result = new ResourceTitles();
+        Set<String> remainingFragmentIds = new HashSet<String>(fragmentIds);
+        Set<String> pendingFragmentIds = Collections.emptySet();
+        XmlPullParser parser = createParser();
+        try (Reader reader = resource.getReader()) {
+            parser.setInput(reader);
+            StringBuilder text = null;
+            boolean inTitle = false;
+            int headingDepth = -1;
+            boolean headFinished = false;
+            for (int eventType = parser.nextToken(); eventType != XmlPullParser.END_DOCUMENT; eventType = parser.nextToken()) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    String name = getLocalName(parser.getName());
+                    String id = getId(parser, name);
+                    if (id != null && remainingFragmentIds.remove(id)) {
+                        if (pendingFragmentIds.isEmpty()) {
+                            pendingFragmentIds = new HashSet<String>();
+                        }
+                        pendingFragmentIds.add(id);
+                    }
+                    if (name.equals("title") && result.title == null && ! headFinished) {
+                        inTitle = true;
+                        text = new StringBuilder();
+                    } else if (headingDepth < 0 && isHeading(name)) {
+                        headingDepth = parser.getDepth();
+                        text = new StringBuilder();
+                    } else if (name.equals("body")) {
+                        headFinished = true;
+                    }
+                } else if (eventType == XmlPullParser.TEXT || eventType == XmlPullParser.CDSECT
+                        || eventType == XmlPullParser.IGNORABLE_WHITESPACE) {
+                    if (text != null) {
+                        text.append(parser.getText());
+                    }
+                } else if (eventType == XmlPullParser.ENTITY_REF) {
+                    if (text != null) {
+                        // html entities are not known to the xml parser
+                        text.append(parser.getText() != null ? parser.getText() : StringEscapeUtils.unescapeHtml("&" + parser.getName() + ";"));
+                    }
+                } else if (eventType == XmlPullParser.END_TAG) {
+                    String name = getLocalName(parser.getName());
+                    if (inTitle && name.equals("title")) {
+                        result.title = cleanTitle(text);
+                        inTitle = false;
+                        text = null;
+                    } else if (headingDepth == parser.getDepth() && isHeading(name)) {
+                        String heading = cleanTitle(text);
+                        if (result.firstHeading == null) {
+                            result.firstHeading = heading;
+                        }
+                        for (String fragmentId: pendingFragmentIds) {
+                            result.fragmentHeadings.put(fragmentId, heading);
+                        }
+                        pendingFragmentIds = Collections.emptySet();
+                        headingDepth = -1;
+                        text = null;
+                    } else if (name.equals("head")) {
+                        headFinished = true;
+                    }
+                }
+                if (headFinished && result.firstHeading != null && remainingFragmentIds.isEmpty()
+                        && pendingFragmentIds.isEmpty() && headingDepth < 0) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static XmlPullParser createParser() throws XmlPullParserException {
+        XmlPullParser result = XmlPullParserFactory.newInstance().newPullParser();
+        try {
+            result.setFeature(RELAXED_FEATURE, true);
+        } catch (XmlPullParserException e) {
+            log.debug("Xml pull parser does not support relaxed parsing");
+        }
+        return result;
+    }
+
+    private static String getId(XmlPullParser parser, String elementName) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String name = getLocalName(parser.getAttributeName(i));
+            if (name.equals("id") || (name.equals("name") && elementName.equals("a"))) {
+                return parser.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static String getLocalName(String name) {
+        int colonPos = name.indexOf(':');
+        String result = colonPos < 0 ? name : name.substring(colonPos + 1);
+        return result.toLowerCase();
+    }
+
+    private static boolean isHeading(String name) {
+        return name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '6';
     }
 
-    private XPath createXPathExpression() {
-        return XPathFactory.newInstance().newXPath();
+    private static String cleanTitle(StringBuilder text) {
+        return StringUtils.join(StringUtils.split(text.toString()), ' ');
     }
 }
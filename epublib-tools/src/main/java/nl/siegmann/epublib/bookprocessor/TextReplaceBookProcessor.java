@@ -5,43 +5,87 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
 
-import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.epub.HtmlDocumentProcessor;
+import nl.siegmann.epublib.util.TextReplacer;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 /**
- * Cleans up regular html into xhtml.
- * Uses HtmlCleaner to do this.
+ * Replaces text in the text of html documents, leaving the markup alone.
+ *
+ * All patterns of the replacement table are replaced in a single streaming pass, see {@link TextReplacer}.
+ * The patterns are matched against the text with its character and entity references decoded, so a pattern may be
+ * written with references. By default &amp;apos; is replaced by a plain apostrophe.
  *
  * @author paul
  *
  */
-public class TextReplaceBookProcessor extends HtmlBookProcessor implements BookProcessor {
+public class TextReplaceBookProcessor extends HtmlBookProcessor implements BookProcessor, HtmlDocumentProcessor {
 
     @SuppressWarnings("unused")
     private final static Logger log = LoggerFactory.getLogger(TextReplaceBookProcessor.class);
 
+    private final TextReplacer textReplacer;
+
     public TextReplaceBookProcessor() {
+        this(Collections.singletonMap("&apos;", "'"));
+    }
+
+    /**
+     * @param replacementTable maps the patterns to their replacements, see {@link TextReplacer#readReplacementTable(Reader)}
+     */
+    public TextReplaceBookProcessor(Map<String, String> replacementTable) {
+        this(new TextReplacer(TextReplacer.decodeHtmlReferences(replacementTable)));
+    }
+
+    /**
+     * @param textReplacer replaces the decoded text, its patterns must not contain references
+     */
+    public TextReplaceBookProcessor(TextReplacer textReplacer) {
+        this.textReplacer = textReplacer;
+    }
+
+    public TextReplacer getTextReplacer() {
+        return textReplacer;
     }
 
     public byte[] processHtml(Resource resource, Book book, String outputEncoding) throws IOException {
-        Reader reader = resource.getReader();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        Writer writer = new OutputStreamWriter(out, Constants.CHARACTER_ENCODING);
-        for(String line: IOUtils.readLines(reader)) {
-            writer.write(processLine(line));
-            writer.flush();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) resource.getSize());
+        Writer writer = new OutputStreamWriter(out, outputEncoding);
+        try (Reader reader = resource.getReader()) {
+            textReplacer.replaceHtmlText(reader, writer);
         }
         return out.toByteArray();
     }
 
-    private String processLine(String line) {
-        return line.replace("&apos;", "'");
+    /**
+     * Replaces the text of the document's text nodes, leaving the markup alone.
+     *
+     * The text nodes hold the decoded text that {@link #processHtml(Resource, Book, String)} matches, so both give
+     * the same result.
+     */
+    @Override
+    public Document processHtmlDocument(Document document, Resource resource, Book book) {
+        processTextNodes(document.getDocumentElement());
+        return document;
+    }
+
+    private void processTextNodes(Node node) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                child.setNodeValue(textReplacer.replace(child.getNodeValue()));
+            } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                processTextNodes(child);
+            }
+        }
     }
 }
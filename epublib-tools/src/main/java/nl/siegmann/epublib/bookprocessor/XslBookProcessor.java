@@ -15,6 +15,7 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
@@ -23,6 +24,7 @@ import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.epub.BookProcessor;
 import nl.siegmann.epublib.epub.EpubProcessorSupport;
+import nl.siegmann.epublib.epub.HtmlDocumentProcessor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +39,7 @@ import org.xml.sax.SAXException;
  * @author paul
  *
  */
-public class XslBookProcessor extends HtmlBookProcessor implements BookProcessor {
+public class XslBookProcessor extends HtmlBookProcessor implements BookProcessor, HtmlDocumentProcessor {
 
     private final static Logger log = LoggerFactory.getLogger(XslBookProcessor.class);
 
@@ -75,4 +77,18 @@ public class XslBookProcessor extends HtmlBookProcessor implements BookProcessor
             throw new IOException(e);
         }
     }
+
+    /**
+     * Transforms the given document into a new document.
+     */
+    @Override
+    public Document processHtmlDocument(Document document, Resource resource, Book book) throws IOException {
+        DOMResult domResult = new DOMResult();
+        try {
+            transformer.transform(new DOMSource(document), domResult);
+        } catch (TransformerException e) {
+            throw new IOException(e);
+        }
+        return (Document) domResult.getNode();
+    }
 }
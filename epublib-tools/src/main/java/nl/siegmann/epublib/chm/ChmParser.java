@@ -13,6 +13,7 @@ import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
 import nl.siegmann.epublib.domain.TOCReference;
 import nl.siegmann.epublib.domain.TableOfContents;
+import nl.siegmann.epublib.domain.Title;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.ResourceUtil;
 
@@ -42,7 +43,7 @@ public final class ChmParser {
             throws IOException, ParserConfigurationException,
             XPathExpressionException {
         Book result = new Book();
-        result.getMetadata().addTitle(findTitle(chmRootDir));
+        result.getMetadata().addTitle(new Title(findTitle(chmRootDir)));
         FileObject hhcFileObject = findHhcFileObject(chmRootDir);
         if(hhcFileObject == null) {
             throw new IllegalArgumentException("No index file found in directory " + chmRootDir + ". (Looked for file ending with extension '.hhc'");
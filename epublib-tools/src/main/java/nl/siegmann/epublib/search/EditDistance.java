@@ -0,0 +1,63 @@
+package nl.siegmann.epublib.search;
+
+/**
+ * Computes the Levenshtein distance between two strings, stopping as soon as it exceeds a maximum.
+ */
+// package
+class EditDistance {
+
+    private EditDistance() {
+    }
+
+    /**
+     * Whether the first text can be turned into the second with at most maxDistance insertions, deletions or
+     * substitutions of a character.
+     *
+     * Only the diagonal band of width 2 * maxDistance + 1 of the distance matrix is computed.
+     *
+     * @param text1
+     * @param text2
+     * @param maxDistance
+     * @return whether the edit distance between the texts is at most maxDistance.
+     */
+    public static boolean isWithin(String text1, String text2, int maxDistance) {
+        int length1 = text1.length();
+        int length2 = text2.length();
+        if (Math.abs(length1 - length2) > maxDistance) {
+            return false;
+        }
+        int outside = maxDistance + 1;
+        int[] previous = new int[length2 + 1];
+        int[] current = new int[length2 + 1];
+        for (int j = 0; j <= length2; j++) {
+            previous[j] = j <= maxDistance ? j : outside;
+        }
+        for (int i = 1; i <= length1; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(length2, i + maxDistance);
+            current[0] = i <= maxDistance ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            int rowMinimum = current[0];
+            char c = text1.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int distance = previous[j - 1] + (c == text2.charAt(j - 1) ? 0 : 1);
+                distance = Math.min(distance, previous[j] + 1);
+                distance = Math.min(distance, current[j - 1] + 1);
+                current[j] = Math.min(distance, outside);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (to < length2) {
+                current[to + 1] = outside;
+            }
+            if (rowMinimum > maxDistance) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[length2] <= maxDistance;
+    }
+}
@@ -0,0 +1,249 @@
+package nl.siegmann.epublib.search;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Turns html into the normalized text used for searching, in a single pass over the characters.
+ *
+ * Tags are removed and the text between two tags is handled as a separate piece:
+ * entities are decoded, leading and trailing whitespace is removed, runs of whitespace are replaced by a single space,
+ * accents are removed and everything is lowercased.
+ * The pieces are joined without a separator.
+ *
+ * Plain ascii characters take a fast path; the normalization of other characters is cached.
+ * While extracting the text a map from offsets in the text to offsets in the source is kept, see {@link SearchContent}.
+ */
+public class HtmlTextExtractor {
+
+    // the longest entity name, plus room for numeric entities
+    private static final int MAX_ENTITY_LENGTH = 12;
+
+    // the characters whose folded form is cached
+    private static final int FOLD_CACHE_SIZE = 0x3000;
+    private static final String[] FOLD_CACHE = new String[FOLD_CACHE_SIZE];
+
+    private final StringBuilder text;
+    private int[] textOffsets = new int[16];
+    private int[] sourceOffsets = new int[16];
+    private int offsetCount;
+    private int lastDistance = Integer.MIN_VALUE;
+    private boolean atPieceStart = true;
+    // the source offset of the pending whitespace, -1 if there is none
+    private int pendingSpace = -1;
+
+    private HtmlTextExtractor(int capacity) {
+        this.text = new StringBuilder(capacity);
+    }
+
+    /**
+     * Extracts the normalized text from the html.
+     *
+     * @param html
+     * @return the normalized text with the map to source offsets.
+     * @throws IOException
+     */
+    public static SearchContent extract(Reader html) throws IOException {
+        char[] source = IOUtils.toCharArray(html);
+        return extract(source, source.length);
+    }
+
+    /**
+     * Extracts the normalized text from the first length characters of the html.
+     *
+     * @param source
+     * @param length
+     * @return the normalized text with the map to source offsets.
+     */
+    public static SearchContent extract(char[] source, int length) {
+        HtmlTextExtractor extractor = new HtmlTextExtractor(length / 2);
+        extractor.process(source, 0, length, true);
+        return new SearchContent(extractor.text.toString(),
+                Arrays.copyOf(extractor.textOffsets, extractor.offsetCount),
+                Arrays.copyOf(extractor.sourceOffsets, extractor.offsetCount));
+    }
+
+    /**
+     * Processes the characters from start to length.
+     *
+     * @param hasTags false if the rest of the source contains no '&gt;', so a '&lt;' only starts a new piece of text.
+     */
+    private void process(char[] source, int start, int length, boolean hasTags) {
+        int tagStart = -1;
+        for (int i = start; i < length; i++) {
+            char c = source[i];
+            if (tagStart >= 0) {
+                if (c == '>') {
+                    tagStart = -1;
+                }
+            } else if (c == '<') {
+                if (hasTags) {
+                    tagStart = i;
+                }
+                atPieceStart = true;
+                pendingSpace = -1;
+            } else if (c == '&') {
+                i = processEntity(source, i, length);
+            } else {
+                processChar(c, i);
+            }
+        }
+        if (tagStart >= 0) {
+            // a tag that is never closed is text
+            process(source, tagStart + 1, length, false);
+        }
+    }
+
+    /**
+     * Decodes the entity starting at the given offset.
+     *
+     * @return the offset of the last character of the entity, or the given offset if it is not a known entity.
+     */
+    private int processEntity(char[] source, int start, int length) {
+        int end = start + 1;
+        int maxEnd = Math.min(length, start + MAX_ENTITY_LENGTH);
+        while (end < maxEnd && source[end] != ';' && source[end] != '&' && source[end] != '<') {
+            end++;
+        }
+        if (end == maxEnd || source[end] != ';' || end == start + 1) {
+            processChar('&', start);
+            return start;
+        }
+        String decoded = decodeEntity(source, start + 1, end);
+        if (decoded == null) {
+            processChar('&', start);
+            return start;
+        }
+        for (int i = 0; i < decoded.length(); i++) {
+            processChar(decoded.charAt(i), start);
+        }
+        return end;
+    }
+
+    /**
+     * Decodes the entity with the name between start and end.
+     *
+     * @return null if the entity is unknown.
+     */
+    private static String decodeEntity(char[] source, int start, int end) {
+        int length = end - start;
+        if (source[start] == '#') {
+            return decodeNumericEntity(source, start + 1, end);
+        }
+        if (length == 3 && source[start] == 'a' && source[start + 1] == 'm' && source[start + 2] == 'p') {
+            return "&";
+        }
+        if (length == 4 && source[start] == 'n' && source[start + 1] == 'b' && source[start + 2] == 's' && source[start + 3] == 'p') {
+            return " ";
+        }
+        String entity = "&" + new String(source, start, length) + ";";
+        String result = StringEscapeUtils.unescapeHtml(entity);
+        return result.equals(entity) ? null : result;
+    }
+
+    private static String decodeNumericEntity(char[] source, int start, int end) {
+        int radix = 10;
+        if (start < end && (source[start] == 'x' || source[start] == 'X')) {
+            radix = 16;
+            start++;
+        }
+        if (start == end) {
+            return null;
+        }
+        int codePoint = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(source[i], radix);
+            if (digit < 0 || codePoint > 0x10FFFF) {
+                return null;
+            }
+            codePoint = codePoint * radix + digit;
+        }
+        return codePoint > 0x10FFFF ? null : new String(Character.toChars(codePoint));
+    }
+
+    private void processChar(char c, int sourceOffset) {
+        if (isWhitespace(c)) {
+            if (! atPieceStart && pendingSpace < 0) {
+                pendingSpace = sourceOffset;
+            }
+            return;
+        }
+        if (pendingSpace >= 0) {
+            append(' ', pendingSpace);
+            pendingSpace = -1;
+        }
+        atPieceStart = false;
+        if (c < 0x80) {
+            append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c, sourceOffset);
+            return;
+        }
+        String folded = fold(c);
+        for (int i = 0; i < folded.length(); i++) {
+            append(folded.charAt(i), sourceOffset);
+        }
+    }
+
+    private void append(char c, int sourceOffset) {
+        int textOffset = text.length();
+        text.append(c);
+        if (sourceOffset - textOffset != lastDistance) {
+            if (offsetCount == textOffsets.length) {
+                textOffsets = Arrays.copyOf(textOffsets, offsetCount * 2);
+                sourceOffsets = Arrays.copyOf(sourceOffsets, offsetCount * 2);
+            }
+            textOffsets[offsetCount] = textOffset;
+            sourceOffsets[offsetCount] = sourceOffset;
+            offsetCount++;
+            lastDistance = sourceOffset - textOffset;
+        }
+    }
+
+    /**
+     * Whether the character is whitespace, including the unicode space separators like the non-breaking space.
+     *
+     * @param c
+     * @return whether the character is whitespace.
+     */
+    public static boolean isWhitespace(char c) {
+        if (c < 0x80) {
+            return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+        }
+        return Character.isSpaceChar(c) || Character.isWhitespace(c);
+    }
+
+    /**
+     * Removes the accents from the character and lowercases it.
+     *
+     * @param c a non-ascii character
+     * @return the folded character, empty if the character is an accent.
+     */
+    private static String fold(char c) {
+        if (c >= FOLD_CACHE_SIZE) {
+            return computeFold(c);
+        }
+        String result = FOLD_CACHE[c];
+        if (result == null) {
+            result = computeFold(c);
+            FOLD_CACHE[c] = result;
+        }
+        return result;
+    }
+
+    private static String computeFold(char c) {
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char d = decomposed.charAt(i);
+            // the combining diacritical marks block
+            if (d < 0x0300 || d > 0x036F) {
+                result.append(d);
+            }
+        }
+        return result.toString().toLowerCase();
+    }
+}
@@ -0,0 +1,361 @@
+package nl.siegmann.epublib.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import nl.siegmann.epublib.domain.Book;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Searches a library of books and ranks the matching resources with BM25.
+ *
+ * Every book is a shard with its own {@link SearchIndex}. A search runs on all shards in parallel and the best
+ * k results are merged. Every resource is a document for the ranking; the statistics (number of resources, average
+ * length and the number of resources containing a term) are those of the whole library.
+ *
+ * A query term matches the index terms that are equal to it.
+ *
+ * The shards are searched in the order of the highest score their resources could reach. As soon as k results are
+ * found that score better than what a shard can reach, the shard is skipped.
+ */
+public class LibrarySearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(LibrarySearchIndex.class);
+
+    // the usual BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * The statistics of a shard's search index that are needed for ranking.
+     */
+    private static class ShardStatistics {
+
+        final SearchIndex.Snapshot snapshot;
+        // the number of resources containing a term, by index in the dictionary of the snapshot
+        final int[] documentFrequencies;
+        final long tokenCount;
+
+        ShardStatistics(SearchIndex.Snapshot snapshot) {
+            this.snapshot = snapshot;
+            this.documentFrequencies = new int[snapshot.termDictionary.size()];
+            long tokens = 0;
+            for (ResourceSearchIndex resourceSearchIndex: snapshot.resourceSearchIndexes) {
+                tokens += resourceSearchIndex.getTokenCount();
+                for (String term: resourceSearchIndex.getTerms()) {
+                    int termIndex = snapshot.termDictionary.indexOf(term);
+                    if (termIndex >= 0) {
+                        documentFrequencies[termIndex]++;
+                    }
+                }
+            }
+            this.tokenCount = tokens;
+        }
+
+        int getResourceCount() {
+            return snapshot.resourceSearchIndexes.size();
+        }
+
+        int getDocumentFrequency(String term) {
+            int termIndex = snapshot.termDictionary.indexOf(term);
+            return termIndex < 0 ? 0 : documentFrequencies[termIndex];
+        }
+    }
+
+    private static class Shard {
+
+        final String key;
+        final SearchIndex searchIndex;
+        private ShardStatistics statistics;
+
+        Shard(String key, SearchIndex searchIndex) {
+            this.key = key;
+            this.searchIndex = searchIndex;
+        }
+
+        /**
+         * The statistics of the current index of the shard, calculated again after the index was updated.
+         */
+        synchronized ShardStatistics getStatistics() {
+            SearchIndex.Snapshot snapshot = searchIndex.getSnapshot();
+            if (statistics == null || statistics.snapshot != snapshot) {
+                statistics = new ShardStatistics(snapshot);
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * The best k results found so far, shared by the tasks searching the shards.
+     */
+    private static class TopResults {
+
+        private final int k;
+        private final PriorityQueue<RankedSearchResult> queue;
+        // the score to beat, only valid once k results were found
+        private volatile double threshold = Double.NEGATIVE_INFINITY;
+
+        TopResults(int k) {
+            this.k = k;
+            this.queue = new PriorityQueue<RankedSearchResult>(k, Collections.reverseOrder(RESULT_ORDER));
+        }
+
+        double getThreshold() {
+            return threshold;
+        }
+
+        synchronized void offer(RankedSearchResult result) {
+            if (queue.size() == k) {
+                if (RESULT_ORDER.compare(result, queue.peek()) >= 0) {
+                    return;
+                }
+                queue.poll();
+            }
+            queue.add(result);
+            if (queue.size() == k) {
+                threshold = queue.peek().getScore();
+            }
+        }
+
+        synchronized List<RankedSearchResult> getResults() {
+            List<RankedSearchResult> result = new ArrayList<RankedSearchResult>(queue);
+            Collections.sort(result, RESULT_ORDER);
+            return result;
+        }
+    }
+
+    /**
+     * Best score first, equal scores in the order of book key and resource href.
+     */
+    private static final Comparator<RankedSearchResult> RESULT_ORDER = new Comparator<RankedSearchResult>() {
+
+        @Override
+        public int compare(RankedSearchResult result1, RankedSearchResult result2) {
+            int result = Double.compare(result2.getScore(), result1.getScore());
+            if (result == 0) {
+                result = result1.getBookKey().compareTo(result2.getBookKey());
+            }
+            if (result == 0) {
+                result = result1.getResource().getHref().compareTo(result2.getResource().getHref());
+            }
+            return result;
+        }
+    };
+
+    private final Map<String, Shard> shards = new ConcurrentHashMap<String, Shard>();
+    private final ExecutorService executorService;
+
+    /**
+     * Creates a library that searches the books on the common fork join pool.
+     */
+    public LibrarySearchIndex() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a library that searches the books on the given executor service.
+     *
+     * @param executorService
+     */
+    public LibrarySearchIndex(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Indexes the book and adds it to the library.
+     *
+     * @param key the key of the book in the library, replaces the book with the same key.
+     * @param book
+     */
+    public void addBook(String key, Book book) {
+        addSearchIndex(key, new SearchIndex(book));
+    }
+
+    /**
+     * Adds an existing search index to the library, for instance one opened with {@link SearchIndexFile}.
+     *
+     * After an {@link SearchIndex#update()} of the search index the library uses the updated index.
+     *
+     * @param key the key of the book in the library, replaces the book with the same key.
+     * @param searchIndex
+     */
+    public void addSearchIndex(String key, SearchIndex searchIndex) {
+        Shard shard = new Shard(key, searchIndex);
+        shard.getStatistics();
+        shards.put(key, shard);
+    }
+
+    /**
+     * Removes a book from the library.
+     *
+     * @param key
+     * @return the search index of the book, null if the library has no book with the given key.
+     */
+    public SearchIndex removeBook(String key) {
+        Shard shard = shards.remove(key);
+        return shard == null ? null : shard.searchIndex;
+    }
+
+    public SearchIndex getSearchIndex(String key) {
+        Shard shard = shards.get(key);
+        return shard == null ? null : shard.searchIndex;
+    }
+
+    public int getBookCount() {
+        return shards.size();
+    }
+
+    /**
+     * Finds the k resources in the library that match the search text best.
+     *
+     * @param searchText
+     * @param k the maximum number of results
+     * @return the best matching resources, the best match first.
+     */
+    public List<RankedSearchResult> search(String searchText, int k) {
+        return search(searchText, k, false);
+    }
+
+    /**
+     * Finds the k books in the library that match the search text best.
+     *
+     * The score of a book is the score of its best matching resource, that resource is the result for the book.
+     *
+     * @param searchText
+     * @param k the maximum number of results
+     * @return the best matching resource of the best matching books, the best match first.
+     */
+    public List<RankedSearchResult> searchBooks(String searchText, int k) {
+        return search(searchText, k, true);
+    }
+
+    private List<RankedSearchResult> search(final String searchText, int k, final boolean bestPerBook) {
+        if (StringUtils.isBlank(searchText) || k <= 0) {
+            return new ArrayList<RankedSearchResult>();
+        }
+        final String cleanedText = SearchIndex.cleanText(searchText);
+        final List<String> terms = new ArrayList<String>(new LinkedHashSet<String>(Query.tokenize(cleanedText)));
+        if (terms.isEmpty()) {
+            return new ArrayList<RankedSearchResult>();
+        }
+
+        // the statistics of the whole library
+        List<Shard> allShards = new ArrayList<Shard>(shards.values());
+        final List<ShardStatistics> statistics = new ArrayList<ShardStatistics>(allShards.size());
+        long resourceCount = 0;
+        long tokenCount = 0;
+        int[] documentFrequencies = new int[terms.size()];
+        for (Shard shard: allShards) {
+            ShardStatistics shardStatistics = shard.getStatistics();
+            statistics.add(shardStatistics);
+            resourceCount += shardStatistics.getResourceCount();
+            tokenCount += shardStatistics.tokenCount;
+            for (int i = 0; i < terms.size(); i++) {
+                documentFrequencies[i] += shardStatistics.getDocumentFrequency(terms.get(i));
+            }
+        }
+        if (resourceCount == 0) {
+            return new ArrayList<RankedSearchResult>();
+        }
+        final double averageLength = (double) tokenCount / resourceCount;
+        final double[] idfs = new double[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            idfs[i] = Math.log(1 + (resourceCount - documentFrequencies[i] + 0.5) / (documentFrequencies[i] + 0.5));
+        }
+
+        // the shards that contain a term, by the best score they could reach
+        List<Integer> candidates = new ArrayList<Integer>();
+        final double[] maxScores = new double[allShards.size()];
+        for (int i = 0; i < allShards.size(); i++) {
+            for (int j = 0; j < terms.size(); j++) {
+                if (statistics.get(i).getDocumentFrequency(terms.get(j)) > 0) {
+                    maxScores[i] += idfs[j] * (K1 + 1);
+                }
+            }
+            if (maxScores[i] > 0) {
+                candidates.add(i);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer shard1, Integer shard2) {
+                return Double.compare(maxScores[shard2], maxScores[shard1]);
+            }
+        });
+
+        final TopResults topResults = new TopResults(k);
+        List<Future<?>> futures = new ArrayList<Future<?>>(candidates.size());
+        for (final int shardIndex: candidates) {
+            final Shard shard = allShards.get(shardIndex);
+            futures.add(executorService.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (maxScores[shardIndex] <= topResults.getThreshold()) {
+                        return;
+                    }
+                    searchShard(shard.key, shard.searchIndex.getBook(), statistics.get(shardIndex), terms, idfs, averageLength, cleanedText, bestPerBook, topResults);
+                }
+            }));
+        }
+        for (Future<?> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error(e.getMessage());
+                break;
+            } catch (ExecutionException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        return topResults.getResults();
+    }
+
+    private static void searchShard(String key, Book book, ShardStatistics statistics, List<String> terms, double[] idfs, double averageLength,
+            String searchTerm, boolean bestPerBook, TopResults topResults) {
+        RankedSearchResult best = null;
+        for (ResourceSearchIndex resourceSearchIndex: statistics.snapshot.resourceSearchIndexes) {
+            double score = 0;
+            int firstPosition = Integer.MAX_VALUE;
+            double lengthNorm = K1 * (1 - B + B * resourceSearchIndex.getTokenCount() / averageLength);
+            for (int i = 0; i < terms.size(); i++) {
+                int[] positions = resourceSearchIndex.getPositions(terms.get(i));
+                if (positions == null || positions.length == 0) {
+                    continue;
+                }
+                int frequency = positions.length;
+                score += idfs[i] * frequency * (K1 + 1) / (frequency + lengthNorm);
+                firstPosition = Math.min(firstPosition, positions[0]);
+            }
+            if (score <= 0 || score < topResults.getThreshold() || (best != null && score <= best.getScore())) {
+                continue;
+            }
+            int pagePos = resourceSearchIndex.getTokenOffset(firstPosition);
+            RankedSearchResult result = new RankedSearchResult(key, book, score, pagePos, resourceSearchIndex.getSourceOffset(pagePos),
+                    searchTerm, resourceSearchIndex.getResource());
+            if (bestPerBook) {
+                best = result;
+            } else {
+                topResults.offer(result);
+            }
+        }
+        if (best != null) {
+            topResults.offer(best);
+        }
+    }
+}
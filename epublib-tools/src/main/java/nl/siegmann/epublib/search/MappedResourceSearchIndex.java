@@ -0,0 +1,152 @@
+package nl.siegmann.epublib.search;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Collection;
+
+import nl.siegmann.epublib.domain.Resource;
+
+/**
+ * A search index for a single resource that is read directly from a memory mapped {@link SearchIndexFile}.
+ *
+ * Layout of the segment, all integers are 4 bytes big-endian:
+ * <pre>
+ * tokenCount
+ * tokenOffsets[tokenCount]
+ * mapCount
+ * textOffsets[mapCount]
+ * sourceOffsets[mapCount]
+ * termCount
+ * (termIndex, postingsOffset, postingsLength)[termCount], sorted by termIndex
+ * postings
+ * </pre>
+ * The term index is the index of the term in the dictionary of the file, the postings offset is relative to the
+ * start of the postings.
+ * The text and source offsets are the map from offsets in the search content to source offsets, see
+ * {@link SearchContent}.
+ */
+// package
+class MappedResourceSearchIndex extends ResourceSearchIndex {
+
+    private static final int TERM_ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final TermDictionary dictionary;
+    private final int tokenCount;
+    private final int tokenOffsetsStart;
+    private final int mapCount;
+    private final int textOffsetsStart;
+    private final int sourceOffsetsStart;
+    private final int termCount;
+    private final int termsStart;
+    private final int postingsStart;
+
+    /**
+     * Creates the index of the segment starting at the given offset.
+     *
+     * @param resource
+     * @param buffer the mapped file
+     * @param offset
+     * @param dictionary the dictionary of the file
+     */
+    public MappedResourceSearchIndex(Resource resource, ByteBuffer buffer, int offset, TermDictionary dictionary) {
+        super(resource);
+        this.buffer = buffer;
+        this.dictionary = dictionary;
+        this.tokenCount = buffer.getInt(offset);
+        this.tokenOffsetsStart = offset + 4;
+        this.mapCount = buffer.getInt(tokenOffsetsStart + tokenCount * 4);
+        this.textOffsetsStart = tokenOffsetsStart + tokenCount * 4 + 4;
+        this.sourceOffsetsStart = textOffsetsStart + mapCount * 4;
+        this.termCount = buffer.getInt(sourceOffsetsStart + mapCount * 4);
+        this.termsStart = sourceOffsetsStart + mapCount * 4 + 4;
+        this.postingsStart = termsStart + termCount * TERM_ENTRY_SIZE;
+    }
+
+    @Override
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    @Override
+    public int getTokenOffset(int position) {
+        return buffer.getInt(tokenOffsetsStart + position * 4);
+    }
+
+    @Override
+    public int getSourceOffset(int offset) {
+        int low = 0;
+        int high = mapCount - 1;
+        int pos = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(textOffsetsStart + middle * 4) <= offset) {
+                pos = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (pos < 0) {
+            return -1;
+        }
+        return buffer.getInt(sourceOffsetsStart + pos * 4) + (offset - buffer.getInt(textOffsetsStart + pos * 4));
+    }
+
+    @Override
+    public int[] getTextOffsets() {
+        return readInts(textOffsetsStart, mapCount);
+    }
+
+    @Override
+    public int[] getSourceOffsets() {
+        return readInts(sourceOffsetsStart, mapCount);
+    }
+
+    private int[] readInts(int start, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = buffer.getInt(start + i * 4);
+        }
+        return result;
+    }
+
+    @Override
+    public int[] getPositions(String term) {
+        int termIndex = dictionary.indexOf(term);
+        if (termIndex < 0) {
+            return null;
+        }
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = termsStart + middle * TERM_ENTRY_SIZE;
+            int middleTermIndex = buffer.getInt(entry);
+            if (middleTermIndex < termIndex) {
+                low = middle + 1;
+            } else if (middleTermIndex > termIndex) {
+                high = middle - 1;
+            } else {
+                return Postings.decode(buffer, postingsStart + buffer.getInt(entry + 4), buffer.getInt(entry + 8));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<String> getTerms() {
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(int index) {
+                return dictionary.get(buffer.getInt(termsStart + index * TERM_ENTRY_SIZE));
+            }
+
+            @Override
+            public int size() {
+                return termCount;
+            }
+        };
+    }
+}
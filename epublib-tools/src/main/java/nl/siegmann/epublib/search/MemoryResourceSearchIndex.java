@@ -0,0 +1,61 @@
+package nl.siegmann.epublib.search;
+
+import java.util.Collection;
+import java.util.Map;
+
+import nl.siegmann.epublib.domain.Resource;
+
+/**
+ * A search index for a single resource that is kept in memory, with the positions encoded with {@link Postings}.
+ */
+// package
+class MemoryResourceSearchIndex extends ResourceSearchIndex {
+    private final int[] tokenOffsets;
+    private final Map<String, byte[]> postings;
+    private final int[] textOffsets;
+    private final int[] sourceOffsets;
+
+    public MemoryResourceSearchIndex(Resource resource, int[] tokenOffsets, Map<String, byte[]> postings, int[] textOffsets, int[] sourceOffsets) {
+        super(resource);
+        this.tokenOffsets = tokenOffsets;
+        this.postings = postings;
+        this.textOffsets = textOffsets;
+        this.sourceOffsets = sourceOffsets;
+    }
+
+    @Override
+    public int getTokenCount() {
+        return tokenOffsets.length;
+    }
+
+    @Override
+    public int getTokenOffset(int position) {
+        return tokenOffsets[position];
+    }
+
+    @Override
+    public int getSourceOffset(int offset) {
+        return SearchContent.getSourceOffset(offset, textOffsets, sourceOffsets);
+    }
+
+    @Override
+    public int[] getTextOffsets() {
+        return textOffsets;
+    }
+
+    @Override
+    public int[] getSourceOffsets() {
+        return sourceOffsets;
+    }
+
+    @Override
+    public int[] getPositions(String term) {
+        byte[] termPostings = postings.get(term);
+        return termPostings == null ? null : Postings.decode(termPostings);
+    }
+
+    @Override
+    public Collection<String> getTerms() {
+        return postings.keySet();
+    }
+}
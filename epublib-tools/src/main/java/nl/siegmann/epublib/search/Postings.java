@@ -0,0 +1,108 @@
+package nl.siegmann.epublib.search;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes ascending lists of positions as the differences between them, written as variable length integers.
+ *
+ * Every byte holds 7 bits of a value, the high bit is set on all but the last byte of a value.
+ * Positions in a text are close together, so most of them take a single byte.
+ */
+// package
+final class Postings {
+
+    private Postings() {
+    }
+
+    /**
+     * Encodes the first count positions.
+     *
+     * @param positions ascending positions
+     * @param count
+     * @return the encoded positions.
+     */
+    public static byte[] encode(int[] positions, int count) {
+        byte[] buffer = new byte[count * 5];
+        int length = 0;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            length = writeVarInt(positions[i] - previous, buffer, length);
+            previous = positions[i];
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Decodes the positions encoded by {@link #encode(int[], int)}.
+     *
+     * @param postings
+     * @return the decoded positions.
+     */
+    public static int[] decode(byte[] postings) {
+        int[] result = new int[postings.length];
+        int count = 0;
+        int value = 0;
+        int shift = 0;
+        int previous = 0;
+        for (byte b: postings) {
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                previous += value;
+                result[count++] = previous;
+                value = 0;
+                shift = 0;
+            } else {
+                shift += 7;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Decodes the positions encoded by {@link #encode(int[], int)} from a part of the buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return the decoded positions.
+     */
+    public static int[] decode(ByteBuffer buffer, int offset, int length) {
+        int[] result = new int[length];
+        int count = 0;
+        int value = 0;
+        int shift = 0;
+        int previous = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte b = buffer.get(i);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                previous += value;
+                result[count++] = previous;
+                value = 0;
+                shift = 0;
+            } else {
+                shift += 7;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Writes the value as variable length integer.
+     *
+     * @param value a non-negative value
+     * @param buffer
+     * @param offset
+     * @return the offset after the written value.
+     */
+    public static int writeVarInt(int value, byte[] buffer, int offset) {
+        while ((value & ~0x7f) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+}
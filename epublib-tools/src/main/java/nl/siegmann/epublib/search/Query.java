@@ -0,0 +1,202 @@
+package nl.siegmann.epublib.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query resolved against the term dictionary of a search index.
+ *
+ * A query of a single token matches every term that contains the token.
+ * A query of several tokens is a phrase query: it matches consecutive tokens where the first term ends with the first
+ * query token, the last term starts with the last query token and the terms in between are equal to the query tokens.
+ * This keeps the substring behaviour of searching the search content for the query, apart from the characters
+ * between the tokens.
+ *
+ * A fuzzy query matches consecutive terms that are each within a maximum edit distance of the query token.
+ */
+// package
+class Query {
+
+    private final String text;
+    private final int tokenCount;
+    // for every term matching the first token the offsets of the token within the term
+    private final Map<String, int[]> firstTerms = new LinkedHashMap<String, int[]>();
+    // for every following token the matching terms
+    private final List<List<String>> followingTerms = new ArrayList<List<String>>();
+
+    /**
+     * Resolves the query against the dictionary.
+     *
+     * @param text the cleaned query
+     * @param dictionary
+     */
+    public Query(String text, TermDictionary dictionary) {
+        this.text = text;
+        List<String> tokens = tokenize(text);
+        this.tokenCount = tokens.size();
+        if (tokens.size() == 1) {
+            String token = tokens.get(0);
+            for (String term: dictionary.findBySubstring(token)) {
+                firstTerms.put(term, findAll(term, token));
+            }
+        } else if (tokens.size() > 1) {
+            String first = tokens.get(0);
+            for (String term: dictionary.findBySuffix(first)) {
+                firstTerms.put(term, new int[] {term.length() - first.length()});
+            }
+            for (int i = 1; i < tokens.size() - 1; i++) {
+                followingTerms.add(dictionary.contains(tokens.get(i)) ? Arrays.asList(tokens.get(i)) : new ArrayList<String>());
+            }
+            followingTerms.add(dictionary.findByPrefix(tokens.get(tokens.size() - 1)));
+        }
+    }
+
+    /**
+     * Resolves the query against the dictionary as a fuzzy query.
+     *
+     * @param text the cleaned query
+     * @param dictionary
+     * @param maxDistance the maximum edit distance between a query token and a term
+     */
+    public Query(String text, TermDictionary dictionary, int maxDistance) {
+        this.text = text;
+        List<String> tokens = tokenize(text);
+        this.tokenCount = tokens.size();
+        if (tokens.isEmpty()) {
+            return;
+        }
+        for (String term: dictionary.findByEditDistance(tokens.get(0), maxDistance)) {
+            firstTerms.put(term, new int[] {0});
+        }
+        for (int i = 1; i < tokens.size(); i++) {
+            followingTerms.add(dictionary.findByEditDistance(tokens.get(i), maxDistance));
+        }
+    }
+
+    /**
+     * Splits the text into tokens: runs of characters for which {@link ResourceSearchIndex#isTokenChar(char)} is true.
+     *
+     * @param text
+     * @return the tokens of the text.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<String>();
+        int pos = 0;
+        while (pos < text.length()) {
+            if (! ResourceSearchIndex.isTokenChar(text.charAt(pos))) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            while (pos < text.length() && ResourceSearchIndex.isTokenChar(text.charAt(pos))) {
+                pos++;
+            }
+            result.add(text.substring(start, pos));
+        }
+        return result;
+    }
+
+    private static int[] findAll(String term, String token) {
+        int[] result = new int[term.length()];
+        int count = 0;
+        for (int pos = term.indexOf(token); pos >= 0; pos = term.indexOf(token, pos + 1)) {
+            result[count++] = pos;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Whether the query contains no tokens, and so can not be answered from the index.
+     *
+     * @return whether the query contains no tokens.
+     */
+    public boolean isEmpty() {
+        return tokenCount == 0;
+    }
+
+    /**
+     * The offsets in the search content of the resource where the query matches.
+     *
+     * @param index
+     * @return the offsets in ascending order.
+     */
+    public int[] findOffsets(ResourceSearchIndex index) {
+        if (firstTerms.isEmpty()) {
+            return new int[0];
+        }
+        int[][] followingPositions = new int[followingTerms.size()][];
+        for (int i = 0; i < followingTerms.size(); i++) {
+            followingPositions[i] = getPositions(index, followingTerms.get(i));
+            if (followingPositions[i].length == 0) {
+                return new int[0];
+            }
+        }
+        int[] result = new int[16];
+        int count = 0;
+        for (Map.Entry<String, int[]> entry: firstTerms.entrySet()) {
+            int[] positions = index.getPositions(entry.getKey());
+            if (positions == null) {
+                continue;
+            }
+            for (int position: positions) {
+                if (! isFollowedByPhrase(position, followingPositions)) {
+                    continue;
+                }
+                int tokenOffset = index.getTokenOffset(position);
+                for (int shift: entry.getValue()) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = tokenOffset + shift;
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static boolean isFollowedByPhrase(int position, int[][] followingPositions) {
+        for (int i = 0; i < followingPositions.length; i++) {
+            if (Arrays.binarySearch(followingPositions[i], position + i + 1) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The positions of all given terms in the resource, in ascending order.
+     */
+    private static int[] getPositions(ResourceSearchIndex index, Collection<String> terms) {
+        List<int[]> termPositions = new ArrayList<int[]>(terms.size());
+        int count = 0;
+        for (String term: terms) {
+            int[] positions = index.getPositions(term);
+            if (positions != null) {
+                termPositions.add(positions);
+                count += positions.length;
+            }
+        }
+        if (termPositions.size() == 1) {
+            return termPositions.get(0);
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int[] positions: termPositions) {
+            System.arraycopy(positions, 0, result, count, positions.length);
+            count += positions.length;
+        }
+        // positions of different terms never overlap
+        Arrays.sort(result);
+        return result;
+    }
+}
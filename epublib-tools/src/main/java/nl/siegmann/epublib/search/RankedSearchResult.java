@@ -0,0 +1,49 @@
+package nl.siegmann.epublib.search;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+/**
+ * A resource that matches a search of a {@link LibrarySearchIndex}, with its score.
+ *
+ * The page position is the position of the first matching term in the resource.
+ */
+public class RankedSearchResult extends SearchResult {
+
+    private final String bookKey;
+    private final Book book;
+    private final double score;
+
+    public RankedSearchResult(String bookKey, Book book, double score, int pagePos, int sourcePos, String searchTerm, Resource resource) {
+        super(pagePos, sourcePos, searchTerm, resource);
+        this.bookKey = bookKey;
+        this.book = book;
+        this.score = score;
+    }
+
+    /**
+     * The key the book was added to the library with.
+     *
+     * @return the key the book was added to the library with.
+     */
+    public String getBookKey() {
+        return bookKey;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * The BM25 score of the resource, higher is better.
+     *
+     * @return the BM25 score of the resource.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    public String toString() {
+        return bookKey + ":" + getResource().getHref() + " " + score;
+    }
+}
@@ -1,29 +1,133 @@
 package nl.siegmann.epublib.search;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import nl.siegmann.epublib.domain.Resource;
 
 /**
  * The search index for a single resource.
  *
+ * The search content of the resource is split up in tokens: runs of letters and digits.
+ * For every token the index stores the offset in the search content, for every term the positions of the tokens
+ * with that term.
+ * The search content itself is not kept.
+ *
  * @author paul.siegmann
  *
  */
 // package
-class ResourceSearchIndex {
-    private String content;
-    private Resource resource;
+abstract class ResourceSearchIndex {
+    private final Resource resource;
 
-    public ResourceSearchIndex(Resource resource, String searchContent) {
+    protected ResourceSearchIndex(Resource resource) {
         this.resource = resource;
-        this.content = searchContent;
     }
 
-    public String getContent() {
-        return content;
+    /**
+     * Creates the index of the given search content.
+     *
+     * @param resource
+     * @param content
+     * @return the index of the given search content.
+     */
+    public static ResourceSearchIndex create(Resource resource, SearchContent content) {
+        String searchContent = content.getText();
+        int[] tokenOffsets = new int[16];
+        int tokenCount = 0;
+        Map<String, int[]> positionsByTerm = new HashMap<String, int[]>();
+        int length = searchContent.length();
+        int pos = 0;
+        while (pos < length) {
+            if (! isTokenChar(searchContent.charAt(pos))) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            while (pos < length && isTokenChar(searchContent.charAt(pos))) {
+                pos++;
+            }
+            if (tokenCount == tokenOffsets.length) {
+                tokenOffsets = Arrays.copyOf(tokenOffsets, tokenCount * 2);
+            }
+            tokenOffsets[tokenCount] = start;
+            String term = searchContent.substring(start, pos);
+            // the first element holds the number of positions
+            int[] positions = positionsByTerm.get(term);
+            if (positions == null) {
+                positions = new int[4];
+            } else if (positions[0] + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[++positions[0]] = tokenCount;
+            positionsByTerm.put(term, positions);
+            tokenCount++;
+        }
+        Map<String, byte[]> postings = new HashMap<String, byte[]>(positionsByTerm.size() * 4 / 3 + 1);
+        for (Map.Entry<String, int[]> entry: positionsByTerm.entrySet()) {
+            int[] positions = entry.getValue();
+            postings.put(entry.getKey(), Postings.encode(Arrays.copyOfRange(positions, 1, positions[0] + 1), positions[0]));
+        }
+        return new MemoryResourceSearchIndex(resource, Arrays.copyOf(tokenOffsets, tokenCount), postings,
+                content.getTextOffsets(), content.getSourceOffsets());
+    }
+
+    /**
+     * Whether the character is part of a token.
+     *
+     * @param c
+     * @return whether the character is part of a token.
+     */
+    public static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c);
     }
 
     public Resource getResource() {
         return resource;
     }
 
+    public abstract int getTokenCount();
+
+    /**
+     * The offset in the search content of the token at the given position.
+     *
+     * @param position
+     * @return the offset in the search content of the token at the given position.
+     */
+    public abstract int getTokenOffset(int position);
+
+    /**
+     * The offset in the html of the resource of the character at the given offset in the search content.
+     *
+     * @param offset
+     * @return the offset in the html of the resource.
+     * @see SearchContent#getSourceOffset(int)
+     */
+    public abstract int getSourceOffset(int offset);
+
+    /**
+     * The offsets in the search content where the map to source offsets changes, see {@link SearchContent}.
+     *
+     * @return the offsets in the search content where the map to source offsets changes.
+     */
+    public abstract int[] getTextOffsets();
+
+    /**
+     * The source offsets of the characters at the offsets of {@link #getTextOffsets()}.
+     *
+     * @return the source offsets of the characters at the offsets of {@link #getTextOffsets()}.
+     */
+    public abstract int[] getSourceOffsets();
+
+    /**
+     * The positions of the tokens with the given term, in ascending order.
+     *
+     * @param term
+     * @return null if the resource does not contain the term.
+     */
+    public abstract int[] getPositions(String term);
+
+    public abstract Collection<String> getTerms();
 }
@@ -0,0 +1,76 @@
+package nl.siegmann.epublib.search;
+
+import java.util.Arrays;
+
+/**
+ * The normalized text of a html document used for searching, with a map from offsets in the normalized text to
+ * offsets in the html source.
+ *
+ * The map only stores the offsets where the distance between the normalized text and the source changes,
+ * so for plain runs of text it takes no space at all.
+ *
+ * @see HtmlTextExtractor
+ */
+public class SearchContent {
+
+    private final String text;
+    private final int[] textOffsets;
+    private final int[] sourceOffsets;
+
+    /**
+     * Creates a search content.
+     *
+     * @param text the normalized text
+     * @param textOffsets ascending offsets in the normalized text
+     * @param sourceOffsets the source offset of the character at every offset in textOffsets
+     */
+    public SearchContent(String text, int[] textOffsets, int[] sourceOffsets) {
+        this.text = text;
+        this.textOffsets = textOffsets;
+        this.sourceOffsets = sourceOffsets;
+    }
+
+    /**
+     * The normalized text.
+     *
+     * @return the normalized text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The offset in the html source of the character at the given offset in the normalized text.
+     *
+     * The source offset is the offset in the characters read from the html, so after decoding the bytes.
+     * For a character that was decoded from an entity this is the offset of the '&amp;' of the entity.
+     *
+     * @param textOffset
+     * @return the offset in the html source, -1 if the normalized text is empty.
+     */
+    public int getSourceOffset(int textOffset) {
+        return getSourceOffset(textOffset, textOffsets, sourceOffsets);
+    }
+
+    // package
+    static int getSourceOffset(int textOffset, int[] textOffsets, int[] sourceOffsets) {
+        int pos = Arrays.binarySearch(textOffsets, textOffset);
+        if (pos < 0) {
+            pos = -(pos + 1) - 1;
+        }
+        if (pos < 0) {
+            return -1;
+        }
+        return sourceOffsets[pos] + (textOffset - textOffsets[pos]);
+    }
+
+    // package
+    int[] getTextOffsets() {
+        return textOffsets;
+    }
+
+    // package
+    int[] getSourceOffsets() {
+        return sourceOffsets;
+    }
+}
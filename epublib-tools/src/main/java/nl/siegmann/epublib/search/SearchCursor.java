@@ -0,0 +1,48 @@
+package nl.siegmann.epublib.search;
+
+/**
+ * The place in the book where a search continues: the first match at or after the given position in the resource.
+ *
+ * The resource is identified by its href. Its index in the search index is used when the resource is no longer
+ * indexed, for instance because it was removed from the book.
+ *
+ * @see SearchIndex#doSearch(String, SearchCursor, int)
+ */
+public class SearchCursor {
+
+    private final String href;
+    private final int resourceIndex;
+    private final int pagePos;
+
+    public SearchCursor(String href, int resourceIndex, int pagePos) {
+        this.href = href;
+        this.resourceIndex = resourceIndex;
+        this.pagePos = pagePos;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    /**
+     * The index of the resource in the indexed resources when the cursor was created.
+     *
+     * @return the index of the resource in the indexed resources when the cursor was created.
+     */
+    public int getResourceIndex() {
+        return resourceIndex;
+    }
+
+    /**
+     * The position in the search content of the resource, see {@link SearchResult#getPagePos()}.
+     *
+     * @return the position in the search content of the resource.
+     */
+    public int getPagePos() {
+        return pagePos;
+    }
+
+    public String toString() {
+        return href + "#" + pagePos;
+    }
+}
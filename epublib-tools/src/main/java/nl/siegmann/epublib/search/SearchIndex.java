@@ -4,8 +4,17 @@ import java.io.IOException;
 import java.io.Reader;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,7 +22,6 @@ import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.service.MediatypeService;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +29,12 @@ import org.slf4j.LoggerFactory;
 /**
  * A searchindex for searching through a book.
  *
+ * Keeps an inverted index of the search content of every resource: the positions of every term.
+ * Searching looks up the terms matching the search term instead of scanning the text.
+ *
+ * The resources are indexed in parallel. After the book was changed {@link #update()} indexes only the changed
+ * resources. Searching is safe while the index is being updated.
+ *
  * @author paul.siegmann
  *
  */
@@ -35,8 +49,65 @@ public class SearchIndex {
 
     private static final Pattern REMOVE_ACCENT_PATTERN = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
-    private List<ResourceSearchIndex> resourceSearchIndexes = new ArrayList<ResourceSearchIndex>();
+    /**
+     * The index of a book at one moment: the resource indexes and the dictionary of their terms.
+     *
+     * Never changed after creation, updates create a new snapshot.
+     */
+    // package
+    static class Snapshot {
+
+        final List<ResourceSearchIndex> resourceSearchIndexes;
+        final TermDictionary termDictionary;
+        // the indexed resources in the order of the book's contents, including the ones without search content
+        final List<Resource> contents;
+        // the data version of every indexed resource
+        final Map<Resource, Integer> dataVersions;
+
+        Snapshot(List<ResourceSearchIndex> resourceSearchIndexes, TermDictionary termDictionary, List<Resource> contents, Map<Resource, Integer> dataVersions) {
+            this.resourceSearchIndexes = Collections.unmodifiableList(resourceSearchIndexes);
+            this.termDictionary = termDictionary;
+            this.contents = contents;
+            this.dataVersions = dataVersions;
+        }
+    }
+
+    /**
+     * Indexes the resources from start to end, splitting the work until a task indexes a single resource.
+     */
+    private static class IndexTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Resource> resources;
+        private final ResourceSearchIndex[] result;
+        private final int start;
+        private final int end;
+
+        IndexTask(List<Resource> resources, ResourceSearchIndex[] result, int start, int end) {
+            this.resources = resources;
+            this.result = result;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                result[start] = createResourceSearchIndex(resources.get(start));
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new IndexTask(resources, result, start, middle), new IndexTask(resources, result, middle, end));
+        }
+    }
+
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new ArrayList<ResourceSearchIndex>(),
+            new TermDictionary(Collections.<String>emptySet()), Collections.<Resource>emptyList(), new IdentityHashMap<Resource, Integer>());
+
+    private volatile Snapshot snapshot = EMPTY_SNAPSHOT;
     private Book book;
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
 
     public SearchIndex() {
     }
@@ -45,94 +116,536 @@ public class SearchIndex {
         initBook(book);
     }
 
+    // package
+    SearchIndex(Book book, List<ResourceSearchIndex> resourceSearchIndexes, TermDictionary termDictionary) {
+        this.book = book;
+        List<Resource> contents = new ArrayList<Resource>(resourceSearchIndexes.size());
+        for (ResourceSearchIndex resourceSearchIndex: resourceSearchIndexes) {
+            contents.add(resourceSearchIndex.getResource());
+        }
+        this.snapshot = new Snapshot(resourceSearchIndexes, termDictionary, contents, getDataVersions(contents));
+    }
+
     public Book getBook() {
         return book;
     }
 
-    private static class ResourceSearchIndex {
-        private String content;
-        private Resource resource;
+    /**
+     * The pool the resources are indexed on.
+     *
+     * @return the pool the resources are indexed on.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
 
-        public String getContent() {
-            return content;
-        }
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
 
-        public Resource getResource() {
-            return resource;
-        }
+    // package
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
 
-        public ResourceSearchIndex(Resource resource, String searchContent) {
-            this.resource = resource;
-            this.content = searchContent;
-        }
+    // package
+    List<ResourceSearchIndex> getResourceSearchIndexes() {
+        return snapshot.resourceSearchIndexes;
+    }
+
+    // package
+    TermDictionary getTermDictionary() {
+        return snapshot.termDictionary;
     }
 
-    private static ResourceSearchIndex createResourceSearchIndex(Resource resource) {
-        String searchContent = getSearchContent(resource);
-        if ( StringUtils.isBlank(searchContent)) {
+    // package
+    static ResourceSearchIndex createResourceSearchIndex(Resource resource) {
+        SearchContent searchContent = extractSearchContent(resource);
+        if ( StringUtils.isBlank(searchContent.getText())) {
             return null;
         }
-        ResourceSearchIndex searchIndex = new ResourceSearchIndex(resource, searchContent);
-        return searchIndex;
+        return ResourceSearchIndex.create(resource, searchContent);
     }
 
-    public void initBook(Book book) {
-        this.resourceSearchIndexes = createSearchIndex(book);
+    /**
+     * Indexes all resources of the book, in parallel on the fork join pool.
+     *
+     * @param book
+     */
+    public synchronized void initBook(Book book) {
+        this.book = book;
+        List<Resource> contents = book == null ? Collections.<Resource>emptyList() : new ArrayList<Resource>(book.getContents());
+        Map<Resource, Integer> dataVersions = getDataVersions(contents);
+        Map<Resource, ResourceSearchIndex> created = createResourceSearchIndexes(contents);
+        List<ResourceSearchIndex> resourceSearchIndexes = new ArrayList<ResourceSearchIndex>();
+        Set<String> terms = new HashSet<String>();
+        for (Resource resource: contents) {
+            ResourceSearchIndex resourceSearchIndex = created.get(resource);
+            if (resourceSearchIndex != null) {
+                resourceSearchIndexes.add(resourceSearchIndex);
+                terms.addAll(resourceSearchIndex.getTerms());
+            }
+        }
+        this.snapshot = new Snapshot(resourceSearchIndexes, new TermDictionary(terms), contents, dataVersions);
     }
 
-    private static List<ResourceSearchIndex> createSearchIndex(Book book) {
-        List<ResourceSearchIndex> result = new ArrayList<ResourceSearchIndex>();
+    /**
+     * Brings the index up to date with the book.
+     *
+     * Only the resources that were added to the book's contents, replaced by another resource or whose data was
+     * replaced (see {@link Resource#getDataVersion()}) are indexed again, a change in the order of the contents only
+     * reorders the index.
+     * The new index replaces the old one in a single step: searches that are running while updating use the old index.
+     *
+     * When resources were removed or changed the dictionary is rebuilt from the terms that are left, so that
+     * {@link #getSuggestions(String, int)} no longer suggests terms that are not in the book.
+     *
+     * @return whether anything was changed.
+     */
+    public synchronized boolean update() {
         if (book == null) {
-            return result;
+            return false;
         }
-        for (Resource resource: book.getContents()) {
-            ResourceSearchIndex resourceSearchIndex = createResourceSearchIndex(resource);
+        Snapshot current = snapshot;
+        List<Resource> contents = new ArrayList<Resource>(book.getContents());
+        // read the versions before comparing and indexing, a change made while indexing is picked up by the next update
+        Map<Resource, Integer> dataVersions = getDataVersions(contents);
+        List<Resource> changed = new ArrayList<Resource>();
+        for (Map.Entry<Resource, Integer> entry: dataVersions.entrySet()) {
+            if (! entry.getValue().equals(current.dataVersions.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        if (changed.isEmpty() && isSameOrder(contents, current.contents)) {
+            return false;
+        }
+        Map<Resource, ResourceSearchIndex> existing = new IdentityHashMap<Resource, ResourceSearchIndex>();
+        for (ResourceSearchIndex resourceSearchIndex: current.resourceSearchIndexes) {
+            existing.put(resourceSearchIndex.getResource(), resourceSearchIndex);
+        }
+        // the terms of a removed or changed resource may no longer be in the book
+        boolean pruneTerms = false;
+        for (Resource resource: existing.keySet()) {
+            if (! current.dataVersions.get(resource).equals(dataVersions.get(resource))) {
+                pruneTerms = true;
+                break;
+            }
+        }
+        Map<Resource, ResourceSearchIndex> created = createResourceSearchIndexes(changed);
+        List<ResourceSearchIndex> resourceSearchIndexes = new ArrayList<ResourceSearchIndex>();
+        Set<String> newTerms = new HashSet<String>();
+        for (Resource resource: contents) {
+            ResourceSearchIndex resourceSearchIndex;
+            if (created.containsKey(resource)) {
+                resourceSearchIndex = created.get(resource);
+                if (resourceSearchIndex != null) {
+                    for (String term: resourceSearchIndex.getTerms()) {
+                        if (! current.termDictionary.contains(term)) {
+                            newTerms.add(term);
+                        }
+                    }
+                }
+            } else {
+                resourceSearchIndex = existing.get(resource);
+            }
             if (resourceSearchIndex != null) {
-                result.add(resourceSearchIndex);
+                resourceSearchIndexes.add(resourceSearchIndex);
+            }
+        }
+        TermDictionary termDictionary = current.termDictionary;
+        if (pruneTerms) {
+            Set<String> terms = new HashSet<String>();
+            for (ResourceSearchIndex resourceSearchIndex: resourceSearchIndexes) {
+                terms.addAll(resourceSearchIndex.getTerms());
+            }
+            termDictionary = new TermDictionary(terms);
+        } else if (! newTerms.isEmpty()) {
+            for (int i = 0; i < termDictionary.size(); i++) {
+                newTerms.add(termDictionary.get(i));
+            }
+            termDictionary = new TermDictionary(newTerms);
+        }
+        log.debug("Updated the search index of " + changed.size() + " resources");
+        this.snapshot = new Snapshot(resourceSearchIndexes, termDictionary, contents, dataVersions);
+        return true;
+    }
+
+    private static boolean isSameOrder(List<Resource> contents1, List<Resource> contents2) {
+        if (contents1.size() != contents2.size()) {
+            return false;
+        }
+        for (int i = 0; i < contents1.size(); i++) {
+            if (contents1.get(i) != contents2.get(i)) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private static Map<Resource, Integer> getDataVersions(List<Resource> resources) {
+        Map<Resource, Integer> result = new IdentityHashMap<Resource, Integer>();
+        for (Resource resource: resources) {
+            result.put(resource, resource.getDataVersion());
+        }
         return result;
     }
 
+    /**
+     * Indexes the resources on the fork join pool.
+     *
+     * @return a map from every resource to its index, the index is null if the resource has no search content.
+     */
+    private Map<Resource, ResourceSearchIndex> createResourceSearchIndexes(List<Resource> resources) {
+        ResourceSearchIndex[] result = new ResourceSearchIndex[resources.size()];
+        if (resources.size() == 1) {
+            result[0] = createResourceSearchIndex(resources.get(0));
+        } else if (resources.size() > 1) {
+            forkJoinPool.invoke(new IndexTask(resources, result, 0, resources.size()));
+        }
+        Map<Resource, ResourceSearchIndex> resultMap = new IdentityHashMap<Resource, ResourceSearchIndex>();
+        for (int i = 0; i < result.length; i++) {
+            resultMap.put(resources.get(i), result[i]);
+        }
+        return resultMap;
+    }
+
+    /**
+     * Finds all places in the book that match the search term.
+     *
+     * The search term is matched against the terms of the index, see {@link Query} for how.
+     * If the search term contains no letters or digits a {@link #doSubstringSearch(String) substring search} is done.
+     *
+     * @param searchTerm
+     * @return the matches in the order of the book's contents.
+     */
     public SearchResults doSearch(String searchTerm) {
         SearchResults result = new SearchResults();
         if (StringUtils.isBlank(searchTerm)) {
             return result;
         }
         searchTerm = cleanText(searchTerm);
-        for (ResourceSearchIndex resourceSearchIndex: resourceSearchIndexes) {
-            result.addAll(doSearch(searchTerm, resourceSearchIndex));
+        Snapshot current = snapshot;
+        Query query = new Query(searchTerm, current.termDictionary);
+        if (query.isEmpty()) {
+            return doSubstringSearch(searchTerm);
+        }
+        for (ResourceSearchIndex resourceSearchIndex: current.resourceSearchIndexes) {
+            int[] offsets = query.findOffsets(resourceSearchIndex);
+            List<SearchResult> hits = new ArrayList<SearchResult>(offsets.length);
+            for (int offset: offsets) {
+                hits.add(new SearchResult(offset, resourceSearchIndex.getSourceOffset(offset), searchTerm, resourceSearchIndex.getResource()));
+            }
+            result.addAll(hits);
         }
         result.setSearchTerm(searchTerm);
         return result;
     }
 
-    public static String getSearchContent(Resource resource) {
-        if (resource.getMediaType() != MediatypeService.XHTML) {
-            return "";
+    /**
+     * Finds the places in the book that match the search term one resource at a time.
+     *
+     * A resource is only searched when the iterator reaches it, so stopping early saves searching the rest of the book.
+     * The iterator keeps using the index as it was when it was created.
+     *
+     * @param searchTerm
+     * @return the matches in the order of the book's contents, the same ones as {@link #doSearch(String)} returns.
+     */
+    public Iterator<SearchResult> iterateSearch(String searchTerm) {
+        return new SearchIterator(snapshot, searchTerm, 0, 0);
+    }
+
+    /**
+     * Finds a page of the places in the book that match the search term.
+     *
+     * The matches before the offset are counted, but no results are created for them.
+     *
+     * @param searchTerm
+     * @param offset the number of matches to skip
+     * @param limit the maximum number of matches to return
+     * @return the matches with the cursor for the next page.
+     */
+    public SearchResults doSearch(String searchTerm, int offset, int limit) {
+        SearchIterator searchIterator = new SearchIterator(snapshot, searchTerm, 0, 0);
+        searchIterator.skip(offset);
+        return createPage(searchIterator, limit);
+    }
+
+    /**
+     * Finds a page of the places in the book that match the search term, starting at the cursor.
+     *
+     * Searching stops as soon as the page is full.
+     *
+     * @param searchTerm
+     * @param cursor where to start, null to start at the beginning of the book
+     * @param limit the maximum number of matches to return
+     * @return the matches with the cursor for the next page.
+     */
+    public SearchResults doSearch(String searchTerm, SearchCursor cursor, int limit) {
+        Snapshot current = snapshot;
+        if (cursor == null) {
+            return createPage(new SearchIterator(current, searchTerm, 0, 0), limit);
         }
-        String result = "";
-        try {
-            result = getSearchContent(resource.getReader());
-        } catch (IOException e) {
-            log.error(e.getMessage());
+        List<ResourceSearchIndex> resources = current.resourceSearchIndexes;
+        int resourceIndex = cursor.getResourceIndex();
+        if (resourceIndex >= resources.size() || ! resources.get(resourceIndex).getResource().getHref().equals(cursor.getHref())) {
+            resourceIndex = -1;
+            for (int i = 0; i < resources.size(); i++) {
+                if (resources.get(i).getResource().getHref().equals(cursor.getHref())) {
+                    resourceIndex = i;
+                    break;
+                }
+            }
         }
+        if (resourceIndex < 0) {
+            // the resource is gone, continue with the one that took its place
+            return createPage(new SearchIterator(current, searchTerm, Math.min(cursor.getResourceIndex(), resources.size()), 0), limit);
+        }
+        return createPage(new SearchIterator(current, searchTerm, resourceIndex, cursor.getPagePos()), limit);
+    }
+
+    private static SearchResults createPage(SearchIterator searchIterator, int limit) {
+        SearchResults result = new SearchResults();
+        List<SearchResult> hits = new ArrayList<SearchResult>(Math.min(Math.max(limit, 0), 64));
+        while (hits.size() < limit && searchIterator.hasNext()) {
+            hits.add(searchIterator.next());
+        }
+        result.addAll(hits);
+        result.setSearchTerm(searchIterator.searchTerm);
+        result.setNextCursor(searchIterator.getCursor());
         return result;
     }
 
+    /**
+     * Searches the resources of a snapshot one at a time.
+     */
+    private static class SearchIterator implements Iterator<SearchResult> {
+
+        private final List<ResourceSearchIndex> resources;
+        private final String searchTerm;
+        // null if a substring search is done
+        private final Query query;
+        private int resourceIndex;
+        // the position of the first match to return in the first resource
+        private int startPagePos;
+        private int[] offsets;
+        private SearchContent searchContent;
+        private int hitIndex;
+
+        SearchIterator(Snapshot snapshot, String searchTerm, int resourceIndex, int startPagePos) {
+            this.resources = snapshot.resourceSearchIndexes;
+            if (StringUtils.isBlank(searchTerm)) {
+                this.searchTerm = searchTerm;
+                this.query = null;
+                this.resourceIndex = resources.size();
+            } else {
+                this.searchTerm = cleanText(searchTerm);
+                Query resolved = new Query(this.searchTerm, snapshot.termDictionary);
+                this.query = resolved.isEmpty() ? null : resolved;
+                this.resourceIndex = resourceIndex;
+            }
+            this.startPagePos = startPagePos;
+        }
+
+        /**
+         * Searches the next resources until a match is found.
+         *
+         * @return whether there is a match left.
+         */
+        private boolean advance() {
+            while (offsets == null || hitIndex == offsets.length) {
+                if (offsets != null) {
+                    resourceIndex++;
+                    startPagePos = 0;
+                }
+                if (resourceIndex >= resources.size()) {
+                    return false;
+                }
+                ResourceSearchIndex resourceSearchIndex = resources.get(resourceIndex);
+                if (query == null) {
+                    searchContent = extractSearchContent(resourceSearchIndex.getResource());
+                    offsets = findAll(searchTerm, searchContent.getText());
+                } else {
+                    offsets = query.findOffsets(resourceSearchIndex);
+                }
+                hitIndex = 0;
+                if (startPagePos > 0) {
+                    int pos = Arrays.binarySearch(offsets, startPagePos);
+                    hitIndex = pos < 0 ? -(pos + 1) : pos;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return advance();
+        }
+
+        @Override
+        public SearchResult next() {
+            if (! advance()) {
+                throw new NoSuchElementException();
+            }
+            ResourceSearchIndex resourceSearchIndex = resources.get(resourceIndex);
+            int offset = offsets[hitIndex++];
+            int sourceOffset = query == null ? searchContent.getSourceOffset(offset) : resourceSearchIndex.getSourceOffset(offset);
+            return new SearchResult(offset, sourceOffset, searchTerm, resourceSearchIndex.getResource());
+        }
+
+        /**
+         * Skips count matches without creating results for them.
+         */
+        void skip(int count) {
+            while (count > 0 && advance()) {
+                int skipped = Math.min(count, offsets.length - hitIndex);
+                hitIndex += skipped;
+                count -= skipped;
+            }
+        }
+
+        /**
+         * The cursor pointing at the next match.
+         *
+         * @return null if there are no more matches.
+         */
+        SearchCursor getCursor() {
+            if (! advance()) {
+                return null;
+            }
+            return new SearchCursor(resources.get(resourceIndex).getResource().getHref(), resourceIndex, offsets[hitIndex]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static int[] findAll(String searchTerm, String content) {
+        int[] result = new int[16];
+        int count = 0;
+        for (int findPos = content.indexOf(searchTerm); findPos >= 0; findPos = content.indexOf(searchTerm, findPos + 1)) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = findPos;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds all places in the book that match the search term with typos.
+     *
+     * Every token of the search term matches the terms that are at most maxDistance insertions, deletions or
+     * substitutions of a character away from it. A search term of several tokens matches consecutive terms.
+     *
+     * @param searchTerm
+     * @param maxDistance
+     * @return the matches in the order of the book's contents, the page position is the start of the first term.
+     */
+    public SearchResults doFuzzySearch(String searchTerm, int maxDistance) {
+        SearchResults result = new SearchResults();
+        if (StringUtils.isBlank(searchTerm)) {
+            return result;
+        }
+        searchTerm = cleanText(searchTerm);
+        Snapshot current = snapshot;
+        Query query = new Query(searchTerm, current.termDictionary, maxDistance);
+        for (ResourceSearchIndex resourceSearchIndex: current.resourceSearchIndexes) {
+            int[] offsets = query.findOffsets(resourceSearchIndex);
+            List<SearchResult> hits = new ArrayList<SearchResult>(offsets.length);
+            for (int offset: offsets) {
+                hits.add(new SearchResult(offset, resourceSearchIndex.getSourceOffset(offset), searchTerm, resourceSearchIndex.getResource()));
+            }
+            result.addAll(hits);
+        }
+        result.setSearchTerm(searchTerm);
+        return result;
+    }
+
+    /**
+     * Suggestions for completing the last word of the text, for instance while it is being typed in a search box.
+     *
+     * The suggestions are the terms of the book that start with the last word, in alphabetical order.
+     * If there are none the terms that are close to the last word are suggested: at most 1 typo for words up to
+     * 4 characters, 2 typos for longer words.
+     *
+     * @param text
+     * @param maxCount the maximum number of suggestions
+     * @return the suggested terms.
+     */
+    public List<String> getSuggestions(String text, int maxCount) {
+        List<String> tokens = Query.tokenize(cleanText(text));
+        if (tokens.isEmpty() || maxCount <= 0) {
+            return new ArrayList<String>();
+        }
+        String lastToken = tokens.get(tokens.size() - 1);
+        TermDictionary dictionary = snapshot.termDictionary;
+        List<String> result = dictionary.findByPrefix(lastToken, maxCount);
+        if (result.isEmpty()) {
+            result = dictionary.findByEditDistance(lastToken, lastToken.length() <= 4 ? 1 : 2);
+            if (result.size() > maxCount) {
+                result = new ArrayList<String>(result.subList(0, maxCount));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds all places in the book where the search content contains the search term.
+     *
+     * Does not use the index: the search content of every resource is created again.
+     *
+     * @param searchTerm
+     * @return the matches in the order of the book's contents.
+     */
+    public SearchResults doSubstringSearch(String searchTerm) {
+        SearchResults result = new SearchResults();
+        if (StringUtils.isBlank(searchTerm)) {
+            return result;
+        }
+        searchTerm = cleanText(searchTerm);
+        for (ResourceSearchIndex resourceSearchIndex: snapshot.resourceSearchIndexes) {
+            Resource resource = resourceSearchIndex.getResource();
+            SearchContent searchContent = extractSearchContent(resource);
+            List<SearchResult> hits = new ArrayList<SearchResult>();
+            for (SearchResult hit: doSearch(searchTerm, searchContent.getText(), resource)) {
+                hits.add(new SearchResult(hit.getPagePos(), searchContent.getSourceOffset(hit.getPagePos()), searchTerm, resource));
+            }
+            result.addAll(hits);
+        }
+        result.setSearchTerm(searchTerm);
+        return result;
+    }
+
+    public static String getSearchContent(Resource resource) {
+        return extractSearchContent(resource).getText();
+    }
+
+    /**
+     * The search content of the resource with the map to offsets in the resource's html.
+     *
+     * @param resource
+     * @return an empty search content if the resource is not xhtml or can not be read.
+     */
+    public static SearchContent extractSearchContent(Resource resource) {
+        if (resource.getMediaType() == MediatypeService.XHTML) {
+            try {
+                return HtmlTextExtractor.extract(resource.getReader());
+            } catch (IOException e) {
+                log.error(e.getMessage());
+            }
+        }
+        return new SearchContent("", new int[0], new int[0]);
+    }
+
     public static String getSearchContent(Reader content) {
-        StringBuilder result = new StringBuilder();
-        Scanner scanner = new Scanner(content);
-        scanner.useDelimiter("<");
-        while(scanner.hasNext()) {
-            String text = scanner.next();
-            int closePos = text.indexOf('>');
-            String chunk = text.substring(closePos + 1).trim();
-            chunk = StringEscapeUtils.unescapeHtml(chunk);
-            chunk = cleanText(chunk);
-            result.append(chunk);
+        try {
+            return HtmlTextExtractor.extract(content).getText();
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            return "";
         }
-        return result.toString();
     }
 
     /**
@@ -194,10 +707,6 @@ public class SearchIndex {
         return text;
     }
 
-    private static List<SearchResult> doSearch(String searchTerm, ResourceSearchIndex resourceSearchIndex) {
-        return doSearch(searchTerm, resourceSearchIndex.getContent(), resourceSearchIndex.getResource());
-    }
-
     protected static List<SearchResult> doSearch(String searchTerm, String content, Resource resource) {
         List<SearchResult> result = new ArrayList<SearchResult>();
         int findPos = content.indexOf(searchTerm);
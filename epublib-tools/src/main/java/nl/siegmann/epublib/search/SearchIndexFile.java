@@ -0,0 +1,230 @@
+package nl.siegmann.epublib.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a {@link SearchIndex} to a file and opens it again without reading and indexing the book's resources.
+ *
+ * The file is memory mapped when opened: searches read the token offsets and postings directly from the mapping.
+ * Only the term dictionary and the list of resources are read at startup.
+ *
+ * Layout of the file, all integers are 4 bytes big-endian:
+ * <pre>
+ * magic, version
+ * termCount, (byteCount, UTF-8 bytes)[termCount] sorted
+ * resourceCount, (byteCount, UTF-8 bytes of href, size as 8 bytes, CRC32 of the data, segmentOffset)[resourceCount]
+ * segments, see {@link MappedResourceSearchIndex}
+ * </pre>
+ *
+ * A resource whose size or checksum differs from the one stored in the file, or that is not in the file, is indexed
+ * again when the file is opened.
+ */
+public class SearchIndexFile {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexFile.class);
+
+    private static final int MAGIC = 0x45505349; // "EPSI"
+    public static final int VERSION = 3;
+
+    private SearchIndexFile() {
+    }
+
+    /**
+     * Writes the search index to the given file.
+     *
+     * @param searchIndex
+     * @param file
+     * @throws IOException
+     */
+    public static void write(SearchIndex searchIndex, File file) throws IOException {
+        List<ResourceSearchIndex> resourceSearchIndexes = searchIndex.getResourceSearchIndexes();
+        TermDictionary dictionary = searchIndex.getTermDictionary();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(MAGIC);
+        headerOut.writeInt(VERSION);
+        headerOut.writeInt(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) {
+            writeString(dictionary.get(i), headerOut);
+        }
+        headerOut.writeInt(resourceSearchIndexes.size());
+        List<byte[]> segments = new ArrayList<byte[]>(resourceSearchIndexes.size());
+        int[] hrefSizes = new int[resourceSearchIndexes.size()];
+        for (int i = 0; i < resourceSearchIndexes.size(); i++) {
+            segments.add(createSegment(resourceSearchIndexes.get(i), dictionary));
+            hrefSizes[i] = resourceSearchIndexes.get(i).getResource().getHref().getBytes(Constants.CHARACTER_ENCODING).length;
+        }
+        // the segments start after the resource list
+        int segmentOffset = header.size();
+        for (int hrefSize: hrefSizes) {
+            segmentOffset += 4 + hrefSize + 8 + 4 + 4;
+        }
+        for (int i = 0; i < resourceSearchIndexes.size(); i++) {
+            Resource resource = resourceSearchIndexes.get(i).getResource();
+            writeString(resource.getHref(), headerOut);
+            headerOut.writeLong(resource.getSize());
+            headerOut.writeInt(getChecksum(resource));
+            headerOut.writeInt(segmentOffset);
+            segmentOffset += segments.get(i).length;
+        }
+        headerOut.flush();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            header.writeTo(out);
+            for (byte[] segment: segments) {
+                out.write(segment);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int getChecksum(Resource resource) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(resource.getData());
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(Constants.CHARACTER_ENCODING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] createSegment(ResourceSearchIndex resourceSearchIndex, TermDictionary dictionary) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(resourceSearchIndex.getTokenCount());
+        for (int i = 0; i < resourceSearchIndex.getTokenCount(); i++) {
+            out.writeInt(resourceSearchIndex.getTokenOffset(i));
+        }
+        int[] textOffsets = resourceSearchIndex.getTextOffsets();
+        int[] sourceOffsets = resourceSearchIndex.getSourceOffsets();
+        out.writeInt(textOffsets.length);
+        for (int textOffset: textOffsets) {
+            out.writeInt(textOffset);
+        }
+        for (int sourceOffset: sourceOffsets) {
+            out.writeInt(sourceOffset);
+        }
+        int[] termIndexes = new int[resourceSearchIndex.getTerms().size()];
+        int termCount = 0;
+        for (String term: resourceSearchIndex.getTerms()) {
+            termIndexes[termCount++] = dictionary.indexOf(term);
+        }
+        Arrays.sort(termIndexes);
+        out.writeInt(termCount);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        for (int termIndex: termIndexes) {
+            int[] positions = resourceSearchIndex.getPositions(dictionary.get(termIndex));
+            byte[] termPostings = Postings.encode(positions, positions.length);
+            out.writeInt(termIndex);
+            out.writeInt(postings.size());
+            out.writeInt(termPostings.length);
+            postings.write(termPostings);
+        }
+        postings.writeTo(out);
+        out.flush();
+        return result.toByteArray();
+    }
+
+    /**
+     * Opens the search index file of the given book.
+     *
+     * @param file
+     * @param book
+     * @return the search index
+     * @throws IOException if the file can not be read or is not a search index file.
+     */
+    public static SearchIndex open(File file, Book book) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        if (buffer.capacity() < 8 || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a search index file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported search index file version " + buffer.getInt(4));
+        }
+        buffer.position(8);
+        String[] terms = new String[buffer.getInt()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = readString(buffer);
+        }
+        TermDictionary dictionary = new TermDictionary(Arrays.asList(terms));
+        Map<String, ResourceSearchIndex> mappedIndexes = new HashMap<String, ResourceSearchIndex>();
+        int resourceCount = buffer.getInt();
+        for (int i = 0; i < resourceCount; i++) {
+            String href = readString(buffer);
+            long size = buffer.getLong();
+            int checksum = buffer.getInt();
+            int segmentOffset = buffer.getInt();
+            Resource resource = book.getResources().getByHref(href);
+            // a change that keeps the size, like a replaced word of the same length, only shows in the checksum
+            if (resource == null || resource.getSize() != size || getChecksum(resource) != checksum) {
+                log.debug("Search index of " + href + " is out of date");
+                continue;
+            }
+            mappedIndexes.put(href, new MappedResourceSearchIndex(resource, buffer, segmentOffset, dictionary));
+        }
+
+        List<ResourceSearchIndex> resourceSearchIndexes = new ArrayList<ResourceSearchIndex>();
+        Set<String> newTerms = Collections.emptySet();
+        for (Resource resource: book.getContents()) {
+            ResourceSearchIndex resourceSearchIndex = mappedIndexes.get(resource.getHref());
+            if (resourceSearchIndex == null) {
+                resourceSearchIndex = SearchIndex.createResourceSearchIndex(resource);
+                if (resourceSearchIndex == null) {
+                    continue;
+                }
+                if (newTerms.isEmpty()) {
+                    newTerms = new HashSet<String>();
+                }
+                newTerms.addAll(resourceSearchIndex.getTerms());
+            }
+            resourceSearchIndexes.add(resourceSearchIndex);
+        }
+        if (! newTerms.isEmpty()) {
+            newTerms.addAll(Arrays.asList(terms));
+            dictionary = new TermDictionary(newTerms);
+        }
+        return new SearchIndex(book, resourceSearchIndexes, dictionary);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, Constants.CHARACTER_ENCODING);
+    }
+}
@@ -4,6 +4,7 @@ import nl.siegmann.epublib.domain.Resource;
 
 public class SearchResult {
     private int pagePos = -1;
+    private int sourcePos = -1;
     private String searchTerm;
     private Resource resource;
     public SearchResult(int pagePos, String searchTerm, Resource resource) {
@@ -12,9 +13,21 @@ public class SearchResult {
         this.searchTerm = searchTerm;
         this.resource = resource;
     }
+    public SearchResult(int pagePos, int sourcePos, String searchTerm, Resource resource) {
+        this(pagePos, searchTerm, resource);
+        this.sourcePos = sourcePos;
+    }
     public int getPagePos() {
         return pagePos;
     }
+    /**
+     * The offset of the match in the html of the resource, for highlighting the match in the original xhtml.
+     *
+     * @return -1 if not known.
+     */
+    public int getSourcePos() {
+        return sourcePos;
+    }
     public String getSearchTerm() {
         return searchTerm;
     }
@@ -25,8 +25,20 @@ public class SearchResults {
     public void setHits(List<SearchResult> hits) {
         this.hits = hits;
     }
+    /**
+     * Where the search continues for the next page of results.
+     *
+     * @return null if there are no more results.
+     */
+    public SearchCursor getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(SearchCursor nextCursor) {
+        this.nextCursor = nextCursor;
+    }
     private Book book;
     private List<SearchResult> hits = new ArrayList<SearchResult>();
+    private SearchCursor nextCursor;
     public boolean isEmpty() {
         return hits.isEmpty();
     }
@@ -0,0 +1,150 @@
+package nl.siegmann.epublib.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The sorted set of all distinct terms of a search index.
+ *
+ * Used to find the terms that match a part of a query.
+ * Prefixes are found with a binary search, substrings, suffixes and similar terms with a {@link TrigramIndex}.
+ */
+// package
+class TermDictionary {
+
+    private final String[] terms;
+    private volatile TrigramIndex trigramIndex;
+
+    /**
+     * Creates a dictionary of the given terms.
+     *
+     * @param terms distinct terms
+     */
+    public TermDictionary(Collection<String> terms) {
+        this.terms = terms.toArray(new String[terms.size()]);
+        Arrays.sort(this.terms);
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    public boolean contains(String term) {
+        return Arrays.binarySearch(terms, term) >= 0;
+    }
+
+    /**
+     * The index of the term in the sorted terms.
+     *
+     * @param term
+     * @return -1 if the dictionary does not contain the term.
+     */
+    public int indexOf(String term) {
+        int result = Arrays.binarySearch(terms, term);
+        return result < 0 ? -1 : result;
+    }
+
+    /**
+     * The term with the given index in the sorted terms.
+     *
+     * @param index
+     * @return the term with the given index in the sorted terms.
+     */
+    public String get(int index) {
+        return terms[index];
+    }
+
+    /**
+     * All terms that start with the given prefix, in sorted order.
+     *
+     * @param prefix
+     * @return all terms that start with the given prefix.
+     */
+    public List<String> findByPrefix(String prefix) {
+        return findByPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The first maxCount terms that start with the given prefix, in sorted order.
+     *
+     * @param prefix
+     * @param maxCount
+     * @return the first maxCount terms that start with the given prefix.
+     */
+    public List<String> findByPrefix(String prefix, int maxCount) {
+        List<String> result = new ArrayList<String>();
+        int pos = Arrays.binarySearch(terms, prefix);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        while (pos < terms.length && result.size() < maxCount && terms[pos].startsWith(prefix)) {
+            result.add(terms[pos++]);
+        }
+        return result;
+    }
+
+    /**
+     * All terms that end with the given suffix.
+     *
+     * @param suffix
+     * @return all terms that end with the given suffix.
+     */
+    public List<String> findBySuffix(String suffix) {
+        List<String> result = new ArrayList<String>();
+        for (int termIndex: getTrigramIndex().findCandidates(suffix + TrigramIndex.PADDING)) {
+            if (terms[termIndex].endsWith(suffix)) {
+                result.add(terms[termIndex]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * All terms that contain the given text.
+     *
+     * @param text
+     * @return all terms that contain the given text.
+     */
+    public List<String> findBySubstring(String text) {
+        List<String> result = new ArrayList<String>();
+        for (int termIndex: getTrigramIndex().findCandidates(text)) {
+            if (terms[termIndex].contains(text)) {
+                result.add(terms[termIndex]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * All terms that can be turned into the given term with at most maxDistance insertions, deletions or
+     * substitutions of a character.
+     *
+     * @param term
+     * @param maxDistance
+     * @return the matching terms in sorted order.
+     */
+    public List<String> findByEditDistance(String term, int maxDistance) {
+        List<String> result = new ArrayList<String>();
+        for (int termIndex: getTrigramIndex().findSimilarCandidates(term, maxDistance)) {
+            if (EditDistance.isWithin(term, terms[termIndex], maxDistance)) {
+                result.add(terms[termIndex]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The trigram index of the terms, created when it is first needed.
+     */
+    private TrigramIndex getTrigramIndex() {
+        TrigramIndex result = trigramIndex;
+        if (result == null) {
+            // creating it twice in different threads does no harm
+            result = new TrigramIndex(terms);
+            trigramIndex = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+package nl.siegmann.epublib.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * For every sequence of 3 characters the terms that contain it.
+ *
+ * The terms are padded with a {@link #PADDING} character at both ends, so the first and last characters of a term
+ * are part of 3 trigrams like the other characters.
+ * Used to find the candidates for substring and edit distance matches without looking at every term.
+ */
+// package
+class TrigramIndex {
+
+    /**
+     * Marks the start and end of a term.
+     */
+    public static final char PADDING = '\0';
+
+    private static final int[] EMPTY = new int[0];
+
+    // the sorted trigrams
+    private final long[] trigrams;
+    // for every trigram the indexes of the terms that contain it, in ascending order
+    private final int[][] termIndexes;
+    private final int[] termLengths;
+
+    /**
+     * Creates the index of the given terms.
+     *
+     * @param terms
+     */
+    public TrigramIndex(String[] terms) {
+        Map<Long, int[]> index = new HashMap<Long, int[]>();
+        termLengths = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termLengths[i] = terms[i].length();
+            for (long trigram: getTrigrams(pad(terms[i]))) {
+                int[] termIndexes = index.get(trigram);
+                if (termIndexes == null) {
+                    // the first element is the count
+                    termIndexes = new int[4];
+                    index.put(trigram, termIndexes);
+                } else if (termIndexes[0] + 1 == termIndexes.length) {
+                    termIndexes = Arrays.copyOf(termIndexes, termIndexes.length * 2);
+                    index.put(trigram, termIndexes);
+                }
+                termIndexes[++termIndexes[0]] = i;
+            }
+        }
+        trigrams = new long[index.size()];
+        int count = 0;
+        for (Long trigram: index.keySet()) {
+            trigrams[count++] = trigram;
+        }
+        Arrays.sort(trigrams);
+        termIndexes = new int[trigrams.length][];
+        for (int i = 0; i < trigrams.length; i++) {
+            int[] termIndexesWithCount = index.get(trigrams[i]);
+            termIndexes[i] = Arrays.copyOfRange(termIndexesWithCount, 1, termIndexesWithCount[0] + 1);
+        }
+    }
+
+    private static String pad(String term) {
+        return PADDING + term + PADDING;
+    }
+
+    /**
+     * The distinct trigrams of the text, each one encoded as a long.
+     */
+    private static long[] getTrigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int count = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[count++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int[] getTermIndexes(long trigram) {
+        int pos = Arrays.binarySearch(trigrams, trigram);
+        return pos < 0 ? EMPTY : termIndexes[pos];
+    }
+
+    /**
+     * The terms that contain all trigrams of the text.
+     *
+     * The text may end with {@link #PADDING} to find the terms that end with the text.
+     * If the text is too short to contain a trigram all terms are returned.
+     *
+     * @param text
+     * @return the indexes of the candidate terms in ascending order.
+     */
+    public int[] findCandidates(String text) {
+        long[] textTrigrams = getTrigrams(text);
+        if (textTrigrams.length == 0) {
+            return allTerms();
+        }
+        int[][] lists = new int[textTrigrams.length][];
+        for (int i = 0; i < textTrigrams.length; i++) {
+            lists[i] = getTermIndexes(textTrigrams[i]);
+            if (lists[i].length == 0) {
+                return EMPTY;
+            }
+        }
+        // intersect, starting with the shortest list
+        Arrays.sort(lists, new Comparator<int[]>() {
+
+            @Override
+            public int compare(int[] list1, int[] list2) {
+                return list1.length - list2.length;
+            }
+        });
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] list1, int[] list2) {
+        int[] result = new int[list1.length];
+        int count = 0;
+        for (int termIndex: list1) {
+            if (Arrays.binarySearch(list2, termIndex) >= 0) {
+                result[count++] = termIndex;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * The terms that could be within the given edit distance of the term.
+     *
+     * An edit changes at most 3 of the trigrams of the padded term, so a term within the distance has at least
+     * (number of trigrams - 3 * maxDistance) trigrams in common with it. The length of the terms may differ at most
+     * maxDistance.
+     *
+     * @param term
+     * @param maxDistance
+     * @return the indexes of the candidate terms in ascending order.
+     */
+    public int[] findSimilarCandidates(String term, int maxDistance) {
+        long[] termTrigrams = getTrigrams(pad(term));
+        int minCommon = termTrigrams.length - 3 * maxDistance;
+        int[] result = new int[termLengths.length];
+        int count = 0;
+        if (minCommon <= 0) {
+            for (int i = 0; i < termLengths.length; i++) {
+                if (Math.abs(termLengths[i] - term.length()) <= maxDistance) {
+                    result[count++] = i;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+        int[] commonCounts = new int[termLengths.length];
+        for (long trigram: termTrigrams) {
+            for (int termIndex: getTermIndexes(trigram)) {
+                if (++commonCounts[termIndex] == minCommon
+                        && Math.abs(termLengths[termIndex] - term.length()) <= maxDistance) {
+                    result[count++] = termIndex;
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int[] allTerms() {
+        int[] result = new int[termLengths.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,774 @@
+package nl.siegmann.epublib.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Replaces many patterns in a single pass over a stream of characters.
+ *
+ * The patterns are compiled into an Aho-Corasick automaton, so the cost per character does not depend on the number of patterns.
+ * Replacements are leftmost-longest: of the matches starting at the earliest position the longest one wins, and the text
+ * following a replacement is searched again.
+ * While replacing, only the characters that may still be part of a match are kept, so the memory used is bounded by the length
+ * of the longest pattern, not by the length of the text.
+ *
+ * A TextReplacer is immutable and can be shared between threads.
+ */
+public class TextReplacer {
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+    private static final int OUTPUT_BUFFER_SIZE = 512;
+    private static final int MAX_REFERENCE_LENGTH = 32;
+    // stands in for a reference that can not be decoded, so no pattern matches it
+    private static final char UNKNOWN_REFERENCE = '\uFFFF';
+    // the html elements whose content is text that is not parsed for markup or references
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style"};
+
+    private final String[] replacements;
+    private final int maxPatternLength;
+
+    // the trie, nodes are numbered in insertion order
+    private final int[] depth;
+    private final int[] fail;
+    // the replacement index of the pattern ending at the node, -1 if no pattern ends here
+    private final int[] output;
+    // the nearest node along the fail links that has an output
+    private final int[] dictionaryLink;
+
+    // transitions: open addressing hash table keyed by (node << 16 | char)
+    private final long[] transitionKeys;
+    private final int[] transitionTargets;
+    private final int transitionMask;
+
+    /**
+     * Creates a TextReplacer for the given replacement table.
+     *
+     * @param replacementTable maps the patterns to their replacements, empty patterns are ignored.
+     */
+    public TextReplacer(Map<String, String> replacementTable) {
+        int nodeCapacity = 1;
+        for (String pattern: replacementTable.keySet()) {
+            if (pattern != null) {
+                nodeCapacity += pattern.length();
+            }
+        }
+        depth = new int[nodeCapacity];
+        fail = new int[nodeCapacity];
+        output = new int[nodeCapacity];
+        dictionaryLink = new int[nodeCapacity];
+        Arrays.fill(output, NO_NODE);
+        int tableSize = Integer.highestOneBit(Math.max(nodeCapacity * 2, 16) - 1) << 1;
+        transitionKeys = new long[tableSize];
+        Arrays.fill(transitionKeys, -1L);
+        transitionTargets = new int[tableSize];
+        transitionMask = tableSize - 1;
+
+        // children lists, only needed to compute the fail links breadth first
+        int[] firstChild = new int[nodeCapacity];
+        int[] nextSibling = new int[nodeCapacity];
+        char[] nodeChar = new char[nodeCapacity];
+        Arrays.fill(firstChild, NO_NODE);
+
+        List<String> replacementList = new ArrayList<String>(replacementTable.size());
+        int nodeCount = 1;
+        int longestPattern = 0;
+        for (Map.Entry<String, String> entry: replacementTable.entrySet()) {
+            String pattern = entry.getKey();
+            if (pattern == null || pattern.length() == 0) {
+                continue;
+            }
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int next = getTransition(node, c);
+                if (next == NO_NODE) {
+                    next = nodeCount++;
+                    depth[next] = depth[node] + 1;
+                    nodeChar[next] = c;
+                    nextSibling[next] = firstChild[node];
+                    firstChild[node] = next;
+                    putTransition(node, c, next);
+                }
+                node = next;
+            }
+            if (output[node] == NO_NODE) {
+                output[node] = replacementList.size();
+                replacementList.add(entry.getValue() == null ? "" : entry.getValue());
+            }
+            longestPattern = Math.max(longestPattern, pattern.length());
+        }
+        replacements = replacementList.toArray(new String[replacementList.size()]);
+        maxPatternLength = longestPattern;
+
+        // compute the fail and dictionary links breadth first
+        int[] queue = new int[nodeCount];
+        int queueHead = 0;
+        int queueTail = 0;
+        fail[ROOT] = ROOT;
+        dictionaryLink[ROOT] = NO_NODE;
+        for (int child = firstChild[ROOT]; child != NO_NODE; child = nextSibling[child]) {
+            fail[child] = ROOT;
+            dictionaryLink[child] = NO_NODE;
+            queue[queueTail++] = child;
+        }
+        while (queueHead < queueTail) {
+            int node = queue[queueHead++];
+            for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+                int failNode = nextState(fail[node], nodeChar[child]);
+                fail[child] = failNode;
+                dictionaryLink[child] = output[failNode] != NO_NODE ? failNode : dictionaryLink[failNode];
+                queue[queueTail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Reads a replacement table.
+     *
+     * Every line contains a pattern and its replacement, separated by a tab.
+     * Empty lines and lines starting with a # are skipped.
+     * The escapes \t, \n, \r and \\ can be used in both the pattern and the replacement.
+     *
+     * @param in
+     * @return the replacement table in the order of the lines.
+     * @throws IOException
+     */
+    public static Map<String, String> readReplacementTable(Reader in) throws IOException {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        BufferedReader reader = new BufferedReader(in);
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            int tabPos = line.indexOf('\t');
+            if (tabPos < 0) {
+                throw new IOException("Missing tab between pattern and replacement on line " + lineNumber);
+            }
+            result.put(unescape(line.substring(0, tabPos)), unescape(line.substring(tabPos + 1)));
+        }
+        return result;
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i == text.length() - 1) {
+                result.append(c);
+                continue;
+            }
+            c = text.charAt(++i);
+            switch (c) {
+                case 't': result.append('\t'); break;
+                case 'n': result.append('\n'); break;
+                case 'r': result.append('\r'); break;
+                default: result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * The length of the longest pattern, the maximum number of characters held back while replacing.
+     *
+     * @return the length of the longest pattern.
+     */
+    public int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+
+    /**
+     * Replaces all patterns in the given text.
+     *
+     * @param text
+     * @return the text with all patterns replaced, the same String if nothing was replaced.
+     */
+    public String replace(String text) {
+        if (text == null || maxPatternLength == 0 || ! containsPattern(text)) {
+            return text;
+        }
+        StringWriter result = new StringWriter(text.length());
+        try {
+            Replacement replacement = new Replacement(result, false);
+            for (int i = 0; i < text.length(); i++) {
+                replacement.write(text.charAt(i));
+            }
+            replacement.finish();
+        } catch (IOException e) {
+            // a StringWriter does not throw IOExceptions
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
+    private boolean containsPattern(String text) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = nextState(state, text.charAt(i));
+            if (output[state] != NO_NODE || dictionaryLink[state] != NO_NODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the reader to the writer, replacing all patterns.
+     *
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void replace(Reader in, Writer out) throws IOException {
+        Replacement replacement = new Replacement(out, false);
+        char[] buffer = new char[4096];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            for (int i = 0; i < count; i++) {
+                replacement.write(buffer[i]);
+            }
+        }
+        replacement.finish();
+    }
+
+    /**
+     * Copies the html or xml from the reader to the writer, replacing the patterns in the text only.
+     *
+     * Tags, comments, CDATA sections, processing instructions and doctypes are copied unchanged.
+     * Patterns never match across markup. The text is matched after decoding character and entity references, so a
+     * reference is matched as the character it stands for and never partly. References that are not part of a match are
+     * copied as written. The replacements are text, their &lt;, &gt; and &amp; are escaped.
+     * Use {@link #decodeHtmlReferences(Map)} to write the patterns with references.
+     *
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void replaceHtmlText(Reader in, Writer out) throws IOException {
+        HtmlTextReplacement htmlTextReplacement = new HtmlTextReplacement(out);
+        char[] buffer = new char[4096];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            htmlTextReplacement.write(buffer, count);
+        }
+        htmlTextReplacement.finish();
+    }
+
+    /**
+     * Decodes the character and entity references in the patterns and replacements of a replacement table, so that it
+     * can be used on the text of html documents.
+     *
+     * @param replacementTable
+     * @return a new replacement table with the references decoded.
+     */
+    public static Map<String, String> decodeHtmlReferences(Map<String, String> replacementTable) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry: replacementTable.entrySet()) {
+            result.put(decodeHtmlReferences(entry.getKey()), decodeHtmlReferences(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static String decodeHtmlReferences(String text) {
+        if (text == null || text.indexOf('&') < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        int pos = 0;
+        while (pos < text.length()) {
+            int end = text.indexOf(';', pos);
+            String decoded = null;
+            if (text.charAt(pos) == '&' && end > pos + 1 && end - pos <= MAX_REFERENCE_LENGTH) {
+                decoded = decodeReference(text.substring(pos, end + 1));
+            }
+            if (decoded == null) {
+                result.append(text.charAt(pos++));
+            } else {
+                result.append(decoded);
+                pos = end + 1;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Decodes a character or entity reference, from the &amp; up to and including the ;.
+     *
+     * @return the characters of the reference, null if it is not a known reference.
+     */
+    private static String decodeReference(String reference) {
+        if (reference.equals("&apos;")) {
+            return "'";
+        }
+        for (int i = 1; i < reference.length() - 1; i++) {
+            char c = reference.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || (c == '#' && i == 1))) {
+                return null;
+            }
+        }
+        String result = StringEscapeUtils.unescapeHtml(reference);
+        return result.equals(reference) ? null : result;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int getTransition(int node, char c) {
+        long key = ((long) node << 16) | c;
+        for (int i = hash(key) & transitionMask; ; i = (i + 1) & transitionMask) {
+            long k = transitionKeys[i];
+            if (k == key) {
+                return transitionTargets[i];
+            }
+            if (k == -1L) {
+                return NO_NODE;
+            }
+        }
+    }
+
+    private void putTransition(int node, char c, int target) {
+        long key = ((long) node << 16) | c;
+        int i = hash(key) & transitionMask;
+        while (transitionKeys[i] != -1L) {
+            i = (i + 1) & transitionMask;
+        }
+        transitionKeys[i] = key;
+        transitionTargets[i] = target;
+    }
+
+    private int nextState(int state, char c) {
+        while (true) {
+            int next = getTransition(state, c);
+            if (next != NO_NODE) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * The state of replacing the patterns in a single stream of characters.
+     *
+     * Positions are absolute character positions in the stream.
+     * The characters that are not written yet, from pendingStart up to end, are kept in a ring buffer.
+     * A character can stand for a piece of source text, a reference in html, that is written instead of the character.
+     */
+    private class Replacement {
+        private final Writer out;
+        private final boolean escapeReplacements;
+        private final char[] pending = new char[maxPatternLength + 1];
+        private final String[] pendingSources = new String[maxPatternLength + 1];
+        private final char[] outputBuffer = new char[OUTPUT_BUFFER_SIZE];
+        private int outputLength;
+        private long pendingStart;
+        private long position;
+        private long end;
+        private int state = ROOT;
+        private long matchStart = -1;
+        private int matchLength;
+        private int matchReplacement;
+
+        Replacement(Writer out, boolean escapeReplacements) {
+            this.out = out;
+            this.escapeReplacements = escapeReplacements;
+        }
+
+        void write(char c) throws IOException {
+            write(c, null);
+        }
+
+        /**
+         * @param c the character to match
+         * @param source the text to write for c if it is not replaced, null to write c itself
+         */
+        void write(char c, String source) throws IOException {
+            if (state == ROOT && matchStart < 0 && getTransition(ROOT, c) == NO_NODE) {
+                // fast path: c can not start a pattern and nothing is pending
+                emit(c, source);
+                position++;
+                end++;
+                pendingStart = position;
+                return;
+            }
+            pending[(int) (end % pending.length)] = c;
+            pendingSources[(int) (end % pending.length)] = source;
+            end++;
+            scan();
+        }
+
+        /**
+         * Runs the automaton over the pending characters from position up to end.
+         */
+        private void scan() throws IOException {
+            while (position < end) {
+                char c = pending[(int) (position % pending.length)];
+                state = nextState(state, c);
+                for (int node = output[state] != NO_NODE ? state : dictionaryLink[state]; node != NO_NODE; node = dictionaryLink[node]) {
+                    long start = position - depth[node] + 1;
+                    if (matchStart < 0 || start < matchStart || (start == matchStart && depth[node] > matchLength)) {
+                        matchStart = start;
+                        matchLength = depth[node];
+                        matchReplacement = output[node];
+                    }
+                }
+                position++;
+                // no match that is still in progress can start before windowStart
+                long windowStart = position - depth[state];
+                if (matchStart >= 0 && windowStart > matchStart) {
+                    commitMatch();
+                } else {
+                    // a longer match starting before matchStart may still be in progress
+                    emitPending(matchStart >= 0 ? Math.min(matchStart, windowStart) : windowStart);
+                }
+            }
+        }
+
+        /**
+         * Writes the replacement of the current match and rescans the characters following it.
+         */
+        private void commitMatch() throws IOException {
+            emitPending(matchStart);
+            String replacement = replacements[matchReplacement];
+            for (int i = 0; i < replacement.length(); i++) {
+                char c = replacement.charAt(i);
+                if (escapeReplacements && (c == '<' || c == '>' || c == '&')) {
+                    emit(c == '<' ? "&lt;" : c == '>' ? "&gt;" : "&amp;");
+                } else {
+                    emit(c);
+                }
+            }
+            pendingStart = matchStart + matchLength;
+            position = pendingStart;
+            state = ROOT;
+            matchStart = -1;
+        }
+
+        private void emitPending(long until) throws IOException {
+            for (; pendingStart < until; pendingStart++) {
+                int index = (int) (pendingStart % pending.length);
+                emit(pending[index], pendingSources[index]);
+                pendingSources[index] = null;
+            }
+        }
+
+        private void emit(char c, String source) throws IOException {
+            if (source == null) {
+                emit(c);
+            } else {
+                emit(source);
+            }
+        }
+
+        private void emit(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                emit(text.charAt(i));
+            }
+        }
+
+        private void emit(char c) throws IOException {
+            if (outputLength == outputBuffer.length) {
+                out.write(outputBuffer, 0, outputLength);
+                outputLength = 0;
+            }
+            outputBuffer[outputLength++] = c;
+        }
+
+        /**
+         * Ends the current stream of characters: commits the remaining matches and writes all pending characters.
+         * Afterwards new characters can be written, no pattern will match across the boundary.
+         */
+        void endText() throws IOException {
+            while (matchStart >= 0) {
+                commitMatch();
+                scan();
+            }
+            emitPending(end);
+            state = ROOT;
+        }
+
+        /**
+         * Ends the current text and writes everything to the writer, so the caller can write to it directly.
+         */
+        void endTextAndWriteOutput() throws IOException {
+            endText();
+            out.write(outputBuffer, 0, outputLength);
+            outputLength = 0;
+        }
+
+        void finish() throws IOException {
+            endTextAndWriteOutput();
+            out.flush();
+        }
+    }
+
+    /**
+     * Separates the text of an html document from its markup, sending only the text through a Replacement.
+     */
+    private class HtmlTextReplacement {
+        private static final int TEXT = 0;
+        // a < was read, the next character decides whether it starts markup or is text
+        private static final int LESS_THAN = 1;
+        private static final int TAG = 2;
+        private static final int COMMENT = 3;
+        private static final int CDATA = 4;
+        // the content of a script or style element, copied unchanged up to its end tag
+        private static final int RAW_TEXT = 5;
+
+        private static final String COMMENT_START = "<!--";
+        private static final String CDATA_START = "<![CDATA[";
+
+        private final Writer out;
+        private final Replacement replacement;
+        private int mode = TEXT;
+        // the number of characters of the current markup, used to recognize comments and CDATA sections
+        private int markupLength;
+        private boolean maybeComment;
+        private boolean maybeCdata;
+        private char quote;
+        // the name of the start tag being read, null if the name is complete or the markup is not a start tag
+        private StringBuilder tagName;
+        private boolean rawTextStart;
+        // the last character of the tag outside quotes that is not whitespace, '/' for an empty element tag
+        private char lastTagChar;
+        // the end tag of the raw text, lower case, and the number of its characters seen
+        private String rawTextEnd;
+        private int rawTextEndLength;
+        // the number of closing characters seen, '-' for comments and ']' for CDATA sections
+        private int closeCount;
+        // the reference being read, null if the text is not in a reference
+        private StringBuilder reference;
+
+        HtmlTextReplacement(Writer out) {
+            this.out = out;
+            this.replacement = new Replacement(out, true);
+        }
+
+        void write(char[] buffer, int count) throws IOException {
+            int markupStart = mode == TEXT || mode == LESS_THAN ? -1 : 0;
+            for (int i = 0; i < count; i++) {
+                char c = buffer[i];
+                if (mode == LESS_THAN) {
+                    if (isMarkupStart(c)) {
+                        replacement.endTextAndWriteOutput();
+                        out.write('<');
+                        startTag(c);
+                        markupStart = i;
+                    } else {
+                        // a < that does not start markup is text
+                        replacement.write('<');
+                        mode = TEXT;
+                    }
+                }
+                if (mode == TEXT) {
+                    if (reference != null && readReference(c)) {
+                        continue;
+                    }
+                    if (c == '&') {
+                        reference = new StringBuilder(MAX_REFERENCE_LENGTH);
+                        reference.append(c);
+                    } else if (c == '<') {
+                        mode = LESS_THAN;
+                    } else {
+                        replacement.write(c);
+                    }
+                    continue;
+                }
+                if (markupEnds(c)) {
+                    out.write(buffer, markupStart, i + 1 - markupStart);
+                    if (rawTextStart) {
+                        mode = RAW_TEXT;
+                        markupStart = i + 1;
+                    } else {
+                        mode = TEXT;
+                        markupStart = -1;
+                    }
+                }
+            }
+            if (markupStart >= 0) {
+                out.write(buffer, markupStart, count - markupStart);
+            }
+        }
+
+        /**
+         * Adds c to the reference being read.
+         *
+         * @param c
+         * @return whether c is part of the reference.
+         */
+        private boolean readReference(char c) throws IOException {
+            if (c == ';' && reference.length() > 1) {
+                reference.append(c);
+                String source = reference.toString();
+                reference = null;
+                String decoded = decodeReference(source);
+                if (decoded == null) {
+                    replacement.write(UNKNOWN_REFERENCE, source);
+                } else {
+                    // the first character stands for the whole reference, the others for nothing
+                    for (int i = 0; i < decoded.length(); i++) {
+                        replacement.write(decoded.charAt(i), i == 0 ? source : "");
+                    }
+                }
+                return true;
+            }
+            if (reference.length() < MAX_REFERENCE_LENGTH && (Character.isLetterOrDigit(c) || (c == '#' && reference.length() == 1))) {
+                reference.append(c);
+                return true;
+            }
+            // not a reference, the & and the characters following it are text
+            writeText(reference);
+            reference = null;
+            return false;
+        }
+
+        private void writeText(CharSequence text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                replacement.write(text.charAt(i));
+            }
+        }
+
+        /**
+         * Whether a &lt; followed by c starts markup: a start or end tag, a comment, a CDATA section, a doctype or a
+         * processing instruction. Otherwise the &lt; is text, like in "1 &lt; 2".
+         */
+        private boolean isMarkupStart(char c) {
+            return Character.isLetter(c) || c == '_' || c == ':' || c == '/' || c == '!' || c == '?';
+        }
+
+        /**
+         * Starts reading a tag after its &lt;, c being the character after it.
+         */
+        private void startTag(char c) {
+            mode = TAG;
+            markupLength = 1;
+            maybeComment = true;
+            maybeCdata = true;
+            quote = 0;
+            tagName = (c == '/' || c == '!' || c == '?') ? null : new StringBuilder();
+            rawTextStart = false;
+            rawTextEnd = null;
+            lastTagChar = 0;
+        }
+
+        /**
+         * Follows the markup one character at a time.
+         *
+         * @param c
+         * @return whether c is the last character of the markup.
+         */
+        private boolean markupEnds(char c) {
+            switch (mode) {
+                case TAG:
+                    if (tagName != null) {
+                        if (Character.isLetterOrDigit(c)) {
+                            tagName.append(c);
+                        } else {
+                            rawTextEnd = getRawTextEnd(tagName.toString());
+                            tagName = null;
+                        }
+                    }
+                    if (markupLength < CDATA_START.length()) {
+                        maybeComment = maybeComment && markupLength < COMMENT_START.length() && COMMENT_START.charAt(markupLength) == c;
+                        maybeCdata = maybeCdata && CDATA_START.charAt(markupLength) == c;
+                        markupLength++;
+                        if (maybeComment && markupLength == COMMENT_START.length()) {
+                            mode = COMMENT;
+                            closeCount = 0;
+                            return false;
+                        }
+                        if (maybeCdata && markupLength == CDATA_START.length()) {
+                            mode = CDATA;
+                            closeCount = 0;
+                            return false;
+                        }
+                    }
+                    if (quote != 0) {
+                        if (c == quote) {
+                            quote = 0;
+                        }
+                    } else if (c == '"' || c == '\'') {
+                        quote = c;
+                    } else if (c == '>') {
+                        rawTextStart = rawTextEnd != null && lastTagChar != '/';
+                        rawTextEndLength = 0;
+                        return true;
+                    } else if (! Character.isWhitespace(c)) {
+                        lastTagChar = c;
+                    }
+                    return false;
+                case COMMENT:
+                    return isClose(c, '-');
+                case RAW_TEXT:
+                    if (Character.toLowerCase(c) == rawTextEnd.charAt(rawTextEndLength)) {
+                        rawTextEndLength++;
+                        if (rawTextEndLength == rawTextEnd.length()) {
+                            // the end tag is read like any other tag
+                            mode = TAG;
+                            markupLength = CDATA_START.length();
+                            quote = 0;
+                            tagName = null;
+                            rawTextEnd = null;
+                        }
+                    } else {
+                        rawTextEndLength = c == '<' ? 1 : 0;
+                    }
+                    return false;
+                default:
+                    return isClose(c, ']');
+            }
+        }
+
+        /**
+         * The end tag that ends the raw text of the element with the given name.
+         *
+         * @return null if the element does not hold raw text.
+         */
+        private String getRawTextEnd(String name) {
+            for (String rawTextElement: RAW_TEXT_ELEMENTS) {
+                if (rawTextElement.equalsIgnoreCase(name)) {
+                    return "</" + rawTextElement;
+                }
+            }
+            return null;
+        }
+
+        private boolean isClose(char c, char closeChar) {
+            if (c == '>' && closeCount >= 2) {
+                return true;
+            }
+            closeCount = (c == closeChar) ? closeCount + 1 : 0;
+            return false;
+        }
+
+        void finish() throws IOException {
+            if (reference != null) {
+                writeText(reference);
+                reference = null;
+            }
+            if (mode == LESS_THAN) {
+                replacement.write('<');
+                mode = TEXT;
+            }
+            replacement.finish();
+        }
+    }
+}
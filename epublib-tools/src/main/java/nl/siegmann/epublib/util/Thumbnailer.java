@@ -0,0 +1,387 @@
+package nl.siegmann.epublib.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scales images down to fit within a maximum width and height, with memory use bounded by the target size.
+ *
+ * Images are never decoded at their full size: the decoder subsamples the source while reading, in a single pass over
+ * the encoded data.
+ * The original image data is returned unchanged if the image already fits.
+ *
+ * Results can be cached by the content hash of the source image, so the same cover shared by many books is only scaled once.
+ * A Thumbnailer can be used by several threads at the same time.
+ */
+public class Thumbnailer {
+
+    private static final Logger log = LoggerFactory.getLogger(Thumbnailer.class);
+
+    /**
+     * The trade-off between speed and quality.
+     */
+    public enum Quality {
+        /**
+         * Reads the source subsampled to between 1 and 2 times the target size and scales with nearest neighbour
+         * interpolation. Uses the least memory and time.
+         */
+        FAST,
+        /**
+         * Reads the source subsampled to between 2 and 4 times the target size and scales it down in one bilinear step.
+         */
+        BALANCED,
+        /**
+         * Reads the source subsampled to between 2 and 4 times the target size and scales it down by halving it with
+         * bicubic interpolation until it fits.
+         */
+        QUALITY
+    }
+
+    // cached for images that already fit, the caller's own data is returned for them
+    private static final byte[] FITS = new byte[0];
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final Quality quality;
+    private final Map<String, byte[]> cache;
+    private final long maxCacheBytes;
+    private long cacheBytes;
+
+    /**
+     * Creates a Thumbnailer without a cache.
+     *
+     * @param maxWidth
+     * @param maxHeight
+     * @param quality
+     */
+    public Thumbnailer(int maxWidth, int maxHeight, Quality quality) {
+        this(maxWidth, maxHeight, quality, 0);
+    }
+
+    /**
+     * Creates a Thumbnailer.
+     *
+     * @param maxWidth
+     * @param maxHeight
+     * @param quality
+     * @param maxCacheBytes the maximum total size of the cached thumbnails, 0 for no cache.
+     */
+    public Thumbnailer(int maxWidth, int maxHeight, Quality quality, long maxCacheBytes) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.quality = quality;
+        this.maxCacheBytes = maxCacheBytes;
+        this.cache = maxCacheBytes > 0 ? new LinkedHashMap<String, byte[]>(16, 0.75f, true) : null;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Scales the image down to fit within the maximum width and height.
+     * The result is encoded in the format of the source image if it can be written, as png otherwise.
+     *
+     * @param imageData the encoded source image
+     * @return the encoded thumbnail, or imageData itself if the image already fits.
+     * @throws IOException if the image can not be read.
+     */
+    public byte[] createThumbnail(byte[] imageData) throws IOException {
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = getCacheKey(imageData);
+            synchronized (cache) {
+                byte[] cached = cache.get(cacheKey);
+                if (cached != null) {
+                    return cached == FITS ? imageData : cached;
+                }
+            }
+        }
+        byte[] result = scale(imageData);
+        if (cache != null) {
+            putInCache(cacheKey, result == imageData ? FITS : result);
+        }
+        return result;
+    }
+
+    /**
+     * The media type of the encoded image, found by reading its header.
+     *
+     * Can be used to find out whether {@link #createThumbnail(byte[])} kept the format of an image, the thumbnail of an
+     * image that can not be written in its own format is a png.
+     *
+     * @param imageData the encoded image
+     * @return the media type, null if it is not a media type of an epub.
+     * @throws IOException if the image can not be read.
+     */
+    public static MediaType getMediaType(byte[] imageData) throws IOException {
+        ImageInputStream in = createImageInputStream(imageData);
+        try {
+            ImageReader reader = createImageReader(in);
+            try {
+                return MediatypeService.getMediaTypeByName("image/" + getFormatName(reader.getFormatName()));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates thumbnails of all images on the given executor.
+     *
+     * Images that can not be read are logged and left out of the result.
+     *
+     * @param images
+     * @param executor
+     * @return the thumbnail of every image, by image.
+     * @throws InterruptedException
+     */
+    public Map<Resource, byte[]> createThumbnails(Collection<Resource> images, ExecutorService executor) throws InterruptedException {
+        Map<Resource, Future<byte[]>> futures = new IdentityHashMap<Resource, Future<byte[]>>();
+        for (final Resource image: images) {
+            futures.put(image, executor.submit(new Callable<byte[]>() {
+
+                @Override
+                public byte[] call() throws IOException {
+                    return createThumbnail(image.getData());
+                }
+            }));
+        }
+        Map<Resource, byte[]> result = new IdentityHashMap<Resource, byte[]>();
+        for (Map.Entry<Resource, Future<byte[]>> entry: futures.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                log.error("Unable to create thumbnail of " + entry.getKey().getHref() + ": " + e.getCause().getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the image scaled down to fit within the maximum width and height, without encoding it again.
+     *
+     * @param imageData the encoded source image
+     * @return the scaled image, or the image at its own size if it already fits.
+     * @throws IOException if the image can not be read.
+     */
+    public BufferedImage readImage(byte[] imageData) throws IOException {
+        ImageInputStream in = createImageInputStream(imageData);
+        try {
+            ImageReader reader = createImageReader(in);
+            try {
+                if (fits(reader)) {
+                    return reader.read(0);
+                }
+                return readThumbnail(reader, getOutputFormat(reader.getFormatName()));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] scale(byte[] imageData) throws IOException {
+        ImageInputStream in = createImageInputStream(imageData);
+        try {
+            ImageReader reader = createImageReader(in);
+            try {
+                if (fits(reader)) {
+                    return imageData;
+                }
+                String formatName = getOutputFormat(reader.getFormatName());
+                BufferedImage thumbnail = readThumbnail(reader, formatName);
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                if (! ImageIO.write(thumbnail, formatName, result)) {
+                    throw new IOException("No image writer for " + formatName);
+                }
+                return result.toByteArray();
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ImageInputStream createImageInputStream(byte[] imageData) throws IOException {
+        ImageInputStream result = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData));
+        if (result == null) {
+            throw new IOException("Unable to create image input stream");
+        }
+        return result;
+    }
+
+    private static ImageReader createImageReader(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (! readers.hasNext()) {
+            throw new IOException("Unknown image format");
+        }
+        ImageReader result = readers.next();
+        result.setInput(in, true, true);
+        return result;
+    }
+
+    private boolean fits(ImageReader reader) throws IOException {
+        return reader.getWidth(0) <= maxWidth && reader.getHeight(0) <= maxHeight;
+    }
+
+    private BufferedImage readThumbnail(ImageReader reader, String formatName) throws IOException {
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+        double scale = Math.min((double) maxWidth / sourceWidth, (double) maxHeight / sourceHeight);
+        int width = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int height = Math.max(1, (int) Math.round(sourceHeight * scale));
+        boolean alpha = ! formatName.equals("jpeg") && reader.getImageTypes(0).next().getColorModel().hasAlpha();
+        return readSubsampled(reader, sourceWidth, sourceHeight, width, height, alpha);
+    }
+
+    private static String getFormatName(String readerFormatName) {
+        String result = readerFormatName.toLowerCase();
+        if (result.equals("jpg")) {
+            result = "jpeg";
+        }
+        return result;
+    }
+
+    private static String getOutputFormat(String sourceFormat) {
+        String result = getFormatName(sourceFormat);
+        if (! ImageIO.getImageWritersByFormatName(result).hasNext()) {
+            result = "png";
+        }
+        return result;
+    }
+
+    /**
+     * The largest subsampling factor that keeps the subsampled size at least minSize.
+     */
+    private static int getSubsampling(int sourceSize, int minSize) {
+        return Math.max(1, sourceSize / Math.max(1, minSize));
+    }
+
+    /**
+     * Reads the whole source subsampled to between 1 and 2 times the target size for {@link Quality#FAST}, between 2 and
+     * 4 times otherwise, and scales it down.
+     */
+    private BufferedImage readSubsampled(ImageReader reader, int sourceWidth, int sourceHeight, int width, int height, boolean alpha) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        int factor = quality == Quality.FAST ? 1 : 2;
+        int subsampling = Math.min(getSubsampling(sourceWidth, width * factor), getSubsampling(sourceHeight, height * factor));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage image = reader.read(0, param);
+        Object interpolation;
+        if (quality == Quality.FAST) {
+            interpolation = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        } else if (quality == Quality.QUALITY) {
+            interpolation = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+            while (image.getWidth() / 2 >= width && image.getHeight() / 2 >= height) {
+                image = resize(image, image.getWidth() / 2, image.getHeight() / 2, alpha, interpolation);
+            }
+        } else {
+            interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        }
+        return resize(image, width, height, alpha, interpolation);
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height, boolean alpha, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    private String getCacheKey(byte[] imageData) {
+        StringBuilder result = new StringBuilder();
+        try {
+            for (byte b: MessageDigest.getInstance("SHA-1").digest(imageData)) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform supports SHA-1
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
+    private void putInCache(String cacheKey, byte[] thumbnail) {
+        if (thumbnail.length > maxCacheBytes) {
+            return;
+        }
+        synchronized (cache) {
+            byte[] previous = cache.put(cacheKey, thumbnail);
+            if (previous != null) {
+                cacheBytes -= previous.length;
+            }
+            cacheBytes += thumbnail.length;
+            List<String> evicted = new ArrayList<String>();
+            Iterator<Map.Entry<String, byte[]>> entries = cache.entrySet().iterator();
+            while (cacheBytes > maxCacheBytes && entries.hasNext()) {
+                Map.Entry<String, byte[]> eldest = entries.next();
+                cacheBytes -= eldest.getValue().length;
+                evicted.add(eldest.getKey());
+            }
+            for (String key: evicted) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached thumbnails.
+     */
+    public void clearCache() {
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.clear();
+            cacheBytes = 0;
+        }
+    }
+}
@@ -1,145 +1,400 @@
 package nl.siegmann.epublib.utilities;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
+import nl.siegmann.epublib.Constants;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
 /**
  * Splits up a xhtml document into pieces that are all valid xhtml documents.
  *
+ * The document is streamed: every part is written to its own output as soon as it is full, so only the elements
+ * that are open at the current position are kept in memory.
+ * Every part gets the head of the original document, and the elements that are open where a part ends are closed
+ * at the end of that part and opened again, without their id, at the start of the next part.
+ *
  * @author paul
  *
  */
 public class HtmlSplitter {
 
+    /**
+     * Provides the outputs the parts of the document are written to.
+     */
+    public interface PartOutput {
+
+        /**
+         * Creates the output of the part with the given index.
+         * The splitter closes the output when the part is complete.
+         *
+         * @param partIndex
+         * @return the output of the part with the given index.
+         * @throws IOException
+         */
+        OutputStream createPart(int partIndex) throws IOException;
+    }
+
+    /**
+     * The number of parts the document was split into and the part every id ended up in.
+     */
+    public static class SplitResult {
+        private int partCount;
+        private final Map<String, Integer> partIndexById = new HashMap<String, Integer>();
+
+        public int getPartCount() {
+            return partCount;
+        }
+
+        /**
+         * The index of the part that contains the element with the given id.
+         *
+         * @param id
+         * @return -1 if the document has no element with the given id.
+         */
+        public int getPartIndex(String id) {
+            Integer result = partIndexById.get(id);
+            return result == null ? -1 : result;
+        }
+
+        /**
+         * The ids of all elements of the document, with the index of the part that contains them.
+         *
+         * @return the ids of all elements of the document, with the index of the part that contains them.
+         */
+        public Map<String, Integer> getPartIndexById() {
+            return partIndexById;
+        }
+    }
+
     private XMLEventFactory xmlEventFactory = XMLEventFactory.newInstance();
+    private XMLInputFactory xmlInputFactory = createXMLInputFactory();
     private XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
-    private List<XMLEvent> headerElements = new ArrayList<XMLEvent>();
-    private List<XMLEvent> footerElements = new ArrayList<XMLEvent>();
-    private int footerCloseTagLength;
-    private List<XMLEvent> elementStack = new ArrayList<XMLEvent>();
-    private StringWriter currentDoc = new StringWriter();
-    private List<XMLEvent> currentXmlEvents = new ArrayList<XMLEvent>();
-    private XMLEventWriter out;
-    private int maxLength = 300000; // 300K, the max length of a chapter of an epub document
-    private List<List<XMLEvent>> result = new ArrayList<List<XMLEvent>>();
 
-    public List<List<XMLEvent>> splitHtml(Reader reader, int maxLength) throws XMLStreamException {
-        XMLEventReader xmlEventReader = XMLInputFactory.newInstance().createXMLEventReader(reader);
-        return splitHtml(xmlEventReader, maxLength);
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory result = XMLInputFactory.newInstance();
+        // keep html entities as they are instead of loading the xhtml dtd
+        result.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        result.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        return result;
     }
 
-    private static int calculateTotalTagStringLength(List<XMLEvent> xmlEvents) {
-        int result = 0;
-        for(XMLEvent xmlEvent: xmlEvents) {
-            result += xmlEvent.toString().length();
+    /**
+     * Splits the document and returns the events of every part.
+     *
+     * @param reader
+     * @param maxLength
+     * @return the events of every part.
+     * @throws XMLStreamException
+     * @deprecated keeps all parts in memory, use {@link #splitHtml(Reader, int, PartOutput)}
+     */
+    @Deprecated
+    public List<List<XMLEvent>> splitHtml(Reader reader, int maxLength) throws XMLStreamException {
+        final List<ByteArrayOutputStream> parts = new ArrayList<ByteArrayOutputStream>();
+        try {
+            splitHtml(reader, maxLength, new PartOutput() {
+
+                @Override
+                public OutputStream createPart(int partIndex) {
+                    ByteArrayOutputStream result = new ByteArrayOutputStream();
+                    parts.add(result);
+                    return result;
+                }
+            });
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+        List<List<XMLEvent>> result = new ArrayList<List<XMLEvent>>(parts.size());
+        for (ByteArrayOutputStream part: parts) {
+            List<XMLEvent> xmlEvents = new ArrayList<XMLEvent>();
+            XMLEventReader xmlEventReader = xmlInputFactory.createXMLEventReader(new ByteArrayInputStream(part.toByteArray()), Constants.CHARACTER_ENCODING);
+            while (xmlEventReader.hasNext()) {
+                xmlEvents.add(xmlEventReader.nextEvent());
+            }
+            result.add(xmlEvents);
         }
         return result;
     }
 
-    public List<List<XMLEvent>> splitHtml(XMLEventReader reader, int maxLength) throws XMLStreamException {
-        this.headerElements = getHeaderElements(reader);
-        this.footerElements = getFooterElements();
-        footerCloseTagLength = calculateTotalTagStringLength(footerElements);
-        this.maxLength = (int) ((float) maxLength * 0.9);
-        currentXmlEvents = new ArrayList<XMLEvent>();
-        currentXmlEvents.addAll(headerElements);
-        currentXmlEvents.addAll(elementStack);
-        out = xmlOutputFactory.createXMLEventWriter(currentDoc);
-        for(XMLEvent headerXmlEvent: headerElements) {
-            out.add(headerXmlEvent);
-        }
-        XMLEvent xmlEvent = reader.nextEvent();
-        while(! isBodyEndElement(xmlEvent)) {
-            processXmlEvent(xmlEvent, result);
-            xmlEvent = reader.nextEvent();
-        }
-        result.add(currentXmlEvents);
-        return result;
+    /**
+     * Splits the document into parts of at most maxLength bytes, written as UTF-8.
+     *
+     * @param reader
+     * @param maxLength
+     * @param partOutput
+     * @return the number of parts and the part every id ended up in.
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public SplitResult splitHtml(Reader reader, int maxLength, PartOutput partOutput) throws XMLStreamException, IOException {
+        return splitHtml(xmlInputFactory.createXMLEventReader(reader), maxLength, partOutput);
     }
 
-    private void closeCurrentDocument() throws XMLStreamException {
-        closeAllTags(currentXmlEvents);
-        currentXmlEvents.addAll(footerElements);
-        result.add(currentXmlEvents);
+    /**
+     * Splits the document into parts of at most maxLength bytes, written as UTF-8.
+     *
+     * @param reader
+     * @param maxLength
+     * @param partOutput
+     * @return the number of parts and the part every id ended up in.
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public SplitResult splitHtml(XMLEventReader reader, int maxLength, PartOutput partOutput) throws XMLStreamException, IOException {
+        Splitter splitter = new Splitter(maxLength, partOutput);
+        splitter.split(reader);
+        return splitter.result;
     }
 
-    private void startNewDocument() throws XMLStreamException {
-        currentDoc = new StringWriter();
-        out = xmlOutputFactory.createXMLEventWriter(currentDoc);
-        for(XMLEvent headerXmlEvent: headerElements) {
-            out.add(headerXmlEvent);
+    /**
+     * The state of a single split.
+     */
+    private class Splitter {
+        private final long limit;
+        private final PartOutput partOutput;
+        private final SplitResult result = new SplitResult();
+        private final List<XMLEvent> headerEvents = new ArrayList<XMLEvent>();
+        private final List<StartElement> elementStack = new ArrayList<StartElement>();
+        // the length of the end tags of the open elements, the body and the html element
+        private int closeLength = "</body></html>".length();
+        private CountingOutputStream out;
+        private XMLEventWriter writer;
+        private boolean partHasContent;
+
+        public Splitter(int maxLength, PartOutput partOutput) {
+            // leave room for the parts of the document whose length is not known in advance
+            this.limit = (long) (maxLength * 0.9);
+            this.partOutput = partOutput;
         }
-        for(XMLEvent stackXmlEvent: elementStack) {
-            out.add(stackXmlEvent);
+
+        public void split(XMLEventReader reader) throws XMLStreamException, IOException {
+            readHeader(reader);
+            startPart();
+            while (reader.hasNext()) {
+                XMLEvent xmlEvent = reader.nextEvent();
+                if (isBodyEndElement(xmlEvent)) {
+                    break;
+                }
+                if (xmlEvent.isStartElement()) {
+                    StartElement startElement = xmlEvent.asStartElement();
+                    if (partHasContent && getLength() + closeLength + estimateLength(startElement) > limit) {
+                        endPart();
+                        startPart();
+                    }
+                    writer.add(startElement);
+                    elementStack.add(startElement);
+                    closeLength += getCloseTagLength(startElement);
+                    addId(startElement);
+                    partHasContent = true;
+                } else if (xmlEvent.isEndElement()) {
+                    writer.add(xmlEvent);
+                    if (! elementStack.isEmpty()) {
+                        closeLength -= getCloseTagLength(elementStack.remove(elementStack.size() - 1));
+                    }
+                } else if (xmlEvent.isCharacters()) {
+                    addCharacters(xmlEvent.asCharacters());
+                } else if (! xmlEvent.isEndDocument()) {
+                    writer.add(xmlEvent);
+                }
+            }
+            endPart();
         }
 
-        currentXmlEvents = new ArrayList<XMLEvent>();
-        currentXmlEvents.addAll(headerElements);
-        currentXmlEvents.addAll(elementStack);
-    }
+        private void readHeader(XMLEventReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                XMLEvent xmlEvent = reader.nextEvent();
+                if (xmlEvent.isStartDocument()) {
+                    // the parts are always written as UTF-8
+                    xmlEvent = xmlEventFactory.createStartDocument(Constants.CHARACTER_ENCODING, "1.0");
+                }
+                headerEvents.add(xmlEvent);
+                if (isBodyStartElement(xmlEvent)) {
+                    break;
+                }
+            }
+        }
 
-    private void processXmlEvent(XMLEvent xmlEvent, List<List<XMLEvent>> docs) throws XMLStreamException {
-        out.flush();
-        String currentSerializerDoc = currentDoc.toString();
-        if((currentSerializerDoc.length() + xmlEvent.toString().length() + footerCloseTagLength) >= maxLength) {
-            closeCurrentDocument();
-            startNewDocument();
+        private void startPart() throws XMLStreamException, IOException {
+            out = new CountingOutputStream(partOutput.createPart(result.partCount));
+            writer = xmlOutputFactory.createXMLEventWriter(out, Constants.CHARACTER_ENCODING);
+            for (XMLEvent headerEvent: headerEvents) {
+                writer.add(headerEvent);
+            }
+            for (StartElement startElement: elementStack) {
+                // the id stays with the part the element started in
+                writer.add(removeId(startElement));
+            }
+            partHasContent = false;
         }
-        updateStack(xmlEvent);
-        out.add(xmlEvent);
-        currentXmlEvents.add(xmlEvent);
-    }
 
-    private void closeAllTags(List<XMLEvent> xmlEvents) throws XMLStreamException {
-        for(int i = elementStack.size() - 1; i>= 0; i--) {
-            XMLEvent xmlEvent = elementStack.get(i);
-            XMLEvent xmlEndElementEvent = xmlEventFactory.createEndElement(xmlEvent.asStartElement().getName(), null);
-            xmlEvents.add(xmlEndElementEvent);
+        private void endPart() throws XMLStreamException, IOException {
+            for (int i = elementStack.size() - 1; i >= 0; i--) {
+                writer.add(xmlEventFactory.createEndElement(elementStack.get(i).getName(), null));
+            }
+            writer.add(xmlEventFactory.createEndElement("", null, "body"));
+            writer.add(xmlEventFactory.createEndElement("", null, "html"));
+            writer.add(xmlEventFactory.createEndDocument());
+            writer.close();
+            out.close();
+            result.partCount++;
+        }
+
+        private long getLength() throws XMLStreamException {
+            writer.flush();
+            return out.getByteCount();
+        }
+
+        /**
+         * Adds the text to the current part, continuing in new parts if it does not fit.
+         * Text is split at whitespace where possible.
+         */
+        private void addCharacters(Characters characters) throws XMLStreamException, IOException {
+            String text = characters.getData();
+            int start = 0;
+            while (start < text.length()) {
+                long available = limit - getLength() - closeLength;
+                int end = getFittingEnd(text, start, available, characters.isCData());
+                if (end == text.length()) {
+                    break;
+                }
+                int splitPos = end;
+                while (splitPos > start && ! Character.isWhitespace(text.charAt(splitPos))) {
+                    splitPos--;
+                }
+                if (splitPos == start) {
+                    if (partHasContent) {
+                        endPart();
+                        startPart();
+                        continue;
+                    }
+                    // a single word that does not fit an empty part
+                    splitPos = Math.max(end, start + Character.charCount(text.codePointAt(start)));
+                }
+                writer.add(createCharacters(characters, text.substring(start, splitPos)));
+                endPart();
+                startPart();
+                start = splitPos;
+            }
+            if (start < text.length()) {
+                writer.add(start == 0 ? characters : createCharacters(characters, text.substring(start)));
+                partHasContent = true;
+            }
+        }
+
+        private Characters createCharacters(Characters characters, String text) {
+            return characters.isCData() ? xmlEventFactory.createCData(text) : xmlEventFactory.createCharacters(text);
+        }
+
+        private void addId(StartElement startElement) {
+            String id = getId(startElement);
+            if (id != null && ! result.partIndexById.containsKey(id)) {
+                result.partIndexById.put(id, result.partCount);
+            }
         }
-    }
 
-    private void updateStack(XMLEvent xmlEvent) {
-        if(xmlEvent.isStartElement()) {
-            elementStack.add(xmlEvent);
-        } else if(xmlEvent.isEndElement()) {
-            XMLEvent lastEvent = elementStack.get(elementStack.size() - 1);
-            if(lastEvent.isStartElement() &&
-                    xmlEvent.asEndElement().getName().equals(lastEvent.asStartElement().getName())) {
-                elementStack.remove(elementStack.size() - 1);
+        private StartElement removeId(StartElement startElement) {
+            if (getId(startElement) == null) {
+                return startElement;
             }
+            List<Attribute> attributes = new ArrayList<Attribute>();
+            for (Iterator<?> iter = startElement.getAttributes(); iter.hasNext(); ) {
+                Attribute attribute = (Attribute) iter.next();
+                if (! isIdAttribute(startElement, attribute)) {
+                    attributes.add(attribute);
+                }
+            }
+            return xmlEventFactory.createStartElement(startElement.getName(), attributes.iterator(), startElement.getNamespaces());
         }
     }
 
-    private List<XMLEvent> getHeaderElements(XMLEventReader reader) throws XMLStreamException {
-        List<XMLEvent> result = new ArrayList<XMLEvent>();
-        XMLEvent event = reader.nextEvent();
-        while(event != null && (!isBodyStartElement(event))) {
-            result.add(event);
-            event = reader.nextEvent();
+    private static String getId(StartElement startElement) {
+        for (Iterator<?> iter = startElement.getAttributes(); iter.hasNext(); ) {
+            Attribute attribute = (Attribute) iter.next();
+            if (isIdAttribute(startElement, attribute)) {
+                return attribute.getValue();
+            }
         }
+        return null;
+    }
 
-        // add the body start tag to the result
-        if(event != null) {
-            result.add(event);
+    private static boolean isIdAttribute(StartElement startElement, Attribute attribute) {
+        String name = attribute.getName().getLocalPart();
+        return name.equals("id") || (name.equals("name") && startElement.getName().getLocalPart().equals("a"));
+    }
+
+    /**
+     * The end of the longest piece of the text from start that fits in the available number of bytes once it is
+     * escaped and written as UTF-8.
+     */
+    private static int getFittingEnd(String text, int start, long available, boolean cdata) {
+        long length = 0;
+        int result = start;
+        while (result < text.length()) {
+            int codePoint = text.codePointAt(result);
+            length += getEncodedLength(codePoint, cdata);
+            if (length > available) {
+                break;
+            }
+            result += Character.charCount(codePoint);
         }
         return result;
     }
 
-    private List<XMLEvent> getFooterElements() throws XMLStreamException {
-        List<XMLEvent> result = new ArrayList<XMLEvent>();
-        result.add(xmlEventFactory.createEndElement("", null, "body"));
-        result.add(xmlEventFactory.createEndElement("", null, "html"));
-        result.add(xmlEventFactory.createEndDocument());
+    private static int getEncodedLength(int codePoint, boolean cdata) {
+        if (! cdata) {
+            switch (codePoint) {
+            case '&':
+                return "&amp;".length();
+            case '<':
+            case '>':
+                return "&lt;".length();
+            default:
+                break;
+            }
+        }
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static int getCloseTagLength(StartElement startElement) {
+        QName name = startElement.getName();
+        int prefixLength = name.getPrefix().length();
+        return 3 + name.getLocalPart().length() + (prefixLength > 0 ? prefixLength + 1 : 0);
+    }
+
+    private static int estimateLength(StartElement startElement) {
+        int result = 2 + startElement.getName().getLocalPart().length();
+        for (Iterator<?> iter = startElement.getAttributes(); iter.hasNext(); ) {
+            Attribute attribute = (Attribute) iter.next();
+            result += 4 + attribute.getName().getLocalPart().length() + attribute.getValue().length();
+        }
         return result;
     }
 
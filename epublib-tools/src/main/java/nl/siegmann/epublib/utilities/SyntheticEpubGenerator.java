@@ -0,0 +1,704 @@
+package nl.siegmann.epublib.utilities;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Author;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.Title;
+import nl.siegmann.epublib.epub.EpubWriter;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Generates synthetic epubs of a configurable size and shape, for benchmarks and stress tests.
+ *
+ * All content is derived from a random seed, so the same settings always produce the same book.
+ *
+ * A book can be written in two ways:
+ * <ul>
+ * <li>{@link #writeWithEpubWriter(OutputStream)} creates a {@link Book} and writes it with the {@link EpubWriter}.</li>
+ * <li>{@link #write(OutputStream)} writes the zip entries directly, one resource at a time, so books with huge manifests
+ * can be generated with little memory. Only this way supports the compression method and the adversarial zip layouts.</li>
+ * </ul>
+ */
+public class SyntheticEpubGenerator {
+
+    /**
+     * The order of the entries in the generated zip.
+     */
+    public enum Layout {
+        /**
+         * mimetype, container.xml, package document and ncx first, followed by the content.
+         */
+        STANDARD,
+        /**
+         * mimetype and container.xml first, the ncx and package document stored after all content.
+         */
+        OPF_LAST,
+        /**
+         * All content first, followed by the ncx, package document, container.xml and finally the mimetype.
+         * This is not a valid epub, but readers are expected to cope.
+         */
+        CONTAINER_LAST
+    }
+
+    private static final String CONTENT_DIR = "OEBPS/";
+    private static final String PACKAGE_HREF = "content.opf";
+    private static final String NCX_HREF = "toc.ncx";
+    private static final String BOOK_ID = "BookId";
+    // a fixed modification time for all zip entries, so that the same settings result in the same bytes
+    private static final long ENTRY_TIME = 946684800000L;
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "in", "was", "he", "that", "it", "his", "her", "with", "as", "had", "for",
+        "she", "not", "at", "but", "be", "on", "you", "they", "which", "have", "him", "this", "from", "by", "were",
+        "lantern", "harbour", "quietly", "remember", "window", "morning", "letter", "garden", "silver", "journey"
+    };
+
+    private long seed = 1;
+    private String title = "Synthetic book";
+    private int chapterCount = 10;
+    private int chapterSize = 20000;
+    private int tocDepth = 1;
+    private int tocFanOut = 0;
+    private int imageCount = 0;
+    private int imageWidth = 640;
+    private int imageHeight = 480;
+    private String imageFormat = "png";
+    private int extraResourceCount = 0;
+    private int compressionMethod = ZipEntry.DEFLATED;
+    private Layout layout = Layout.STANDARD;
+
+    public static void main(String[] args) throws IOException {
+        SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+        String outLocation = "";
+        boolean useEpubWriter = false;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equalsIgnoreCase("--out")) {
+                outLocation = args[++i];
+            } else if(args[i].equalsIgnoreCase("--seed")) {
+                generator.setSeed(Long.parseLong(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--chapters")) {
+                generator.setChapterCount(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--chapter-size")) {
+                generator.setChapterSize(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--toc-depth")) {
+                generator.setTocDepth(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--toc-fan-out")) {
+                generator.setTocFanOut(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--images")) {
+                generator.setImageCount(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--image-size")) {
+                String[] size = args[++i].split("x");
+                generator.setImageWidth(Integer.parseInt(size[0]));
+                generator.setImageHeight(Integer.parseInt(size[1]));
+            } else if(args[i].equalsIgnoreCase("--image-format")) {
+                generator.setImageFormat(args[++i]);
+            } else if(args[i].equalsIgnoreCase("--extra-resources")) {
+                generator.setExtraResourceCount(Integer.parseInt(args[++i]));
+            } else if(args[i].equalsIgnoreCase("--store")) {
+                generator.setCompressionMethod(ZipEntry.STORED);
+            } else if(args[i].equalsIgnoreCase("--layout")) {
+                generator.setLayout(Layout.valueOf(args[++i].toUpperCase()));
+            } else if(args[i].equalsIgnoreCase("--epub-writer")) {
+                useEpubWriter = true;
+            }
+        }
+        if(outLocation.length() == 0) {
+            usage();
+        }
+        try (OutputStream out = new FileOutputStream(outLocation)) {
+            if (useEpubWriter) {
+                generator.writeWithEpubWriter(out);
+            } else {
+                generator.write(out);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("usage: " + SyntheticEpubGenerator.class.getName()
+                + "\n  --out [output epub file]"
+                + "\n  [--seed [random seed]]"
+                + "\n  [--chapters [number of chapters]]"
+                + "\n  [--chapter-size [size of a chapter in bytes]]"
+                + "\n  [--toc-depth [depth of the table of contents]]"
+                + "\n  [--toc-fan-out [children per table of contents entry, 0 for one entry per chapter]]"
+                + "\n  [--images [number of images]]"
+                + "\n  [--image-size [width]x[height]]"
+                + "\n  [--image-format [png|jpg|gif]]"
+                + "\n  [--extra-resources [number of stylesheets that are only in the manifest]]"
+                + "\n  [--store]"
+                + "\n  [--layout [standard|opf_last|container_last]]"
+                + "\n  [--epub-writer]");
+        System.exit(0);
+    }
+
+    /**
+     * Creates the book in memory.
+     *
+     * @return the book.
+     * @throws IOException
+     */
+    public Book createBook() throws IOException {
+        Book book = new Book();
+        book.getMetadata().addTitle(new Title(title));
+        book.getMetadata().addAuthor(new Author("Synthetic", "Generator"));
+        book.getMetadata().addIdentifier(new Identifier(Identifier.Scheme.UUID, getIdentifier(), BOOK_ID));
+        for (int i = 0; i < extraResourceCount; i++) {
+            book.getResources().add(new Resource("style" + i, createStylesheet(i), getStylesheetHref(i), MediatypeService.CSS));
+        }
+        for (int i = 0; i < imageCount; i++) {
+            book.getResources().add(new Resource("image" + i, createImage(i), getImageHref(i), getImageMediaType()));
+        }
+        TocEntry[] tocEntries = createTocEntries();
+        Resource[] chapters = new Resource[chapterCount];
+        for (int i = 0; i < chapterCount; i++) {
+            chapters[i] = new Resource("chapter" + i, createChapter(i, tocEntries), getChapterHref(i), MediatypeService.XHTML);
+            book.getResources().add(chapters[i]);
+            book.getSpine().addResource(chapters[i]);
+        }
+        List<TOCReference> parents = new ArrayList<TOCReference>();
+        for (TocEntry tocEntry: tocEntries) {
+            TOCReference tocReference = new TOCReference(tocEntry.title, chapters[tocEntry.chapter], tocEntry.getFragmentId());
+            while (parents.size() > tocEntry.level) {
+                parents.remove(parents.size() - 1);
+            }
+            if (parents.isEmpty()) {
+                book.getTableOfContents().addTOCReference(tocReference);
+            } else {
+                parents.get(parents.size() - 1).addChildSection(tocReference);
+            }
+            parents.add(tocReference);
+        }
+        return book;
+    }
+
+    /**
+     * Creates the book and writes it with the EpubWriter.
+     *
+     * The compression method and layout settings are not used.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeWithEpubWriter(OutputStream out) throws IOException {
+        new EpubWriter().write(createBook(), out);
+    }
+
+    /**
+     * Writes the book directly as zip entries, in the configured layout and with the configured compression method.
+     *
+     * Resources are generated one at a time, so only the largest resource needs to fit in memory.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        TocEntry[] tocEntries = createTocEntries();
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        if (layout != Layout.CONTAINER_LAST) {
+            writeMimeType(zipOut);
+            writeEntry(zipOut, "META-INF/container.xml", createContainerXml(), compressionMethod);
+        }
+        if (layout == Layout.STANDARD) {
+            writeEntry(zipOut, CONTENT_DIR + PACKAGE_HREF, createPackageDocument(), compressionMethod);
+            writeEntry(zipOut, CONTENT_DIR + NCX_HREF, createNcx(tocEntries), compressionMethod);
+        }
+        for (int i = 0; i < chapterCount; i++) {
+            writeEntry(zipOut, CONTENT_DIR + getChapterHref(i), createChapter(i, tocEntries), compressionMethod);
+        }
+        for (int i = 0; i < imageCount; i++) {
+            writeEntry(zipOut, CONTENT_DIR + getImageHref(i), createImage(i), compressionMethod);
+        }
+        for (int i = 0; i < extraResourceCount; i++) {
+            writeEntry(zipOut, CONTENT_DIR + getStylesheetHref(i), createStylesheet(i), compressionMethod);
+        }
+        if (layout != Layout.STANDARD) {
+            writeEntry(zipOut, CONTENT_DIR + NCX_HREF, createNcx(tocEntries), compressionMethod);
+            writeEntry(zipOut, CONTENT_DIR + PACKAGE_HREF, createPackageDocument(), compressionMethod);
+        }
+        if (layout == Layout.CONTAINER_LAST) {
+            writeEntry(zipOut, "META-INF/container.xml", createContainerXml(), compressionMethod);
+            writeMimeType(zipOut);
+        }
+        zipOut.finish();
+    }
+
+    /**
+     * An entry of the table of contents, in document order.
+     */
+    private static class TocEntry {
+        final int index;
+        final int level;
+        final String title;
+        int chapter;
+
+        TocEntry(int index, int level, String title) {
+            this.index = index;
+            this.level = level;
+            this.title = title;
+        }
+
+        String getFragmentId() {
+            return "toc" + index;
+        }
+    }
+
+    /**
+     * Creates the entries of the table of contents in document order and spreads them evenly over the chapters.
+     *
+     * If the fan-out is 0 every chapter gets a single top-level entry. A book without chapters has no entries, as
+     * there is nothing for them to point to.
+     *
+     * @return the entries of the table of contents.
+     */
+    private TocEntry[] createTocEntries() {
+        List<TocEntry> result = new ArrayList<TocEntry>();
+        if (chapterCount <= 0) {
+            return new TocEntry[0];
+        } else if (tocFanOut <= 0) {
+            for (int i = 0; i < chapterCount; i++) {
+                result.add(new TocEntry(i, 0, "Chapter " + (i + 1)));
+            }
+        } else {
+            addTocEntries(result, 0, "");
+        }
+        TocEntry[] tocEntries = result.toArray(new TocEntry[result.size()]);
+        for (TocEntry tocEntry: tocEntries) {
+            tocEntry.chapter = (int) ((long) tocEntry.index * chapterCount / tocEntries.length);
+        }
+        return tocEntries;
+    }
+
+    private void addTocEntries(List<TocEntry> result, int level, String numberPrefix) {
+        if (level >= tocDepth) {
+            return;
+        }
+        for (int i = 0; i < tocFanOut; i++) {
+            String number = numberPrefix + (i + 1);
+            result.add(new TocEntry(result.size(), level, "Section " + number));
+            addTocEntries(result, level + 1, number + ".");
+        }
+    }
+
+    private Random createRandom(int kind, int index) {
+        return new Random(seed * 31 * 31 + kind * 31 + index);
+    }
+
+    private String getIdentifier() {
+        return "urn:uuid:" + new UUID(seed, (long) chapterCount << 32 | imageCount).toString();
+    }
+
+    private static String getChapterHref(int index) {
+        return "text/chapter" + index + ".xhtml";
+    }
+
+    private String getImageHref(int index) {
+        return "images/image" + index + "." + imageFormat;
+    }
+
+    private static String getStylesheetHref(int index) {
+        return "styles/style" + index + ".css";
+    }
+
+    private MediaType getImageMediaType() {
+        return MediatypeService.getMediaTypeByFilename("image." + imageFormat);
+    }
+
+    /**
+     * Creates a chapter of roughly chapterSize bytes.
+     *
+     * The chapter contains a heading for every table of contents entry pointing into it, and the images that belong to it.
+     *
+     * @param chapterIndex
+     * @param tocEntries
+     * @return the xhtml of the chapter.
+     * @throws IOException
+     */
+    private byte[] createChapter(int chapterIndex, TocEntry[] tocEntries) throws IOException {
+        Random random = createRandom(1, chapterIndex);
+        ByteArrayOutputStream result = new ByteArrayOutputStream(chapterSize + 1024);
+        Writer out = new OutputStreamWriter(result, Constants.CHARACTER_ENCODING);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n");
+        out.write("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head>\n<title>Chapter " + (chapterIndex + 1) + "</title>\n");
+        if (extraResourceCount > 0) {
+            out.write("<link rel=\"stylesheet\" type=\"text/css\" href=\"../" + getStylesheetHref(chapterIndex % extraResourceCount) + "\"/>\n");
+        }
+        out.write("</head>\n<body>\n");
+
+        List<String> blocks = new ArrayList<String>();
+        for (int i = getFirstTocEntry(chapterIndex, tocEntries.length); i < getFirstTocEntry(chapterIndex + 1, tocEntries.length); i++) {
+            TocEntry tocEntry = tocEntries[i];
+            int headingLevel = Math.min(tocEntry.level + 1, 6);
+            blocks.add("<h" + headingLevel + " id=\"" + tocEntry.getFragmentId() + "\">" + StringEscapeUtils.escapeXml(tocEntry.title) + "</h" + headingLevel + ">\n");
+        }
+        for (int i = chapterIndex; i < imageCount; i += Math.max(chapterCount, 1)) {
+            blocks.add("<p><img src=\"../" + getImageHref(i) + "\" alt=\"image " + i + "\"/></p>\n");
+        }
+        out.flush();
+        int paragraphCount = Math.max(1, (chapterSize - result.size()) / 600);
+        int blocksPerParagraph = blocks.size() / paragraphCount + 1;
+        int blockIndex = 0;
+        StringBuilder paragraph = new StringBuilder();
+        while (result.size() < chapterSize || blockIndex < blocks.size()) {
+            for (int i = 0; i < blocksPerParagraph && blockIndex < blocks.size(); i++) {
+                out.write(blocks.get(blockIndex++));
+            }
+            paragraph.setLength(0);
+            paragraph.append("<p>");
+            appendSentences(paragraph, random, 560);
+            paragraph.append("</p>\n");
+            out.write(paragraph.toString());
+            out.flush();
+        }
+        out.write("</body>\n</html>\n");
+        out.flush();
+        return result.toByteArray();
+    }
+
+    /**
+     * The index of the first table of contents entry pointing into the given chapter.
+     * This is the inverse of the spreading done by createTocEntries.
+     *
+     * @param chapterIndex
+     * @param tocEntryCount
+     * @return the index of the first table of contents entry pointing into the given chapter.
+     */
+    private int getFirstTocEntry(int chapterIndex, int tocEntryCount) {
+        return (int) (((long) chapterIndex * tocEntryCount + chapterCount - 1) / chapterCount);
+    }
+
+    private static void appendSentences(StringBuilder result, Random random, int length) {
+        int start = result.length();
+        boolean startOfSentence = true;
+        while (result.length() - start < length) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (startOfSentence) {
+                result.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                startOfSentence = false;
+            } else {
+                result.append(word);
+            }
+            int punctuation = random.nextInt(20);
+            if (punctuation == 0) {
+                result.append(". ");
+                startOfSentence = true;
+            } else if (punctuation == 1) {
+                result.append(", ");
+            } else if (punctuation == 2) {
+                result.append(" <em>").append(WORDS[random.nextInt(WORDS.length)]).append("</em> ");
+            } else {
+                result.append(' ');
+            }
+        }
+        result.append("end.");
+    }
+
+    /**
+     * Creates an image of blocks of random colors, so it does not compress to nothing.
+     *
+     * @param index
+     * @return the encoded image.
+     * @throws IOException
+     */
+    private byte[] createImage(int index) throws IOException {
+        Random random = createRandom(2, index);
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        int blockSize = 8;
+        for (int y = 0; y < imageHeight; y += blockSize) {
+            for (int x = 0; x < imageWidth; x += blockSize) {
+                int rgb = random.nextInt(0x1000000);
+                for (int by = y; by < Math.min(y + blockSize, imageHeight); by++) {
+                    for (int bx = x; bx < Math.min(x + blockSize, imageWidth); bx++) {
+                        image.setRGB(bx, by, rgb);
+                    }
+                }
+            }
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        String formatName = imageFormat.equalsIgnoreCase("jpg") ? "jpeg" : imageFormat;
+        if (! ImageIO.write(image, formatName, result)) {
+            throw new IOException("No image writer found for format " + imageFormat);
+        }
+        return result.toByteArray();
+    }
+
+    private byte[] createStylesheet(int index) throws IOException {
+        return ("p.style" + index + " { margin: " + (index % 10) + "px; }\n").getBytes(Constants.CHARACTER_ENCODING);
+    }
+
+    private static byte[] createContainerXml() throws IOException {
+        return ("<?xml version=\"1.0\"?>\n"
+                + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n"
+                + "  <rootfiles>\n"
+                + "    <rootfile full-path=\"" + CONTENT_DIR + PACKAGE_HREF + "\" media-type=\"application/oebps-package+xml\"/>\n"
+                + "  </rootfiles>\n"
+                + "</container>\n").getBytes(Constants.CHARACTER_ENCODING);
+    }
+
+    private byte[] createPackageDocument() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(result, Constants.CHARACTER_ENCODING);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\" unique-identifier=\"" + BOOK_ID + "\">\n");
+        out.write("<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">\n");
+        out.write("<dc:identifier id=\"" + BOOK_ID + "\" opf:scheme=\"UUID\">" + getIdentifier() + "</dc:identifier>\n");
+        out.write("<dc:title>" + StringEscapeUtils.escapeXml(title) + "</dc:title>\n");
+        out.write("<dc:creator opf:role=\"aut\">Generator, Synthetic</dc:creator>\n");
+        out.write("<dc:language>en</dc:language>\n");
+        out.write("</metadata>\n<manifest>\n");
+        out.write("<item id=\"ncx\" href=\"" + NCX_HREF + "\" media-type=\"" + MediatypeService.NCX.getName() + "\"/>\n");
+        for (int i = 0; i < chapterCount; i++) {
+            out.write("<item id=\"chapter" + i + "\" href=\"" + getChapterHref(i) + "\" media-type=\"" + MediatypeService.XHTML.getName() + "\"/>\n");
+        }
+        String imageMediaType = getImageMediaType().getName();
+        for (int i = 0; i < imageCount; i++) {
+            out.write("<item id=\"image" + i + "\" href=\"" + getImageHref(i) + "\" media-type=\"" + imageMediaType + "\"/>\n");
+        }
+        for (int i = 0; i < extraResourceCount; i++) {
+            out.write("<item id=\"style" + i + "\" href=\"" + getStylesheetHref(i) + "\" media-type=\"" + MediatypeService.CSS.getName() + "\"/>\n");
+        }
+        out.write("</manifest>\n<spine toc=\"ncx\">\n");
+        for (int i = 0; i < chapterCount; i++) {
+            out.write("<itemref idref=\"chapter" + i + "\"/>\n");
+        }
+        out.write("</spine>\n</package>\n");
+        out.flush();
+        return result.toByteArray();
+    }
+
+    private byte[] createNcx(TocEntry[] tocEntries) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(result, Constants.CHARACTER_ENCODING);
+        int depth = 0;
+        for (TocEntry tocEntry: tocEntries) {
+            depth = Math.max(depth, tocEntry.level + 1);
+        }
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\">\n<head>\n");
+        out.write("<meta name=\"dtb:uid\" content=\"" + getIdentifier() + "\"/>\n");
+        out.write("<meta name=\"dtb:depth\" content=\"" + depth + "\"/>\n");
+        out.write("</head>\n<docTitle><text>" + StringEscapeUtils.escapeXml(title) + "</text></docTitle>\n<navMap>\n");
+        int level = -1;
+        for (TocEntry tocEntry: tocEntries) {
+            for (; level >= tocEntry.level; level--) {
+                out.write("</navPoint>\n");
+            }
+            out.write("<navPoint id=\"navPoint-" + (tocEntry.index + 1) + "\" playOrder=\"" + (tocEntry.index + 1) + "\">"
+                    + "<navLabel><text>" + StringEscapeUtils.escapeXml(tocEntry.title) + "</text></navLabel>"
+                    + "<content src=\"" + getChapterHref(tocEntry.chapter) + "#" + tocEntry.getFragmentId() + "\"/>\n");
+            level = tocEntry.level;
+        }
+        for (; level >= 0; level--) {
+            out.write("</navPoint>\n");
+        }
+        out.write("</navMap>\n</ncx>\n");
+        out.flush();
+        return result.toByteArray();
+    }
+
+    private static void writeMimeType(ZipOutputStream out) throws IOException {
+        writeEntry(out, "mimetype", MediatypeService.EPUB.getName().getBytes(Constants.CHARACTER_ENCODING), ZipEntry.STORED);
+    }
+
+    private static void writeEntry(ZipOutputStream out, String name, byte[] data, int method) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(method);
+        zipEntry.setTime(ENTRY_TIME);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            zipEntry.setSize(data.length);
+            zipEntry.setCompressedSize(data.length);
+            zipEntry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(zipEntry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The seed all content is generated from.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public int getChapterCount() {
+        return chapterCount;
+    }
+
+    /**
+     * The number of chapters, each chapter is a separate xhtml resource in the spine.
+     * A book without chapters has an empty spine and table of contents.
+     *
+     * @param chapterCount
+     * @throws IllegalArgumentException if chapterCount is negative
+     */
+    public void setChapterCount(int chapterCount) {
+        if (chapterCount < 0) {
+            throw new IllegalArgumentException("The chapter count can not be negative: " + chapterCount);
+        }
+        this.chapterCount = chapterCount;
+    }
+
+    public int getChapterSize() {
+        return chapterSize;
+    }
+
+    /**
+     * The approximate size of every chapter in bytes.
+     *
+     * @param chapterSize
+     */
+    public void setChapterSize(int chapterSize) {
+        this.chapterSize = chapterSize;
+    }
+
+    public int getTocDepth() {
+        return tocDepth;
+    }
+
+    /**
+     * The number of levels of the table of contents. Only used if the fan-out is larger than 0.
+     *
+     * @param tocDepth
+     */
+    public void setTocDepth(int tocDepth) {
+        this.tocDepth = tocDepth;
+    }
+
+    public int getTocFanOut() {
+        return tocFanOut;
+    }
+
+    /**
+     * The number of children of every table of contents entry that is not at the deepest level.
+     * If 0 the table of contents has a single top-level entry per chapter.
+     *
+     * @param tocFanOut
+     */
+    public void setTocFanOut(int tocFanOut) {
+        this.tocFanOut = tocFanOut;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * The number of images, spread evenly over the chapters.
+     *
+     * @param imageCount
+     */
+    public void setImageCount(int imageCount) {
+        this.imageCount = imageCount;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public void setImageWidth(int imageWidth) {
+        this.imageWidth = imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public void setImageHeight(int imageHeight) {
+        this.imageHeight = imageHeight;
+    }
+
+    public String getImageFormat() {
+        return imageFormat;
+    }
+
+    /**
+     * The image file extension: png, jpg or gif.
+     *
+     * @param imageFormat
+     */
+    public void setImageFormat(String imageFormat) {
+        this.imageFormat = imageFormat;
+    }
+
+    public int getExtraResourceCount() {
+        return extraResourceCount;
+    }
+
+    /**
+     * The number of stylesheets in the manifest, in addition to the chapters and images.
+     * Used to create books with huge manifests without creating huge amounts of content.
+     *
+     * @param extraResourceCount
+     */
+    public void setExtraResourceCount(int extraResourceCount) {
+        this.extraResourceCount = extraResourceCount;
+    }
+
+    public int getCompressionMethod() {
+        return compressionMethod;
+    }
+
+    /**
+     * The compression method of the zip entries written by {@link #write(OutputStream)}:
+     * ZipEntry.DEFLATED or ZipEntry.STORED. The mimetype is always stored.
+     *
+     * @param compressionMethod
+     */
+    public void setCompressionMethod(int compressionMethod) {
+        this.compressionMethod = compressionMethod;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * The order of the zip entries written by {@link #write(OutputStream)}.
+     *
+     * @param layout
+     */
+    public void setLayout(Layout layout) {
+        this.layout = layout;
+    }
+}
@@ -4,6 +4,8 @@ import java.awt.Color;
 import java.awt.GridLayout;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseWheelEvent;
@@ -121,6 +123,16 @@ public class ContentPane extends JPanel implements NavigationEventListener,
         this.editorPane = createJEditorPane();
         scrollPane.getViewport().add(editorPane);
         this.htmlDocumentFactory = new HTMLDocumentFactory(navigator, editorPane.getEditorKit());
+        scrollPane.getViewport().addComponentListener(new ComponentAdapter() {
+
+            @Override
+            public void componentResized(ComponentEvent e) {
+                int width = scrollPane.getViewport().getWidth();
+                if (width > 0) {
+                    htmlDocumentFactory.setRenderingWidth(width);
+                }
+            }
+        });
         initBook(navigator.getBook());
     }
 
@@ -0,0 +1,185 @@
+package nl.siegmann.epublib.viewer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+
+/**
+ * A least recently used cache of html documents by href, bounded by the estimated size of the documents in bytes.
+ *
+ * Pinned documents are never evicted, even if that makes the cache larger than its maximum size.
+ */
+// package
+class DocumentCache {
+
+    // rough sizes of the objects swing keeps for an element and for an attribute
+    private static final int ELEMENT_SIZE = 160;
+    private static final int ATTRIBUTE_SIZE = 48;
+
+    private static class Entry {
+        final HTMLDocument document;
+        final long size;
+
+        Entry(HTMLDocument document, long size) {
+            this.document = document;
+            this.size = size;
+        }
+    }
+
+    private final Lock lock = new ReentrantLock();
+    // in access order, the least recently used first
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private Set<String> pinnedHrefs = Collections.emptySet();
+    private long maxSize;
+    private long size;
+
+    public DocumentCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public HTMLDocument get(String href) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(href);
+            return entry == null ? null : entry.document;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean contains(String href) {
+        lock.lock();
+        try {
+            return entries.containsKey(href);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the document to the cache and evicts the least recently used documents that are not pinned until the cache
+     * fits its maximum size again.
+     *
+     * @param href
+     * @param document
+     * @param documentSize the estimated size of the document in bytes
+     */
+    public void put(String href, HTMLDocument document, long documentSize) {
+        lock.lock();
+        try {
+            Entry previous = entries.put(href, new Entry(document, documentSize));
+            if (previous != null) {
+                size -= previous.size;
+            }
+            size += documentSize;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the hrefs of the documents that may not be evicted.
+     *
+     * @param hrefs
+     */
+    public void setPinnedHrefs(Collection<String> hrefs) {
+        lock.lock();
+        try {
+            this.pinnedHrefs = new HashSet<String>(hrefs);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMaxSize(long maxSize) {
+        lock.lock();
+        try {
+            this.maxSize = maxSize;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The estimated size of all cached documents in bytes.
+     *
+     * @return the estimated size of all cached documents in bytes.
+     */
+    public long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            pinnedHrefs = Collections.emptySet();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); size > maxSize && iterator.hasNext(); ) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (! pinnedHrefs.contains(entry.getKey())) {
+                size -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory used by the document: the text plus the elements and their attributes.
+     *
+     * @param document
+     * @return the estimated size of the document in bytes.
+     */
+    public static long estimateSize(HTMLDocument document) {
+        document.readLock();
+        try {
+            return document.getLength() * 2L + estimateSize(document.getDefaultRootElement());
+        } finally {
+            document.readUnlock();
+        }
+    }
+
+    private static long estimateSize(Element element) {
+        long result = ELEMENT_SIZE + element.getAttributes().getAttributeCount() * (long) ATTRIBUTE_SIZE;
+        for (int i = 0; i < element.getElementCount(); i++) {
+            result += estimateSize(element.getElement(i));
+        }
+        return result;
+    }
+}
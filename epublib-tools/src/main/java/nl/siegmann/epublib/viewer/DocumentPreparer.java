@@ -0,0 +1,181 @@
+package nl.siegmann.epublib.viewer;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the documents of a book's spine in the background, nearest to the current spine position first.
+ *
+ * Only the xhtml resources of the spine are prepared. Every time a resource is picked the one nearest to the current
+ * spine position is taken, so changing the position changes the order of the remaining work at once.
+ * The resources within the pin distance are always prepared, the ones further away only while there is room for them.
+ *
+ * Changing the book drops all work for the previous book.
+ */
+// package
+class DocumentPreparer {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPreparer.class);
+
+    /**
+     * The work the preparer does for a resource.
+     */
+    interface Preparation {
+
+        /**
+         * Whether the document of the resource is ready.
+         */
+        boolean isPrepared(Resource resource);
+
+        /**
+         * Whether there is room for documents outside the pin distance.
+         */
+        boolean hasRoom();
+
+        /**
+         * Prepares the document of the resource of the given book. Called on the background thread.
+         */
+        void prepare(Book book, Resource resource);
+    }
+
+    private final Preparation preparation;
+    private final String threadName;
+    private final Object lock = new Object();
+    private Thread thread;
+    private Book book;
+    // the xhtml resources of the spine, null for other resources
+    private Resource[] spineResources = new Resource[0];
+    // the spine positions that were considered since the position last changed
+    private boolean[] considered = new boolean[0];
+    private int spinePos;
+    private int pinDistance;
+    private boolean stopped;
+
+    public DocumentPreparer(Preparation preparation, int pinDistance, String threadName) {
+        this.preparation = preparation;
+        this.pinDistance = pinDistance;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Starts preparing the documents of the book, dropping the work for the previous book.
+     *
+     * @param book
+     * @param spinePos the current spine position
+     */
+    public void setBook(Book book, int spinePos) {
+        synchronized (lock) {
+            this.book = book;
+            this.spineResources = new Resource[book == null ? 0 : book.getSpine().size()];
+            for (int i = 0; i < spineResources.length; i++) {
+                Resource resource = book.getSpine().getResource(i);
+                if (resource != null && resource.getMediaType() == MediatypeService.XHTML) {
+                    spineResources[i] = resource;
+                }
+            }
+            setSpinePosLocked(spinePos);
+            if (thread == null && ! stopped) {
+                thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        prepareDocuments();
+                    }
+                }, threadName);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Makes the documents nearest to the given spine position the next ones to prepare.
+     *
+     * @param spinePos
+     */
+    public void setSpinePos(int spinePos) {
+        synchronized (lock) {
+            setSpinePosLocked(spinePos);
+        }
+    }
+
+    private void setSpinePosLocked(int spinePos) {
+        this.spinePos = spinePos;
+        // documents may have been evicted, consider all of them again
+        this.considered = new boolean[spineResources.length];
+        lock.notifyAll();
+    }
+
+    public void setPinDistance(int pinDistance) {
+        synchronized (lock) {
+            this.pinDistance = pinDistance;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void prepareDocuments() {
+        while (true) {
+            Book currentBook;
+            Resource resource = null;
+            synchronized (lock) {
+                while (! stopped && (resource = nextResource()) == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+                currentBook = book;
+            }
+            try {
+                preparation.prepare(currentBook, resource);
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * The unprepared resource nearest to the spine position.
+     *
+     * @return null if there is nothing to prepare.
+     */
+    private Resource nextResource() {
+        for (int distance = 0; distance < spineResources.length; distance++) {
+            if (spinePos + distance >= spineResources.length && spinePos - distance < 0) {
+                break;
+            }
+            for (int pos: new int[] {spinePos + distance, spinePos - distance}) {
+                if (pos < 0 || pos >= spineResources.length || spineResources[pos] == null || considered[pos]) {
+                    continue;
+                }
+                if (distance > pinDistance && ! preparation.hasRoom()) {
+                    return null;
+                }
+                considered[pos] = true;
+                if (! preparation.isPrepared(spineResources[pos])) {
+                    return spineResources[pos];
+                }
+            }
+        }
+        return null;
+    }
+}
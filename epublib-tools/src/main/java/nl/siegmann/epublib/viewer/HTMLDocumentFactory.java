@@ -2,10 +2,15 @@ package nl.siegmann.epublib.viewer;
 
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.swing.text.EditorKit;
 import javax.swing.text.html.HTMLDocument;
@@ -28,6 +33,12 @@ import org.slf4j.LoggerFactory;
  *
  * Between books the init(Book) function needs to be called in order for images to appear correctly.
  *
+ * The documents are kept in a {@link DocumentCache} bounded by their estimated size. The documents of the spine
+ * sections within {@link #getPinDistance()} of the navigator's current section are never evicted.
+ * A {@link DocumentPreparer} creates the documents of the spine in the background, nearest to the current section
+ * first: always the ones within the pin distance, the others while the cache is less than
+ * {@link #PREPARE_CACHE_FILL_PERCENTAGE} percent full. Other documents are created when they are needed.
+ *
  * @author paul.siegmann
  *
  */
@@ -35,21 +46,45 @@ public class HTMLDocumentFactory implements NavigationEventListener {
 
     private static final Logger log = LoggerFactory.getLogger(HTMLDocumentFactory.class);
 
-    // After opening the book we wait a while before we starting indexing the rest of the pages.
-    // This way the book opens, everything settles down, and while the user looks at the cover page
-    // the rest of the book is indexed.
-    public static final int DOCUMENT_CACHE_INDEXER_WAIT_TIME = 500;
+    // the part of the maximum memory used for documents by default
+    private static final int DEFAULT_MAX_CACHE_MEMORY_FRACTION = 8;
+
+    /**
+     * Documents outside the pin distance are only prepared in the background while the cache is filled less than this.
+     */
+    public static final int PREPARE_CACHE_FILL_PERCENTAGE = 75;
 
     private ImageLoaderCache imageLoaderCache;
-    private ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
-    private Lock cacheReadLock = cacheLock.readLock();
-    private Lock cacheWriteLock = cacheLock.writeLock();
-    private Map<String, HTMLDocument> documentCache = new HashMap<String, HTMLDocument>();
+    private final DocumentCache documentCache = new DocumentCache(Runtime.getRuntime().maxMemory() / DEFAULT_MAX_CACHE_MEMORY_FRACTION);
+    // the documents that are being created in the background
+    private final ConcurrentMap<String, FutureTask<HTMLDocument>> pendingDocuments = new ConcurrentHashMap<String, FutureTask<HTMLDocument>>();
+    private final DocumentPreparer documentPreparer;
     private MyHtmlEditorKit editorKit;
+    private Navigator navigator;
+    private volatile Book book;
+    private int pinDistance = 2;
 
     public HTMLDocumentFactory(Navigator navigator, EditorKit editorKit) {
         this.editorKit = new MyHtmlEditorKit((HTMLEditorKit) editorKit);
+        this.navigator = navigator;
         this.imageLoaderCache = new ImageLoaderCache(navigator);
+        this.documentPreparer = new DocumentPreparer(new DocumentPreparer.Preparation() {
+
+            @Override
+            public boolean isPrepared(Resource resource) {
+                return documentCache.contains(resource.getHref());
+            }
+
+            @Override
+            public boolean hasRoom() {
+                return documentCache.getSize() < documentCache.getMaxSize() / 100 * PREPARE_CACHE_FILL_PERCENTAGE;
+            }
+
+            @Override
+            public void prepare(Book book, Resource resource) {
+                prepareDocument(book, resource);
+            }
+        }, pinDistance, "DocumentPreparer");
         init(navigator.getBook());
         navigator.addNavigationEventListener(this);
     }
@@ -62,16 +97,40 @@ public class HTMLDocumentFactory implements NavigationEventListener {
         initDocumentCache(book);
     }
 
-    private void putDocument(Resource resource, HTMLDocument document) {
-        if (document == null) {
-            return;
-        }
-        cacheWriteLock.lock();
-        try {
-            documentCache.put(resource.getHref(), document);
-        } finally {
-            cacheWriteLock.unlock();
-        }
+    /**
+     * The number of spine sections before and after the current one whose documents are kept in the cache.
+     *
+     * @return the number of spine sections before and after the current one whose documents are kept in the cache.
+     */
+    public int getPinDistance() {
+        return pinDistance;
+    }
+
+    public void setPinDistance(int pinDistance) {
+        this.pinDistance = pinDistance;
+        documentPreparer.setPinDistance(pinDistance);
+    }
+
+    /**
+     * Sets the width the documents are rendered at, wider images are scaled down to this width.
+     *
+     * @param renderingWidth
+     */
+    public void setRenderingWidth(int renderingWidth) {
+        imageLoaderCache.setRenderingWidth(renderingWidth);
+    }
+
+    /**
+     * The maximum estimated size in bytes of the cached documents.
+     *
+     * @return the maximum estimated size in bytes of the cached documents.
+     */
+    public long getMaxCacheSize() {
+        return documentCache.getMaxSize();
+    }
+
+    public void setMaxCacheSize(long maxCacheSize) {
+        documentCache.setMaxSize(maxCacheSize);
     }
 
     /**
@@ -85,14 +144,12 @@ public class HTMLDocumentFactory implements NavigationEventListener {
      * @return the HTMLDocument representation of the resource.
      */
     public HTMLDocument getDocument(Resource resource) {
-        HTMLDocument document = null;
-
         // try to get the document from  the cache
-        cacheReadLock.lock();
-        try {
-            document = documentCache.get(resource.getHref());
-        } finally {
-            cacheReadLock.unlock();
+        HTMLDocument document = documentCache.get(resource.getHref());
+
+        // the document may be being created in the background
+        if (document == null) {
+            document = getPendingDocument(resource.getHref());
         }
 
         // document was not in the cache, try to create it and add it to the cache
@@ -109,6 +166,32 @@ public class HTMLDocumentFactory implements NavigationEventListener {
         return document;
     }
 
+    private HTMLDocument getPendingDocument(String href) {
+        FutureTask<HTMLDocument> pendingDocument = pendingDocuments.get(href);
+        if (pendingDocument == null) {
+            return null;
+        }
+        try {
+            // creates the document in this thread if the prefetcher did not start on it yet
+            pendingDocument.run();
+            return pendingDocument.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error(e.getMessage());
+        } catch (CancellationException e) {
+            // the book was changed
+        }
+        return null;
+    }
+
+    private void putDocument(Resource resource, HTMLDocument document) {
+        if (document == null) {
+            return;
+        }
+        documentCache.put(resource.getHref(), document, DocumentCache.estimateSize(document));
+    }
+
     private String stripHtml(String input) {
         String result = removeControlTags(input);
 //        result = result.replaceAll("<meta\\s+[^>]*http-equiv=\"Content-Type\"[^>]*>", "");
@@ -176,41 +259,73 @@ public class HTMLDocumentFactory implements NavigationEventListener {
         if (book == null) {
             return;
         }
+        this.book = book;
+        for (Future<HTMLDocument> pendingDocument: pendingDocuments.values()) {
+            pendingDocument.cancel(false);
+        }
+        pendingDocuments.clear();
         documentCache.clear();
-        Thread documentIndexerThread = new Thread(new DocumentIndexer(book), "DocumentIndexer");
-        documentIndexerThread.setPriority(Thread.MIN_PRIORITY);
-        documentIndexerThread.start();
-
-//        addAllDocumentsToCache(book);
+        int spinePos = navigator.getCurrentSpinePos();
+        pinNeighbours(book, spinePos);
+        documentPreparer.setBook(book, spinePos);
     }
 
-    private class DocumentIndexer implements Runnable {
-        private Book book;
+    /**
+     * Pins the documents of the spine sections around the given position.
+     */
+    private void pinNeighbours(Book book, int spinePos) {
+        List<String> hrefs = new ArrayList<String>();
+        for (int pos = Math.max(0, spinePos - pinDistance); pos <= spinePos + pinDistance && pos < book.getSpine().size(); pos++) {
+            Resource resource = book.getSpine().getResource(pos);
+            if (resource != null) {
+                hrefs.add(resource.getHref());
+            }
+        }
+        documentCache.setPinnedHrefs(hrefs);
+    }
 
-        public DocumentIndexer(Book book) {
-            this.book = book;
+    /**
+     * Creates the document of the resource of the given book and adds it to the cache, unless the book was changed
+     * in the meantime. Called by the document preparer.
+     */
+    private void prepareDocument(final Book book, final Resource resource) {
+        final String href = resource.getHref();
+        if (book != this.book || documentCache.contains(href)) {
+            return;
         }
-        @Override
-        public void run() {
-            try {
-                Thread.sleep(DOCUMENT_CACHE_INDEXER_WAIT_TIME);
-            } catch (InterruptedException e) {
-                log.error(e.getMessage());
+        FutureTask<HTMLDocument> task = new FutureTask<HTMLDocument>(new Callable<HTMLDocument>() {
+
+            @Override
+            public HTMLDocument call() {
+                if (book != HTMLDocumentFactory.this.book) {
+                    return null;
+                }
+                HTMLDocument document = createDocument(resource);
+                if (book == HTMLDocumentFactory.this.book) {
+                    putDocument(resource, document);
+                }
+                return document;
             }
-            addAllDocumentsToCache(book);
-        }
+        }) {
 
-        private void addAllDocumentsToCache(Book book) {
-            for (Resource resource: book.getResources().getAll()) {
-                getDocument(resource);
+            @Override
+            protected void done() {
+                pendingDocuments.remove(href, this);
             }
+        };
+        if (pendingDocuments.putIfAbsent(href, task) == null) {
+            task.run();
         }
     }
 
     @Override
     public void navigationPerformed(NavigationEvent navigationEvent) {
-        if (navigationEvent.isBookChanged() || navigationEvent.isResourceChanged()) {
-            imageLoaderCache.clear();
+        if (navigationEvent.isBookChanged() || navigationEvent.isSpinePosChanged()) {
+            Book currentBook = navigationEvent.getCurrentBook();
+            if (currentBook != null && currentBook == book) {
+                pinNeighbours(currentBook, navigationEvent.getCurrentSpinePos());
+                documentPreparer.setSpinePos(navigationEvent.getCurrentSpinePos());
+            }
         }
     }
 }
@@ -0,0 +1,305 @@
+package nl.siegmann.epublib.viewer;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageProducer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.util.Thumbnailer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the images of a book in the background, scaled down to the rendering width, and keeps the decoded images
+ * in a least recently used cache by href, bounded by the size of their pixels in bytes.
+ *
+ * An image that is not decoded yet is returned as an image that is filled in when decoding is done: swing's image
+ * views are notified and repaint themselves.
+ */
+// package
+class ImageCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageCache.class);
+
+    private static final int DECODER_THREAD_COUNT = 2;
+
+    private final Object lock = new Object();
+    // in access order, the least recently used first
+    private final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+    private final Map<String, ImageLoader> pendingImages = new LinkedHashMap<String, ImageLoader>();
+    private final ExecutorService decoder;
+    private long maxBytes;
+    private long bytes;
+    private int renderingWidth;
+    // changes when the cache is cleared, images decoded before that are not cached
+    private int generation;
+
+    public ImageCache(long maxBytes, int renderingWidth) {
+        this.maxBytes = maxBytes;
+        this.renderingWidth = renderingWidth;
+        this.decoder = Executors.newFixedThreadPool(DECODER_THREAD_COUNT, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread result = new Thread(runnable, "ImageDecoder");
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Produces the pixels of an image that is being decoded as soon as it is decoded.
+     */
+    private class ImageLoader implements ImageProducer, Runnable {
+
+        private final Resource resource;
+        private final int width;
+        private final int loaderGeneration;
+        private final List<ImageConsumer> consumers = new ArrayList<ImageConsumer>();
+        private BufferedImage image;
+        private boolean done;
+
+        ImageLoader(Resource resource, int width, int generation) {
+            this.resource = resource;
+            this.width = width;
+            this.loaderGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            BufferedImage decoded = null;
+            try {
+                decoded = new Thumbnailer(width, Integer.MAX_VALUE, Thumbnailer.Quality.BALANCED).readImage(resource.getData());
+            } catch (IOException e) {
+                log.error("Unable to read image " + resource.getHref() + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Unable to read image " + resource.getHref() + ": " + e.getMessage());
+            }
+            synchronized (lock) {
+                if (pendingImages.get(resource.getHref()) == this) {
+                    pendingImages.remove(resource.getHref());
+                }
+                if (decoded != null && loaderGeneration == generation) {
+                    putLocked(resource.getHref(), decoded);
+                }
+            }
+            List<ImageConsumer> waiting;
+            synchronized (this) {
+                image = decoded;
+                done = true;
+                waiting = new ArrayList<ImageConsumer>(consumers);
+                consumers.clear();
+            }
+            for (ImageConsumer consumer: waiting) {
+                produce(consumer);
+            }
+        }
+
+        private void produce(ImageConsumer consumer) {
+            if (image == null) {
+                consumer.imageComplete(ImageConsumer.IMAGEERROR);
+            } else {
+                image.getSource().startProduction(consumer);
+            }
+        }
+
+        @Override
+        public synchronized void addConsumer(ImageConsumer consumer) {
+            if (! consumers.contains(consumer)) {
+                consumers.add(consumer);
+            }
+        }
+
+        @Override
+        public synchronized boolean isConsumer(ImageConsumer consumer) {
+            return consumers.contains(consumer);
+        }
+
+        @Override
+        public synchronized void removeConsumer(ImageConsumer consumer) {
+            consumers.remove(consumer);
+        }
+
+        @Override
+        public void startProduction(ImageConsumer consumer) {
+            synchronized (this) {
+                if (! done) {
+                    addConsumer(consumer);
+                    return;
+                }
+            }
+            produce(consumer);
+        }
+
+        @Override
+        public void requestTopDownLeftRightResend(ImageConsumer consumer) {
+        }
+    }
+
+    /**
+     * The image of the resource.
+     *
+     * @param resource
+     * @return the decoded image if it is cached, otherwise an image that is filled in when it is decoded.
+     */
+    public Image getImage(Resource resource) {
+        ImageLoader imageLoader;
+        synchronized (lock) {
+            BufferedImage result = images.get(resource.getHref());
+            if (result != null) {
+                return result;
+            }
+            imageLoader = pendingImages.get(resource.getHref());
+            if (imageLoader == null) {
+                imageLoader = new ImageLoader(resource, renderingWidth, generation);
+                pendingImages.put(resource.getHref(), imageLoader);
+                decoder.execute(imageLoader);
+            }
+        }
+        return Toolkit.getDefaultToolkit().createImage(imageLoader);
+    }
+
+    /**
+     * The decoded image of the resource with the given href.
+     *
+     * @param href
+     * @return null if the image is not decoded yet.
+     */
+    public BufferedImage getCachedImage(String href) {
+        synchronized (lock) {
+            return images.get(href);
+        }
+    }
+
+    public void put(String href, BufferedImage image) {
+        synchronized (lock) {
+            putLocked(href, image);
+        }
+    }
+
+    private void putLocked(String href, BufferedImage image) {
+        BufferedImage previous = images.put(href, image);
+        if (previous != null) {
+            bytes -= getBytes(previous);
+        }
+        bytes += getBytes(image);
+        for (Iterator<BufferedImage> iterator = images.values().iterator(); bytes > maxBytes && iterator.hasNext(); ) {
+            BufferedImage evicted = iterator.next();
+            if (evicted == image) {
+                // always keep the image that was just added
+                continue;
+            }
+            bytes -= getBytes(evicted);
+            iterator.remove();
+        }
+    }
+
+    public BufferedImage remove(String href) {
+        synchronized (lock) {
+            BufferedImage result = images.remove(href);
+            if (result != null) {
+                bytes -= getBytes(result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The number of bytes used by the pixels of the image.
+     *
+     * @param image
+     * @return the number of bytes used by the pixels of the image.
+     */
+    public static long getBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    /**
+     * Sets the width the images are rendered at, images wider than this are scaled down.
+     *
+     * If the width grows the cached images are dropped, they may have been scaled down too far.
+     *
+     * @param renderingWidth
+     */
+    public void setRenderingWidth(int renderingWidth) {
+        synchronized (lock) {
+            if (renderingWidth > this.renderingWidth) {
+                clearLocked();
+            }
+            this.renderingWidth = renderingWidth;
+        }
+    }
+
+    public int getRenderingWidth() {
+        synchronized (lock) {
+            return renderingWidth;
+        }
+    }
+
+    public long getBytes() {
+        synchronized (lock) {
+            return bytes;
+        }
+    }
+
+    public List<String> getHrefs() {
+        synchronized (lock) {
+            return new ArrayList<String>(images.keySet());
+        }
+    }
+
+    public List<BufferedImage> getImages() {
+        synchronized (lock) {
+            return new ArrayList<BufferedImage>(images.values());
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return images.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            clearLocked();
+        }
+    }
+
+    private void clearLocked() {
+        images.clear();
+        pendingImages.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    /**
+     * Stops the decoder threads.
+     */
+    public void shutdown() {
+        decoder.shutdown();
+    }
+
+    // package, for testing
+    List<String> getPendingHrefs() {
+        synchronized (lock) {
+            return Collections.unmodifiableList(new ArrayList<String>(pendingImages.keySet()));
+        }
+    }
+}
@@ -1,15 +1,13 @@
 package nl.siegmann.epublib.viewer;
 
 import java.awt.Image;
-import java.io.IOException;
+import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 
-import javax.imageio.ImageIO;
 import javax.swing.text.html.HTMLDocument;
 
 import nl.siegmann.epublib.browsersupport.Navigator;
@@ -30,6 +28,9 @@ import org.slf4j.LoggerFactory;
  *
  * Can be shared by multiple documents but can only be <em>used</em> by one document at the time because of the currentFolder issue.
  *
+ * The images are kept in an {@link ImageCache} by the href of their resource, so they stay cached when navigating
+ * between documents. They are decoded in the background and scaled down to the rendering width.
+ *
  * @author paul
  *
  */
@@ -39,7 +40,11 @@ class ImageLoaderCache extends Dictionary<String, Image> {
 
     private static final Logger log = LoggerFactory.getLogger(ImageLoaderCache.class);
 
-    private Map<String, Image> cache = new HashMap<String, Image>();
+    // the default maximum size in bytes of the pixels of the cached images
+    private static final long DEFAULT_MAX_CACHE_BYTES = 64 * 1024 * 1024;
+    private static final int DEFAULT_RENDERING_WIDTH = 1024;
+
+    private final ImageCache cache = new ImageCache(DEFAULT_MAX_CACHE_BYTES, DEFAULT_RENDERING_WIDTH);
     private Book book;
     private String currentFolder = "";
     private Navigator navigator;
@@ -81,7 +86,10 @@ class ImageLoaderCache extends Dictionary<String, Image> {
     }
 
     private String getResourceHref(String requestUrl) {
-        String resourceHref = requestUrl.toString().substring(IMAGE_URL_PREFIX.length());
+        String resourceHref = requestUrl;
+        if (resourceHref.startsWith(IMAGE_URL_PREFIX)) {
+            resourceHref = resourceHref.substring(IMAGE_URL_PREFIX.length());
+        }
         resourceHref = currentFolder + resourceHref;
         resourceHref = FilenameUtils.normalize(resourceHref);
         // normalize uses the SYSTEM_SEPARATOR, which on windows is a '\'
@@ -90,51 +98,30 @@ class ImageLoaderCache extends Dictionary<String, Image> {
         return resourceHref;
     }
 
-    /**
-     * Create an Image from the data of the given resource.
-     *
-     * @param imageResource
-     * @return
-     */
-    private Image createImage(Resource imageResource) {
-        Image result = null;
-        try {
-            result = ImageIO.read(imageResource.getInputStream());
-        } catch (IOException e) {
-            log.error(e.getMessage());
-        }
-        return result;
-    }
-
     public Image get(Object key) {
         if (book == null) {
             return null;
         }
 
-        String imageURL = key.toString();
-
-        // see if the image is already in the cache
-        Image result = cache.get(imageURL);
-        if (result != null) {
-            return result;
-        }
-
         // get the image resource href
-        String resourceHref = getResourceHref(imageURL);
+        String resourceHref = getResourceHref(key.toString());
 
         // find the image resource in the book resources
         Resource imageResource = book.getResources().getByHref(resourceHref);
         if (imageResource == null) {
-            return result;
+            return null;
         }
 
-        // create an image from the resource and add it to the cache
-        result = createImage(imageResource);
-        if (result != null) {
-            cache.put(imageURL.toString(), result);
-        }
+        return cache.getImage(imageResource);
+    }
 
-        return result;
+    /**
+     * Sets the width the images are rendered at, wider images are scaled down to this width.
+     *
+     * @param renderingWidth
+     */
+    public void setRenderingWidth(int renderingWidth) {
+        cache.setRenderingWidth(renderingWidth);
     }
 
     public int size() {
@@ -142,23 +129,29 @@ class ImageLoaderCache extends Dictionary<String, Image> {
     }
 
     public boolean isEmpty() {
-        return cache.isEmpty();
+        return cache.size() == 0;
     }
 
     public Enumeration<String> keys() {
-        return CollectionUtil.createEnumerationFromIterator(cache.keySet().iterator());
+        return CollectionUtil.createEnumerationFromIterator(cache.getHrefs().iterator());
     }
 
     public Enumeration<Image> elements() {
-        return CollectionUtil.createEnumerationFromIterator(cache.values().iterator());
+        return CollectionUtil.createEnumerationFromIterator(new ArrayList<Image>(cache.getImages()).iterator());
     }
 
     public Image put(String key, Image value) {
-        return cache.put(key.toString(), (Image) value);
+        if (! (value instanceof BufferedImage)) {
+            return null;
+        }
+        String resourceHref = getResourceHref(key);
+        Image result = cache.getCachedImage(resourceHref);
+        cache.put(resourceHref, (BufferedImage) value);
+        return result;
     }
 
     public Image remove(Object key) {
-        return cache.remove(key);
+        return cache.remove(getResourceHref(key.toString()));
     }
 
     /**
@@ -169,6 +162,6 @@ class ImageLoaderCache extends Dictionary<String, Image> {
     }
 
     public String toString() {
-        return cache.toString();
+        return cache.getHrefs().toString();
     }
 }
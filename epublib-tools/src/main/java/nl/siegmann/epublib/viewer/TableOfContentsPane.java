@@ -4,10 +4,7 @@ import java.awt.GridLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -23,6 +20,7 @@ import nl.siegmann.epublib.browsersupport.Navigator;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.TableOfContentsIndex;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -36,7 +34,10 @@ public class TableOfContentsPane extends JPanel implements NavigationEventListen
 
     private static final long serialVersionUID = 2277717264176049700L;
 
-    private Map<String, Collection<DefaultMutableTreeNode>> href2treeNode = new HashMap<String, Collection<DefaultMutableTreeNode>>();
+    // the index of the table of contents the tree was created from, with the tree node of every entry
+    private TableOfContentsIndex tableOfContentsIndex;
+    private DefaultMutableTreeNode[] entryTreeNodes;
+    private DefaultMutableTreeNode coverPageNode;
     private JScrollPane scrollPane;
     private Navigator navigator;
     private JTree tree;
@@ -80,41 +81,39 @@ public class TableOfContentsPane extends JPanel implements NavigationEventListen
         }
     }
 
-    private void addToHref2TreeNode(Resource resource, DefaultMutableTreeNode treeNode) {
-        if (resource == null || StringUtils.isBlank(resource.getHref())) {
-            return;
-        }
-        Collection<DefaultMutableTreeNode> treeNodes = href2treeNode.get(resource.getHref());
-        if (treeNodes == null) {
-            treeNodes = new ArrayList<DefaultMutableTreeNode>();
-            href2treeNode.put(resource.getHref(), treeNodes);
-        }
-        treeNodes.add(treeNode);
-    }
-
     private DefaultMutableTreeNode createTree(Book book) {
         TOCItem rootTOCItem = new TOCItem(new TOCReference(book.getTitle(), book.getCoverPage()));
         DefaultMutableTreeNode top = new DefaultMutableTreeNode(rootTOCItem);
-        addToHref2TreeNode(book.getCoverPage(), top);
+        this.coverPageNode = top;
         createNodes(top, book);
         return top;
     }
 
     private void createNodes(DefaultMutableTreeNode top, Book book) {
-        addNodesToParent(top, book.getTableOfContents().getTocReferences());
+        this.tableOfContentsIndex = book.getTableOfContents().getIndex();
+        this.entryTreeNodes = new DefaultMutableTreeNode[tableOfContentsIndex.size()];
+        // the entries are in pre-order, so a parent's node exists before its children are added
+        for (int entry = 0; entry < entryTreeNodes.length; entry++) {
+            entryTreeNodes[entry] = new DefaultMutableTreeNode(new TOCItem(tableOfContentsIndex.getTocReference(entry)));
+            int parent = tableOfContentsIndex.getParent(entry);
+            DefaultMutableTreeNode parentNode = parent < 0 ? top : entryTreeNodes[parent];
+            parentNode.add(entryTreeNodes[entry]);
+        }
     }
 
-    private void addNodesToParent(DefaultMutableTreeNode parent, List<TOCReference> tocReferences) {
-        if (tocReferences == null) {
-            return;
+    private List<DefaultMutableTreeNode> getTreeNodes(Resource resource) {
+        List<DefaultMutableTreeNode> result = new ArrayList<DefaultMutableTreeNode>();
+        if (resource == null || StringUtils.isBlank(resource.getHref())) {
+            return result;
+        }
+        Resource coverPage = ((TOCItem) coverPageNode.getUserObject()).getTOCReference().getResource();
+        if (coverPage != null && resource.getHref().equals(coverPage.getHref())) {
+            result.add(coverPageNode);
         }
-        for (TOCReference tocReference: tocReferences) {
-            TOCItem tocItem = new TOCItem(tocReference);
-            DefaultMutableTreeNode treeNode = new DefaultMutableTreeNode(tocItem);
-            addToHref2TreeNode(tocReference.getResource(), treeNode);
-            addNodesToParent(treeNode, tocReference.getChildren());
-            parent.add(treeNode);
+        for (int entry: tableOfContentsIndex.getEntries(resource.getHref())) {
+            result.add(entryTreeNodes[entry]);
         }
+        return result;
     }
 
     @Override
@@ -132,8 +131,8 @@ public class TableOfContentsPane extends JPanel implements NavigationEventListen
         if (navigationEvent.getCurrentResource() == null) {
             return;
         }
-        Collection<DefaultMutableTreeNode> treeNodes = href2treeNode.get(navigationEvent.getCurrentResource().getHref());
-        if (treeNodes == null || treeNodes.isEmpty()) {
+        List<DefaultMutableTreeNode> treeNodes = getTreeNodes(navigationEvent.getCurrentResource());
+        if (treeNodes.isEmpty()) {
             if (navigationEvent.getCurrentSpinePos() == (navigationEvent.getOldSpinePos() + 1)) {
                 return;
             }
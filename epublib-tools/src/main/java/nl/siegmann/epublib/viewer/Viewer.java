@@ -53,7 +53,7 @@ public class Viewer {
         mainWindow = createMainWindow();
         Book book;
         try {
-            book = (new EpubReader()).readEpub(bookStream);
+            book = (new EpubReader()).read(bookStream);
             gotoBook(book);
         } catch (IOException e) {
             log.error(e.getMessage(), e);
@@ -156,7 +156,7 @@ public class Viewer {
                     previousDir = selectedFile.getParentFile();
                 }
                 try {
-                    Book book = (new EpubReader()).readEpub(new FileInputStream(selectedFile));
+                    Book book = (new EpubReader()).read(new FileInputStream(selectedFile));
                     gotoBook(book);
                 } catch (Exception e1) {
                     log.error(e1.getMessage(), e1);
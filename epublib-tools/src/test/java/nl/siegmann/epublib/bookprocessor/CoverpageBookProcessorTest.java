@@ -1,6 +1,17 @@
 package nl.siegmann.epublib.bookprocessor;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
 import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.Thumbnailer;
 
 public class CoverpageBookProcessorTest extends TestCase {
 
@@ -16,4 +27,32 @@ public class CoverpageBookProcessorTest extends TestCase {
 		}
 	}
 
+	public void testScaleCoverImage() throws IOException {
+		Book book = new Book();
+		Resource coverImage = new Resource(createImage(400, 600, "png"), "images/cover.png");
+		book.setCoverImage(coverImage);
+		new CoverpageBookProcessor(new Thumbnailer(100, 100, Thumbnailer.Quality.FAST)).processBook(book);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(coverImage.getData()));
+		assertEquals(67, image.getWidth());
+		assertEquals(100, image.getHeight());
+		assertEquals(MediatypeService.PNG, coverImage.getMediaType());
+	}
+
+	public void testCoverImageKeptIfFormatChanges() throws IOException {
+		// a gif cover whose data the thumbnailer writes as png
+		Book book = new Book();
+		byte[] imageData = createImage(400, 600, "png");
+		Resource coverImage = new Resource(imageData, "images/cover.gif");
+		book.setCoverImage(coverImage);
+		new CoverpageBookProcessor(new Thumbnailer(100, 100, Thumbnailer.Quality.FAST)).processBook(book);
+		assertSame(imageData, coverImage.getData());
+		assertEquals("images/cover.gif", coverImage.getHref());
+		assertEquals(MediatypeService.GIF, coverImage.getMediaType());
+	}
+
+	private static byte[] createImage(int width, int height, String format) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, result);
+		return result.toByteArray();
+	}
 }
@@ -0,0 +1,111 @@
+package nl.siegmann.epublib.bookprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.BookProcessor;
+import nl.siegmann.epublib.epub.BookProcessorPipeline;
+import nl.siegmann.epublib.epub.HtmlDocumentProcessor;
+import nl.siegmann.epublib.epub.HtmlProcessorPipeline;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class HtmlProcessorPipelineTest extends TestCase {
+
+	public void testCleanAndReplace() throws Exception {
+		Book book = new Book();
+		Resource resource = new Resource("<html><head><title>t</title></head><body><p title=\"a&amp;b\">it&apos;s &eacute; &amp; <br>done</body></html>".getBytes(Constants.CHARACTER_ENCODING), "test.html");
+		book.getResources().add(resource);
+		List<HtmlDocumentProcessor> processors = new ArrayList<HtmlDocumentProcessor>();
+		processors.add(new HtmlCleanerBookProcessor());
+		processors.add(new TextReplaceBookProcessor());
+		new HtmlProcessorPipeline(processors).processBook(book);
+		String result = new String(resource.getData(), Constants.CHARACTER_ENCODING);
+		assertTrue(result, result.contains("-//W3C//DTD XHTML 1.1//EN"));
+		assertTrue(result, result.contains("<html xmlns=\"" + Constants.NAMESPACE_XHTML + "\">"));
+		assertTrue(result, result.contains("<p title=\"a&amp;b\">it's é &amp; <br />done</p>"));
+	}
+
+	public void testFusedBookProcessorPipeline() throws Exception {
+		final int[] parseCount = new int[1];
+		Book book = new Book();
+		Resource resource = new Resource("<html><body><p>it&apos;s</p></body></html>".getBytes(Constants.CHARACTER_ENCODING), "test.html");
+		book.getResources().add(resource);
+		BookProcessorPipeline bookProcessorPipeline = new BookProcessorPipeline();
+		bookProcessorPipeline.addBookProcessor(new HtmlCleanerBookProcessor() {
+			@Override
+			public Document parseHtmlDocument(Resource resource) throws java.io.IOException {
+				parseCount[0]++;
+				return super.parseHtmlDocument(resource);
+			}
+		});
+		bookProcessorPipeline.addBookProcessor(new TextReplaceBookProcessor());
+		bookProcessorPipeline.addBookProcessor(BookProcessor.IDENTITY_BOOKPROCESSOR);
+		bookProcessorPipeline.setFuseHtmlProcessors(true);
+		bookProcessorPipeline.processBook(book);
+		assertEquals(1, parseCount[0]);
+		String result = new String(resource.getData(), Constants.CHARACTER_ENCODING);
+		assertTrue(result, result.contains("<p>it's</p>"));
+	}
+
+	public void testFusedAndStreamingReplaceAlike() throws Exception {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("&apos;", "'");
+		table.put("&eacute;t&eacute;", "summer");
+		table.put("a&amp;b", "a+b");
+		table.put("<", "&");
+		String html = "<html><body><p title=\"a&amp;b\">it&apos;s &eacute;t&eacute; a&amp;b 1 &lt; 2</p></body></html>";
+		String fused = processHtml(html, table, true);
+		String streaming = processHtml(html, table, false);
+		assertTrue(fused, fused.contains("<p title=\"a&amp;b\">it's summer a+b 1 &amp; 2</p>"));
+		assertTrue(streaming, streaming.contains("<p title=\"a&amp;b\">it's summer a+b 1 &amp; 2</p>"));
+	}
+
+	public void testFusedKeepsNamespaces() throws Exception {
+		String html = "<html xmlns:epub=\"http://www.idpf.org/2007/ops\"><body><section epub:type=\"chapter\">"
+			+ "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"10\">"
+			+ "<image xlink:href=\"cover.jpg\"/></svg><p>text</p></section></body></html>";
+		Resource resource = new Resource(html.getBytes(Constants.CHARACTER_ENCODING), "test.html");
+		Document document = new HtmlCleanerBookProcessor().parseHtmlDocument(resource);
+		Element section = (Element) document.getElementsByTagNameNS(Constants.NAMESPACE_XHTML, "section").item(0);
+		assertEquals("chapter", section.getAttributeNS("http://www.idpf.org/2007/ops", "type"));
+		Element svg = (Element) document.getElementsByTagNameNS("http://www.w3.org/2000/svg", "svg").item(0);
+		assertNotNull(svg);
+		assertEquals("10", svg.getAttribute("width"));
+		Element image = (Element) svg.getFirstChild();
+		assertEquals("http://www.w3.org/2000/svg", image.getNamespaceURI());
+		assertEquals("cover.jpg", image.getAttributeNS("http://www.w3.org/1999/xlink", "href"));
+		assertEquals(Constants.NAMESPACE_XHTML, svg.getNextSibling().getNamespaceURI());
+
+		String fused = processHtml(html, new LinkedHashMap<String, String>(), true);
+		assertTrue(fused, fused.contains("xmlns:epub=\"http://www.idpf.org/2007/ops\""));
+		assertTrue(fused, fused.contains("xmlns=\"http://www.w3.org/2000/svg\""));
+		assertTrue(fused, fused.contains("<image xlink:href=\"cover.jpg\" />"));
+	}
+
+	public void testTextReplaceOutputEncoding() throws Exception {
+		Book book = new Book();
+		Resource resource = new Resource("<p>it&apos;s \u00e9</p>".getBytes(Constants.CHARACTER_ENCODING), "test.html");
+		byte[] result = new TextReplaceBookProcessor().processHtml(resource, book, "UTF-16");
+		assertEquals("<p>it's \u00e9</p>", new String(result, "UTF-16"));
+	}
+
+	private static String processHtml(String html, Map<String, String> replacementTable, boolean fuseHtmlProcessors) throws Exception {
+		Book book = new Book();
+		Resource resource = new Resource(html.getBytes(Constants.CHARACTER_ENCODING), "test.html");
+		book.getResources().add(resource);
+		BookProcessorPipeline bookProcessorPipeline = new BookProcessorPipeline();
+		bookProcessorPipeline.addBookProcessor(new HtmlCleanerBookProcessor());
+		bookProcessorPipeline.addBookProcessor(new TextReplaceBookProcessor(replacementTable));
+		bookProcessorPipeline.setFuseHtmlProcessors(fuseHtmlProcessors);
+		bookProcessorPipeline.processBook(book);
+		return new String(resource.getData(), Constants.CHARACTER_ENCODING);
+	}
+}
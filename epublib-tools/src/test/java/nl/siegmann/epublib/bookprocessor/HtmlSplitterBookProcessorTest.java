@@ -0,0 +1,71 @@
+package nl.siegmann.epublib.bookprocessor;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+
+public class HtmlSplitterBookProcessorTest extends TestCase {
+
+	private static Resource createChapter(String href, int paragraphCount) throws IOException {
+		StringBuilder html = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter</title></head><body>");
+		for (int i = 0; i < paragraphCount; i++) {
+			html.append("<p id=\"p").append(i).append("\">Paragraph ").append(i).append(" of a long chapter. <a href=\"#p0\">start</a></p>\n");
+		}
+		html.append("</body></html>");
+		return new Resource(html.toString().getBytes(Constants.CHARACTER_ENCODING), href);
+	}
+
+	private static String getText(Resource resource) throws IOException {
+		return new String(resource.getData(), Constants.CHARACTER_ENCODING);
+	}
+
+	public void testSplit() throws IOException {
+		Book book = new Book();
+		Resource chapter = book.addSection("Chapter 1", createChapter("text/chapter1.html", 200)).getResource();
+		TOCReference section = book.addSection(book.getTableOfContents().getTocReferences().get(0), "Paragraph 150", chapter);
+		section.setFragmentId("p150");
+		Resource index = new Resource(("<html xmlns=\"http://www.w3.org/1999/xhtml\"><body><a href=\"text/chapter1.html#p150\">p150</a>"
+				+ " <a href=\"text/chapter1.html#p1\">p1</a> <a href='http://example.com/chapter1.html#p150'>external</a></body></html>").getBytes(Constants.CHARACTER_ENCODING), "index.html");
+		book.addSection("Index", index);
+
+		new HtmlSplitterBookProcessor(4000).processBook(book);
+
+		assertTrue(book.getSpine().size() > 4);
+		assertSame(chapter, book.getSpine().getResource(0));
+		assertEquals("text/chapter1_1.html", book.getSpine().getResource(1).getHref());
+		assertSame(index, book.getSpine().getResource(book.getSpine().size() - 1));
+		for (int i = 0; i < book.getSpine().size() - 1; i++) {
+			// the links to the first part have become longer
+			assertTrue(book.getSpine().getResource(i).getSize() <= 4400);
+		}
+
+		Resource part = section.getResource();
+		assertNotSame(chapter, part);
+		assertTrue(getText(part).contains("id=\"p150\""));
+		assertEquals("p150", section.getFragmentId());
+		assertSame(chapter, book.getTableOfContents().getTocReferences().get(0).getResource());
+
+		String indexHtml = getText(index);
+		assertTrue(indexHtml, indexHtml.contains("href=\"text/" + part.getHref().substring("text/".length()) + "#p150\""));
+		assertTrue(indexHtml.contains("href=\"text/chapter1.html#p1\""));
+		assertTrue(indexHtml.contains("href='http://example.com/chapter1.html#p150'"));
+
+		// links within the chapter to its first paragraph now point to the first part
+		String partHtml = getText(part);
+		assertTrue(partHtml.contains("href=\"chapter1.html#p0\""));
+		assertTrue(getText(chapter).contains("href=\"#p0\""));
+	}
+
+	public void testSmallDocumentUnchanged() throws IOException {
+		Book book = new Book();
+		Resource chapter = book.addSection("Chapter 1", createChapter("chapter1.html", 10)).getResource();
+		byte[] data = chapter.getData();
+		new HtmlSplitterBookProcessor().processBook(book);
+		assertEquals(1, book.getSpine().size());
+		assertSame(data, chapter.getData());
+	}
+}
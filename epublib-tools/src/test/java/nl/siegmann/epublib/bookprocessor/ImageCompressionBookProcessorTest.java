@@ -0,0 +1,127 @@
+package nl.siegmann.epublib.bookprocessor;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+public class ImageCompressionBookProcessorTest extends TestCase {
+
+	private static byte[] createImage(int width, int height, String format, boolean noise) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, Color.YELLOW, width, height, Color.BLUE));
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		if (noise) {
+			Random random = new Random(1);
+			for (int i = 0; i < width * height / 4; i++) {
+				image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+			}
+		}
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ImageIO.write(image, format, result);
+		return result.toByteArray();
+	}
+
+	public void testImageBudget() throws IOException {
+		Book book = new Book();
+		Resource jpg = book.getResources().add(new Resource(createImage(600, 400, "jpg", true), "images/photo.jpg"));
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setMaxImageBytes(jpg.getSize() / 4);
+		processor.processBook(book);
+		assertTrue(jpg.getSize() <= processor.getMaxImageBytes());
+		assertEquals(MediatypeService.JPG, jpg.getMediaType());
+		assertNotNull(ImageIO.read(new ByteArrayInputStream(jpg.getData())));
+	}
+
+	public void testBookBudget() throws IOException {
+		Book book = new Book();
+		Resource first = book.getResources().add(new Resource(createImage(400, 400, "jpg", true), "images/first.jpg"));
+		Resource second = book.getResources().add(new Resource(createImage(300, 300, "png", true), "images/second.png"));
+		long originalSize = first.getSize() + second.getSize();
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor(executorService);
+			processor.setMaxBookImageBytes(originalSize / 3);
+			processor.processBook(book);
+			assertTrue(first.getSize() + second.getSize() <= originalSize / 3);
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	public void testBookBudgetLeftByLosslessImages() throws IOException {
+		Book book = new Book();
+		Resource jpg = book.getResources().add(new Resource(createImage(400, 400, "jpg", true), "images/photo.jpg"));
+		// an image that can not be read keeps its size
+		byte[] brokenData = new byte[jpg.getData().length / 4];
+		new Random(1).nextBytes(brokenData);
+		Resource broken = book.getResources().add(new Resource(brokenData, "images/broken.png"));
+		long originalSize = jpg.getSize() + broken.getSize();
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setMaxBookImageBytes(originalSize / 2);
+		processor.processBook(book);
+		assertSame(brokenData, broken.getData());
+		assertTrue(jpg.getSize() + broken.getSize() <= originalSize / 2);
+	}
+
+	public void testNoBookBudgetLeftForJpgImages() throws IOException {
+		Book book = new Book();
+		Resource jpg = book.getResources().add(new Resource(createImage(800, 600, "jpg", true), "images/photo.jpg"));
+		byte[] brokenData = new byte[400 * 1024];
+		new Random(1).nextBytes(brokenData);
+		book.getResources().add(new Resource(brokenData, "images/broken.png"));
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setMaxBookImageBytes(200 * 1024);
+		processor.processBook(book);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpg.getData()));
+		assertEquals(800, image.getWidth());
+		assertEquals(600, image.getHeight());
+	}
+
+	public void testMinDownscaleSize() throws IOException {
+		Book book = new Book();
+		Resource jpg = book.getResources().add(new Resource(createImage(400, 200, "jpg", true), "images/photo.jpg"));
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setMaxImageBytes(1);
+		processor.processBook(book);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpg.getData()));
+		assertEquals(128, image.getWidth());
+		assertEquals(64, image.getHeight());
+	}
+
+	public void testMaxPixels() throws IOException {
+		Book book = new Book();
+		Resource png = book.getResources().add(new Resource(createImage(1000, 500, "png", false), "images/large.png"));
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setMaxPixels(20000);
+		processor.processBook(book);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.getData()));
+		assertEquals(200, image.getWidth());
+		assertEquals(100, image.getHeight());
+	}
+
+	public void testKeepsOriginalIfNotSmaller() throws IOException {
+		Book book = new Book();
+		byte[] imageData = createImage(50, 50, "jpg", false);
+		Resource jpg = book.getResources().add(new Resource(imageData, "images/small.jpg"));
+		ImageCompressionBookProcessor processor = new ImageCompressionBookProcessor();
+		processor.setQuality(1.0f);
+		processor.processBook(book);
+		assertSame(imageData, jpg.getData());
+	}
+}
@@ -0,0 +1,47 @@
+package nl.siegmann.epublib.bookprocessor;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.service.MediatypeService;
+
+public class SectionTitleBookProcessorTest extends TestCase {
+
+	private static final String CHAPTER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n"
+			+ "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>The  Chapter\n Title</title></head>\n"
+			+ "<body><h1>First&nbsp;heading</h1><p>text</p>\n"
+			+ "<h2 id=\"s1\">Section <em>one</em></h2><p>text<br></p>\n"
+			+ "<div id=\"s2\"><p>before</p><h3>Section &amp; two</h3></div>\n"
+			+ "<p><a name=\"s3\"></a></p><h2>Section three</h2>\n"
+			+ "<p id=\"s4\">no heading follows</p></body></html>";
+
+	public void testTitles() throws Exception {
+		Resource resource = new Resource(null, CHAPTER.getBytes("UTF-8"), "chapter.html", MediatypeService.XHTML);
+		SectionTitleBookProcessor.ResourceTitles titles = SectionTitleBookProcessor.readTitles(resource, Arrays.asList("s1", "s2", "s3", "s4"));
+		assertEquals("The Chapter Title", titles.getTitle());
+		assertEquals("First\u00A0heading", titles.getFirstHeading());
+		assertEquals("Section one", titles.getFragmentHeading("s1"));
+		assertEquals("Section & two", titles.getFragmentHeading("s2"));
+		assertEquals("Section three", titles.getFragmentHeading("s3"));
+		assertNull(titles.getFragmentHeading("s4"));
+		assertEquals("The Chapter Title", titles.getSectionTitle("s4"));
+	}
+
+	public void testProcessBook() throws Exception {
+		Book book = new Book();
+		Resource resource = new Resource(null, CHAPTER.getBytes("UTF-8"), "chapter.html", MediatypeService.XHTML);
+		TOCReference chapter = book.addSection("", resource);
+		chapter.addChildSection(new TOCReference(null, resource, "s1"));
+		chapter.addChildSection(new TOCReference("Kept", resource, "s2"));
+		chapter.addChildSection(new TOCReference(null, resource, "s3"));
+		new SectionTitleBookProcessor().processBook(book);
+		assertEquals("The Chapter Title", chapter.getTitle());
+		assertEquals("Section one", chapter.getChildren().get(0).getTitle());
+		assertEquals("Kept", chapter.getChildren().get(1).getTitle());
+		assertEquals("Section three", chapter.getChildren().get(2).getTitle());
+	}
+}
@@ -0,0 +1,97 @@
+package nl.siegmann.epublib.search;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.Scanner;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+public class HtmlTextExtractorTest extends TestCase {
+
+	/**
+	 * The way the search content was created before the HtmlTextExtractor.
+	 */
+	private static String getReferenceSearchContent(String html) {
+		StringBuilder result = new StringBuilder();
+		Scanner scanner = new Scanner(new StringReader(html));
+		scanner.useDelimiter("<");
+		while(scanner.hasNext()) {
+			String text = scanner.next();
+			int closePos = text.indexOf('>');
+			String chunk = text.substring(closePos + 1).trim();
+			chunk = StringEscapeUtils.unescapeHtml(chunk);
+			chunk = SearchIndex.cleanText(chunk);
+			result.append(chunk);
+		}
+		return result.toString();
+	}
+
+	private static void assertSameAsReference(String html) throws IOException {
+		assertEquals(html, getReferenceSearchContent(html), HtmlTextExtractor.extract(new StringReader(html)).getText());
+	}
+
+	public void testSameAsReference() throws IOException {
+		String[] testData = new String[] {
+				"",
+				"a",
+				"  A  b  ",
+				"<html><title>My Title1</title><body><h1>Wrong  title</h1></body></html>",
+				"<p>a</p> <p> b </p>",
+				"<p>Caf&eacute; &amp; na&iuml;ve&nbsp;&nbsp;text</p>",
+				"&nbsp;a&nbsp;",
+				"<p>&#65;&#x42;&#233; &unknown; &amp &;</p>",
+				"<p>ÄÖÜ é́ ΑΒΓ</p>",
+				"<a title='x>y'>text</a>",
+				"no tags at all\n\twith  whitespace",
+				"<p>tab\tand nbsp em space</p>",
+				"a & b < c",
+		};
+		for (String html: testData) {
+			assertSameAsReference(html);
+		}
+	}
+
+	public void testSupplementaryEntity() throws IOException {
+		assertEquals("a\uD83D\uDE00b", HtmlTextExtractor.extract(new StringReader("a&#x1F600;b")).getText());
+		assertEquals("&#x110000;", HtmlTextExtractor.extract(new StringReader("&#x110000;")).getText());
+	}
+
+	public void testRandomHtml() throws IOException {
+		String[] parts = new String[] {"<p>", "</p>", "<br/>", " ", "  ", "\n", "\t", "a", "B", "word", "é", "Å",
+				"&amp;", "&nbsp;", "&eacute;", "&lt;", "&#233;", " ", ".", ",", "1"};
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			StringBuilder html = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int j = 0; j < length; j++) {
+				html.append(parts[random.nextInt(parts.length)]);
+			}
+			assertSameAsReference(html.toString());
+		}
+	}
+
+	public void testSourceOffsets() throws IOException {
+		String html = "<html><body><p>Caf&eacute;  <b>Noir</b>  bar</p></body></html>";
+		SearchContent searchContent = HtmlTextExtractor.extract(new StringReader(html));
+		assertEquals("cafenoirbar", searchContent.getText());
+		assertEquals(html.indexOf("Caf"), searchContent.getSourceOffset(0));
+		assertEquals(html.indexOf("f&"), searchContent.getSourceOffset(2));
+		assertEquals(html.indexOf("&eacute;"), searchContent.getSourceOffset(3));
+		assertEquals(html.indexOf("Noir"), searchContent.getSourceOffset(4));
+		assertEquals(html.indexOf("ir<"), searchContent.getSourceOffset(6));
+		assertEquals(html.indexOf("bar"), searchContent.getSourceOffset(8));
+		assertEquals(html.indexOf("ar<"), searchContent.getSourceOffset(9));
+
+		html = "a  b &amp; c";
+		searchContent = HtmlTextExtractor.extract(new StringReader(html));
+		assertEquals("a b & c", searchContent.getText());
+		assertEquals(1, searchContent.getSourceOffset(1));
+		assertEquals(3, searchContent.getSourceOffset(2));
+		assertEquals(5, searchContent.getSourceOffset(4));
+		assertEquals(11, searchContent.getSourceOffset(6));
+		assertEquals(-1, HtmlTextExtractor.extract(new StringReader("")).getSourceOffset(0));
+	}
+}
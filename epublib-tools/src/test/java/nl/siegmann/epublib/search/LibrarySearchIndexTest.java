@@ -0,0 +1,100 @@
+package nl.siegmann.epublib.search;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+public class LibrarySearchIndexTest extends TestCase {
+
+	private static Book createBook(String... chapters) throws IOException {
+		Book book = new Book();
+		for (int i = 0; i < chapters.length; i++) {
+			book.addSection("chapter" + i, new Resource(new StringReader("<p>" + chapters[i] + "</p>"), "chapter" + i + ".html"));
+		}
+		return book;
+	}
+
+	private static List<String> getKeys(List<RankedSearchResult> results) {
+		List<String> result = new ArrayList<String>();
+		for (RankedSearchResult searchResult: results) {
+			result.add(searchResult.getBookKey() + ":" + searchResult.getResource().getHref());
+		}
+		return result;
+	}
+
+	public void testRanking() throws IOException {
+		LibrarySearchIndex library = new LibrarySearchIndex();
+		library.addBook("a", createBook("the fox", "the dog and the cat"));
+		library.addBook("b", createBook("fox fox fox and the dog", "nothing here"));
+		library.addBook("c", createBook("the end"));
+		assertEquals(3, library.getBookCount());
+
+		List<RankedSearchResult> results = library.search("Fox", 10);
+		assertEquals(Arrays.asList("b:chapter0.html", "a:chapter0.html"), getKeys(results));
+		assertTrue(results.get(0).getScore() > results.get(1).getScore());
+		assertEquals(0, results.get(0).getPagePos());
+		assertEquals(3, results.get(0).getSourcePos());
+
+		// a rare term weighs more than a common one
+		results = library.search("the cat", 10);
+		assertEquals("a:chapter1.html", getKeys(results).get(0));
+		assertEquals(4, results.size());
+
+		assertEquals(Arrays.asList("b:chapter0.html"), getKeys(library.search("fox", 1)));
+		assertTrue(library.search("unknown", 10).isEmpty());
+		assertTrue(library.search("", 10).isEmpty());
+	}
+
+	public void testSearchBooks() throws IOException {
+		LibrarySearchIndex library = new LibrarySearchIndex();
+		library.addBook("a", createBook("dog", "dog dog", "cat"));
+		library.addBook("b", createBook("a dog among many other words here"));
+		List<RankedSearchResult> results = library.searchBooks("dog", 10);
+		assertEquals(Arrays.asList("a:chapter1.html", "b:chapter0.html"), getKeys(results));
+
+		library.removeBook("a");
+		assertEquals(Arrays.asList("b:chapter0.html"), getKeys(library.searchBooks("dog", 10)));
+	}
+
+	public void testUpdatedShard() throws IOException {
+		LibrarySearchIndex library = new LibrarySearchIndex();
+		Book book = createBook("red fox");
+		library.addBook("a", book);
+		assertTrue(library.search("wolf", 10).isEmpty());
+		book.getSpine().getResource(0).setData("<p>grey wolf</p>".getBytes("UTF-8"));
+		library.getSearchIndex("a").update();
+		assertEquals(1, library.search("wolf", 10).size());
+	}
+
+	/**
+	 * The top k must be the same as the first k of all results, whatever shards were skipped.
+	 */
+	public void testTopK() throws IOException {
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			LibrarySearchIndex library = new LibrarySearchIndex(executorService);
+			for (int i = 0; i < 50; i++) {
+				StringBuilder text = new StringBuilder();
+				for (int j = 0; j < 100; j++) {
+					text.append(j % (i + 2) == 0 ? "needle " : "hay ");
+				}
+				library.addBook("book" + (i < 10 ? "0" : "") + i, createBook(text.toString(), "hay"));
+			}
+			List<RankedSearchResult> all = library.search("needle hay", 1000);
+			assertEquals(100, all.size());
+			for (int k = 1; k < 100; k += 7) {
+				assertEquals(getKeys(all.subList(0, k)), getKeys(library.search("needle hay", k)));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package nl.siegmann.epublib.search;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+public class SearchIndexFileTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("searchindex", ".idx");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private static Book createBook() throws IOException {
+		Book book = new Book();
+		book.addSection("chapter1", new Resource(new StringReader("<p>The quick brown fox jumps over the lazy dog.</p>"), "chapter1.html"));
+		book.addSection("chapter2", new Resource(new StringReader("<p>Caf&eacute; na&iuml;ve, the brown dog</p>"), "text/chapter2.html"));
+		return book;
+	}
+
+	private static void assertSameResults(SearchResults expected, SearchResults actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.getHits().get(i).getResource(), actual.getHits().get(i).getResource());
+			assertEquals(expected.getHits().get(i).getPagePos(), actual.getHits().get(i).getPagePos());
+			assertEquals(expected.getHits().get(i).getSourcePos(), actual.getHits().get(i).getSourcePos());
+		}
+	}
+
+	public void testWriteAndOpen() throws IOException {
+		Book book = createBook();
+		SearchIndex searchIndex = new SearchIndex(book);
+		SearchIndexFile.write(searchIndex, file);
+		SearchIndex mappedIndex = SearchIndexFile.open(file, book);
+		assertSame(book, mappedIndex.getBook());
+		for (ResourceSearchIndex resourceSearchIndex: mappedIndex.getResourceSearchIndexes()) {
+			assertTrue(resourceSearchIndex instanceof MappedResourceSearchIndex);
+		}
+		String[] searchTerms = new String[] {"the", "brown", "brown dog", "cafe", "naive the", "o", "x", ".", "missing"};
+		for (String searchTerm: searchTerms) {
+			assertSameResults(searchIndex.doSearch(searchTerm), mappedIndex.doSearch(searchTerm));
+		}
+		assertEquals(3, mappedIndex.doSearch("the").size());
+	}
+
+	public void testChangedResource() throws IOException {
+		Book book = createBook();
+		SearchIndexFile.write(new SearchIndex(book), file);
+		book.getResources().getByHref("chapter1.html").setData("<p>A zebra</p>".getBytes());
+		book.addSection("chapter3", new Resource(new StringReader("<p>Another zebra</p>"), "chapter3.html"));
+		SearchIndex mappedIndex = SearchIndexFile.open(file, book);
+		assertTrue(mappedIndex.getResourceSearchIndexes().get(0) instanceof MemoryResourceSearchIndex);
+		assertTrue(mappedIndex.getResourceSearchIndexes().get(1) instanceof MappedResourceSearchIndex);
+		assertSameResults(new SearchIndex(book).doSearch("zebra"), mappedIndex.doSearch("zebra"));
+		assertEquals(2, mappedIndex.doSearch("zebra").size());
+		assertEquals(1, mappedIndex.doSearch("brown").size());
+	}
+
+	public void testChangedResourceOfSameSize() throws IOException {
+		Book book = createBook();
+		SearchIndexFile.write(new SearchIndex(book), file);
+		book.getResources().getByHref("chapter1.html").setData("<p>The quick brown fox jumps over the lazy cat.</p>".getBytes());
+		SearchIndex mappedIndex = SearchIndexFile.open(file, book);
+		assertTrue(mappedIndex.getResourceSearchIndexes().get(0) instanceof MemoryResourceSearchIndex);
+		assertTrue(mappedIndex.getResourceSearchIndexes().get(1) instanceof MappedResourceSearchIndex);
+		assertEquals(1, mappedIndex.doSearch("cat").size());
+		assertEquals(1, mappedIndex.doSearch("dog").size());
+	}
+
+	public void testNotAnIndexFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("not an index".getBytes());
+		out.close();
+		try {
+			SearchIndexFile.open(file, createBook());
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
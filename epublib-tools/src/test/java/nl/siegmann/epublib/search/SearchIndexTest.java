@@ -1,12 +1,21 @@
 package nl.siegmann.epublib.search;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 import junit.framework.TestCase;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.SpineReference;
 import nl.siegmann.epublib.service.MediatypeService;
 
 public class SearchIndexTest extends TestCase {
@@ -97,4 +106,287 @@ public class SearchIndexTest extends TestCase {
 			assertEquals((i / 2) + ": '" + testData[i] + "' => '" + actualText + "' does not match '" + testData[i + 1] + "\'", testData[i + 1], actualText);
 		}
 	}
+
+	private static List<Integer> getPagePositions(SearchResults searchResults) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (SearchResult searchResult: searchResults.getHits()) {
+			result.add(searchResult.getPagePos());
+		}
+		return result;
+	}
+
+	public void testPhraseSearch() throws IOException {
+		Book testBook = new Book();
+		Resource chapter1 = testBook.addSection("chapter1", new Resource(new StringReader("<p>The quick brown fox, the quick red fox and the quickest fox.</p>"), "chapter1.html")).getResource();
+		testBook.addSection("chapter2", new Resource(new StringReader("<p>Brown foxes</p>"), "chapter2.html"));
+		SearchIndex searchIndex = new SearchIndex(testBook);
+
+		SearchResults searchResults = searchIndex.doSearch("quick brown");
+		assertEquals(Arrays.asList(4), getPagePositions(searchResults));
+		assertSame(chapter1, searchResults.getHits().get(0).getResource());
+		assertEquals(7, searchResults.getHits().get(0).getSourcePos());
+
+		// the first token may end a term, the last token may start one
+		assertEquals(Arrays.asList(7), getPagePositions(searchIndex.doSearch("ck brown f")));
+		assertEquals(Arrays.asList(0), getPagePositions(searchIndex.doSearch("brown FOXES")));
+		assertEquals(Arrays.asList(17), getPagePositions(searchIndex.doSearch("ox the quick")));
+		assertEquals(Arrays.asList(10, 0), getPagePositions(searchIndex.doSearch("brown fox")));
+		assertTrue(searchIndex.doSearch("quick fox").isEmpty());
+
+		// a single token matches anywhere within a term
+		assertEquals(Arrays.asList(4, 25, 47), getPagePositions(searchIndex.doSearch("quick")));
+		assertEquals(Arrays.asList(51), getPagePositions(searchIndex.doSearch("kest")));
+	}
+
+	public void testSubstringSearch() throws IOException {
+		Book testBook = new Book();
+		testBook.addSection("chapter1", new Resource(new StringReader("<p>a, b; c, d</p>"), "chapter1.html"));
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		assertEquals(Arrays.asList(1, 7), getPagePositions(searchIndex.doSearch(",")));
+		assertEquals(Arrays.asList(4), getPagePositions(searchIndex.doSubstringSearch("; c")));
+		assertEquals(Arrays.asList(4), getPagePositions(searchIndex.doSubstringSearch("; C")));
+	}
+
+	public void testUpdate() throws IOException {
+		Book testBook = new Book();
+		Resource chapter1 = testBook.addSection("chapter1", new Resource(new StringReader("<p>red fox</p>"), "chapter1.html")).getResource();
+		Resource chapter2 = testBook.addSection("chapter2", new Resource(new StringReader("<p>blue fox</p>"), "chapter2.html")).getResource();
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		List<ResourceSearchIndex> before = searchIndex.getResourceSearchIndexes();
+		assertEquals(2, searchIndex.doSearch("fox").size());
+		assertFalse(searchIndex.update());
+
+		chapter1.setData("<p>green dog</p>".getBytes("UTF-8"));
+		assertTrue(searchIndex.update());
+		assertEquals(1, searchIndex.doSearch("fox").size());
+		assertSame(chapter1, searchIndex.doSearch("green").getHits().get(0).getResource());
+		// only the changed resource is indexed again
+		assertSame(before.get(1), searchIndex.getResourceSearchIndexes().get(1));
+		assertFalse(searchIndex.update());
+
+		Resource chapter3 = testBook.addSection("chapter3", new Resource(new StringReader("<p>green fox</p>"), "chapter3.html")).getResource();
+		assertTrue(searchIndex.update());
+		assertEquals(Arrays.asList(chapter2, chapter3), getResources(searchIndex.doSearch("fox")));
+		assertEquals(Arrays.asList(chapter1, chapter3), getResources(searchIndex.doSearch("green")));
+	}
+
+	public void testUpdateOrder() throws IOException {
+		Book testBook = new Book();
+		Resource chapter1 = testBook.addSection("chapter1", new Resource(new StringReader("<p>red fox</p>"), "chapter1.html")).getResource();
+		Resource chapter2 = testBook.addSection("chapter2", new Resource(new StringReader("<p>blue fox</p>"), "chapter2.html")).getResource();
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		List<SpineReference> spineReferences = new ArrayList<SpineReference>(testBook.getSpine().getSpineReferences());
+		Collections.reverse(spineReferences);
+		testBook.getSpine().setSpineReferences(spineReferences);
+		assertTrue(searchIndex.update());
+		assertEquals(Arrays.asList(chapter2, chapter1), getResources(searchIndex.doSearch("fox")));
+		assertFalse(searchIndex.update());
+	}
+
+	public void testUpdateRemovesTerms() throws IOException {
+		Book testBook = new Book();
+		Resource chapter1 = testBook.addSection("chapter1", new Resource(new StringReader("<p>Searching seared</p>"), "chapter1.html")).getResource();
+		testBook.addSection("chapter2", new Resource(new StringReader("<p>Search</p>"), "chapter2.html"));
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		assertEquals(Arrays.asList("search", "searching", "seared"), searchIndex.getSuggestions("sear", 10));
+		chapter1.setData("<p>Sealed</p>".getBytes("UTF-8"));
+		assertTrue(searchIndex.update());
+		assertEquals(Arrays.asList("search"), searchIndex.getSuggestions("sear", 10));
+		assertEquals(Arrays.asList("sealed"), searchIndex.getSuggestions("seal", 10));
+	}
+
+	private static List<Resource> getResources(SearchResults searchResults) {
+		List<Resource> result = new ArrayList<Resource>();
+		for (SearchResult searchResult: searchResults.getHits()) {
+			result.add(searchResult.getResource());
+		}
+		return result;
+	}
+
+	public void testSearchWhileUpdating() throws Exception {
+		final Book testBook = new Book();
+		for (int i = 0; i < 20; i++) {
+			testBook.addSection("chapter" + i, new Resource(new StringReader("<p>fox " + i + "</p>"), "chapter" + i + ".html"));
+		}
+		final SearchIndex searchIndex = new SearchIndex(testBook);
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Thread updater = new Thread() {
+			public void run() {
+				try {
+					for (int i = 0; i < 50; i++) {
+						Resource resource = testBook.getSpine().getResource(i % 20);
+						resource.setData(("<p>fox changed " + i + "</p>").getBytes("UTF-8"));
+						searchIndex.update();
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}
+		};
+		updater.start();
+		while (updater.isAlive()) {
+			assertEquals(20, searchIndex.doSearch("fox").size());
+		}
+		updater.join();
+		assertTrue(errors.isEmpty());
+		assertEquals(20, searchIndex.doSearch("fox").size());
+		assertEquals(20, searchIndex.doSearch("changed").size());
+	}
+
+	public void testFuzzySearch() throws IOException {
+		Book testBook = new Book();
+		testBook.addSection("chapter1", new Resource(new StringReader("<p>The quick brown fox jumps over the lazy dog.</p>"), "chapter1.html"));
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		assertEquals(Arrays.asList(10), getPagePositions(searchIndex.doFuzzySearch("browm", 1)));
+		assertEquals(Arrays.asList(10), getPagePositions(searchIndex.doFuzzySearch("brwn fx", 1)));
+		assertTrue(searchIndex.doFuzzySearch("brwn dog", 1).isEmpty());
+		assertEquals(Arrays.asList(35), getPagePositions(searchIndex.doFuzzySearch("lazzy dgo", 2)));
+		assertTrue(searchIndex.doFuzzySearch("quack", 0).isEmpty());
+		assertEquals(Arrays.asList(4), getPagePositions(searchIndex.doFuzzySearch("quick", 0)));
+	}
+
+	public void testSuggestions() throws IOException {
+		Book testBook = new Book();
+		testBook.addSection("chapter1", new Resource(new StringReader("<p>Search, searching, seared and sealed.</p>"), "chapter1.html"));
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		assertEquals(Arrays.asList("search", "searching", "seared"), searchIndex.getSuggestions("sear", 10));
+		assertEquals(Arrays.asList("search", "searching"), searchIndex.getSuggestions("the SEARC", 10));
+		assertEquals(Arrays.asList("search"), searchIndex.getSuggestions("sear", 1));
+		assertEquals(Arrays.asList("sealed", "seared"), searchIndex.getSuggestions("zealed", 10));
+		assertEquals(Arrays.asList("search"), searchIndex.getSuggestions("sarch", 10));
+		assertTrue(searchIndex.getSuggestions("", 10).isEmpty());
+	}
+
+	private static int getEditDistance(String text1, String text2) {
+		int[][] distances = new int[text1.length() + 1][text2.length() + 1];
+		for (int i = 0; i <= text1.length(); i++) {
+			for (int j = 0; j <= text2.length(); j++) {
+				if (i == 0 || j == 0) {
+					distances[i][j] = i + j;
+				} else {
+					distances[i][j] = Math.min(Math.min(distances[i - 1][j] + 1, distances[i][j - 1] + 1),
+							distances[i - 1][j - 1] + (text1.charAt(i - 1) == text2.charAt(j - 1) ? 0 : 1));
+				}
+			}
+		}
+		return distances[text1.length()][text2.length()];
+	}
+
+	private static String createRandomTerm(Random random) {
+		StringBuilder result = new StringBuilder();
+		int length = 1 + random.nextInt(8);
+		for (int i = 0; i < length; i++) {
+			result.append((char) ('a' + random.nextInt(4)));
+		}
+		return result.toString();
+	}
+
+	public void testTermDictionary() {
+		Random random = new Random(1);
+		Set<String> terms = new TreeSet<String>();
+		for (int i = 0; i < 500; i++) {
+			terms.add(createRandomTerm(random));
+		}
+		TermDictionary dictionary = new TermDictionary(terms);
+		for (int i = 0; i < 200; i++) {
+			String query = createRandomTerm(random);
+			int maxDistance = random.nextInt(3);
+			List<String> expectedSubstring = new ArrayList<String>();
+			List<String> expectedSuffix = new ArrayList<String>();
+			List<String> expectedSimilar = new ArrayList<String>();
+			for (String term: terms) {
+				if (term.contains(query)) {
+					expectedSubstring.add(term);
+				}
+				if (term.endsWith(query)) {
+					expectedSuffix.add(term);
+				}
+				if (getEditDistance(query, term) <= maxDistance) {
+					expectedSimilar.add(term);
+				}
+			}
+			assertEquals(query, expectedSubstring, dictionary.findBySubstring(query));
+			assertEquals(query, expectedSuffix, dictionary.findBySuffix(query));
+			assertEquals(query + " " + maxDistance, expectedSimilar, dictionary.findByEditDistance(query, maxDistance));
+		}
+	}
+
+	private static List<String> getHitKeys(List<SearchResult> searchResults) {
+		List<String> result = new ArrayList<String>();
+		for (SearchResult searchResult: searchResults) {
+			result.add(searchResult.getResource().getHref() + "#" + searchResult.getPagePos() + "@" + searchResult.getSourcePos());
+		}
+		return result;
+	}
+
+	public void testPagedSearch() throws IOException {
+		Book testBook = new Book();
+		for (int i = 0; i < 5; i++) {
+			StringBuilder text = new StringBuilder("<p>");
+			for (int j = 0; j < i * 3; j++) {
+				text.append("an apple and a pear, ");
+			}
+			testBook.addSection("chapter" + i, new Resource(new StringReader(text.append("</p>").toString()), "chapter" + i + ".html"));
+		}
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		for (String searchTerm: new String[] {"a", "apple and", ", a", "missing"}) {
+			List<String> expected = getHitKeys(searchIndex.doSearch(searchTerm).getHits());
+
+			List<SearchResult> iterated = new ArrayList<SearchResult>();
+			for (Iterator<SearchResult> iterator = searchIndex.iterateSearch(searchTerm); iterator.hasNext(); ) {
+				iterated.add(iterator.next());
+			}
+			assertEquals(searchTerm, expected, getHitKeys(iterated));
+
+			for (int limit: new int[] {1, 7, 1000}) {
+				List<SearchResult> paged = new ArrayList<SearchResult>();
+				SearchCursor cursor = null;
+				do {
+					SearchResults page = searchIndex.doSearch(searchTerm, cursor, limit);
+					assertTrue(page.size() <= limit);
+					paged.addAll(page.getHits());
+					cursor = page.getNextCursor();
+				} while (cursor != null);
+				assertEquals(searchTerm + " " + limit, expected, getHitKeys(paged));
+
+				for (int offset = 0; offset < expected.size() + 2; offset += 5) {
+					List<String> page = getHitKeys(searchIndex.doSearch(searchTerm, offset, limit).getHits());
+					assertEquals(expected.subList(Math.min(offset, expected.size()), Math.min(offset + limit, expected.size())), page);
+				}
+			}
+		}
+	}
+
+	public void testPagedSearchStopsEarly() throws IOException {
+		final int[] readCount = new int[1];
+		Book testBook = new Book();
+		for (int i = 0; i < 10; i++) {
+			testBook.addSection("chapter" + i, new Resource(new StringReader("<p>a; b; c;</p>"), "chapter" + i + ".html") {
+				public Reader getReader() throws IOException {
+					readCount[0]++;
+					return super.getReader();
+				}
+			});
+		}
+		SearchIndex searchIndex = new SearchIndex(testBook);
+		readCount[0] = 0;
+		// a search without letters or digits reads the resources
+		SearchResults page = searchIndex.doSearch(";", (SearchCursor) null, 2);
+		assertEquals(2, page.size());
+		assertEquals(1, readCount[0]);
+		assertEquals("chapter0.html", page.getNextCursor().getHref());
+		page = searchIndex.doSearch(";", page.getNextCursor(), 2);
+		// the resource of the cursor is read again
+		assertEquals(3, readCount[0]);
+		assertEquals("chapter0.html", page.getHits().get(0).getResource().getHref());
+		assertEquals("chapter1.html", page.getHits().get(1).getResource().getHref());
+	}
+
+	public void testPostings() {
+		int[] positions = new int[] {0, 1, 127, 128, 300, 16384, 16385, 3000000};
+		byte[] postings = Postings.encode(positions, positions.length);
+		assertEquals(13, postings.length);
+		assertTrue(Arrays.equals(positions, Postings.decode(postings)));
+		assertEquals(0, Postings.decode(Postings.encode(new int[0], 0)).length);
+	}
 }
@@ -0,0 +1,200 @@
+package nl.siegmann.epublib.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TextReplacerTest extends TestCase {
+
+	public void testLeftmostLongest() {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("bc", "X");
+		table.put("abcd", "Y");
+		table.put("ab", "Z");
+		table.put("cde", "W");
+		TextReplacer textReplacer = new TextReplacer(table);
+		assertEquals("Y", textReplacer.replace("abcd"));
+		assertEquals("Ye", textReplacer.replace("abcde"));
+		assertEquals("aW", textReplacer.replace("acde"));
+		assertEquals("Ze", textReplacer.replace("abe"));
+		assertEquals("xXe", textReplacer.replace("xbce"));
+		assertEquals("ZX", textReplacer.replace("abbc"));
+		assertEquals("nothing", textReplacer.replace("nothing"));
+	}
+
+	public void testAgainstNaiveReplacement() {
+		Random random = new Random(7);
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		for (int i = 0; i < 2000; i++) {
+			table.put(randomText(random, 1 + random.nextInt(6)), "<" + i + ">");
+		}
+		TextReplacer textReplacer = new TextReplacer(table);
+		for (int i = 0; i < 200; i++) {
+			String text = randomText(random, random.nextInt(200));
+			assertEquals(text, naiveReplace(text, table), textReplacer.replace(text));
+		}
+	}
+
+	public void testLongerMatchInProgress() {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("c", "[0]");
+		table.put("ba", "[1]");
+		table.put("bbaa", "[2]");
+		TextReplacer textReplacer = new TextReplacer(table);
+		assertEquals("a[0]a[2]", textReplacer.replace("acabbaa"));
+		assertEquals("a[0]ab[1]b", textReplacer.replace("acabbab"));
+	}
+
+	public void testAgainstNaiveReplacementSparse() {
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			// a few patterns sharing prefixes, so that many partial matches fail
+			Map<String, String> table = new LinkedHashMap<String, String>();
+			int patternCount = 1 + random.nextInt(4);
+			for (int j = 0; j < patternCount; j++) {
+				table.put(randomText(random, 1 + random.nextInt(5)), "[" + j + "]");
+			}
+			TextReplacer textReplacer = new TextReplacer(table);
+			String text = randomText(random, random.nextInt(20));
+			assertEquals(table + " " + text, naiveReplace(text, table), textReplacer.replace(text));
+		}
+	}
+
+	public void testStreamingInSmallChunks() throws IOException {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("line one\nline", "joined");
+		table.put("&apos;", "'");
+		TextReplacer textReplacer = new TextReplacer(table);
+		StringWriter out = new StringWriter();
+		textReplacer.replace(new OneCharReader(new StringReader("it&apos;s line one\nline two\n")), out);
+		assertEquals("it's joined two\n", out.toString());
+	}
+
+	public void testHtmlTextOnly() throws IOException {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("title", "TITLE");
+		table.put("a", "A");
+		table.put("ab", "AB");
+		TextReplacer textReplacer = new TextReplacer(table);
+		String html = "<?xml version=\"1.0\"?>\n<!DOCTYPE html>\n<html><head><title>a title</title></head>\n"
+				+ "<body class=\"a>b title\"><!-- a title -- > a --><p title='a'>a<b>b</b>ab</p><![CDATA[ a ]] a ]]>a</body></html>\n";
+		String expected = "<?xml version=\"1.0\"?>\n<!DOCTYPE html>\n<html><head><title>A TITLE</title></head>\n"
+				+ "<body class=\"a>b title\"><!-- a title -- > a --><p title='a'>A<b>b</b>AB</p><![CDATA[ a ]] a ]]>A</body></html>\n";
+		StringWriter out = new StringWriter();
+		textReplacer.replaceHtmlText(new OneCharReader(new StringReader(html)), out);
+		assertEquals(expected, out.toString());
+		out = new StringWriter();
+		textReplacer.replaceHtmlText(new StringReader(html), out);
+		assertEquals(expected, out.toString());
+	}
+
+	public void testHtmlReferences() throws IOException {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("a", "b");
+		table.put("'", "’");
+		table.put("x", "<b>&");
+		table.put("é!", "e");
+		TextReplacer textReplacer = new TextReplacer(table);
+		String html = "<p>&amp; &AMP; &unknown; &#97; &#x61;&apos;&#39; x &eacute;! &eacute; & a&b &#128512;a</p>";
+		String expected = "<p>&amp; &AMP; &unknown; b b’’ &lt;b&gt;&amp; e &eacute; & b&b &#128512;b</p>";
+		StringWriter out = new StringWriter();
+		textReplacer.replaceHtmlText(new OneCharReader(new StringReader(html)), out);
+		assertEquals(expected, out.toString());
+		out = new StringWriter();
+		textReplacer.replaceHtmlText(new StringReader(html), out);
+		assertEquals(expected, out.toString());
+	}
+
+	public void testHtmlLessThanInText() throws IOException {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("foo", "bar");
+		TextReplacer textReplacer = new TextReplacer(table);
+		String html = "<p>1 < 2 foo it's</p> foo <3 foo<";
+		String expected = "<p>1 < 2 bar it's</p> bar <3 bar<";
+		StringWriter out = new StringWriter();
+		textReplacer.replaceHtmlText(new OneCharReader(new StringReader(html)), out);
+		assertEquals(expected, out.toString());
+		out = new StringWriter();
+		textReplacer.replaceHtmlText(new StringReader(html), out);
+		assertEquals(expected, out.toString());
+	}
+
+	public void testHtmlRawText() throws IOException {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("foo", "bar");
+		TextReplacer textReplacer = new TextReplacer(table);
+		String html = "<script>a<b foo 'x</scrip foo</script> foo<style type='text/css'>p { content: 'foo' }</STYLE >foo"
+				+ "<script src='foo.js'/>foo";
+		String expected = "<script>a<b foo 'x</scrip foo</script> bar<style type='text/css'>p { content: 'foo' }</STYLE >bar"
+				+ "<script src='foo.js'/>bar";
+		StringWriter out = new StringWriter();
+		textReplacer.replaceHtmlText(new OneCharReader(new StringReader(html)), out);
+		assertEquals(expected, out.toString());
+		out = new StringWriter();
+		textReplacer.replaceHtmlText(new StringReader(html), out);
+		assertEquals(expected, out.toString());
+	}
+
+	public void testDecodeHtmlReferences() {
+		Map<String, String> table = new LinkedHashMap<String, String>();
+		table.put("&apos;", "'");
+		table.put("a &amp b", "a &lt; b");
+		Map<String, String> decoded = TextReplacer.decodeHtmlReferences(table);
+		assertEquals("'", decoded.get("'"));
+		assertEquals("a < b", decoded.get("a &amp b"));
+	}
+
+	public void testReadReplacementTable() throws IOException {
+		Map<String, String> table = TextReplacer.readReplacementTable(new StringReader("# comment\n\nfoo\tbar\n\\t\\\\\ttab\n"));
+		assertEquals(2, table.size());
+		assertEquals("bar", table.get("foo"));
+		assertEquals("tab", table.get("\t\\"));
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			result.append((char) ('a' + random.nextInt(4)));
+		}
+		return result.toString();
+	}
+
+	private static String naiveReplace(String text, Map<String, String> table) {
+		StringBuilder result = new StringBuilder();
+		int i = 0;
+		while (i < text.length()) {
+			String longest = null;
+			for (String pattern: table.keySet()) {
+				if (text.startsWith(pattern, i) && (longest == null || pattern.length() > longest.length())) {
+					longest = pattern;
+				}
+			}
+			if (longest == null) {
+				result.append(text.charAt(i++));
+			} else {
+				result.append(table.get(longest));
+				i += longest.length();
+			}
+		}
+		return result.toString();
+	}
+
+	private static class OneCharReader extends FilterReader {
+
+		OneCharReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, 1));
+		}
+	}
+}
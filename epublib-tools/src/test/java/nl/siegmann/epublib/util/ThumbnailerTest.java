@@ -0,0 +1,91 @@
+package nl.siegmann.epublib.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+public class ThumbnailerTest extends TestCase {
+
+	private static byte[] createImage(int width, int height, String format) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, width, height / 2);
+		g.setColor(Color.BLUE);
+		g.fillRect(0, height / 2, width, height - height / 2);
+		g.dispose();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ImageIO.write(image, format, result);
+		return result.toByteArray();
+	}
+
+	public void testScalesToFit() throws IOException {
+		byte[] imageData = createImage(1200, 1800, "png");
+		for (Thumbnailer.Quality quality: Thumbnailer.Quality.values()) {
+			byte[] thumbnailData = new Thumbnailer(100, 100, quality).createThumbnail(imageData);
+			BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(thumbnailData));
+			assertEquals(quality.name(), 67, thumbnail.getWidth());
+			assertEquals(quality.name(), 100, thumbnail.getHeight());
+			assertEquals(quality.name(), Color.RED.getRGB(), thumbnail.getRGB(30, 10));
+			assertEquals(quality.name(), Color.BLUE.getRGB(), thumbnail.getRGB(30, 90));
+		}
+	}
+
+	public void testKeepsFormat() throws IOException {
+		byte[] thumbnailData = new Thumbnailer(50, 50, Thumbnailer.Quality.FAST).createThumbnail(createImage(400, 300, "jpg"));
+		assertEquals((byte) 0xFF, thumbnailData[0]);
+		assertEquals((byte) 0xD8, thumbnailData[1]);
+		assertEquals(MediatypeService.JPG, Thumbnailer.getMediaType(thumbnailData));
+	}
+
+	public void testSmallImageUnchanged() throws IOException {
+		byte[] imageData = createImage(80, 60, "png");
+		assertSame(imageData, new Thumbnailer(100, 100, Thumbnailer.Quality.QUALITY).createThumbnail(imageData));
+	}
+
+	public void testCache() throws IOException {
+		Thumbnailer thumbnailer = new Thumbnailer(20, 20, Thumbnailer.Quality.BALANCED, 1024 * 1024);
+		byte[] first = thumbnailer.createThumbnail(createImage(300, 300, "png"));
+		assertSame(first, thumbnailer.createThumbnail(createImage(300, 300, "png")));
+		assertNotSame(first, thumbnailer.createThumbnail(createImage(300, 200, "png")));
+		thumbnailer.clearCache();
+		assertNotSame(first, thumbnailer.createThumbnail(createImage(300, 300, "png")));
+	}
+
+	public void testCachedSmallImageUnchanged() throws IOException {
+		Thumbnailer thumbnailer = new Thumbnailer(100, 100, Thumbnailer.Quality.FAST, 1024 * 1024);
+		byte[] imageData = createImage(50, 40, "png");
+		assertSame(imageData, thumbnailer.createThumbnail(imageData));
+		// the same image in another array, as in another book sharing the cover
+		byte[] otherImageData = imageData.clone();
+		assertSame(otherImageData, thumbnailer.createThumbnail(otherImageData));
+	}
+
+	public void testBatch() throws Exception {
+		Resource first = new Resource(createImage(500, 500, "png"), MediatypeService.PNG);
+		Resource second = new Resource(createImage(600, 300, "png"), MediatypeService.PNG);
+		Resource broken = new Resource(new byte[] {1, 2, 3}, MediatypeService.PNG);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Map<Resource, byte[]> result = new Thumbnailer(40, 40, Thumbnailer.Quality.FAST).createThumbnails(Arrays.asList(first, second, broken), executor);
+			assertEquals(2, result.size());
+			assertEquals(20, ImageIO.read(new ByteArrayInputStream(result.get(second))).getHeight());
+			assertEquals(40, ImageIO.read(new ByteArrayInputStream(result.get(first))).getWidth());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -1,41 +1,121 @@
 package nl.siegmann.epublib.utilities;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.stream.XMLEventWriter;
-import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
 
 import junit.framework.TestCase;
 import nl.siegmann.epublib.Constants;
 
+import org.w3c.dom.Document;
+
 public class HtmlSplitterTest extends TestCase {
 
-	public void test1() {
-		HtmlSplitter htmlSplitter = new HtmlSplitter();
-		try {
-			String bookResourceName = "/holmes_scandal_bohemia.html";
-			Reader input = new InputStreamReader(HtmlSplitterTest.class.getResourceAsStream(bookResourceName), Constants.CHARACTER_ENCODING);
-			int maxSize = 3000;
-			List<List<XMLEvent>> result = htmlSplitter.splitHtml(input, maxSize);
-			XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
-			for(int i = 0; i < result.size(); i++) {
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				XMLEventWriter writer = xmlOutputFactory.createXMLEventWriter(out);
-				for(XMLEvent xmlEvent: result.get(i)) {
-					writer.add(xmlEvent);
-				}
-				writer.close();
-				byte[] data = out.toByteArray();
-				assertTrue(data.length > 0);
-				assertTrue(data.length <= maxSize);
+	public void test1() throws Exception {
+		String bookResourceName = "/holmes_scandal_bohemia.html";
+		Reader input = new InputStreamReader(HtmlSplitterTest.class.getResourceAsStream(bookResourceName), Constants.CHARACTER_ENCODING);
+		int maxSize = 3000;
+		List<ByteArrayOutputStream> result = split(input, maxSize, new HtmlSplitter.SplitResult[1]);
+		for(int i = 0; i < result.size(); i++) {
+			byte[] data = result.get(i).toByteArray();
+			assertTrue(data.length > 0);
+			assertTrue(data.length <= maxSize);
+		}
+	}
+
+	private static List<ByteArrayOutputStream> split(Reader input, int maxSize, HtmlSplitter.SplitResult[] splitResult) throws Exception {
+		final List<ByteArrayOutputStream> parts = new ArrayList<ByteArrayOutputStream>();
+		splitResult[0] = new HtmlSplitter().splitHtml(input, maxSize, new HtmlSplitter.PartOutput() {
+
+			@Override
+			public OutputStream createPart(int partIndex) {
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				parts.add(result);
+				return result;
+			}
+		});
+		return parts;
+	}
+
+	public void testStreaming() throws Exception {
+		Reader input = new InputStreamReader(HtmlSplitterTest.class.getResourceAsStream("/holmes_scandal_bohemia.html"), Constants.CHARACTER_ENCODING);
+		int maxSize = 3000;
+		HtmlSplitter.SplitResult[] splitResult = new HtmlSplitter.SplitResult[1];
+		List<ByteArrayOutputStream> parts = split(input, maxSize, splitResult);
+		assertEquals(parts.size(), splitResult[0].getPartCount());
+		assertTrue(parts.size() > 15);
+		assertEquals(0, splitResult[0].getPartIndex("pgepubid00002"));
+		assertEquals(-1, splitResult[0].getPartIndex("nonexistent"));
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < parts.size(); i++) {
+			byte[] data = parts.get(i).toByteArray();
+			assertTrue(data.length <= maxSize);
+			Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(data));
+			assertEquals("html", document.getDocumentElement().getLocalName());
+			assertEquals(1, document.getElementsByTagName("title").getLength());
+			text.append(document.getElementsByTagName("body").item(0).getTextContent());
+		}
+		assertTrue(text.toString().contains("To Sherlock Holmes she is always the\n\nwoman."));
+	}
+
+	public void testLongText() throws Exception {
+		StringBuilder html = new StringBuilder("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>t</title></head><body><div id=\"d\"><p id=\"p\">");
+		for (int i = 0; i < 1000; i++) {
+			html.append("word").append(i).append(' ');
+		}
+		html.append("</p><p id=\"last\">end&nbsp;</p></div></body></html>");
+		HtmlSplitter.SplitResult[] splitResult = new HtmlSplitter.SplitResult[1];
+		List<ByteArrayOutputStream> parts = split(new StringReader(html.toString()), 1000, splitResult);
+		assertTrue(parts.size() > 8);
+		assertEquals(0, splitResult[0].getPartIndex("p"));
+		assertEquals(parts.size() - 1, splitResult[0].getPartIndex("last"));
+		String second = parts.get(1).toString(Constants.CHARACTER_ENCODING);
+		assertTrue(second.contains("<div><p>"));
+		assertFalse(second.contains("id=\"p\""));
+		assertTrue(parts.get(parts.size() - 1).toString(Constants.CHARACTER_ENCODING).contains("end&nbsp;"));
+		for (ByteArrayOutputStream part: parts) {
+			assertTrue(part.size() <= 1000);
+		}
+	}
+
+	public void testMultiByteText() throws Exception {
+		StringBuilder html = new StringBuilder("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>t</title></head><body><p>");
+		for (int i = 0; i < 500; i++) {
+			html.append("\u03bb\u03cc\u03b3\u03bf\u03c2 \ud83d\ude00").append(i).append(' ');
+		}
+		html.append("</p><p>");
+		for (int i = 0; i < 500; i++) {
+			html.append("a&amp;b&lt;c ");
+		}
+		html.append("</p></body></html>");
+		// a coalescing reader delivers every paragraph as a single text
+		XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		final List<ByteArrayOutputStream> parts = new ArrayList<ByteArrayOutputStream>();
+		new HtmlSplitter().splitHtml(xmlInputFactory.createXMLEventReader(new StringReader(html.toString())), 1000, new HtmlSplitter.PartOutput() {
+
+			@Override
+			public OutputStream createPart(int partIndex) {
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				parts.add(result);
+				return result;
 			}
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		});
+		assertTrue(parts.size() > 20);
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		for (ByteArrayOutputStream part: parts) {
+			assertTrue(part.size() <= 1000);
+			documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(part.toByteArray()));
 		}
 	}
 }
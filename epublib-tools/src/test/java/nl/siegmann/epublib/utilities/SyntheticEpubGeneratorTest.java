@@ -0,0 +1,123 @@
+package nl.siegmann.epublib.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.epub.EpubReader;
+import nl.siegmann.epublib.service.MediatypeService;
+
+public class SyntheticEpubGeneratorTest extends TestCase {
+
+	public void testOpfLast() throws Exception {
+		SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+		generator.setChapterCount(5);
+		generator.setChapterSize(3000);
+		generator.setTocDepth(3);
+		generator.setTocFanOut(2);
+		generator.setImageCount(3);
+		generator.setImageWidth(16);
+		generator.setImageHeight(16);
+		generator.setExtraResourceCount(20);
+		generator.setLayout(SyntheticEpubGenerator.Layout.OPF_LAST);
+		byte[] epub = write(generator);
+
+		List<String> entryNames = getEntryNames(epub);
+		assertEquals("mimetype", entryNames.get(0));
+		assertEquals("OEBPS/content.opf", entryNames.get(entryNames.size() - 1));
+
+		Book book = new EpubReader().read(new ByteArrayInputStream(epub));
+		assertEquals(5, book.getSpine().size());
+		// chapters, images, stylesheets and the ncx
+		assertEquals(5 + 3 + 20 + 1, book.getResources().size());
+		assertEquals(3, book.getResources().getResourcesByMediaType(MediatypeService.PNG).size());
+		// 2 + 4 + 8 entries, 2 at the top level
+		assertEquals(14, countTocReferences(book.getTableOfContents().getTocReferences()));
+		assertEquals(2, book.getTableOfContents().getTocReferences().size());
+		assertEquals(3, book.getTableOfContents().calculateDepth());
+		assertTrue(book.getSpine().getResource(0).getSize() >= 3000);
+	}
+
+	public void testStoredContainerLast() throws Exception {
+		SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+		generator.setChapterCount(3);
+		generator.setCompressionMethod(ZipEntry.STORED);
+		generator.setLayout(SyntheticEpubGenerator.Layout.CONTAINER_LAST);
+		byte[] epub = write(generator);
+
+		List<String> entryNames = getEntryNames(epub);
+		assertEquals("mimetype", entryNames.get(entryNames.size() - 1));
+		Book book = new EpubReader().read(new ByteArrayInputStream(epub));
+		assertEquals(3, book.getSpine().size());
+		assertEquals(3, book.getTableOfContents().size());
+	}
+
+	public void testTitleEscaped() throws Exception {
+		SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+		generator.setChapterCount(2);
+		generator.setTitle("Tom & Jerry <1>");
+		Book book = new EpubReader().read(new ByteArrayInputStream(write(generator)));
+		assertEquals("Tom & Jerry <1>", book.getTitle());
+		assertEquals(2, book.getSpine().size());
+	}
+
+	public void testNoChapters() throws Exception {
+		SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+		generator.setChapterCount(0);
+		generator.setTocDepth(2);
+		generator.setTocFanOut(3);
+		generator.setImageCount(2);
+		Book book = generator.createBook();
+		assertEquals(0, book.getSpine().size());
+		assertEquals(0, book.getTableOfContents().size());
+		book = new EpubReader().read(new ByteArrayInputStream(write(generator)));
+		assertEquals(0, book.getSpine().size());
+		assertEquals(0, book.getTableOfContents().size());
+		try {
+			generator.setChapterCount(-1);
+			fail("a negative chapter count should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testReproducible() throws Exception {
+		SyntheticEpubGenerator generator = new SyntheticEpubGenerator();
+		generator.setSeed(42);
+		byte[] first = write(generator);
+		byte[] second = write(generator);
+		assertTrue(Arrays.equals(first, second));
+		generator.setSeed(43);
+		assertFalse(Arrays.equals(first, write(generator)));
+	}
+
+	private static byte[] write(SyntheticEpubGenerator generator) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		generator.write(out);
+		return out.toByteArray();
+	}
+
+	private static List<String> getEntryNames(byte[] epub) throws Exception {
+		List<String> result = new ArrayList<String>();
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(epub));
+		for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+			result.add(entry.getName());
+		}
+		return result;
+	}
+
+	private static int countTocReferences(List<TOCReference> tocReferences) {
+		int result = tocReferences.size();
+		for (TOCReference tocReference: tocReferences) {
+			result += countTocReferences(tocReference.getChildren());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,67 @@
+package nl.siegmann.epublib.viewer;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+
+import junit.framework.TestCase;
+
+public class DocumentCacheTest extends TestCase {
+
+	public void testLeastRecentlyUsedEviction() {
+		DocumentCache documentCache = new DocumentCache(300);
+		HTMLDocument document1 = new HTMLDocument();
+		documentCache.put("chapter1.html", document1, 100);
+		documentCache.put("chapter2.html", new HTMLDocument(), 100);
+		documentCache.put("chapter3.html", new HTMLDocument(), 100);
+		assertEquals(300, documentCache.getSize());
+
+		// chapter1 was used more recently than chapter2
+		assertSame(document1, documentCache.get("chapter1.html"));
+		documentCache.put("chapter4.html", new HTMLDocument(), 100);
+		assertFalse(documentCache.contains("chapter2.html"));
+		assertTrue(documentCache.contains("chapter1.html"));
+		assertEquals(3, documentCache.getDocumentCount());
+
+		documentCache.put("big.html", new HTMLDocument(), 250);
+		assertEquals(1, documentCache.getDocumentCount());
+		assertEquals(250, documentCache.getSize());
+	}
+
+	public void testPinned() {
+		DocumentCache documentCache = new DocumentCache(200);
+		documentCache.setPinnedHrefs(Arrays.asList("chapter1.html", "chapter2.html"));
+		documentCache.put("chapter1.html", new HTMLDocument(), 150);
+		documentCache.put("chapter2.html", new HTMLDocument(), 150);
+		documentCache.put("chapter3.html", new HTMLDocument(), 10);
+		// pinned documents stay even if the cache is too large
+		assertTrue(documentCache.contains("chapter1.html"));
+		assertTrue(documentCache.contains("chapter2.html"));
+		assertFalse(documentCache.contains("chapter3.html"));
+		assertEquals(300, documentCache.getSize());
+
+		documentCache.setPinnedHrefs(Arrays.asList("chapter2.html"));
+		assertFalse(documentCache.contains("chapter1.html"));
+		assertEquals(150, documentCache.getSize());
+
+		documentCache.clear();
+		assertEquals(0, documentCache.getSize());
+		assertNull(documentCache.get("chapter2.html"));
+	}
+
+	public void testEstimateSize() throws Exception {
+		HTMLEditorKit editorKit = new HTMLEditorKit();
+		HTMLDocument small = (HTMLDocument) editorKit.createDefaultDocument();
+		editorKit.read(new StringReader("<html><body><p>a</p></body></html>"), small, 0);
+		StringBuilder text = new StringBuilder("<html><body>");
+		for (int i = 0; i < 100; i++) {
+			text.append("<p>paragraph ").append(i).append("</p>");
+		}
+		HTMLDocument large = (HTMLDocument) editorKit.createDefaultDocument();
+		editorKit.read(new StringReader(text.append("</body></html>").toString()), large, 0);
+		assertTrue(DocumentCache.estimateSize(small) > 0);
+		assertTrue(DocumentCache.estimateSize(large) > 50 * DocumentCache.estimateSize(small) / 10);
+	}
+}
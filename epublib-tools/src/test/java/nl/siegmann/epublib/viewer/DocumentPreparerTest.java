@@ -0,0 +1,92 @@
+package nl.siegmann.epublib.viewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+public class DocumentPreparerTest extends TestCase {
+
+	private static class RecordingPreparation implements DocumentPreparer.Preparation {
+
+		final List<String> prepared = new ArrayList<String>();
+		volatile boolean hasRoom = true;
+
+		@Override
+		public synchronized boolean isPrepared(Resource resource) {
+			return prepared.contains(resource.getHref());
+		}
+
+		@Override
+		public boolean hasRoom() {
+			return hasRoom;
+		}
+
+		@Override
+		public synchronized void prepare(Book book, Resource resource) {
+			prepared.add(resource.getHref());
+			notifyAll();
+		}
+
+		synchronized List<String> waitFor(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + 5000;
+			while (prepared.size() < count && System.currentTimeMillis() < end) {
+				wait(end - System.currentTimeMillis());
+			}
+			return new ArrayList<String>(prepared);
+		}
+	}
+
+	private static Book createBook(int chapterCount) {
+		Book book = new Book();
+		for (int i = 0; i < chapterCount; i++) {
+			book.addSection("chapter" + i, new Resource(("<p>" + i + "</p>").getBytes(), "chapter" + i + ".html"));
+		}
+		// only xhtml is prepared
+		book.getSpine().addResource(new Resource(new byte[0], "image.png"));
+		book.getResources().add(new Resource(null, new byte[0], "style.css", MediatypeService.CSS));
+		return book;
+	}
+
+	public void testNearestFirst() throws Exception {
+		RecordingPreparation preparation = new RecordingPreparation();
+		DocumentPreparer documentPreparer = new DocumentPreparer(preparation, 1, "test");
+		try {
+			preparation.hasRoom = false;
+			documentPreparer.setBook(createBook(8), 4);
+			// outside the pin distance documents are only prepared if there is room
+			assertEquals(Arrays.asList("chapter4.html", "chapter5.html", "chapter3.html"), preparation.waitFor(3));
+			Thread.sleep(50);
+			assertEquals(3, preparation.prepared.size());
+
+			preparation.hasRoom = true;
+			documentPreparer.setSpinePos(6);
+			assertEquals(Arrays.asList("chapter4.html", "chapter5.html", "chapter3.html", "chapter6.html", "chapter7.html",
+					"chapter2.html", "chapter1.html", "chapter0.html"), preparation.waitFor(8));
+			Thread.sleep(50);
+			assertEquals(8, preparation.prepared.size());
+		} finally {
+			documentPreparer.stop();
+		}
+	}
+
+	public void testBookChange() throws Exception {
+		RecordingPreparation preparation = new RecordingPreparation();
+		DocumentPreparer documentPreparer = new DocumentPreparer(preparation, 0, "test");
+		try {
+			preparation.hasRoom = false;
+			documentPreparer.setBook(createBook(3), 0);
+			assertEquals(Arrays.asList("chapter0.html"), preparation.waitFor(1));
+			Book otherBook = new Book();
+			otherBook.addSection("other", new Resource("<p>other</p>".getBytes(), "other.html"));
+			documentPreparer.setBook(otherBook, 0);
+			assertEquals(Arrays.asList("chapter0.html", "other.html"), preparation.waitFor(2));
+		} finally {
+			documentPreparer.stop();
+		}
+	}
+}
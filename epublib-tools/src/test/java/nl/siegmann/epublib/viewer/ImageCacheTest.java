@@ -0,0 +1,83 @@
+package nl.siegmann.epublib.viewer;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.PixelGrabber;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+import nl.siegmann.epublib.domain.Resource;
+
+public class ImageCacheTest extends TestCase {
+
+	private static Resource createImageResource(String href, int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", data);
+		return new Resource(data.toByteArray(), href);
+	}
+
+	private static BufferedImage waitForImage(ImageCache imageCache, String href) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (imageCache.getCachedImage(href) == null && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		return imageCache.getCachedImage(href);
+	}
+
+	public void testDecodeScaled() throws Exception {
+		ImageCache imageCache = new ImageCache(10000000, 100);
+		try {
+			Resource resource = createImageResource("images/wide.png", 400, 100);
+			Image image = imageCache.getImage(resource);
+			// the image delivers its pixels when it is decoded
+			PixelGrabber pixelGrabber = new PixelGrabber(image, 0, 0, -1, -1, true);
+			assertTrue(pixelGrabber.grabPixels(5000));
+			assertEquals(100, pixelGrabber.getWidth());
+			assertEquals(25, pixelGrabber.getHeight());
+
+			BufferedImage cached = waitForImage(imageCache, "images/wide.png");
+			assertEquals(100, cached.getWidth());
+			assertSame(cached, imageCache.getImage(resource));
+
+			Resource small = createImageResource("images/small.png", 50, 20);
+			imageCache.getImage(small);
+			assertEquals(50, waitForImage(imageCache, "images/small.png").getWidth());
+		} finally {
+			imageCache.shutdown();
+		}
+	}
+
+	public void testEviction() throws Exception {
+		ImageCache imageCache = new ImageCache(1000, 100);
+		try {
+			imageCache.put("a.png", new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+			imageCache.put("b.png", new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+			assertEquals(800, imageCache.getBytes());
+			assertNotNull(imageCache.getCachedImage("a.png"));
+			imageCache.put("c.png", new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+			assertEquals(900, imageCache.getBytes());
+			imageCache.put("d.png", new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+			// b was used least recently
+			assertNull(imageCache.getCachedImage("b.png"));
+			assertNotNull(imageCache.getCachedImage("a.png"));
+			assertEquals(900, imageCache.getBytes());
+
+			// an image larger than the cache is kept until the next one comes in
+			imageCache.put("large.png", new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB));
+			assertEquals(1, imageCache.size());
+
+			// growing the rendering width drops the images scaled for the smaller width
+			imageCache.setRenderingWidth(50);
+			assertEquals(1, imageCache.size());
+			imageCache.setRenderingWidth(200);
+			assertEquals(0, imageCache.size());
+			assertEquals(0, imageCache.getBytes());
+		} finally {
+			imageCache.shutdown();
+		}
+	}
+}